@@ -0,0 +1,61 @@
+package com.rrs.rd.address.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+
+/**
+ * 生成文档向量：{@link SimilarityComputer#analyse(AddressEntity)}，以及文本缓存格式的{@link SimilarityComputer#serialize(Document)}。
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyseBenchmark {
+	private SimilarityComputer computer;
+	private AddressEntity[] addresses;
+	private Document[] docs;
+	private int next = 0;
+
+	@Setup
+	public void setup(){
+		this.computer = new SimilarityComputer();
+		List<AddressEntity> list = SyntheticData.getInstance().partitionAddresses(4096);
+		this.addresses = list.toArray(new AddressEntity[list.size()]);
+		this.docs = new Document[this.addresses.length];
+		for(int i=0; i<this.addresses.length; i++)
+			this.docs[i] = this.computer.analyse(this.addresses[i]);
+	}
+
+	@Benchmark
+	public Document analyse(){
+		AddressEntity addr = this.addresses[this.next];
+		this.next = (this.next + 1) % this.addresses.length;
+		return this.computer.analyse(addr);
+	}
+
+	@Benchmark
+	public String serialize(){
+		Document doc = this.docs[this.next];
+		this.next = (this.next + 1) % this.docs.length;
+		return this.computer.serialize(doc);
+	}
+}
@@ -0,0 +1,68 @@
+package com.rrs.rd.address.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rrs.rd.address.index.TermIndexBuilder;
+import com.rrs.rd.address.interpret.AddressInterpreter;
+import com.rrs.rd.address.interpret.RegionInterpreterVisitor;
+import com.rrs.rd.address.persist.AddressEntity;
+
+/**
+ * 地址解析：{@link AddressInterpreter#interpret(String)}，以及其中匹配省市区、乡镇的{@link TermIndexBuilder#deepMostQuery(String, com.rrs.rd.address.index.TermIndexVisitor)}。
+ * <p>地址文本随机分布在全部区县中，每次调用依次取下一条地址。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpretBenchmark {
+	private AddressInterpreter interpreter;
+	private TermIndexBuilder termIndex;
+	private RegionInterpreterVisitor visitor;
+	private String[] texts;
+	private int next = 0;
+
+	@Setup
+	public void setup(){
+		SyntheticData data = SyntheticData.getInstance();
+		this.interpreter = data.getInterpreter();
+		this.termIndex = data.getTermIndex();
+		this.visitor = new RegionInterpreterVisitor();
+		List<String> list = data.addressTexts(null, 4096, SyntheticData.SEED);
+		this.texts = list.toArray(new String[list.size()]);
+	}
+
+	@Benchmark
+	public AddressEntity interpret(){
+		return this.interpreter.interpret(nextText());
+	}
+
+	@Benchmark
+	public RegionInterpreterVisitor deepMostQuery(){
+		this.visitor.reset();
+		this.termIndex.deepMostQuery(nextText(), this.visitor);
+		return this.visitor;
+	}
+
+	private String nextText(){
+		String text = this.texts[this.next];
+		this.next = (this.next + 1) % this.texts.length;
+		return text;
+	}
+}
@@ -0,0 +1,101 @@
+package com.rrs.rd.address.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.similarity.DocumentBlock;
+import com.rrs.rd.address.similarity.LruPartitionCache;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+import com.rrs.rd.address.similarity.VectorSegment;
+
+/**
+ * 加载缓存分区：
+ * <ul>
+ * <li>deserialize：解析文本缓存格式（.vt）的全部文档；</li>
+ * <li>openSegment：打开缓存文件（.vs），映射到内存；</li>
+ * <li>toBlock：打开缓存文件并复制到堆内存数组；</li>
+ * <li>loadPartition：内存缓存模式完整的加载过程，包括复制到堆内存、计算IDF、构建倒排索引。</li>
+ * </ul>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+	@Param({ "10000", "100000" })
+	public int docCount;
+
+	private File cacheFolder;
+	private File segmentFile;
+	private SimilarityComputer computer;
+	private AddressEntity sample;
+	private String[] lines;
+
+	@Setup
+	public void setup(){
+		List<AddressEntity> addresses = SyntheticData.getInstance().partitionAddresses(this.docCount);
+		this.sample = addresses.get(0);
+		this.cacheFolder = SyntheticData.createTempFolder("load-benchmark");
+		this.computer = new SimilarityComputer();
+		this.computer.setCacheFolder(this.cacheFolder.getPath());
+		this.computer.setCacheVectorsInMemory(true);
+		String key = this.computer.buildCacheKey(this.sample);
+		this.computer.buildDocumentFileCache(key, addresses);
+		this.segmentFile = new File(this.cacheFolder, key + VectorSegment.FILE_EXTENSION);
+
+		List<String> list = new ArrayList<String>(addresses.size());
+		for(AddressEntity addr : addresses)
+			list.add(this.computer.serialize(this.computer.analyse(addr)));
+		this.lines = list.toArray(new String[list.size()]);
+	}
+
+	@TearDown
+	public void tearDown(){
+		SyntheticData.deleteFolder(this.cacheFolder);
+	}
+
+	@Benchmark
+	public void deserialize(Blackhole bh){
+		for(String line : this.lines)
+			bh.consume(this.computer.deserialize(line));
+	}
+
+	@Benchmark
+	public VectorSegment openSegment() throws IOException {
+		return VectorSegment.open(this.segmentFile);
+	}
+
+	@Benchmark
+	public DocumentBlock toBlock() throws IOException {
+		return VectorSegment.open(this.segmentFile).toBlock();
+	}
+
+	@Benchmark
+	public int loadPartition(){
+		//使用新的缓存分区容器，每次调用都重新加载
+		this.computer.setPartitionCache(new LruPartitionCache());
+		return this.computer.countDocuments(this.sample);
+	}
+}
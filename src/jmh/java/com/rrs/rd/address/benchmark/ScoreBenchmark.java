@@ -0,0 +1,202 @@
+package com.rrs.rd.address.benchmark;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.DocumentVectors;
+import com.rrs.rd.address.similarity.Query;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+import com.rrs.rd.address.similarity.TextTermMatch;
+import com.rrs.rd.address.similarity.VectorQuery;
+
+/**
+ * 相似度计算：
+ * <ul>
+ * <li>computeDocSimilarity*：一个查询文档对缓存分区全部文档逐一计算相似度，分别使用文档对象、{@link DocumentVectors}数组两种实现，
+ * 参考{@link SimilarityComputer#computeDocSimilarity(Query, Document, int)}、{@link SimilarityComputer#computeDocSimilarity(VectorQuery, int)}；</li>
+ * <li>textTermMatch*：一个查询文档对缓存分区全部文档对象计算Text类型词条的匹配率、稠密度所需的匹配数量和起止位置，
+ * 分别为逐一比较词条文本的嵌套循环（原实现）、词条ID与{@link Document#getTextTermPositions() 位置表}归并两种实现；</li>
+ * <li>findSimilarAddress*：完整的相似地址搜索，内存缓存模式（倒排索引+WAND）、文件缓存模式（逐一计算），
+ * 以及内存缓存模式下输出词条匹配明细、topN={@value #REVIEW_TOP_N}的查询；*Parallel为对全部文档区间并行计算（不设文档数量阈值）。</li>
+ * </ul>
+ * 缓存分区在准备阶段生成并加载，不计入测试时间。
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScoreBenchmark {
+	private static final int TOP_N = 5;
+	private static final int REVIEW_TOP_N = 1000;
+
+	@Param({ "10000", "100000" })
+	public int docCount;
+
+	private File cacheFolder;
+	private SimilarityComputer memoryComputer, fileComputer, parallelMemoryComputer, parallelFileComputer;
+	private AddressEntity[] queries;
+	private Query[] prepared;
+	private DocumentVectors docs;
+	private Document[] docObjects;
+	private int next = 0;
+
+	@Setup
+	public void setup(){
+		SyntheticData data = SyntheticData.getInstance();
+		List<AddressEntity> addresses = data.partitionAddresses(this.docCount);
+		this.cacheFolder = SyntheticData.createTempFolder("score-benchmark");
+		this.memoryComputer = new SimilarityComputer();
+		this.memoryComputer.setCacheFolder(this.cacheFolder.getPath());
+		this.memoryComputer.setCacheVectorsInMemory(true);
+		this.memoryComputer.setRefreshInterval(-1);
+		String key = this.memoryComputer.buildCacheKey(addresses.get(0));
+		this.memoryComputer.buildDocumentFileCache(key, addresses);
+		this.fileComputer = new SimilarityComputer();
+		this.fileComputer.setCacheFolder(this.cacheFolder.getPath());
+		this.fileComputer.setRefreshInterval(-1);
+		this.parallelMemoryComputer = new SimilarityComputer();
+		this.parallelMemoryComputer.setCacheFolder(this.cacheFolder.getPath());
+		this.parallelMemoryComputer.setCacheVectorsInMemory(true);
+		this.parallelMemoryComputer.setRefreshInterval(-1);
+		this.parallelMemoryComputer.setParallelThreshold(1);
+		this.parallelFileComputer = new SimilarityComputer();
+		this.parallelFileComputer.setCacheFolder(this.cacheFolder.getPath());
+		this.parallelFileComputer.setRefreshInterval(-1);
+		this.parallelFileComputer.setParallelThreshold(1);
+
+		//执行一次查询，加载缓存分区，同时得到已设置IDF的查询文档
+		List<AddressEntity> list = data.queryAddresses(256);
+		this.queries = list.toArray(new AddressEntity[list.size()]);
+		this.prepared = new Query[this.queries.length];
+		for(int i=0; i<this.queries.length; i++){
+			this.prepared[i] = this.memoryComputer.findSimilarAddress(this.queries[i], TOP_N, false);
+			this.fileComputer.findSimilarAddress(this.queries[i], TOP_N, false);
+			this.parallelMemoryComputer.findSimilarAddress(this.queries[i], TOP_N, false);
+			this.parallelFileComputer.findSimilarAddress(this.queries[i], TOP_N, false);
+		}
+		this.docs = this.memoryComputer.getPartitionCache().get(key, null).getDocs();
+		this.docObjects = new Document[this.docs.getDocCount()];
+		for(int i=0; i<this.docObjects.length; i++){
+			this.docObjects[i] = this.docs.getDocument(i);
+			this.docObjects[i].getTextTermPositions();
+		}
+	}
+
+	@TearDown
+	public void tearDown(){
+		SyntheticData.deleteFolder(this.cacheFolder);
+	}
+
+	@Benchmark
+	public Query computeDocSimilarityObjects(){
+		Query query = nextQuery();
+		for(int i=0; i<this.docObjects.length; i++)
+			this.memoryComputer.computeDocSimilarity(query, this.docObjects[i], i);
+		return query;
+	}
+
+	@Benchmark
+	public Query computeDocSimilarityVectors(){
+		Query query = nextQuery();
+		VectorQuery vq = new VectorQuery(query, this.docs);
+		for(int i=0; i<this.docs.getDocCount(); i++)
+			this.memoryComputer.computeDocSimilarity(vq, i);
+		return query;
+	}
+
+	@Benchmark
+	public long textTermMatchScan(){
+		Query query = nextQuery();
+		long result = 0;
+		for(Document doc : this.docObjects){
+			TextTermMatch match = TextTermMatch.scan(query.getQueryDoc().getTerms(), doc.getTerms());
+			result += match.getCount() + match.getEnd() - match.getStart();
+		}
+		return result;
+	}
+
+	@Benchmark
+	public long textTermMatchMerge(){
+		Query query = nextQuery();
+		long result = 0;
+		for(Document doc : this.docObjects){
+			TextTermMatch match = TextTermMatch.merge(query.getTextTermIds(), doc.getTextTermPositions());
+			result += match.getCount() + match.getEnd() - match.getStart();
+		}
+		return result;
+	}
+
+	@Benchmark
+	public Query findSimilarAddressMemory(){
+		return this.memoryComputer.findSimilarAddress(nextAddress(), TOP_N, false);
+	}
+
+	/**
+	 * 输出词条匹配明细的查询，明细只为最终结果计算，与findSimilarAddressMemory相比只增加固定的开销。
+	 */
+	@Benchmark
+	public Query findSimilarAddressMemoryExplain(){
+		return this.memoryComputer.findSimilarAddress(nextAddress(), TOP_N, true);
+	}
+
+	/**
+	 * 审核工具使用的大topN查询。
+	 */
+	@Benchmark
+	public Query findSimilarAddressMemoryReview(){
+		return this.memoryComputer.findSimilarAddress(nextAddress(), REVIEW_TOP_N, false);
+	}
+
+	@Benchmark
+	public Query findSimilarAddressFile(){
+		return this.fileComputer.findSimilarAddress(nextAddress(), TOP_N, false);
+	}
+
+	@Benchmark
+	public Query findSimilarAddressMemoryParallel(){
+		return this.parallelMemoryComputer.findSimilarAddress(nextAddress(), TOP_N, false);
+	}
+
+	@Benchmark
+	public Query findSimilarAddressFileParallel(){
+		return this.parallelFileComputer.findSimilarAddress(nextAddress(), TOP_N, false);
+	}
+
+	private AddressEntity nextAddress(){
+		AddressEntity addr = this.queries[this.next];
+		this.next = (this.next + 1) % this.queries.length;
+		return addr;
+	}
+
+	/**
+	 * 使用准备阶段已设置IDF的查询文档创建新的查询，每次调用都从空的topN开始计算。
+	 */
+	private Query nextQuery(){
+		Query prepared = this.prepared[this.next];
+		this.next = (this.next + 1) % this.prepared.length;
+		Query query = new Query(TOP_N);
+		query.setQueryAddr(prepared.getQueryAddr());
+		query.setQueryDoc(prepared.getQueryDoc());
+		return query;
+	}
+}
@@ -0,0 +1,65 @@
+package com.rrs.rd.address.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.similarity.Segmenter;
+import com.rrs.rd.address.similarity.segment.IKAnalyzerSegmenter;
+import com.rrs.rd.address.similarity.segment.SimpleSegmenter;
+import com.rrs.rd.address.similarity.segment.SmartCNSegmenter;
+
+/**
+ * 分词器：{@link SimpleSegmenter}、{@link IKAnalyzerSegmenter}、{@link SmartCNSegmenter}。
+ * <p>分词文本为地址解析后的剩余文本（{@link AddressEntity#getText()}），与生成文档向量时一致。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmenterBenchmark {
+	@Param({ "simple", "ik", "smartcn" })
+	public String segmenterName;
+
+	private Segmenter segmenter;
+	private String[] texts;
+	private int next = 0;
+
+	@Setup
+	public void setup(){
+		if("ik".equals(this.segmenterName)) this.segmenter = new IKAnalyzerSegmenter();
+		else if("smartcn".equals(this.segmenterName)) this.segmenter = new SmartCNSegmenter();
+		else this.segmenter = new SimpleSegmenter();
+
+		SyntheticData data = SyntheticData.getInstance();
+		List<String> list = new ArrayList<String>();
+		for(AddressEntity addr : data.interpret(data.addressTexts(null, 4096, SyntheticData.SEED))){
+			if(addr.getText()!=null && !addr.getText().isEmpty()) list.add(addr.getText());
+		}
+		this.texts = list.toArray(new String[list.size()]);
+	}
+
+	@Benchmark
+	public List<String> segment(){
+		String text = this.texts[this.next];
+		this.next = (this.next + 1) % this.texts.length;
+		return this.segmenter.segment(text);
+	}
+}
@@ -0,0 +1,303 @@
+package com.rrs.rd.address.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+
+import com.rrs.rd.address.index.TermIndexBuilder;
+import com.rrs.rd.address.interpret.AddressInterpreter;
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.AddressPersister;
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionType;
+import com.rrs.rd.address.persist.RegionVersion;
+import com.rrs.rd.address.persist.dao.RegionDao;
+
+/**
+ * 基准测试使用的合成数据：行政区划树、地址文本及解析后的地址，不依赖MySQL。
+ *
+ * <p>
+ * 使用固定的随机数种子生成，每次运行生成的数据完全相同，不同版本的基准测试结果可以直接对比。<br />
+ * {@link AddressPersister}的行政区划数据为进程范围的静态缓存，因此整个进程只使用一棵行政区划树（{@link #getInstance()}）。
+ * </p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class SyntheticData {
+	public static final long SEED = 20170101L;
+
+	private static final String NAME_CHARS = "安宝北滨昌长成崇大德东丰福阜高广海和河华怀惠吉嘉建江金锦靖康兰乐黎临龙隆鹿罗茂梅蒙南宁平浦青清庆泉仁荣瑞山上韶石寿顺泰天通桐万望威文武西仙祥新兴秀阳宜永云泽彰昭正中舟";
+	private static final String[] ROAD_SUFFIXES = { "路", "街", "大道", "大街", "巷" };
+	private static final String[] BUILDINGS = { "花园小区", "大厦", "广场", "新村", "公寓", "家园", "商务中心", "工业园", "名苑", "翠苑" };
+	private static final String[] IGNORING_REGION_NAMES = { "其它区", "其他地区", "全境", "城区", "郊区", "开发区", "省直辖", "地区", "市区" };
+
+	private static SyntheticData INSTANCE = null;
+
+	private RegionEntity root;
+	private Map<Long, RegionEntity> regions = new HashMap<Long, RegionEntity>();
+	private List<RegionEntity> districts = new ArrayList<RegionEntity>();
+	private AddressPersister persister;
+	private AddressInterpreter interpreter;
+	private TermIndexBuilder termIndex;
+
+	/**
+	 * 10个省，每省8个地级市，每市6个区县，每区县5个乡镇。
+	 * @return
+	 */
+	public static synchronized SyntheticData getInstance(){
+		if(INSTANCE==null) INSTANCE = new SyntheticData(10, 8, 6, 5);
+		return INSTANCE;
+	}
+
+	private SyntheticData(int provinces, int cities, int districts, int towns){
+		Random rnd = new Random(SEED);
+		Set<String> names = new HashSet<String>();
+		this.root = region(0, 1, "中国", RegionType.Country);
+		long id = 2;
+		for(int p=0; p<provinces; p++){
+			RegionEntity province = region(this.root.getId(), id++, name(rnd, names, "省"), RegionType.Province);
+			for(int c=0; c<cities; c++){
+				RegionEntity city = region(province.getId(), id++, name(rnd, names, "市"), RegionType.City);
+				for(int d=0; d<districts; d++){
+					RegionEntity district = region(city.getId(), id++, name(rnd, names, d%2==0 ? "区" : "县"), RegionType.District);
+					this.districts.add(district);
+					for(int t=0; t<towns; t++)
+						region(district.getId(), id++, name(rnd, names, "镇"), RegionType.Town);
+				}
+			}
+		}
+
+		this.persister = new AddressPersister();
+		this.persister.setRegionDao(new MemoryRegionDao());
+		this.termIndex = new TermIndexBuilder(this.persister, Arrays.asList(IGNORING_REGION_NAMES));
+		this.interpreter = new AddressInterpreter();
+		this.interpreter.setPersister(this.persister);
+		this.interpreter.setTermIndex(this.termIndex);
+	}
+
+	public RegionEntity getRoot(){
+		return this.root;
+	}
+
+	public AddressPersister getPersister(){
+		return this.persister;
+	}
+
+	public AddressInterpreter getInterpreter(){
+		return this.interpreter;
+	}
+
+	public TermIndexBuilder getTermIndex(){
+		return this.termIndex;
+	}
+
+	/**
+	 * 全部区县，按生成顺序排列。
+	 * @return
+	 */
+	public List<RegionEntity> getDistricts(){
+		return this.districts;
+	}
+
+	/**
+	 * 生成地址文本：省市区、乡镇（可选）、道路门牌号（可选）、小区楼宇、单元房间号。
+	 * @param district 地址所属区县，为null时每条地址随机选择区县。
+	 * @param count
+	 * @param seed
+	 * @return
+	 */
+	public List<String> addressTexts(RegionEntity district, int count, long seed){
+		Random rnd = new Random(seed);
+		//道路、小区数量与地址数量成比例，保证词条的引用次数分布接近真实数据
+		int roads = Math.max(10, count / 50), buildings = Math.max(10, count / 20);
+		List<String> texts = new ArrayList<String>(count);
+		for(int i=0; i<count; i++){
+			RegionEntity d = district!=null ? district : this.districts.get(rnd.nextInt(this.districts.size()));
+			RegionEntity city = this.regions.get(d.getParentId());
+			RegionEntity province = this.regions.get(city.getParentId());
+			StringBuilder sb = new StringBuilder();
+			sb.append(province.getName()).append(city.getName()).append(d.getName());
+			if(rnd.nextInt(3)==0 && d.getChildren()!=null)
+				sb.append(d.getChildren().get(rnd.nextInt(d.getChildren().size())).getName());
+			if(rnd.nextInt(3)!=0){
+				sb.append(pick(new Random(seed + rnd.nextInt(roads)), 2)).append(ROAD_SUFFIXES[rnd.nextInt(ROAD_SUFFIXES.length)]);
+				if(rnd.nextInt(4)!=0) sb.append(1 + rnd.nextInt(300)).append("号");
+			}
+			int building = rnd.nextInt(buildings);
+			sb.append(pick(new Random(seed * 31 + building), 2)).append(BUILDINGS[building % BUILDINGS.length]);
+			if(rnd.nextInt(2)==0)
+				sb.append(1 + rnd.nextInt(30)).append("栋").append(1 + rnd.nextInt(6)).append("单元")
+					.append(1 + rnd.nextInt(30)).append("0").append(1 + rnd.nextInt(4)).append("室");
+			texts.add(sb.toString());
+		}
+		return texts;
+	}
+
+	/**
+	 * 解析地址文本，忽略无法解析到区县的地址，地址ID从1开始顺序编号。
+	 * @param texts
+	 * @return
+	 */
+	public List<AddressEntity> interpret(List<String> texts){
+		List<AddressEntity> addresses = new ArrayList<AddressEntity>(texts.size());
+		for(String text : texts){
+			AddressEntity addr = this.interpreter.interpret(text);
+			if(addr==null || !addr.hasDistrict()) continue;
+			addr.setId(addresses.size() + 1);
+			addresses.add(addr);
+		}
+		return addresses;
+	}
+
+	/**
+	 * 生成一个缓存分区的地址：全部地址属于第一个区县，已解析。
+	 * @param count 地址数量。
+	 * @return
+	 */
+	public List<AddressEntity> partitionAddresses(int count){
+		return this.interpret(this.addressTexts(this.districts.get(0), count, SEED));
+	}
+
+	/**
+	 * 生成查询地址：与{@link #partitionAddresses(int)}属于同一区县，使用不同的随机数种子，已解析。
+	 * @param count 地址数量。
+	 * @return
+	 */
+	public List<AddressEntity> queryAddresses(int count){
+		return this.interpret(this.addressTexts(this.districts.get(0), count, SEED + 1));
+	}
+
+	/**
+	 * 创建临时目录，结束时删除。
+	 * @param prefix
+	 * @return
+	 */
+	public static File createTempFolder(String prefix){
+		try{
+			File folder = File.createTempFile(prefix, "");
+			folder.delete();
+			folder.mkdirs();
+			folder.deleteOnExit();
+			return folder;
+		}catch(Exception ex){
+			throw new RuntimeException("Can not create temp folder", ex);
+		}
+	}
+
+	/**
+	 * 删除目录及其中的文件。
+	 * @param folder
+	 */
+	public static void deleteFolder(File folder){
+		if(folder==null || !folder.exists()) return;
+		File[] files = folder.listFiles();
+		if(files!=null){
+			for(File file : files) file.delete();
+		}
+		folder.delete();
+	}
+
+	private RegionEntity region(long parentId, long id, String name, RegionType type){
+		RegionEntity region = new RegionEntity();
+		region.setId(id);
+		region.setParentId(parentId);
+		region.setName(name);
+		region.setType(type);
+		this.regions.put(id, region);
+		RegionEntity parent = this.regions.get(parentId);
+		if(parent!=null && parent!=region){
+			if(parent.getChildren()==null) parent.setChildren(new ArrayList<RegionEntity>());
+			parent.getChildren().add(region);
+		}
+		return region;
+	}
+
+	private static String name(Random rnd, Set<String> names, String suffix){
+		while(true){
+			String name = pick(rnd, 2) + suffix;
+			if(names.add(name)) return name;
+		}
+	}
+
+	private static String pick(Random rnd, int length){
+		StringBuilder sb = new StringBuilder(length);
+		for(int i=0; i<length; i++) sb.append(NAME_CHARS.charAt(rnd.nextInt(NAME_CHARS.length())));
+		return sb.toString();
+	}
+
+	/**
+	 * 从内存中的行政区划树读取数据，只实现{@link AddressPersister}加载行政区划需要的方法。
+	 */
+	private class MemoryRegionDao implements RegionDao {
+		@Override
+		public List<RegionEntity> findByParent(long pid) {
+			RegionEntity parent = regions.get(pid);
+			return parent==null ? null : parent.getChildren();
+		}
+		@Override
+		public void scanAll(ResultHandler<RegionEntity> handler) {
+			List<RegionEntity> list = new ArrayList<RegionEntity>(regions.values());
+			Collections.sort(list, new Comparator<RegionEntity>() {
+				@Override
+				public int compare(RegionEntity o1, RegionEntity o2) {
+					if(o1.getParentId()!=o2.getParentId()) return o1.getParentId() < o2.getParentId() ? -1 : 1;
+					return o1.getId()==o2.getId() ? 0 : (o1.getId() < o2.getId() ? -1 : 1);
+				}
+			});
+			DefaultResultContext<RegionEntity> context = new DefaultResultContext<RegionEntity>();
+			for(RegionEntity region : list){
+				context.nextResultObject(region);
+				handler.handleResult(context);
+			}
+		}
+		@Override
+		public RegionEntity findByParentAndName(long pid, String name) {
+			List<RegionEntity> children = this.findByParent(pid);
+			if(children==null) return null;
+			for(RegionEntity child : children){
+				if(child.getName().equals(name)) return child;
+			}
+			return null;
+		}
+		@Override
+		public RegionEntity findRoot() {
+			return root;
+		}
+		@Override
+		public RegionEntity get(long id) {
+			return regions.get(id);
+		}
+		@Override
+		public int create(RegionEntity entity) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public int batchCreate(List<RegionEntity> regions) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public int update(RegionEntity entity) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public int delete(long id) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public RegionVersion version() {
+			//合成数据生成后不再变化
+			return new RegionVersion(regions.size(), SEED);
+		}
+	}
+}
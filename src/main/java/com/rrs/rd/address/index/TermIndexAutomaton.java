@@ -0,0 +1,136 @@
+package com.rrs.rd.address.index;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基于{@link TermIndexTrie}的Aho-Corasick自动机，从左到右扫描一遍文本，找出全部索引词条的出现位置。
+ *
+ * <p>
+ * 转移函数直接使用双数组Trie，自动机只增加每个状态的失败转移（fail）和输出链接（output，
+ * 即沿失败转移链最近的完整词条状态），不复制Trie数据。<br />
+ * {@link TermIndexBuilder#deepMostQuery(String, int, TermIndexVisitor)}需要从每个起始位置重新遍历Trie，
+ * 自动机则可以一次扫描得到所有可能匹配成功的起始位置，参考{@link #markStarts(String)}。
+ * </p>
+ *
+ * <p>只读，可以在多个线程间共享。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class TermIndexAutomaton {
+	private TermIndexTrie trie;
+	private int[] fail;
+	private int[] output;
+
+	/**
+	 * 索引词条出现位置的处理器。
+	 */
+	public static interface MatchHandler {
+		/**
+		 * 找到一个索引词条。同一个结束位置有多个词条时，按词条长度从长到短依次调用。
+		 * @param entry 索引词条。
+		 * @param start 词条在文本中的开始位置。
+		 * @param end 词条在文本中的结束位置，包含该位置的字符。
+		 */
+		void match(TermIndexEntry entry, int start, int end);
+	}
+
+	public TermIndexAutomaton(TermIndexTrie trie){
+		this.trie = trie;
+		this.build();
+	}
+
+	public TermIndexTrie getTrie(){
+		return this.trie;
+	}
+
+	/**
+	 * 扫描文本，找出全部索引词条的出现位置（包括相互重叠的词条）。
+	 * @param text
+	 * @param handler
+	 */
+	public void scan(String text, MatchHandler handler){
+		if(text==null || text.isEmpty()) return;
+		int state = TermIndexTrie.ROOT;
+		for(int i=0; i<text.length(); i++){
+			state = this.transit(state, text.charAt(i));
+			int s = this.trie.getEntry(state)!=null ? state : this.output[state];
+			for(; s>0; s=this.output[s]){
+				TermIndexEntry entry = this.trie.getEntry(s);
+				handler.match(entry, i - entry.getKey().length() + 1, i);
+			}
+		}
+	}
+
+	/**
+	 * 标记文本中索引词条的起始位置。
+	 * <p>
+	 * 从某个位置开始的{@link TermIndexBuilder#deepMostQuery(String, int, TermIndexVisitor) deepMostQuery}，
+	 * 只有该位置是某个索引词条的起始位置时才可能匹配成功。
+	 * </p>
+	 * @param text
+	 * @return 与text等长的数组，为true的位置至少有一个索引词条从该位置开始。
+	 */
+	public boolean[] markStarts(String text){
+		final boolean[] starts = new boolean[text==null ? 0 : text.length()];
+		this.scan(text, new MatchHandler() {
+			@Override
+			public void match(TermIndexEntry entry, int start, int end) {
+				starts[start] = true;
+			}
+		});
+		return starts;
+	}
+
+	private int transit(int state, char c){
+		while(true){
+			int next = this.trie.next(state, c);
+			if(next>=0) return next;
+			if(state==TermIndexTrie.ROOT) return TermIndexTrie.ROOT;
+			state = this.fail[state];
+		}
+	}
+
+	/**
+	 * 按深度逐层计算失败转移：同时沿全部词条向下走一层，保证计算某个状态时，比它浅的状态已经计算完成。
+	 */
+	private void build(){
+		int capacity = this.trie.getCapacity();
+		this.fail = new int[capacity];
+		this.output = new int[capacity];
+		Arrays.fill(this.fail, -1);
+		this.fail[TermIndexTrie.ROOT] = TermIndexTrie.ROOT;
+
+		List<TermIndexEntry> entries = this.trie.getEntries();
+		int[] states = new int[entries.size()];
+		int maxLength = 0;
+		for(TermIndexEntry entry : entries) maxLength = Math.max(maxLength, entry.getKey().length());
+		for(int depth=0; depth<maxLength; depth++){
+			for(int k=0; k<states.length; k++){
+				String key = entries.get(k).getKey();
+				if(key.length()<=depth) continue;
+				int parent = states[k];
+				char c = key.charAt(depth);
+				int state = this.trie.next(parent, c);
+				states[k] = state;
+				if(this.fail[state]>=0) continue; //多个词条共享前缀，已经计算过
+
+				int f = TermIndexTrie.ROOT;
+				if(parent!=TermIndexTrie.ROOT){
+					int s = this.fail[parent];
+					while(true){
+						int next = this.trie.next(s, c);
+						if(next>=0) {
+							f = next;
+							break;
+						}
+						if(s==TermIndexTrie.ROOT) break;
+						s = this.fail[s];
+					}
+				}
+				this.fail[state] = f;
+				this.output[state] = this.trie.getEntry(f)!=null ? f : this.output[f];
+			}
+		}
+	}
+}
@@ -1,24 +1,96 @@
 package com.rrs.rd.address.index;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.rrs.rd.address.TermType;
 import com.rrs.rd.address.persist.AddressPersister;
 import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionVersion;
 import com.rrs.rd.address.utils.StringUtil;
 
 /**
- * 
+ * 行政区划名称、忽略词条的索引，用于地址解析时匹配省市区、乡镇等。
+ * <p>
+ * 建立索引时先收集全部索引词条，然后编译为不可修改的{@link TermIndexTrie 双数组Trie}，
+ * 搜索时只访问编译后的Trie，同时基于Trie生成{@link TermIndexAutomaton Aho-Corasick自动机}用于一次扫描找出全部词条。再次建立索引（{@link #indexRegions(List)}、{@link #indexIgnorings(List)}）时重新编译，
+ * 编译完成后替换原有的Trie，正在进行的搜索不受影响。
+ * </p>
+ * <p>
+ * 指定快照文件时，启动时编译的索引保存为快照，以后启动时如果区域数据（{@link AddressPersister#regionVersion()}）和忽略列表都没有变化，
+ * 直接映射快照文件恢复编译后的Trie，不需要重新收集和编译词条。<br />
+ * 快照文件格式：MAGIC(int)、VERSION(int)、区域数量(int)、区域校验和(long)、忽略列表hash(long)，
+ * 之后是{@link TermIndexTrie#write(DataOutputStream)}的内容，最后按词条顺序写入每个词条的索引对象：
+ * 索引对象数量(int)，每个索引对象的类型(int，{@link TermType}序号)、区域ID(long，没有区域时为-1)。
+ * 文件末尾是之前全部内容的CRC32(int)，加载时校验不一致则重新编译。
+ * </p>
  * @author Richie 刘志斌 yudi@sina.com
  * 2016年10月17日
  */
 public class TermIndexBuilder {
-	private TermIndexEntry indexRoot = new TermIndexEntry();
+	private final static Logger LOG = LoggerFactory.getLogger(TermIndexBuilder.class);
+	public static final int SNAPSHOT_MAGIC = 0x54494458; //TIDX
+	public static final int SNAPSHOT_VERSION = 2;
+	
+	private volatile TermIndexAutomaton automaton = new TermIndexAutomaton(TermIndexTrie.build(Collections.<TermIndexEntry>emptyList()));
 
 	public TermIndexBuilder(AddressPersister persister, List<String> ingoringRegionNames){
-		this.indexRegions(persister.rootRegion().getChildren());
-		this.indexIgnorings(ingoringRegionNames);
+		this(persister, ingoringRegionNames, null);
+	}
+	
+	/**
+	 * @param persister
+	 * @param ingoringRegionNames
+	 * @param snapshotFile 编译后的索引快照文件路径，为空时每次都重新编译。
+	 * 		persister未启用区域快照（{@link AddressPersister#regionVersion()}为null）时无法校验快照，同样每次都重新编译。
+	 */
+	public TermIndexBuilder(AddressPersister persister, List<String> ingoringRegionNames, String snapshotFile){
+		long start = System.currentTimeMillis();
+		File file = snapshotFile==null || snapshotFile.trim().isEmpty() ? null : new File(snapshotFile.trim());
+		RegionVersion version = file==null ? null : persister.regionVersion();
+		if(version==null) file = null;
+		long ignorings = fingerprint(ingoringRegionNames);
+		
+		TermIndexTrie trie = loadSnapshot(file, version, ignorings, persister);
+		if(trie!=null) {
+			this.automaton = new TermIndexAutomaton(trie);
+		} else {
+			Map<String, TermIndexEntry> entries = this.entries();
+			this.indexRegions(persister.rootRegion().getChildren(), entries);
+			this.indexIgnorings(ingoringRegionNames, entries);
+			this.compile(entries);
+			if(file!=null) {
+				try{
+					saveSnapshot(this.getTrie(), file, version, ignorings);
+				}catch(IOException ex){
+					LOG.warn("[addr] [term-index] Failed to save snapshot " + file.getAbsolutePath() + ": " + ex.getMessage(), ex);
+				}
+			}
+		}
+		
+		if(LOG.isInfoEnabled())
+			LOG.info("[addr] [perf] Term index " + (trie!=null ? "loaded from snapshot" : "compiled") + ", " 
+				+ this.getTrie().size() + " terms, " + this.getTrie().getCapacity() + " states, elapsed " 
+				+ (System.currentTimeMillis() - start)/1000.0 + "s");
 	}
 	
 	/**
@@ -26,16 +98,18 @@ public class TermIndexBuilder {
 	 * @param regions
 	 * @return
 	 */
-	public TermIndexBuilder indexRegions(List<RegionEntity> regions){
-		this.indexRegions(regions, indexRoot);
+	public synchronized TermIndexBuilder indexRegions(List<RegionEntity> regions){
+		Map<String, TermIndexEntry> entries = this.entries();
+		this.indexRegions(regions, entries);
+		this.compile(entries);
 		return this;
 	}
-	private void indexRegions(List<RegionEntity> regions, TermIndexEntry index){
+	private void indexRegions(List<RegionEntity> regions, Map<String, TermIndexEntry> index){
 		if(regions==null) return;
 		for(RegionEntity region : regions){
 			TermIndexItem tii = new TermIndexItem(convertRegionType(region), region);
 			for(String name : region.orderedNameAndAlias()) {
-				index.buildIndex(name, 0, tii);
+				buildIndex(index, name, tii);
 			}
 			
 			//1. 为xx街道，建立xx镇、xx乡的别名索引项；
@@ -60,11 +134,11 @@ public class TermIndexBuilder {
 					shortName = StringUtil.head(region.getName(), region.getName().length()-1);
 				else
 					shortName = StringUtil.head(region.getName(), region.getName().length()-2);
-				if(shortName.length()>=2) index.buildIndex(shortName, 0, tii);
+				if(shortName.length()>=2) buildIndex(index, shortName, tii);
 				if(region.getName().endsWith("街道") || region.getName().endsWith("镇"))
-					index.buildIndex(shortName + "乡", 0, tii);
+					buildIndex(index, shortName + "乡", tii);
 				if(region.getName().endsWith("街道") || region.getName().endsWith("乡"))
-					index.buildIndex(shortName + "镇", 0, tii);
+					buildIndex(index, shortName + "镇", tii);
 			}
 			
 			//递归
@@ -77,12 +151,154 @@ public class TermIndexBuilder {
 	 * @param ignoreList
 	 * @return
 	 */
-	public TermIndexBuilder indexIgnorings(List<String> ignoreList){
+	public synchronized TermIndexBuilder indexIgnorings(List<String> ignoreList){
 		if(ignoreList==null || ignoreList.isEmpty()) return this;
-		for(String str : ignoreList)
-			this.indexRoot.buildIndex(str, 0, new TermIndexItem(TermType.Ignore, null));
+		Map<String, TermIndexEntry> entries = this.entries();
+		this.indexIgnorings(ignoreList, entries);
+		this.compile(entries);
 		return this;
 	}
+	private void indexIgnorings(List<String> ignoreList, Map<String, TermIndexEntry> index){
+		if(ignoreList==null) return;
+		for(String str : ignoreList)
+			buildIndex(index, str, new TermIndexItem(TermType.Ignore, null));
+	}
+	/**
+	 * 已编译的全部索引词条，用于追加索引词条后重新编译。
+	 * <p>复制索引条目，避免修改正在使用的Trie中的索引条目。</p>
+	 * @return
+	 */
+	private Map<String, TermIndexEntry> entries(){
+		TermIndexTrie trie = this.getTrie();
+		Map<String, TermIndexEntry> entries = new HashMap<String, TermIndexEntry>(trie.size() * 2);
+		for(TermIndexEntry entry : trie.getEntries()){
+			TermIndexEntry copy = new TermIndexEntry(entry.getKey());
+			for(TermIndexItem item : entry.getItems()) copy.addItem(item);
+			entries.put(copy.getKey(), copy);
+		}
+		return entries;
+	}
+	private void compile(Map<String, TermIndexEntry> entries){
+		this.automaton = new TermIndexAutomaton(TermIndexTrie.build(entries.values()));
+	}
+	private static void saveSnapshot(TermIndexTrie trie, File file, RegionVersion version, long ignorings) throws IOException {
+		//只有区域和忽略词条两种索引对象，其他索引对象无法从快照恢复
+		for(TermIndexEntry entry : trie.getEntries()){
+			if(!entry.hasItem()) continue;
+			for(TermIndexItem item : entry.getItems()){
+				if(item.getValue()!=null && !(item.getValue() instanceof RegionEntity)) return;
+			}
+		}
+		File folder = file.getAbsoluteFile().getParentFile();
+		if(!folder.exists()) folder.mkdirs();
+		//同目录下唯一的临时文件，多个进程同时保存时不会互相覆盖
+		File temp = File.createTempFile(file.getName() + ".", ".tmp", folder);
+		CheckedOutputStream checked = null;
+		DataOutputStream out = null;
+		try{
+			checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024), new CRC32());
+			out = new DataOutputStream(checked);
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeInt(version.getRows());
+			out.writeLong(version.getChecksum());
+			out.writeLong(ignorings);
+			trie.write(out);
+			for(TermIndexEntry entry : trie.getEntries()){
+				if(!entry.hasItem()) {
+					out.writeInt(0);
+					continue;
+				}
+				out.writeInt(entry.getItems().size());
+				for(TermIndexItem item : entry.getItems()){
+					out.writeInt(item.getType().ordinal());
+					out.writeLong(item.getValue()==null ? -1 : ((RegionEntity)item.getValue()).getId());
+				}
+			}
+			out.writeInt((int)checked.getChecksum().getValue());
+			out.close();
+			out = null;
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}finally{
+			if(out!=null) try { out.close(); } catch (IOException e) {}
+			temp.delete(); //替换成功后临时文件已不存在
+		}
+	}
+	/**
+	 * 加载快照文件。
+	 * @return 快照不存在、无效或者已过期时返回null。
+	 */
+	private static TermIndexTrie loadSnapshot(File file, RegionVersion version, long ignorings, AddressPersister persister){
+		if(file==null || !file.exists()) return null;
+		try{
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			MappedByteBuffer buffer = null;
+			try{
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			}finally{
+				raf.close();
+			}
+			if(buffer.capacity()<32 || buffer.getInt()!=SNAPSHOT_MAGIC)
+				throw new IOException("invalid file");
+			int ver = buffer.getInt();
+			if(ver!=SNAPSHOT_VERSION) throw new IOException("unsupported version " + ver);
+			ByteBuffer body = buffer.duplicate();
+			body.position(0);
+			body.limit(buffer.capacity() - 4);
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			if((int)crc.getValue()!=buffer.getInt(buffer.capacity() - 4)) throw new IOException("checksum mismatch");
+			buffer.limit(buffer.capacity() - 4);
+			RegionVersion snapshotVersion = new RegionVersion(buffer.getInt(), buffer.getLong());
+			if(!snapshotVersion.equals(version) || buffer.getLong()!=ignorings) {
+				if(LOG.isInfoEnabled())
+					LOG.info("[addr] [term-index] Snapshot is stale, region version " + snapshotVersion + " in snapshot, " + version + " in database");
+				return null;
+			}
+			
+			TermIndexTrie trie = TermIndexTrie.read(buffer);
+			TermType[] types = TermType.values();
+			for(TermIndexEntry entry : trie.getEntries()){
+				int count = buffer.getInt();
+				for(int i=0; i<count; i++){
+					int type = buffer.getInt();
+					long regionId = buffer.getLong();
+					if(type<0 || type>=types.length) throw new IOException("invalid term type " + type);
+					RegionEntity region = null;
+					if(regionId>=0){
+						region = persister.getRegion(regionId);
+						if(region==null) throw new IOException("region " + regionId + " not found");
+					}
+					entry.addItem(types[type], region);
+				}
+			}
+			if(buffer.hasRemaining()) throw new IOException("unexpected trailing data");
+			return trie;
+		}catch(IOException ex){
+			LOG.warn("[addr] [term-index] Invalid snapshot " + file.getAbsolutePath() + ": " + ex.getMessage());
+		}catch(BufferUnderflowException ex){
+			LOG.warn("[addr] [term-index] Invalid snapshot " + file.getAbsolutePath() + ": truncated file");
+		}
+		return null;
+	}
+	private static long fingerprint(List<String> ignoreList){
+		long h = 0xCBF29CE484222325L;
+		if(ignoreList==null) return h;
+		for(String str : ignoreList){
+			h = (h ^ (str==null ? 0 : str.hashCode())) * 0x100000001B3L;
+			h = (h ^ '\n') * 0x100000001B3L;
+		}
+		return h;
+	}
+	private static void buildIndex(Map<String, TermIndexEntry> index, String text, TermIndexItem item){
+		if(text==null || text.isEmpty()) return;
+		TermIndexEntry entry = index.get(text);
+		if(entry==null) {
+			entry = new TermIndexEntry(text);
+			index.put(text, entry);
+		}
+		entry.addItem(item);
+	}
 	private TermType convertRegionType(RegionEntity region){
 		switch(region.getType()){
 			case Province:
@@ -109,22 +325,25 @@ public class TermIndexBuilder {
 		this.deepMostQuery(text, 0, visitor);
 	}
 	public void deepMostQuery(String text, int pos, TermIndexVisitor visitor){
+		this.deepMostQuery(this.getTrie(), text, pos, visitor);
+	}
+	private void deepMostQuery(TermIndexTrie trie, String text, int pos, TermIndexVisitor visitor){
 		visitor.startRound();
-		deepFirstQueryRound(text, pos, indexRoot.getChildren(), visitor);
+		deepFirstQueryRound(trie, text, pos, TermIndexTrie.ROOT, visitor);
 		visitor.endRound();
 	}
-	private void deepFirstQueryRound(String text, int pos, Map<Character, TermIndexEntry> entries, TermIndexVisitor visitor){
-		char c = text.charAt(pos);
-		TermIndexEntry entry = entries.get(c);
-		if(entry==null) return;
+	private void deepFirstQueryRound(TermIndexTrie trie, String text, int pos, int state, TermIndexVisitor visitor){
+		int next = trie.next(state, text.charAt(pos));
+		if(next<0) return;
 		
-		if(entry.getChildren()!=null && pos+1 <= text.length()-1)
-			deepFirstQueryRound(text, pos + 1, entry.getChildren(), visitor);
-		if(entry.hasItem()) {
+		if(trie.hasChildren(next) && pos+1 <= text.length()-1)
+			deepFirstQueryRound(trie, text, pos + 1, next, visitor);
+		TermIndexEntry entry = trie.getEntry(next);
+		if(entry!=null) {
 			if(visitor.visit(entry, text, pos)) {
 				pos = visitor.positionAfterAcceptItem(); //给访问者一个调整当前指针的机会
 				if(pos+1 <= text.length()-1) 
-					deepMostQuery(text, pos + 1, visitor);
+					deepMostQuery(trie, text, pos + 1, visitor);
 				visitor.endVisit(entry, text, pos);
 			}
 		}
@@ -132,14 +351,23 @@ public class TermIndexBuilder {
 	
 	public List<TermIndexItem> fullMatch(String text) {
 		if(text==null || text.isEmpty()) return null;
-		return fullMatch(text, 0, indexRoot.getChildren());
-	}
-	private List<TermIndexItem> fullMatch(String text, int pos, Map<Character, TermIndexEntry> entries){
-		if(entries==null) return null;
-		char c = text.charAt(pos);
-		TermIndexEntry entry = entries.get(c);
-		if(entry==null) return null;
-		if(pos==text.length()-1) return entry.getItems();
-		return fullMatch(text, pos+1, entry.getChildren());
+		TermIndexEntry entry = this.getTrie().find(text);
+		return entry==null ? null : entry.getItems();
+	}
+	
+	/**
+	 * 编译后的索引。
+	 * @return
+	 */
+	public TermIndexTrie getTrie(){
+		return this.automaton.getTrie();
+	}
+	
+	/**
+	 * 编译后的索引对应的Aho-Corasick自动机。
+	 * @return
+	 */
+	public TermIndexAutomaton getAutomaton(){
+		return this.automaton;
 	}
 }
\ No newline at end of file
@@ -1,42 +1,22 @@
 package com.rrs.rd.address.index;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import com.rrs.rd.address.TermType;
-import com.rrs.rd.address.utils.StringUtil;
 
 /**
- * 索引条目。
+ * 索引条目：一个完整的索引词条及其索引对象。
+ * <p>由{@link TermIndexBuilder}收集后编译到{@link TermIndexTrie}中，Trie的中间节点不创建索引条目。</p>
  * @author Richie 刘志斌 yudi@sina.com
  * 2016年10月16日
  */
 public class TermIndexEntry {
 	private String key;
 	private List<TermIndexItem> items;
-	private Map<Character, TermIndexEntry> children;
 	
-	public void buildIndex(String text, int pos, TermIndexItem item){
-		if(text==null || text.isEmpty() || pos<0 || pos>=text.length()) return;
-		
-		char c = text.charAt(pos);
-		if(this.children==null) this.children = new HashMap<Character, TermIndexEntry>(1);
-		
-		TermIndexEntry entry = this.children.get(c);
-		if(entry==null) {
-			entry = new TermIndexEntry();
-			entry.key = StringUtil.head(text, pos + 1);
-			this.children.put(c, entry);
-		}
-		
-		if(pos==text.length()-1) {
-			entry.addItem(item);
-			return;
-		}
-		
-		entry.buildIndex(text, pos + 1, item);
+	public TermIndexEntry(String key){
+		this.key = key;
 	}
 	
 	public String getKey(){
@@ -58,10 +38,6 @@ public class TermIndexEntry {
 		return this.addItem(new TermIndexItem(type, value));
 	}
 	
-	public Map<Character, TermIndexEntry> getChildren(){
-		return this.children;
-	}
-	
 	@Override
 	public String toString() {
 		return this.key;
@@ -0,0 +1,322 @@
+package com.rrs.rd.address.index;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 词条索引的双数组Trie（Double-Array Trie），由{@link TermIndexBuilder}编译生成，生成后不可修改。
+ *
+ * <p>
+ * 每个Trie节点是一个int类型的状态，节点s经过字符c的子节点为t=base[s]+c，且仅当check[t]==s时存在。<br />
+ * 查找下一个字符只需要2次数组访问，没有{@link Character}装箱、哈希计算和节点对象；
+ * 只有存在索引对象的节点（即完整的索引词条）才保存{@link TermIndexEntry}对象，通过entryIndex数组按状态查找。
+ * </p>
+ *
+ * <p>只读，可以在多个线程间共享。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class TermIndexTrie {
+	/**
+	 * 根节点状态。
+	 */
+	public static final int ROOT = 0;
+
+	private static final int FREE = -1;
+
+	private int[] base;
+	private int[] check;
+	private int[] entryIndex;
+	private TermIndexEntry[] entries;
+
+	private TermIndexTrie() {}
+
+	/**
+	 * 编译词条索引。
+	 * @param entries 全部索引词条，词条文本{@link TermIndexEntry#getKey()}不能重复，不能为空字符串。
+	 * @return
+	 */
+	public static TermIndexTrie build(Collection<TermIndexEntry> entries){
+		TermIndexEntry[] sorted = entries.toArray(new TermIndexEntry[entries.size()]);
+		Arrays.sort(sorted, new Comparator<TermIndexEntry>() {
+			@Override
+			public int compare(TermIndexEntry o1, TermIndexEntry o2) {
+				return o1.getKey().compareTo(o2.getKey());
+			}
+		});
+		Builder builder = new Builder(sorted);
+		return builder.build();
+	}
+
+	/**
+	 * 子节点状态。
+	 * @param state 当前节点状态。
+	 * @param c
+	 * @return 子节点不存在时返回-1。
+	 */
+	public int next(int state, char c){
+		int t = this.base[state] + c;
+		if(t < this.check.length && this.check[t]==state && this.base[state]>0) return t;
+		return -1;
+	}
+
+	/**
+	 * 节点是否存在子节点。
+	 * @param state
+	 * @return
+	 */
+	public boolean hasChildren(int state){
+		return this.base[state] > 0;
+	}
+
+	/**
+	 * 节点对应的索引词条。
+	 * @param state
+	 * @return 该节点不是完整的索引词条时返回null。
+	 */
+	public TermIndexEntry getEntry(int state){
+		int index = this.entryIndex[state];
+		return index<0 ? null : this.entries[index];
+	}
+
+	/**
+	 * 精确查找索引词条。
+	 * @param key
+	 * @return 不存在时返回null。
+	 */
+	public TermIndexEntry find(String key){
+		if(key==null || key.isEmpty()) return null;
+		int state = ROOT;
+		for(int i=0; i<key.length() && state>=0; i++)
+			state = this.next(state, key.charAt(i));
+		return state<0 ? null : this.getEntry(state);
+	}
+
+	/**
+	 * 全部索引词条，按词条文本排序。
+	 * @return
+	 */
+	public List<TermIndexEntry> getEntries(){
+		return Collections.unmodifiableList(Arrays.asList(this.entries));
+	}
+
+	/**
+	 * 索引词条数量。
+	 * @return
+	 */
+	public int size(){
+		return this.entries.length;
+	}
+
+	/**
+	 * 双数组的长度（状态数量上限）。
+	 * @return
+	 */
+	public int getCapacity(){
+		return this.base.length;
+	}
+
+	/**
+	 * 按内部存储结构写入输出流：双数组长度、base、check、entryIndex数组、词条数量、全部词条文本（长度和字符）。
+	 * <p>只写入词条文本，不写入索引对象，由调用方在{@link #read(ByteBuffer)}之后按{@link #getEntries()}的顺序自行恢复。</p>
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(this.base.length);
+		for(int value : this.base) out.writeInt(value);
+		for(int value : this.check) out.writeInt(value);
+		for(int value : this.entryIndex) out.writeInt(value);
+		out.writeInt(this.entries.length);
+		for(TermIndexEntry entry : this.entries){
+			out.writeInt(entry.getKey().length());
+			out.writeChars(entry.getKey());
+		}
+	}
+
+	/**
+	 * 读取{@link #write(DataOutputStream)}写入的Trie，不需要重新编译。读取完成后buffer位于Trie数据之后。
+	 * @param buffer 从{@link #write(DataOutputStream)}写入的起始位置开始。
+	 * @return 词条没有索引对象。
+	 * @throws IOException 数据不完整或者格式错误。
+	 */
+	public static TermIndexTrie read(ByteBuffer buffer) throws IOException {
+		try{
+			int length = buffer.getInt();
+			if(length<1 || (long)length * 12 > buffer.remaining())
+				throw new IOException("Invalid term index trie data, capacity: " + length);
+			TermIndexTrie trie = new TermIndexTrie();
+			trie.base = new int[length];
+			trie.check = new int[length];
+			trie.entryIndex = new int[length];
+			IntBuffer ints = buffer.asIntBuffer();
+			ints.get(trie.base);
+			ints.get(trie.check);
+			ints.get(trie.entryIndex);
+			buffer.position(buffer.position() + length * 12);
+
+			int size = buffer.getInt();
+			if(size<0 || size > buffer.remaining() / 4)
+				throw new IOException("Invalid term index trie data, size: " + size);
+			trie.entries = new TermIndexEntry[size];
+			for(int i=0; i<size; i++){
+				int len = buffer.getInt();
+				if(len<=0 || len > buffer.remaining() / 2)
+					throw new IOException("Invalid term index trie data, key length: " + len);
+				char[] chars = new char[len];
+				for(int j=0; j<len; j++) chars[j] = buffer.getChar();
+				trie.entries[i] = new TermIndexEntry(new String(chars));
+			}
+			for(int index : trie.entryIndex){
+				if(index>=size) throw new IOException("Invalid term index trie data, entry index: " + index);
+			}
+			return trie;
+		}catch(BufferUnderflowException ex){
+			throw new IOException("Truncated term index trie data");
+		}
+	}
+
+	/**
+	 * 按排序后的词条逐层分配状态，为每个节点查找可以容纳全部子节点的base值。
+	 * <p>空闲位置使用并查集（nextFree）查找，跳过已占用的位置不需要逐个扫描。</p>
+	 */
+	private static class Builder {
+		private static final int WIDE_CHILDREN = 8;
+		private TermIndexEntry[] keys;
+		private int[] base, check, entryIndex, nextFree;
+		private int size = 1; //已使用的最大状态+1
+		private int widePos = 0; //上一个子节点较多的节点的查找结果
+
+		Builder(TermIndexEntry[] keys){
+			this.keys = keys;
+			this.allocate(Math.max(1024, keys.length * 2));
+			this.occupy(ROOT, ROOT); //根节点占用0号位置
+		}
+
+		TermIndexTrie build(){
+			for(int i=0; i<this.keys.length; i++){
+				String key = this.keys[i].getKey();
+				if(key==null || key.isEmpty() || (i>0 && key.equals(this.keys[i-1].getKey())))
+					throw new IllegalArgumentException("Invalid or duplicated index key: " + key);
+			}
+			if(this.keys.length>0) this.insert(ROOT, 0, this.keys.length, 0);
+
+			TermIndexTrie trie = new TermIndexTrie();
+			trie.base = Arrays.copyOf(this.base, this.size);
+			trie.check = Arrays.copyOf(this.check, this.size);
+			trie.entryIndex = Arrays.copyOf(this.entryIndex, this.size);
+			trie.entries = this.keys;
+			return trie;
+		}
+
+		/**
+		 * 为节点state分配子节点。keys[from, to)是以该节点为前缀的全部词条，depth为前缀长度。
+		 */
+		private void insert(int state, int from, int to, int depth){
+			//前缀本身是完整词条时，排序后一定位于第一个
+			if(this.keys[from].getKey().length()==depth){
+				this.entryIndex[state] = from;
+				from++;
+			}
+			if(from>=to) return;
+
+			//收集子节点字符，排序后相同字符的词条连续
+			List<int[]> children = new ArrayList<int[]>(); //[字符, 起始位置, 结束位置]
+			for(int i=from; i<to; ){
+				char c = this.keys[i].getKey().charAt(depth);
+				int j = i + 1;
+				while(j<to && this.keys[j].getKey().charAt(depth)==c) j++;
+				children.add(new int[]{ c, i, j });
+				i = j;
+			}
+
+			int b = this.findBase(children);
+			this.base[state] = b;
+			for(int[] child : children) this.occupy(b + child[0], state);
+			for(int[] child : children) this.insert(b + child[0], child[1], child[2], depth + 1);
+		}
+
+		/**
+		 * 从第一个子节点可用的最小空闲位置开始，查找全部子节点位置都空闲的base值，base值至少为1。
+		 * <p>
+		 * 低位区域的空闲位置比较零散，子节点较多时很难放下，
+		 * 因此这类节点从上一个同类节点的查找结果开始查找，避免反复检查低位区域。
+		 * </p>
+		 */
+		private int findBase(List<int[]> children){
+			int first = children.get(0)[0];
+			boolean wide = children.size() >= WIDE_CHILDREN;
+			int pos = this.findFree(wide ? Math.max(first + 1, this.widePos) : first + 1);
+			while(true){
+				int b = pos - first;
+				this.ensureCapacity(b + children.get(children.size()-1)[0] + 1);
+				boolean ok = true;
+				for(int k=1; k<children.size(); k++){
+					if(this.check[b + children.get(k)[0]]!=FREE){
+						ok = false;
+						break;
+					}
+				}
+				if(ok) {
+					if(wide) this.widePos = pos;
+					return b;
+				}
+				pos = this.findFree(pos + 1);
+			}
+		}
+
+		private void occupy(int pos, int parent){
+			this.ensureCapacity(pos + 2);
+			this.check[pos] = parent;
+			this.nextFree[pos] = pos + 1;
+			if(pos + 1 > this.size) this.size = pos + 1;
+		}
+
+		/**
+		 * 大于等于pos的最小空闲位置。
+		 */
+		private int findFree(int pos){
+			this.ensureCapacity(pos + 1);
+			int p = pos;
+			while(this.nextFree[p]!=p){
+				int next = this.nextFree[p];
+				this.ensureCapacity(next + 1);
+				this.nextFree[p] = this.nextFree[next]; //路径压缩
+				p = next;
+			}
+			return p;
+		}
+
+		private void allocate(int capacity){
+			this.base = new int[capacity];
+			this.check = new int[capacity];
+			this.entryIndex = new int[capacity];
+			this.nextFree = new int[capacity];
+			Arrays.fill(this.check, FREE);
+			Arrays.fill(this.entryIndex, -1);
+			for(int i=0; i<capacity; i++) this.nextFree[i] = i;
+		}
+
+		private void ensureCapacity(int capacity){
+			if(capacity <= this.base.length) return;
+			int length = Math.max(capacity, this.base.length + (this.base.length >> 1));
+			int old = this.base.length;
+			this.base = Arrays.copyOf(this.base, length);
+			this.check = Arrays.copyOf(this.check, length);
+			this.entryIndex = Arrays.copyOf(this.entryIndex, length);
+			this.nextFree = Arrays.copyOf(this.nextFree, length);
+			Arrays.fill(this.check, old, length, FREE);
+			Arrays.fill(this.entryIndex, old, length, -1);
+			for(int i=old; i<length; i++) this.nextFree[i] = i;
+		}
+	}
+}
@@ -0,0 +1,436 @@
+package com.rrs.rd.address.interpret;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.AddressPersister;
+
+/**
+ * 流水线方式导入地址库文件。
+ *
+ * <p>
+ * 导入过程分为4个阶段，每个阶段一个线程，阶段之间通过有界队列传递批次数据：
+ * <ol style="margin:-10 0 0 10;">
+ * <li>read：在调用线程中逐行读取地址文件，每{@link #setReadBatchSize(int) readBatchSize}行作为一批；</li>
+ * <li>interpret：使用{@link AddressInterpreter#interpret(List)}并行解析地址；</li>
+ * <li>dedupe：按输入顺序使用{@link AddressPersister#prepareImport(AddressEntity)}排除重复地址，
+ * 每{@link #setBatchSize(int) batchSize}个地址作为一批；</li>
+ * <li>insert：使用{@link AddressPersister#insertAddresses(List)}写入数据库。</li>
+ * </ol>
+ * 下游阶段处理较慢时，上游阶段在队列已满时等待（backpressure），每个队列最多缓存
+ * {@link #setQueueCapacity(int) queueCapacity}个批次，内存占用与文件大小无关；地址解析与数据库写入同时进行。
+ * </p>
+ *
+ * <p>
+ * 每个阶段统计处理数量、处理耗时、等待上游数据的时间（idle）、等待下游队列空闲的时间（blocked），
+ * 参考{@link StageStats}。blocked时间较长说明下游阶段是瓶颈。
+ * </p>
+ *
+ * <p>非线程安全，同一时间只能执行一个导入任务。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class AddressImportPipeline {
+	private final static Logger LOG = LoggerFactory.getLogger(AddressImportPipeline.class);
+
+	/**
+	 * 队列结束标记。
+	 */
+	private static final List<String> END_OF_TEXTS = Collections.unmodifiableList(new ArrayList<String>(0));
+	private static final List<AddressEntity> END_OF_ADDRESSES = Collections.unmodifiableList(new ArrayList<AddressEntity>(0));
+
+	private AddressInterpreter interpreter;
+	private AddressPersister persister;
+	private int readBatchSize = 10000;
+	private int batchSize = 2000;
+	private int queueCapacity = 4;
+	private int logInterval = 20;
+
+	private volatile boolean aborted = false;
+	private volatile RuntimeException failure = null;
+	private StageStats readStats, interpretStats, dedupeStats, insertStats;
+	private BlockingQueue<List<String>> textQueue;
+	private BlockingQueue<List<AddressEntity>> interpretedQueue, batchQueue;
+	private volatile int duplicate = 0, imported = 0;
+
+	/**
+	 * 单个阶段的统计信息，只由该阶段的线程更新。
+	 */
+	public static class StageStats {
+		private String name;
+		private volatile long items = 0, batches = 0;
+		private volatile long busyTime = 0, idleTime = 0, blockedTime = 0;
+
+		public StageStats(String name){
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+		/**
+		 * 已处理的数据量（地址行数或地址数量）。
+		 */
+		public long getItems() {
+			return items;
+		}
+		/**
+		 * 已处理的批次数量。
+		 */
+		public long getBatches() {
+			return batches;
+		}
+		/**
+		 * 处理数据的耗时，毫秒。
+		 */
+		public long getBusyTime() {
+			return busyTime;
+		}
+		/**
+		 * 等待上游数据的时间，毫秒。
+		 */
+		public long getIdleTime() {
+			return idleTime;
+		}
+		/**
+		 * 下游队列已满，等待下游处理的时间，毫秒。
+		 */
+		public long getBlockedTime() {
+			return blockedTime;
+		}
+		/**
+		 * 处理速度，每秒处理的数据量（只计算处理耗时）。
+		 */
+		public double getThroughput(){
+			return busyTime<=0 ? 0 : items * 1000.0 / busyTime;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": " + items + " items, busy=" + busyTime/1000.0 + "s (" + Math.round(getThroughput()) + "/s)"
+				+ ", idle=" + idleTime/1000.0 + "s, blocked=" + blockedTime/1000.0 + "s";
+		}
+	}
+
+	/**
+	 * 导入地址文件。
+	 * @param reader 地址文件，每行一个地址，格式要求参考{@link AddressInterpreter#interpret(List, RegionInterpreterVisitor)}。
+	 * @return 写入数据库的地址数量。
+	 * @throws IOException 读取文件失败。
+	 * @throws RuntimeException 某个阶段异常终止。
+	 */
+	public int importAddresses(BufferedReader reader) throws IOException {
+		long start = System.currentTimeMillis();
+		this.reset();
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		List<Future<?>> futures = new ArrayList<Future<?>>(3);
+		try{
+			futures.add(executor.submit(new StageTask() {
+				@Override
+				protected void execute() {
+					runInterpretStage();
+				}
+			}));
+			futures.add(executor.submit(new StageTask() {
+				@Override
+				protected void execute() {
+					runDedupeStage();
+				}
+			}));
+			futures.add(executor.submit(new StageTask() {
+				@Override
+				protected void execute() {
+					runInsertStage();
+				}
+			}));
+
+			//读取失败时下游阶段仍然完成已读取部分的导入
+			IOException readError = null;
+			try{
+				this.runReadStage(reader);
+			}catch(IOException ex){
+				readError = ex;
+			}
+			this.put(this.textQueue, END_OF_TEXTS, this.readStats);
+			for(Future<?> future : futures) this.await(future);
+			if(this.failure!=null) throw this.failure;
+			if(readError!=null) throw readError;
+		}catch(RuntimeException ex){
+			this.abort(ex);
+			throw this.failure;
+		}finally{
+			executor.shutdownNow();
+		}
+
+		if(LOG.isInfoEnabled())
+			LOG.info("[addr-imp] [pipeline] done, " + this.imported + " imported, " + this.duplicate + " duplicated, elapsed "
+				+ (System.currentTimeMillis() - start)/1000.0 + "s. " + this.formatStats());
+		return this.imported;
+	}
+
+	/**
+	 * 各阶段的统计信息，依次为read、interpret、dedupe、insert。
+	 * @return
+	 */
+	public List<StageStats> getStageStats(){
+		List<StageStats> stats = new ArrayList<StageStats>(4);
+		stats.add(this.readStats);
+		stats.add(this.interpretStats);
+		stats.add(this.dedupeStats);
+		stats.add(this.insertStats);
+		return stats;
+	}
+
+	//***************************************************************************************
+	// 各阶段处理
+	//***************************************************************************************
+	private void runReadStage(BufferedReader reader) throws IOException {
+		List<String> texts = new ArrayList<String>(this.readBatchSize);
+		long start = System.currentTimeMillis();
+		String line = null;
+		try{
+			while((line = reader.readLine()) != null){
+				texts.add(line);
+				if(texts.size() >= this.readBatchSize){
+					this.readStats.busyTime += System.currentTimeMillis() - start;
+					this.readStats.items += texts.size();
+					this.readStats.batches++;
+					this.put(this.textQueue, texts, this.readStats);
+					texts = new ArrayList<String>(this.readBatchSize);
+					start = System.currentTimeMillis();
+				}
+			}
+		}finally{
+			//读取失败时，已读取但不足一批的地址同样交给下游导入
+			this.readStats.busyTime += System.currentTimeMillis() - start;
+			if(!texts.isEmpty()){
+				this.readStats.items += texts.size();
+				this.readStats.batches++;
+				this.put(this.textQueue, texts, this.readStats);
+			}
+		}
+	}
+
+	private void runInterpretStage(){
+		while(true){
+			List<String> texts = this.take(this.textQueue, this.interpretStats);
+			if(texts==END_OF_TEXTS) break;
+			long start = System.currentTimeMillis();
+			List<AddressEntity> addresses = null;
+			try{
+				addresses = this.interpreter.interpret(texts);
+			}catch(RuntimeException ex){
+				LOG.error("[addr-imp] [error] Failed to interpret " + texts.size() + " lines: " + ex.getMessage(), ex);
+			}
+			this.interpretStats.busyTime += System.currentTimeMillis() - start;
+			this.interpretStats.items += texts.size();
+			this.interpretStats.batches++;
+			if(addresses!=null && !addresses.isEmpty())
+				this.put(this.interpretedQueue, addresses, this.interpretStats);
+		}
+		this.put(this.interpretedQueue, END_OF_ADDRESSES, this.interpretStats);
+	}
+
+	private void runDedupeStage(){
+		List<AddressEntity> batch = new ArrayList<AddressEntity>(this.batchSize);
+		while(true){
+			List<AddressEntity> addresses = this.take(this.interpretedQueue, this.dedupeStats);
+			if(addresses==END_OF_ADDRESSES) break;
+			long start = System.currentTimeMillis();
+			for(AddressEntity address : addresses){
+				try{
+					if(!this.persister.prepareImport(address)){
+						this.duplicate++;
+						continue;
+					}
+					batch.add(address);
+				}catch(RuntimeException ex){
+					LOG.error("[addr-imp] [error] " + address.getRawText() + ": " + ex.getMessage(), ex);
+					continue;
+				}
+				if(batch.size() >= this.batchSize){
+					this.dedupeStats.busyTime += System.currentTimeMillis() - start;
+					this.put(this.batchQueue, batch, this.dedupeStats);
+					batch = new ArrayList<AddressEntity>(this.batchSize);
+					start = System.currentTimeMillis();
+				}
+			}
+			this.dedupeStats.busyTime += System.currentTimeMillis() - start;
+			this.dedupeStats.items += addresses.size();
+			this.dedupeStats.batches++;
+		}
+		if(!batch.isEmpty()) this.put(this.batchQueue, batch, this.dedupeStats);
+		this.put(this.batchQueue, END_OF_ADDRESSES, this.dedupeStats);
+	}
+
+	private void runInsertStage(){
+		while(true){
+			List<AddressEntity> batch = this.take(this.batchQueue, this.insertStats);
+			if(batch==END_OF_ADDRESSES) break;
+			long start = System.currentTimeMillis();
+			try{
+				this.imported += this.persister.insertAddresses(batch);
+			}catch(RuntimeException ex){
+				LOG.error("[addr-imp] [error] Failed to insert " + batch.size() + " addresses: " + ex.getMessage(), ex);
+			}
+			this.insertStats.busyTime += System.currentTimeMillis() - start;
+			this.insertStats.items += batch.size();
+			this.insertStats.batches++;
+
+			if(this.insertStats.batches % this.logInterval == 0 && LOG.isInfoEnabled())
+				LOG.info("[addr-imp] [pipeline] " + this.imported + " imported, " + this.duplicate + " duplicated. " + this.formatStats());
+		}
+	}
+
+	//***************************************************************************************
+	// 私有方法
+	//***************************************************************************************
+	/**
+	 * 阶段任务。任何异常（包括Error）终止时标记整个流水线异常终止，避免其他阶段一直等待；
+	 * Error包装为IllegalStateException记录，导入方法抛出的异常包含最初的原因。
+	 */
+	private abstract class StageTask implements Runnable {
+		protected abstract void execute();
+
+		@Override
+		public void run() {
+			try{
+				this.execute();
+			}catch(RuntimeException ex){
+				abort(ex);
+				throw ex;
+			}catch(Error ex){
+				abort(new IllegalStateException("Import pipeline stage failed: " + ex, ex));
+				throw ex;
+			}
+		}
+	}
+
+	/**
+	 * 标记流水线异常终止，记录最先发生的异常。
+	 */
+	private synchronized void abort(RuntimeException ex){
+		if(this.failure==null) this.failure = ex;
+		this.aborted = true;
+	}
+
+	private void reset(){
+		this.aborted = false;
+		this.failure = null;
+		this.duplicate = 0;
+		this.imported = 0;
+		this.readStats = new StageStats("read");
+		this.interpretStats = new StageStats("interpret");
+		this.dedupeStats = new StageStats("dedupe");
+		this.insertStats = new StageStats("insert");
+		this.textQueue = new ArrayBlockingQueue<List<String>>(this.queueCapacity);
+		this.interpretedQueue = new ArrayBlockingQueue<List<AddressEntity>>(this.queueCapacity);
+		this.batchQueue = new ArrayBlockingQueue<List<AddressEntity>>(this.queueCapacity);
+	}
+
+	/**
+	 * 放入下游队列，队列已满时等待。其他阶段异常终止后不再等待，抛出异常。
+	 */
+	private <T> void put(BlockingQueue<T> queue, T item, StageStats stats){
+		long start = System.currentTimeMillis();
+		try{
+			while(!queue.offer(item, 100, TimeUnit.MILLISECONDS)){
+				if(this.aborted) throw new IllegalStateException("Import pipeline aborted");
+			}
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Import pipeline interrupted", ex);
+		}finally{
+			stats.blockedTime += System.currentTimeMillis() - start;
+		}
+	}
+
+	/**
+	 * 从上游队列取出一批数据，队列为空时等待。其他阶段异常终止后不再等待，抛出异常。
+	 */
+	private <T> T take(BlockingQueue<T> queue, StageStats stats){
+		long start = System.currentTimeMillis();
+		try{
+			while(true){
+				T item = queue.poll(100, TimeUnit.MILLISECONDS);
+				if(item!=null) return item;
+				if(this.aborted) throw new IllegalStateException("Import pipeline aborted");
+			}
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Import pipeline interrupted", ex);
+		}finally{
+			stats.idleTime += System.currentTimeMillis() - start;
+		}
+	}
+
+	private void await(Future<?> future){
+		try{
+			future.get();
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Import pipeline interrupted", ex);
+		}catch(ExecutionException ex){
+			//RuntimeException已记录在failure中
+			Throwable cause = ex.getCause();
+			if(!(cause instanceof RuntimeException)) throw new RuntimeException(cause);
+		}
+	}
+
+	private String formatStats(){
+		return "[" + this.readStats + "] [" + this.interpretStats + "] [" + this.dedupeStats + "] [" + this.insertStats + "]"
+			+ ", queued: " + this.textQueue.size() + "/" + this.interpretedQueue.size() + "/" + this.batchQueue.size();
+	}
+
+	//***************************************************************************************
+	// Spring IoC
+	//***************************************************************************************
+	public void setInterpreter(AddressInterpreter value){
+		this.interpreter = value;
+	}
+	public void setPersister(AddressPersister value){
+		this.persister = value;
+	}
+	/**
+	 * 每次读取、解析的地址行数，默认10000。
+	 * @param value
+	 */
+	public void setReadBatchSize(int value){
+		this.readBatchSize = Math.max(1, value);
+	}
+	/**
+	 * 每次写入数据库的地址数量，默认2000。
+	 * @param value
+	 */
+	public void setBatchSize(int value){
+		this.batchSize = Math.max(1, value);
+	}
+	/**
+	 * 阶段之间队列的容量（批次数量），默认4。
+	 * @param value
+	 */
+	public void setQueueCapacity(int value){
+		this.queueCapacity = Math.max(1, value);
+	}
+	/**
+	 * 每写入多少批地址输出一次统计信息，默认20。
+	 * @param value
+	 */
+	public void setLogInterval(int value){
+		this.logInterval = Math.max(1, value);
+	}
+}
@@ -5,6 +5,13 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,6 +29,7 @@ import com.rrs.rd.address.utils.StringUtil;
 /**
  * 地址解析操作。
  * <p>从地址文本中解析出省、市、区、街道、乡镇、道路等地址组成部分。</p>
+ * <p>楼号、道路、乡镇村庄等使用{@link AddressScanner}逐字符扫描提取，不使用正则表达式。</p>
  * @author Richie 刘志斌 yudi@sina.com
  */
 public class AddressInterpreter {
@@ -31,36 +39,31 @@ public class AddressInterpreter {
 	private TermIndexBuilder termIndex = null;
 	private AddressPersister persister;
 	
-	private static char[] specialChars1 = " \r\n\t,，。·.．;；:：、！@$%*^`~=+&'\"|_-\\/".toCharArray();
-	//private static char[] specialChars2 = "{}【】〈〉<>[]「」“”".toCharArray();
-	private static Set<String> invalidTown = null;
-	private static Set<String> invalidTownFollowings = null;
-	
-	private static Pattern BRACKET_PATTERN = Pattern.compile("(?<bracket>([\\(（\\{\\<〈\\[【「][^\\)）\\}\\>〉\\]】」]*[\\)）\\}\\>〉\\]】」]))");
-	
-	/**
-	 * 匹配building的模式：xx栋xx单元xxx。<br />
-	 *   注1：山东青岛市南区宁夏路118号4号楼6单元202。如果正则模式开始位置不使用(路[0-9]+号)?，则第一个符合条件的匹配结果是【118号4】，
-	 *   按照逻辑会将匹配结果及之后的所有字符当做building，导致最终结果为：118号4号楼6单元202
-	 */
-	private static final Pattern P_BUILDING_NUM1 = Pattern.compile("((路|街|巷)[0-9]+号)?([0-9A-Z一二三四五六七八九十]+(栋|橦|幢|座|号楼|号|\\#楼?)){0,1}([一二三四五六七八九十东西南北甲乙丙0-9]+(单元|门|梯|层|座))?([0-9]+(室|房)?)?");
 	/**
-	 * 校验building的模式。building1M能够匹配到纯数字等不符合条件的文本，使用building1V排除掉
+	 * 批量解析的并行线程数。
 	 */
-	private static final Pattern P_BUILDING_NUM_V = Pattern.compile("(栋|幢|橦|号楼|号|\\#|\\#楼|单元|室|房|门)+");
+	private volatile int threads = Runtime.getRuntime().availableProcessors();
 	/**
-	 * 匹配building的模式：12-2-302，12栋3单元302
+	 * 批量解析时每个任务的最少地址数量。
 	 */
-	private static final Pattern P_BUILDING_NUM2 = Pattern.compile("[A-Za-z0-9]+([\\#\\-一－/\\\\]+[A-Za-z0-9]+)+");
+	private static final int MIN_BATCH_CHUNK = 256;
+	private ThreadPoolExecutor executor = null;
 	/**
-	 * 匹配building的模式：10组21号，农村地址
+	 * {@link RegionInterpreterVisitor}非线程安全，每个线程使用自己的实例。
 	 */
-	private static final Pattern P_BUILDING_NUM3 = Pattern.compile("[0-9]+组[0-9\\-一]+号?");
+	private ThreadLocal<RegionInterpreterVisitor> visitors = new ThreadLocal<RegionInterpreterVisitor>(){
+		@Override
+		protected RegionInterpreterVisitor initialValue() {
+			return new RegionInterpreterVisitor();
+		}
+	};
 	
-	private static final Pattern P_TOWN1 = Pattern.compile("^((?<z>[\u4e00-\u9fa5]{2,2}(镇|乡))(?<c>[\u4e00-\u9fa5]{1,3}村)?)");
-	private static final Pattern P_TOWN2 = Pattern.compile("^((?<z>[\u4e00-\u9fa5]{1,3}镇)?(?<x>[\u4e00-\u9fa5]{1,3}乡)?(?<c>[\u4e00-\u9fa5]{1,3}村(?!(村|委|公路|(东|西|南|北)?(大街|大道|路|街))))?)");
-	private static final Pattern P_TOWN3 = Pattern.compile("^(?<c>[\u4e00-\u9fa5]{1,3}村(?!(村|委|公路|(东|西|南|北)?(大街|大道|路|街))))?");
-	private static final Pattern P_ROAD = Pattern.compile("^(?<road>([\u4e00-\u9fa5]{2,4}(路|街坊|街|道|大街|大道)))(?<ex>[甲乙丙丁])?(?<roadnum>[0-9０１２３４５６７８９一二三四五六七八九十]+(号院|号楼|号大院|号|號|巷|弄|院|区|条|\\#院|\\#))?");
+	private static char[] specialChars1 = " \r\n\t,，。·.．;；:：、！@$%*^`~=+&'\"|_-\\/".toCharArray();
+	//private static char[] specialChars2 = "{}【】〈〉<>[]「」“”".toCharArray();
+	private static Set<String> invalidTown = null;
+	private static Set<String> invalidTownFollowings = null;
+	
+	private static Pattern BRACKET_PATTERN = Pattern.compile("(?<bracket>([\\(（\\{\\<〈\\[【「][^\\)）\\}\\>〉\\]】」]*[\\)）\\}\\>〉\\]】」]))");
 	
 	static{
 		invalidTownFollowings = new HashSet<String>();
@@ -172,11 +175,15 @@ public class AddressInterpreter {
 	//***************************************************************************************
 	// AddressService对外提供的服务接口
 	//***************************************************************************************
-	public long timeDb=0, timeCache=0, timeInter=0, timeRegion=0, timeRmRed=0
-			, timeTown=0, timeRoad=0, timeBuild=0, timeRmSpec=0, timeBrc=0;
+	/**
+	 * 各处理环节累计耗时（毫秒），批量解析时由多个线程同时累加。
+	 */
+	public final LongAdder timeInter=new LongAdder(), timeRegion=new LongAdder(), timeRmRed=new LongAdder()
+			, timeTown=new LongAdder(), timeRoad=new LongAdder(), timeBuild=new LongAdder()
+			, timeRmSpec=new LongAdder(), timeBrc=new LongAdder();
 	
 	/**
-	 * 批量导入地址到地址库中。
+	 * 批量解析地址。
 	 * <p>
 	 * 地址格式要求如下：省份地级市区县详细地址。<br />
 	 * 例如：
@@ -189,37 +196,89 @@ public class AddressInterpreter {
 	 * </pre>
 	 * 
 	 * @param addrTextList 详细地址列表
+	 * @param visitor 在当前线程中串行解析使用的visitor。
+	 * @return 解析成功的地址，按输入顺序排列，空地址、解析失败以及未能匹配到市、区县的地址被忽略。
 	 * @throws IllegalStateException
 	 * @throws RuntimeException
 	 */
 	public List<AddressEntity> interpret(List<String> addrTextList, RegionInterpreterVisitor visitor) throws IllegalStateException, RuntimeException {
 		if(addrTextList==null) return null;
 		long start = System.currentTimeMillis();
+		List<AddressEntity> results = new ArrayList<AddressEntity>(addrTextList.size());
+		for(String addrText : addrTextList)
+			results.add(interpretSafely(addrText, visitor));
+		return collect(addrTextList, results, start);
+	}
+	
+	/**
+	 * 并行批量解析地址。
+	 * <p>
+	 * 地址列表切分为多段，由线程池并行解析，每个线程使用自己的{@link RegionInterpreterVisitor}，
+	 * 结果与{@link #interpret(List, RegionInterpreterVisitor)}相同，按输入顺序排列。
+	 * 并行线程数参考{@link #setThreads(int)}。
+	 * </p>
+	 * 
+	 * @param addrTextList 详细地址列表，格式要求参考{@link #interpret(List, RegionInterpreterVisitor)}。
+	 * @return 解析成功的地址，按输入顺序排列，空地址、解析失败以及未能匹配到市、区县的地址被忽略。
+	 */
+	public List<AddressEntity> interpret(List<String> addrTextList) {
+		if(addrTextList==null) return null;
+		long start = System.currentTimeMillis();
+		return collect(addrTextList, interpretAll(addrTextList), start);
+	}
+	
+	/**
+	 * 并行批量解析地址，返回结果与输入一一对应。
+	 * 
+	 * @param addrTextList 详细地址列表。
+	 * @return 与addrTextList等长、顺序相同的列表，第i个元素为{@link #interpret(String) interpret(addrTextList.get(i))}的结果，
+	 * 空地址、解析失败的位置为null。
+	 */
+	public List<AddressEntity> interpretAll(List<String> addrTextList) {
+		if(addrTextList==null) return null;
+		return runBatch(addrTextList, new BatchTask<AddressEntity>() {
+			@Override
+			public AddressEntity run(String text, RegionInterpreterVisitor visitor) {
+				return interpretSafely(text, visitor);
+			}
+		});
+	}
+	
+	private AddressEntity interpretSafely(String addrText, RegionInterpreterVisitor visitor){
+		try{
+			return interpret(addrText, visitor);
+		}catch(Exception ex){
+			LOG.error("[addr-imp] [error] " + addrText + ": " + ex.getMessage(), ex);
+			return null;
+		}
+	}
+	
+	/**
+	 * 过滤批量解析结果，输出统计信息。
+	 */
+	private List<AddressEntity> collect(List<String> addrTextList, List<AddressEntity> results, long start){
 		int numSuccess=0, numFail=0;
-		List<AddressEntity> addresses = new ArrayList<AddressEntity>(addrTextList.size());
-		for(String addrText : addrTextList){
-			try{
-				if(addrText==null || addrText.trim().isEmpty()) continue;
-				AddressEntity address = interpret(addrText, visitor);
-				if(address==null || !address.hasCity() || !address.hasDistrict()) {
-					numFail++;
-					LOG.error("[addr-inter] [fail] " + addrText + " > " 
-							+ (address==null ? "null" : address.toString()));
-					continue;
-				}
-				numSuccess++;
-				addresses.add(address);
-			}catch(Exception ex){
-				LOG.error("[addr-imp] [error] " + addrText + ": " + ex.getMessage(), ex);
+		List<AddressEntity> addresses = new ArrayList<AddressEntity>(results.size());
+		for(int i=0; i<results.size(); i++){
+			String addrText = addrTextList.get(i);
+			if(addrText==null || addrText.trim().isEmpty()) continue;
+			AddressEntity address = results.get(i);
+			if(address==null || !address.hasCity() || !address.hasDistrict()) {
+				numFail++;
+				LOG.error("[addr-inter] [fail] " + addrText + " > " 
+						+ (address==null ? "null" : address.toString()));
+				continue;
 			}
+			numSuccess++;
+			addresses.add(address);
 		}
-		timeInter += System.currentTimeMillis() - start;
+		timeInter.add(System.currentTimeMillis() - start);
 		
 		if(LOG.isInfoEnabled()){
 			LOG.info("[addr-inter] [perf] " + numSuccess + " success, " + numFail + " failed. "
-				+ "tot=" + timeInter/1000.0 + ": rms=" + timeRmSpec/1000.0 + ", rmr=" + timeRmRed/1000.0
-				+ ", brc=" + timeBrc/1000.0 + ", reg=" + timeRegion/1000.0 + ", tow=" + timeTown/1000.0
-				+ ", rod=" + timeRoad/1000.0 + ", bud=" + timeBuild/1000.0);
+				+ "tot=" + timeInter.sum()/1000.0 + ": rms=" + timeRmSpec.sum()/1000.0 + ", rmr=" + timeRmRed.sum()/1000.0
+				+ ", brc=" + timeBrc.sum()/1000.0 + ", reg=" + timeRegion.sum()/1000.0 + ", tow=" + timeTown.sum()/1000.0
+				+ ", rod=" + timeRoad.sum()/1000.0 + ", bud=" + timeBuild.sum()/1000.0);
 		}
 		
 		return addresses;
@@ -246,8 +305,7 @@ public class AddressInterpreter {
 	 * @return 解析成功返回{@link AddressEntity}，解析失败返回null。
 	 */
 	public AddressEntity interpret(String addressText){
-		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor(persister);
-		return interpret(addressText, visitor);
+		return interpret(addressText, visitors.get());
 	}
 
 	//***************************************************************************************
@@ -262,30 +320,29 @@ public class AddressInterpreter {
 		
 		start = System.currentTimeMillis();
 		extractBuildingNum(addr);
-		timeBuild += System.currentTimeMillis() - start;
+		timeBuild.add(System.currentTimeMillis() - start);
 		
 		start = System.currentTimeMillis();
 		removeSpecialChars(addr);
-		timeRmSpec += System.currentTimeMillis() - start;
+		timeRmSpec.add(System.currentTimeMillis() - start);
 		
 		start = System.currentTimeMillis();
 		String brackets = extractBrackets(addr);
-		timeBrc += System.currentTimeMillis() - start;
+		timeBrc.add(System.currentTimeMillis() - start);
 		
 		start = System.currentTimeMillis();
 		extractRegion(addr, visitor);
-		timeRegion += System.currentTimeMillis() - start;
+		timeRegion.add(System.currentTimeMillis() - start);
 		
 		start = System.currentTimeMillis();
 		removeRedundancy(addr, visitor);
-		timeRmRed += System.currentTimeMillis() - start;
+		timeRmRed.add(System.currentTimeMillis() - start);
 		
 		start = System.currentTimeMillis();
 		extractRoad(addr);
-		timeRoad += System.currentTimeMillis() - start;
+		timeRoad.add(System.currentTimeMillis() - start);
 		
-		addr.setText(addr.getText().replaceAll("[0-9A-Za-z\\#]+(单元|楼|室|层|米|户|\\#)", ""));
-		addr.setText(addr.getText().replaceAll("[一二三四五六七八九十]+(单元|楼|室|层|米|户)", ""));
+		addr.setText(AddressScanner.removeUnits(addr.getText()));
 		if(brackets!=null && brackets.length()>0)
 			addr.setText(addr.getText()+brackets);
 		
@@ -343,9 +400,19 @@ public class AddressInterpreter {
 		if(addr.getText().length()<=0 || !addr.hasProvince() || !addr.hasCity()) return false;
 		
 		boolean removed = false;
+		//先用Aho-Corasick自动机扫描一遍，找出行政区划名称的起始位置，只从这些位置开始匹配省市区。
+		//删除匹配上的文本后，剩余文本是原文本的后缀，起始位置按删除的长度平移即可，不需要重新扫描。
+		//自动机只能给出单个名称的匹配，是否接受由visitor沿连续的多个名称（省、市、区……）判断，并依赖当前已匹配的行政区划，
+		//因此每个起始位置仍通过deepMostQuery匹配。删除后i=0是剩余文本的第一个位置，位于匹配结束位置之后，此前没有匹配过，不会重复匹配。
+		boolean[] starts = termIndex.getAutomaton().markStarts(addr.getText());
+		int offset = 0; //已删除的文本长度
 		//采用后序数组方式匹配省市区
 		int endIndex = addr.getText().length()-2;
 		for(int i=0; i<endIndex; ){
+			if(!starts[offset + i]) {
+				i++;
+				continue;
+			}
 			visitor.reset();
 			termIndex.deepMostQuery(addr.getText(), i, visitor);
 			if(visitor.resultMatchCount()<2 && visitor.resultFullMatchCount()<1) { 
@@ -379,7 +446,9 @@ public class AddressInterpreter {
 				addr.setVillage(visitor.resultDivision().getVillage());
 			
 			//正确匹配上，删除
+			int length = addr.getText().length();
 			addr.setText(StringUtil.substring(addr.getText(), visitor.resultEndPosition()+1));
+			offset += length - addr.getText().length();
 			endIndex=addr.getText().length();
 			i=0;
 			removed = true;
@@ -413,20 +482,51 @@ public class AddressInterpreter {
 	}
 	
 	public void extractTownVillage(String addressText, RegionInterpreterVisitor visitor, Map<Long, List<String>> towns) {
-		if(addressText==null || addressText.trim().length()<=0) return;
+		AddressEntity addr = prepareTownVillage(addressText, visitor);
+		if(addr==null) return;
+		extractTownVillage(addr, towns);
+	}
+	/**
+	 * 批量提取乡镇、村庄。
+	 * <p>
+	 * 省市区的匹配由线程池并行执行，乡镇、村庄的识别会修改towns，在当前线程中按输入顺序串行执行，
+	 * 结果与逐个调用{@link #extractTownVillage(String, RegionInterpreterVisitor, Map)}相同。
+	 * </p>
+	 * @param addrTextList 详细地址列表。
+	 * @param towns
+	 */
+	public void extractTownVillage(List<String> addrTextList, Map<Long, List<String>> towns) {
+		if(addrTextList==null) return;
+		List<AddressEntity> addresses = runBatch(addrTextList, new BatchTask<AddressEntity>() {
+			@Override
+			public AddressEntity run(String text, RegionInterpreterVisitor visitor) {
+				try{
+					return prepareTownVillage(text, visitor);
+				}catch(Exception ex){
+					LOG.error("[addr-town] [error] " + text + ": " + ex.getMessage(), ex);
+					return null;
+				}
+			}
+		});
+		for(AddressEntity addr : addresses){
+			if(addr!=null) extractTownVillage(addr, towns);
+		}
+	}
+	private AddressEntity prepareTownVillage(String addressText, RegionInterpreterVisitor visitor){
+		if(addressText==null || addressText.trim().length()<=0) return null;
 		AddressEntity addr = new AddressEntity(addressText);
 		removeSpecialChars(addr);
 		extractBrackets(addr);
 		extractRegion(addr, visitor);
 		removeRedundancy(addr, visitor);
-		extractTownVillage(addr, towns);
+		return addr;
 	}
 	public void extractTownVillage(AddressEntity addr, Map<Long, List<String>> towns){
-		if( extractTownVillage(addr, towns, P_TOWN1, "z", null, "c") >=0 ) return;
+		if( extractTownVillage(addr, towns, AddressScanner.TOWN1) >=0 ) return;
 		if(addr.hasTown())
-			extractTownVillage(addr, towns, P_TOWN3, null, null, "c");
+			extractTownVillage(addr, towns, AddressScanner.TOWN3);
 		else
-			extractTownVillage(addr, towns, P_TOWN2, "z", "x", "c");
+			extractTownVillage(addr, towns, AddressScanner.TOWN2);
 	}
 	/**
 	 * @return 1 匹配成功，0 未执行匹配，-1 未匹配上。
@@ -435,21 +535,20 @@ public class AddressInterpreter {
 	// 1: 执行了匹配操作，匹配成功
 	//-1: 执行了匹配操作，未匹配上
 	// 0: 未执行匹配操作
-	private int extractTownVillage(AddressEntity addr, Map<Long, List<String>> towns, Pattern pattern, String gz, String gx, String gc){
+	private int extractTownVillage(AddressEntity addr, Map<Long, List<String>> towns, int pattern){
 		if(addr.getText().length()<=0 || !addr.hasDistrict()) return 0;
 		
 		int result = -1;
-		Matcher matcher = pattern.matcher(addr.getText());
+		int[] ends = new int[3];
 		
-		if(matcher.find()) {
+		if(AddressScanner.matchTown(addr.getText(), pattern, ends)) {
 			String text = addr.getText();
-			String c = gc == null ? null : matcher.group("c");
-			int ic = gc == null ? -1 : matcher.end("c");
+			int iz = ends[0], ix = ends[1], ic = ends[2];
+			String c = ic<0 ? null : text.substring(Math.max(0, Math.max(iz, ix)), ic);
 			
-			if(gz!=null) {
-				String z=matcher.group(gz);
-				int iz=matcher.end(gz);
-				if(z!=null && z.length()>0){ //镇
+			if(iz>=0) {
+				String z=text.substring(0, iz);
+				if(z.length()>0){ //镇
 					if(z.length()==2 && text.startsWith("村", z.length())){
 						c=z+"村";
 						ic=iz+1;
@@ -462,10 +561,9 @@ public class AddressInterpreter {
 				}
 			}
 			
-			if(gx!=null) {
-				String x=matcher.group(gx);
-				int ix=matcher.end(gx);
-				if(x!=null && x.length()>0){ //镇
+			if(ix>=0) {
+				String x=text.substring(iz<0 ? 0 : iz, ix);
+				if(x.length()>0){ //乡
 					if(x.length()==2 && text.startsWith("村", x.length())){
 						c=x+"村";
 						ic=ix+1;
@@ -559,11 +657,10 @@ public class AddressInterpreter {
 	private boolean extractRoad(AddressEntity addr){
 		if(addr.getText().length()<=0) return false;
 		if(addr.getRoad().length()>0) return true; //已经提取出道路，不再执行
-		Matcher matcher = P_ROAD.matcher(addr.getText());
-		if(matcher.find()){
-			String road = matcher.group("road"), ex = matcher.group("ex"), roadNum = matcher.group("roadnum");
-			roadNum = (ex==null ? "" : ex) + (roadNum==null ? "" : roadNum);
-			String leftText = StringUtil.substring(addr.getText(), road.length() + roadNum.length());
+		int[] span = new int[2];
+		if(AddressScanner.matchRoad(addr.getText(), span)){
+			String road = addr.getText().substring(0, span[0]), roadNum = addr.getText().substring(span[0], span[1]);
+			String leftText = StringUtil.substring(addr.getText(), span[1]);
 			if(leftText.startsWith("小区")) return false;
 			addr.setRoad(road);
 			if(roadNum.length()==1){ //仅包含【甲乙丙丁】单个汉字，不能作为门牌号
@@ -579,60 +676,98 @@ public class AddressInterpreter {
 	
 	private boolean extractBuildingNum(AddressEntity addr){
 		if(addr.getText().length()<=0) return false;
-		//抽取building
-		boolean found = false;
-		String building;
-		//xx[幢|幢|号楼|#]xx[单元]xxx
-		Matcher matcher = P_BUILDING_NUM1.matcher(addr.getText());
-    	while(matcher.find()){
-    		if(matcher.end()==matcher.start()) continue; //忽略null匹配结果
-    		building = StringUtil.substring(addr.getText(), matcher.start(), matcher.end()-1);
-    		//最小的匹配模式形如：7栋301，包括4个非空goup：[0:7栋301]、[1:7栋]、[2:栋]、[3:301]
-    		int nonEmptyGroups = 0;
-    		for(int i=0; i<matcher.groupCount(); i++){
-    			String groupStr = matcher.group(i);
-    			if(groupStr!=null) nonEmptyGroups++;
-    		}
-    		if(P_BUILDING_NUM_V.matcher(building).find() && nonEmptyGroups>3){
-    			//山东青岛市南区宁夏路118号4号楼6单元202。去掉【路xxx号】前缀
-    			building = StringUtil.substring(addr.getText(), matcher.start(), matcher.end()-1);
-    			int pos = matcher.start();
-    			if(building.startsWith("路") || building.startsWith("街") || building.startsWith("巷")){
-    				pos += building.indexOf("号")+1;
-    				building = StringUtil.substring(addr.getText(), pos, matcher.end()-1);
-    			}
-    			addr.setBuildingNum(building);
-    			addr.setText(StringUtil.head(addr.getText(), pos));
-	    		found = true;
-	    		break;
-    		}
-    	}
-    	if(!found){
-    		//xx-xx-xx（xx栋xx单元xxx）
-    		matcher = P_BUILDING_NUM2.matcher(addr.getText());
-    		if(matcher.find()){
-    			addr.setBuildingNum(StringUtil.substring(addr.getText(), matcher.start(), matcher.end()-1));
-    			addr.setText(StringUtil.head(addr.getText(), matcher.start()));
-	    		found = true;
-    		}
-    	}
-    	if(!found){
-    		//xx组xx号
-    		matcher = P_BUILDING_NUM3.matcher(addr.getText());
-    		if(matcher.find()){
-    			addr.setBuildingNum(StringUtil.substring(addr.getText(), matcher.start(), matcher.end()-1));
-    			addr.setText(StringUtil.head(addr.getText(), matcher.start()));
-	    		found = true;
-    		}
-    	}
-    	
-    	return found;
+		//抽取building，依次尝试：xx[幢|幢|号楼|#]xx[单元]xxx、xx-xx-xx（xx栋xx单元xxx）、xx组xx号
+		//山东青岛市南区宁夏路118号4号楼6单元202，会去掉【路xxx号】前缀
+		int[] span = new int[2];
+		if(!AddressScanner.findBuildingNum(addr.getText(), span)) return false;
+		addr.setBuildingNum(addr.getText().substring(span[0], span[1]));
+		addr.setText(StringUtil.head(addr.getText(), span[0]));
+		return true;
 	}
 
 	
+	//***************************************************************************************
+	// 并行批量处理
+	//***************************************************************************************
+	private static interface BatchTask<T> {
+		/**
+		 * 处理单个地址，不能抛出异常。
+		 */
+		T run(String text, RegionInterpreterVisitor visitor);
+	}
+	
+	/**
+	 * 将texts切分成连续的多段，由线程池并行处理，按输入顺序合并结果。
+	 * 数据量较小或者线程数小于等于1时，直接在当前线程中串行处理。
+	 */
+	private <T> List<T> runBatch(final List<String> texts, final BatchTask<T> task){
+		int size = texts.size();
+		int parallelism = this.threads;
+		if(parallelism<=1 || size<=MIN_BATCH_CHUNK){
+			RegionInterpreterVisitor visitor = visitors.get();
+			List<T> results = new ArrayList<T>(size);
+			for(String text : texts) results.add(task.run(text, visitor));
+			return results;
+		}
+		
+		//每个线程分配多段，避免个别耗时较长的分段拖慢整体
+		int chunk = Math.max(MIN_BATCH_CHUNK, (size + parallelism * 4 - 1) / (parallelism * 4));
+		ThreadPoolExecutor pool = this.getExecutor();
+		List<Future<List<T>>> futures = new ArrayList<Future<List<T>>>(size / chunk + 1);
+		for(int from=0; from<size; from+=chunk){
+			final int begin = from, end = Math.min(size, from + chunk);
+			futures.add(pool.submit(new Callable<List<T>>() {
+				@Override
+				public List<T> call() throws Exception {
+					RegionInterpreterVisitor visitor = visitors.get();
+					List<T> results = new ArrayList<T>(end - begin);
+					for(int i=begin; i<end; i++) results.add(task.run(texts.get(i), visitor));
+					return results;
+				}
+			}));
+		}
+		
+		List<T> results = new ArrayList<T>(size);
+		try{
+			for(Future<List<T>> future : futures)
+				results.addAll(future.get());
+		}catch(InterruptedException ex){
+			for(Future<List<T>> future : futures) future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Batch interpreting interrupted", ex);
+		}catch(ExecutionException ex){
+			for(Future<List<T>> future : futures) future.cancel(true);
+			Throwable cause = ex.getCause();
+			if(cause instanceof RuntimeException) throw (RuntimeException)cause;
+			throw new RuntimeException(cause);
+		}
+		return results;
+	}
+	
+	private synchronized ThreadPoolExecutor getExecutor(){
+		if(this.executor==null){
+			//空闲线程超时后退出，不需要显式关闭
+			this.executor = new ThreadPoolExecutor(this.threads, this.threads, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+			this.executor.allowCoreThreadTimeOut(true);
+		}
+		return this.executor;
+	}
+	
 	//***************************************************************************************
 	// Spring IoC
 	//***************************************************************************************
+	/**
+	 * 批量解析的并行线程数，默认为CPU核数，小于等于1时串行解析。
+	 * @param value
+	 */
+	public synchronized void setThreads(int value){
+		if(value==this.threads) return;
+		this.threads = value;
+		if(this.executor!=null){
+			this.executor.shutdown();
+			this.executor = null;
+		}
+	}
 	public void setTermIndex(TermIndexBuilder value){
 		this.termIndex = value;
 	}
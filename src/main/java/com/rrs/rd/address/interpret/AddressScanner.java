@@ -0,0 +1,482 @@
+package com.rrs.rd.address.interpret;
+
+/**
+ * 地址文本扫描器，用手写的逐字符扫描代替{@link AddressInterpreter}中提取楼号、道路、乡镇村庄的正则表达式。
+ *
+ * <p>
+ * 每个方法对应一个原来使用的正则表达式（写在方法的注释中），匹配结果与正则表达式完全相同，
+ * 包括贪婪匹配、回溯、{@link java.util.regex.Matcher#find() find()}的起始位置等细节。<br />
+ * 这些正则表达式的各个部分要么字符集互不相交，要么全部是可选部分，回溯只会发生在少数几个位置，
+ * 因此可以在一遍扫描中确定匹配结果，不需要正则引擎的状态机和回溯栈。
+ * </p>
+ *
+ * <p>匹配位置通过参数中的int数组返回，扫描过程中不创建任何Java对象。线程安全。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public final class AddressScanner {
+	/**
+	 * 乡镇村庄匹配模式：<code>^((?&lt;z&gt;[一-龥]{2,2}(镇|乡))(?&lt;c&gt;[一-龥]{1,3}村)?)</code>
+	 */
+	public static final int TOWN1 = 1;
+	/**
+	 * 乡镇村庄匹配模式：<code>^((?&lt;z&gt;[一-龥]{1,3}镇)?(?&lt;x&gt;[一-龥]{1,3}乡)?(?&lt;c&gt;[一-龥]{1,3}村(?!(村|委|公路|(东|西|南|北)?(大街|大道|路|街))))?)</code>
+	 */
+	public static final int TOWN2 = 2;
+	/**
+	 * 村庄匹配模式：<code>^(?&lt;c&gt;[一-龥]{1,3}村(?!(村|委|公路|(东|西|南|北)?(大街|大道|路|街))))?</code>
+	 */
+	public static final int TOWN3 = 3;
+
+	private AddressScanner(){ }
+
+	//***************************************************************************************
+	// 楼号
+	//***************************************************************************************
+	/**
+	 * 查找楼号，依次尝试以下3种模式，返回第一个匹配结果。
+	 * <ol>
+	 * <li>xx栋xx单元xxx：<code>((路|街|巷)[0-9]+号)?([0-9A-Z一二三四五六七八九十]+(栋|橦|幢|座|号楼|号|\#楼?)){0,1}([一二三四五六七八九十东西南北甲乙丙0-9]+(单元|门|梯|层|座))?([0-9]+(室|房)?)?</code>，
+	 * 至少匹配上2个部分，并且包含<code>(栋|幢|橦|号楼|号|\#|\#楼|单元|室|房|门)+</code>；匹配结果以【路xxx号】开头时去掉这个前缀。</li>
+	 * <li>xx-xx-xx：<code>[A-Za-z0-9]+([\#\-一－/\\]+[A-Za-z0-9]+)+</code></li>
+	 * <li>xx组xx号：<code>[0-9]+组[0-9\-一]+号?</code></li>
+	 * </ol>
+	 * @param text
+	 * @param span 返回楼号的位置，span[0]为起始位置，span[1]为结束位置（不包含）。
+	 * @return 找到楼号返回true。
+	 */
+	public static boolean findBuildingNum(String text, int[] span){
+		return findBuildingNum1(text, span) || findBuildingNum2(text, span) || findBuildingNum3(text, span);
+	}
+
+	private static boolean findBuildingNum1(String text, int[] span){
+		int len = text.length();
+		for(int p=0; p<=len; ){
+			int i = p, parts = 0, start = p;
+			boolean room = false;
+			//((路|街|巷)[0-9]+号)?
+			if(i<len && isRoadChar(text.charAt(i))) {
+				int j = skipDigits(text, i+1);
+				if(j>i+1 && j<len && text.charAt(j)=='号') {
+					i = start = j + 1;
+					parts++;
+				}
+			}
+			//([0-9A-Z一二三四五六七八九十]+(栋|橦|幢|座|号楼|号|\#楼?)){0,1}
+			int j = i;
+			while(j<len && isBuildingChar(text.charAt(j))) j++;
+			if(j>i) {
+				int k = buildingSuffix(text, j);
+				if(k>0) {
+					i = k;
+					parts++;
+				}
+			}
+			//([一二三四五六七八九十东西南北甲乙丙0-9]+(单元|门|梯|层|座))?
+			j = i;
+			while(j<len && isUnitChar(text.charAt(j))) j++;
+			if(j>i) {
+				int k = unitSuffix(text, j);
+				if(k>0) {
+					i = k;
+					parts++;
+				}
+			}
+			//([0-9]+(室|房)?)?
+			j = skipDigits(text, i);
+			if(j>i) {
+				if(j<len && (text.charAt(j)=='室' || text.charAt(j)=='房')) j++;
+				i = j;
+				room = true;
+			}
+
+			if(i==p) { //空匹配，从下一个字符继续查找
+				p++;
+				continue;
+			}
+			//原实现统计非空group数量：group(0)，以及每个匹配上的部分各2个group，[0-9]+(室|房)?只统计1个，要求大于3个
+			if((parts>=2 || (parts==1 && room)) && hasBuildingKeyword(text, p, i)) {
+				span[0] = start;
+				span[1] = i;
+				return true;
+			}
+			p = i;
+		}
+		return false;
+	}
+
+	private static boolean findBuildingNum2(String text, int[] span){
+		int len = text.length();
+		for(int p=0; p<len; ){
+			if(!isAlnum(text.charAt(p))) {
+				p++;
+				continue;
+			}
+			int e = skipAlnum(text, p), end = -1;
+			for(int i=e; ; ){
+				int s = i;
+				while(s<len && isNumSeparator(text.charAt(s))) s++;
+				if(s==i) break;
+				int a = skipAlnum(text, s);
+				if(a==s) break;
+				end = i = a;
+			}
+			if(end>0) {
+				span[0] = p;
+				span[1] = end;
+				return true;
+			}
+			p = e; //同一段字母数字中，从后面位置开始的匹配结果相同，直接跳过
+		}
+		return false;
+	}
+
+	private static boolean findBuildingNum3(String text, int[] span){
+		int len = text.length();
+		for(int p=0; p<len; ){
+			if(!isDigit(text.charAt(p))) {
+				p++;
+				continue;
+			}
+			int e = skipDigits(text, p);
+			if(e<len && text.charAt(e)=='组') {
+				int f = e + 1;
+				while(f<len && (isDigit(text.charAt(f)) || text.charAt(f)=='-' || text.charAt(f)=='一')) f++;
+				if(f>e+1) {
+					if(f<len && text.charAt(f)=='号') f++;
+					span[0] = p;
+					span[1] = f;
+					return true;
+				}
+			}
+			p = e;
+		}
+		return false;
+	}
+
+	//***************************************************************************************
+	// 道路
+	//***************************************************************************************
+	/**
+	 * 从文本开头匹配道路和门牌号：
+	 * <code>^(?&lt;road&gt;([一-龥]{2,4}(路|街坊|街|道|大街|大道)))(?&lt;ex&gt;[甲乙丙丁])?(?&lt;roadnum&gt;[0-9０-９一二三四五六七八九十]+(号院|号楼|号大院|号|號|巷|弄|院|区|条|\#院|\#))?</code>
+	 * @param text
+	 * @param span 返回匹配位置，span[0]为道路的结束位置，span[1]为门牌号（包括ex部分）的结束位置，没有门牌号时与span[0]相同。
+	 * @return 匹配上道路返回true。
+	 */
+	public static boolean matchRoad(String text, int[] span){
+		int len = text.length(), n = 0;
+		while(n<4 && n<len && isChinese(text.charAt(n))) n++;
+		int road = -1;
+		//[一-龥]{2,4}贪婪匹配，道路关键字本身也是汉字，从最长开始回溯
+		for(; n>=2 && road<0; n--) road = roadSuffix(text, n);
+		if(road<0) return false;
+
+		int i = road;
+		if(i<len && isRoadNumPrefix(text.charAt(i))) i++;
+		int j = i;
+		while(j<len && isRoadNumChar(text.charAt(j))) j++;
+		if(j>i) {
+			int k = roadNumSuffix(text, j);
+			if(k>0) i = k;
+		}
+		span[0] = road;
+		span[1] = i;
+		return true;
+	}
+
+	//***************************************************************************************
+	// 乡镇、村庄
+	//***************************************************************************************
+	/**
+	 * 从文本开头匹配乡镇、村庄。
+	 * @param text
+	 * @param pattern 匹配模式：{@link #TOWN1}、{@link #TOWN2}、{@link #TOWN3}。
+	 * @param ends 返回z（镇）、x（乡）、c（村）3个group的结束位置，没有匹配上的group为-1。
+	 * 每个group的起始位置为前一个匹配上的group的结束位置，都没有匹配上时为0。
+	 * @return 匹配成功返回true。{@link #TOWN2}、{@link #TOWN3}所有部分都是可选的，总是返回true。
+	 */
+	public static boolean matchTown(String text, int pattern, int[] ends){
+		ends[0] = ends[1] = ends[2] = -1;
+		switch(pattern){
+			case TOWN1:
+				if(text.length()<3 || !isChinese(text.charAt(0)) || !isChinese(text.charAt(1))
+						|| (text.charAt(2)!='镇' && text.charAt(2)!='乡'))
+					return false;
+				ends[0] = 3;
+				ends[2] = village(text, 3, false);
+				return true;
+			case TOWN2:
+				ends[0] = endsWith(text, 0, '镇');
+				ends[1] = endsWith(text, ends[0]<0 ? 0 : ends[0], '乡');
+				ends[2] = village(text, ends[1]>=0 ? ends[1] : (ends[0]>=0 ? ends[0] : 0), true);
+				return true;
+			case TOWN3:
+				ends[2] = village(text, 0, true);
+				return true;
+			default:
+				throw new IllegalArgumentException("Unknown town pattern " + pattern);
+		}
+	}
+
+	//***************************************************************************************
+	// 单元、楼层等
+	//***************************************************************************************
+	/**
+	 * 删除单元、楼层、房间等文本，与依次执行下面两个替换的结果相同：<br />
+	 * <code>replaceAll("[0-9A-Za-z\\#]+(单元|楼|室|层|米|户|\\#)", "")</code><br />
+	 * <code>replaceAll("[一二三四五六七八九十]+(单元|楼|室|层|米|户)", "")</code>
+	 * @param text
+	 * @return
+	 */
+	public static String removeUnits(String text){
+		return removeUnits(removeUnits(text, false), true);
+	}
+
+	private static String removeUnits(String text, boolean chineseDigits){
+		int len = text.length(), copied = 0;
+		StringBuilder sb = null;
+		for(int p=0; p<len; ){
+			if(!isUnitPrefixChar(text.charAt(p), chineseDigits)) {
+				p++;
+				continue;
+			}
+			int e = p;
+			while(e<len && isUnitPrefixChar(text.charAt(e), chineseDigits)) e++;
+			//[...]+贪婪匹配，从最长开始回溯；前缀字符集中只有#可能同时是后缀
+			int end = -1;
+			for(int k=e; k>p && end<0; k--) end = unitWordSuffix(text, k, !chineseDigits);
+			if(end<0) { //同一段字符中，从后面位置开始也不会匹配上
+				p = e;
+				continue;
+			}
+			if(sb==null) sb = new StringBuilder(len);
+			sb.append(text, copied, p);
+			copied = p = end;
+		}
+		if(sb==null) return text;
+		sb.append(text, copied, len);
+		return sb.toString();
+	}
+
+	//***************************************************************************************
+	// 字符集及后缀
+	//***************************************************************************************
+	private static boolean isChinese(char c){
+		return c>='一' && c<='龥';
+	}
+	private static boolean isDigit(char c){
+		return c>='0' && c<='9';
+	}
+	private static boolean isAlnum(char c){
+		return (c>='0' && c<='9') || (c>='A' && c<='Z') || (c>='a' && c<='z');
+	}
+	private static boolean isChineseDigit(char c){
+		switch(c){
+			case '一': case '二': case '三': case '四': case '五':
+			case '六': case '七': case '八': case '九': case '十':
+				return true;
+			default:
+				return false;
+		}
+	}
+	private static boolean isRoadChar(char c){
+		return c=='路' || c=='街' || c=='巷';
+	}
+	/**
+	 * [0-9A-Z一二三四五六七八九十]
+	 */
+	private static boolean isBuildingChar(char c){
+		return isDigit(c) || (c>='A' && c<='Z') || isChineseDigit(c);
+	}
+	/**
+	 * [一二三四五六七八九十东西南北甲乙丙0-9]
+	 */
+	private static boolean isUnitChar(char c){
+		switch(c){
+			case '东': case '西': case '南': case '北': case '甲': case '乙': case '丙':
+				return true;
+			default:
+				return isDigit(c) || isChineseDigit(c);
+		}
+	}
+	/**
+	 * [\#\-一－/\\]
+	 */
+	private static boolean isNumSeparator(char c){
+		return c=='#' || c=='-' || c=='一' || c=='－' || c=='/' || c=='\\';
+	}
+	private static boolean isRoadNumPrefix(char c){
+		return c=='甲' || c=='乙' || c=='丙' || c=='丁';
+	}
+	/**
+	 * [0-9０１２３４５６７８９一二三四五六七八九十]
+	 */
+	private static boolean isRoadNumChar(char c){
+		return isDigit(c) || (c>='０' && c<='９') || isChineseDigit(c);
+	}
+	/**
+	 * [0-9A-Za-z\#]或者[一二三四五六七八九十]
+	 */
+	private static boolean isUnitPrefixChar(char c, boolean chineseDigits){
+		return chineseDigits ? isChineseDigit(c) : (isAlnum(c) || c=='#');
+	}
+
+	private static int skipDigits(String text, int pos){
+		while(pos<text.length() && isDigit(text.charAt(pos))) pos++;
+		return pos;
+	}
+	private static int skipAlnum(String text, int pos){
+		while(pos<text.length() && isAlnum(text.charAt(pos))) pos++;
+		return pos;
+	}
+	private static char charAt(String text, int pos){
+		return pos<text.length() ? text.charAt(pos) : 0;
+	}
+
+	/**
+	 * (栋|橦|幢|座|号楼|号|\#楼?)
+	 * @return 匹配上返回结束位置，否则返回-1。
+	 */
+	private static int buildingSuffix(String text, int pos){
+		switch(charAt(text, pos)){
+			case '栋': case '橦': case '幢': case '座':
+				return pos + 1;
+			case '号': case '#':
+				return charAt(text, pos+1)=='楼' ? pos + 2 : pos + 1;
+			default:
+				return -1;
+		}
+	}
+	/**
+	 * (单元|门|梯|层|座)
+	 */
+	private static int unitSuffix(String text, int pos){
+		switch(charAt(text, pos)){
+			case '单':
+				return charAt(text, pos+1)=='元' ? pos + 2 : -1;
+			case '门': case '梯': case '层': case '座':
+				return pos + 1;
+			default:
+				return -1;
+		}
+	}
+	/**
+	 * (单元|楼|室|层|米|户)，withSharp为true时还包括\#
+	 */
+	private static int unitWordSuffix(String text, int pos, boolean withSharp){
+		switch(charAt(text, pos)){
+			case '单':
+				return charAt(text, pos+1)=='元' ? pos + 2 : -1;
+			case '楼': case '室': case '层': case '米': case '户':
+				return pos + 1;
+			case '#':
+				return withSharp ? pos + 1 : -1;
+			default:
+				return -1;
+		}
+	}
+	/**
+	 * (路|街坊|街|道|大街|大道)
+	 */
+	private static int roadSuffix(String text, int pos){
+		switch(charAt(text, pos)){
+			case '路': case '道':
+				return pos + 1;
+			case '街':
+				return charAt(text, pos+1)=='坊' ? pos + 2 : pos + 1;
+			case '大':
+				char c = charAt(text, pos+1);
+				return c=='街' || c=='道' ? pos + 2 : -1;
+			default:
+				return -1;
+		}
+	}
+	/**
+	 * (号院|号楼|号大院|号|號|巷|弄|院|区|条|\#院|\#)
+	 */
+	private static int roadNumSuffix(String text, int pos){
+		switch(charAt(text, pos)){
+			case '号':
+				char c = charAt(text, pos+1);
+				if(c=='院' || c=='楼') return pos + 2;
+				if(c=='大' && charAt(text, pos+2)=='院') return pos + 3;
+				return pos + 1;
+			case '號': case '巷': case '弄': case '院': case '区': case '条':
+				return pos + 1;
+			case '#':
+				return charAt(text, pos+1)=='院' ? pos + 2 : pos + 1;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * 原实现的校验模式：(栋|幢|橦|号楼|号|\#|\#楼|单元|室|房|门)+
+	 */
+	private static boolean hasBuildingKeyword(String text, int start, int end){
+		for(int i=start; i<end; i++){
+			switch(text.charAt(i)){
+				case '栋': case '幢': case '橦': case '号': case '#': case '室': case '房': case '门':
+					return true;
+				case '单':
+					if(i+1<end && text.charAt(i+1)=='元') return true;
+				default:
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * [一-龥]{1,3}后面跟着suffix，贪婪匹配，从最长开始回溯。
+	 * @return 匹配上返回结束位置（包含suffix），否则返回-1。
+	 */
+	private static int endsWith(String text, int start, char suffix){
+		int n = 0;
+		while(n<3 && start+n<text.length() && isChinese(text.charAt(start+n))) n++;
+		for(; n>=1; n--){
+			if(charAt(text, start+n)==suffix) return start + n + 1;
+		}
+		return -1;
+	}
+	/**
+	 * [一-龥]{1,3}村，lookahead为true时要求后面不能是(?!(村|委|公路|(东|西|南|北)?(大街|大道|路|街)))。
+	 */
+	private static int village(String text, int start, boolean lookahead){
+		int n = 0;
+		while(n<3 && start+n<text.length() && isChinese(text.charAt(start+n))) n++;
+		for(; n>=1; n--){
+			int end = start + n + 1;
+			if(charAt(text, start+n)=='村' && (!lookahead || !isRejectedVillageFollowing(text, end))) return end;
+		}
+		return -1;
+	}
+	private static boolean isRejectedVillageFollowing(String text, int pos){
+		switch(charAt(text, pos)){
+			case '村': case '委':
+				return true;
+			case '公':
+				if(charAt(text, pos+1)=='路') return true;
+				break;
+			case '东': case '西': case '南': case '北':
+				if(isRoadWord(text, pos+1)) return true;
+				break;
+			default:
+		}
+		return isRoadWord(text, pos);
+	}
+	/**
+	 * (大街|大道|路|街)
+	 */
+	private static boolean isRoadWord(String text, int pos){
+		switch(charAt(text, pos)){
+			case '路': case '街':
+				return true;
+			case '大':
+				char c = charAt(text, pos+1);
+				return c=='街' || c=='道';
+			default:
+				return false;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package com.rrs.rd.address.interpret;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -12,7 +13,6 @@ import com.rrs.rd.address.Division;
 import com.rrs.rd.address.TermType;
 import com.rrs.rd.address.index.TermIndexEntry;
 import com.rrs.rd.address.index.TermIndexItem;
-import com.rrs.rd.address.persist.AddressPersister;
 import com.rrs.rd.address.persist.RegionEntity;
 import com.rrs.rd.address.persist.RegionType;
 
@@ -33,13 +33,14 @@ import com.rrs.rd.address.persist.RegionType;
  * 
  * <p><strong>使用方式</strong><br />
  * <pre>
- * RegionInterpreterVisitor visitor = new RegionInterpreterVisitor(persister);
+ * TermIndexBuilder builder = new TermIndexBuilder(persister, ignoringRegionNames);
+ * RegionInterpreterVisitor visitor = new RegionInterpreterVisitor();
  * 
  * String text = "广东从化区温泉镇新田村";
  * builder.deepMostQuery(text, visitor);
  * if(visitor.hasResult()){
- *     StdDivision region1 = visitor.resultDivision();
- *     String leftText = StringUtil.substring(text, visitor.resultPosition() + 1);
+ *     Division division = visitor.resultDivision();
+ *     String leftText = StringUtil.substring(text, visitor.resultEndPosition() + 1);
  * }
  * 
  * visitor.reset();
@@ -48,7 +49,10 @@ import com.rrs.rd.address.persist.RegionType;
  * if(visitor.hasResult()){
  *     //......
  * }
+ * </pre>
  * 
+ * 区域之间的从属关系直接使用{@link RegionEntity#getParent()}、{@link RegionEntity#ancestorId(int)}判断，
+ * 索引中的区域对象必须来自已执行{@link RegionEntity#linkHierarchy()}的区域树（{@link com.rrs.rd.address.persist.AddressPersister#rootRegion()}）。<br />
  * {@link RegionInterpreterVisitor}在匹配过程中不会new任何Java对象，提升JVM执行性能和垃圾回收效率。<br />
  * 执行多次省市区匹配只需创建一个{@link RegionInterpreterVisitor}对象，在每次匹配开始时必须调用{@link #reset()}方法复位状态。
  * </p>
@@ -64,13 +68,19 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 	private static boolean isDebug = false;
 	private static Set<Character> ambiguousChars = null;
 	
-	private AddressPersister persister = null;
-	
 	private int currentLevel = 0, deepMostLevel = 0, currentPos = -1, deepMostPos = -1;
 	private int fullMatchCount = 0, deepMostFullMatchCount = 0;
 	private Division deepMostDivision = new Division();
 	private Division curDivision = new Division();
 	private Stack<TermIndexItem> stack = new Stack<TermIndexItem>(); 
+	/**
+	 * 与stack同步的前缀状态：leastRegions[i]为stack[0..i]中省市区级别最低的一个，
+	 * lowerLevels[i]为stack[0..i]中是否存在街道、乡镇、村庄的标记位（{@link #STREET}、{@link #TOWN}、{@link #VILLAGE}）。
+	 * 出栈时直接读取，不需要重新扫描stack。
+	 */
+	private RegionEntity[] leastRegions = new RegionEntity[8];
+	private int[] lowerLevels = new int[8];
+	private static final int STREET = 1, TOWN = 2, VILLAGE = 4;
 	
 
 	static {
@@ -82,10 +92,6 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 		ambiguousChars.add('乡');
 	}
 
-	public RegionInterpreterVisitor(AddressPersister persister){
-		this.persister = persister;
-	}
-
 	/**
 	 * 为本轮匹配进行初始化工作。
 	 */
@@ -118,6 +124,7 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 		
 		//更新当前状态
 		stack.push(acceptableItem); //匹配项压栈
+		pushPrefixState(acceptableItem.getType(), region);
 		if(isFullMatch(entry, region)) fullMatchCount++; //使用全名匹配的词条数
 		currentPos = positioning(region, entry, text, pos); //当前结束的位置
 		updateCurrentDivisionState(region); //刷新当前已经匹配上的省市区
@@ -149,26 +156,14 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 		if(isFullMatch(entry, region)) fullMatchCount++; //更新全名匹配的数量
 		if(tii.getType()==TermType.Ignore) return; //如果是忽略项，无需更新当前已匹配的省市区状态
 		
-		//扫描一遍stack，找出街道street、乡镇town、村庄village，以及省市区中级别最低的一个least
-		RegionEntity least = null, street=null, town=null, village=null;
-		for(int i=0; i<stack.size(); i++) {
-			tii = stack.get(i);
-			if(tii.getType()==TermType.Ignore) continue;
-			RegionEntity r = (RegionEntity)tii.getValue();
-			switch(r.getType()){
-				case Street:
-				case PlatformL4: street = r; continue;
-				case Town: town = r; continue;
-				case Village: village = r; continue;
-				default:
-			}
-			if(least==null) { least = r; continue; }
-			if(r.getType().toValue() > least.getType().toValue()) least = r;
-		}
+		//剩余stack中的街道、乡镇、村庄，以及省市区中级别最低的一个least
+		int top = stack.size() - 1;
+		RegionEntity least = top<0 ? null : leastRegions[top];
+		int lower = top<0 ? 0 : lowerLevels[top];
 		
-		if(street==null) curDivision.setStreet(null); //剩余匹配项中没有街道了
-		if(town==null) curDivision.setTown(null); //剩余匹配项中没有乡镇了
-		if(village==null) curDivision.setVillage(null); //剩余匹配项中没有村庄了
+		if((lower & STREET)==0) curDivision.setStreet(null); //剩余匹配项中没有街道了
+		if((lower & TOWN)==0) curDivision.setTown(null); //剩余匹配项中没有乡镇了
+		if((lower & VILLAGE)==0) curDivision.setVillage(null); //剩余匹配项中没有村庄了
 		//只有街道、乡镇、村庄都没有时，才开始清空省市区
 		if(curDivision.hasStreet() || curDivision.hasTown() || curDivision.hasVillage()) return;
 		if(least!=null){
@@ -203,6 +198,33 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 	}
 	
 	
+	/**
+	 * 匹配项压栈后，在前一层前缀状态的基础上计算当前层的前缀状态。
+	 * @param type
+	 * @param region
+	 */
+	private void pushPrefixState(TermType type, RegionEntity region){
+		int top = stack.size() - 1;
+		if(top >= leastRegions.length) {
+			leastRegions = Arrays.copyOf(leastRegions, leastRegions.length * 2);
+			lowerLevels = Arrays.copyOf(lowerLevels, lowerLevels.length * 2);
+		}
+		RegionEntity least = top==0 ? null : leastRegions[top-1];
+		int lower = top==0 ? 0 : lowerLevels[top-1];
+		if(type!=TermType.Ignore) {
+			switch(region.getType()){
+				case Street:
+				case PlatformL4: lower |= STREET; break;
+				case Town: lower |= TOWN; break;
+				case Village: lower |= VILLAGE; break;
+				default:
+					if(least==null || region.getType().toValue() > least.getType().toValue()) least = region;
+			}
+		}
+		leastRegions[top] = least;
+		lowerLevels[top] = lower;
+	}
+	
 	private int positioning(RegionEntity acceptedRegion, TermIndexEntry entry, String text, int pos) {
 		if(acceptedRegion==null) return pos;
 		//需要调整指针的情况
@@ -297,10 +319,9 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 			}
 			//2. 中间缺一级的情况。
 			if(mostPriority==-1 || mostPriority>2) {
-				RegionEntity parent = persister.getRegion(region.getParentId());
 				//2.1 缺地级市
 				if(!curDivision.hasCity() && curDivision.hasProvince() && region.getType()==RegionType.District 
-						&& curDivision.getProvince().getId()==parent.getParentId()){
+						&& curDivision.getProvince().getId()==region.ancestorId(2)){
 					mostPriority = 2;
 					acceptableItem = item;
 					continue;
@@ -309,7 +330,7 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 				if(!curDivision.hasDistrict() && curDivision.hasCity()
 						&& (region.getType()==RegionType.Street || region.getType()==RegionType.Town 
 							|| region.getType()==RegionType.PlatformL4 || region.getType()==RegionType.Village)
-						&& curDivision.getCity().getId()==parent.getParentId()){
+						&& curDivision.getCity().getId()==region.ancestorId(2)){
 					mostPriority = 2;
 					acceptableItem = item;
 					continue;
@@ -358,8 +379,7 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 						&& curDivision.hasCity() && curDivision.hasProvince() 
 						&& isFullMatch(entry, region) //使用的全名匹配
 						&& curDivision.getCity().getId()!=region.getParentId()) {
-					RegionEntity city = persister.getRegion(region.getParentId()); //区县的地级市
-					if(city.getParentId()==curDivision.getProvince().getId()) {
+					if(region.ancestorId(2)==curDivision.getProvince().getId()) { //区县的地级市隶属于已匹配的省份
 						mostPriority = 4;
 						acceptableItem = item;
 						continue;
@@ -370,9 +390,8 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 			if(region.getType()==RegionType.Street || region.getType()==RegionType.Town 
 					|| region.getType()==RegionType.Village || region.getType()==RegionType.PlatformL4){
 				if(!curDivision.hasDistrict()) {
-					RegionEntity parent = persister.getRegion(region.getParentId()); //parent为区县
-					parent = persister.getRegion(parent.getParentId()); //parent为地级市
-					if(curDivision.hasCity() && curDivision.getCity().getId()==parent.getId()){
+					//上级为区县，区县的上级为地级市
+					if(curDivision.hasCity() && curDivision.getCity().getId()==region.ancestorId(2)){
 						mostPriority = 5;
 						acceptableItem = item;
 						continue;
@@ -438,33 +457,33 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 			case ProvinceLevelCity2:
 				curDivision.setCity(region);
 				if(!curDivision.hasProvince())
-					curDivision.setProvince(persister.getRegion(region.getParentId()));
+					curDivision.setProvince(region.getParent());
 				break;
 			case CityLevelDistrict:
 				curDivision.setCity(region);
 				curDivision.setDistrict(region);
 				if(!curDivision.hasProvince())
-					curDivision.setProvince(persister.getRegion(region.getParentId()));
+					curDivision.setProvince(region.getParent());
 				break;
 			case District:
 				curDivision.setDistrict(region);
 				//成功匹配了区县，则强制更新地级市
-				curDivision.setCity(persister.getRegion(curDivision.getDistrict().getParentId()));
+				curDivision.setCity(curDivision.getDistrict().getParent());
 				if(!curDivision.hasProvince())
-					curDivision.setProvince(persister.getRegion(curDivision.getCity().getParentId()));
+					curDivision.setProvince(curDivision.getCity().getParent());
 				break;
 			case Street:
 			case PlatformL4:
 				if(!curDivision.hasStreet()) curDivision.setStreet(region);
-				if(!curDivision.hasDistrict()) curDivision.setDistrict(persister.getRegion(region.getParentId()));
+				if(!curDivision.hasDistrict()) curDivision.setDistrict(region.getParent());
 				break;
 			case Town:
 				if(!curDivision.hasTown()) curDivision.setTown(region);
-				if(!curDivision.hasDistrict()) curDivision.setDistrict(persister.getRegion(region.getParentId()));
+				if(!curDivision.hasDistrict()) curDivision.setDistrict(region.getParent());
 				break;
 			case Village:
 				if(!curDivision.hasVillage()) curDivision.setVillage(region);
-				if(!curDivision.hasDistrict()) curDivision.setDistrict(persister.getRegion(region.getParentId()));
+				if(!curDivision.hasDistrict()) curDivision.setDistrict(region.getParent());
 				break;
 			default:
 		}
@@ -534,8 +553,12 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 	}
 	/**
 	 * 状态复位。
+	 * <p>上一次匹配因异常中断时stack中可能残留匹配项，一并清空stack及与之同步的前缀状态。</p>
 	 */
 	public void reset(){
+		stack.clear();
+		Arrays.fill(leastRegions, null);
+		Arrays.fill(lowerLevels, 0);
 		currentLevel = 0;
 		deepMostLevel = 0;
 		currentPos = -1;
@@ -1,23 +1,73 @@
 package com.rrs.rd.address.misc;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
-import com.rrs.rd.address.persist.AddressEntity;
 import com.rrs.rd.address.persist.AddressPersister;
 import com.rrs.rd.address.persist.RegionEntity;
 import com.rrs.rd.address.similarity.SimilarityComputer;
 
+/**
+ * 为全部缓存分区（省-市-区县）生成文档向量缓存文件。
+ * <p>
+ * 用法：BuildFileCache [-t 线程数] [-r]<br />
+ * -t：同时生成缓存文件的线程数，默认为CPU核数；<br />
+ * -r：续跑，跳过上次运行中已完成的缓存分区。
+ * </p>
+ * <p>
+ * 每个线程从数据库流式读取一个缓存分区的地址（{@link AddressPersister#scanAddresses(long, long, long, com.rrs.rd.address.persist.AddressHandler)}），
+ * 边读取边分词、生成文档向量，文档向量分块写入溢出文件（参考{@link com.rrs.rd.address.similarity.VectorSegmentWriter}），
+ * 内存占用与缓存分区的地址数量无关，只与分区中不同词条的数量有关。
+ * 读取过程中每个线程占用一个数据库连接，线程数不能超过连接池的最大连接数。<br />
+ * 缓存文件先写入临时文件再替换（参考{@link com.rrs.rd.address.similarity.VectorSegmentWriter}），运行中断不会留下不完整的缓存文件；
+ * 已完成的缓存分区记录在缓存目录的{@value #DONE_FILE}文件中，不指定-r时运行前清空。
+ * </p>
+ * @author Richie 刘志斌 yudi@sina.com
+ */
 public class BuildFileCache {
+	public static final String DONE_FILE = "build-file-cache.done";
+
 	private static ClassPathXmlApplicationContext context = null;
 	private static AddressPersister persister = null;
 	private static SimilarityComputer computer = null;
 	private static SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
 
+	private static Writer doneWriter = null;
+	private static AtomicInteger built = new AtomicInteger(), empty = new AtomicInteger();
+	private static AtomicLong addressCount = new AtomicLong();
+	private static List<String> failed = new ArrayList<String>();
+
 	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean resume = false;
+		for(int i=0; i<args.length; i++){
+			if("-t".equals(args[i]) && i+1<args.length) threads = Integer.parseInt(args[++i]);
+			else if("-r".equals(args[i])) resume = true;
+			else {
+				System.out.println("> [错误] 无效的参数：" + args[i] + "，用法：BuildFileCache [-t 线程数] [-r]");
+				return;
+			}
+		}
+
 		//启动spring容器
 		try{
 			context = new ClassPathXmlApplicationContext(new String[] { "spring-config.xml" });
@@ -32,47 +82,152 @@ public class BuildFileCache {
 			ex.printStackTrace(System.out);
 			return;
 		}
-		context.start(); 
-		
+		context.start();
+
+		//1. 列出全部缓存分区，续跑时跳过已完成的分区
+		File doneFile = new File(computer.getCacheFolder(), DONE_FILE);
+		Set<String> done = new HashSet<String>();
+		try{
+			if(resume) done = readDoneFile(doneFile);
+			else if(doneFile.exists()) doneFile.delete();
+			doneWriter = new OutputStreamWriter(new FileOutputStream(doneFile, true), "utf8");
+		}catch(IOException ex){
+			System.out.println("> [错误] 无法读写文件：" + doneFile.getAbsolutePath() + "，" + ex.getMessage());
+			return;
+		}
+		List<Task> tasks = new ArrayList<Task>();
 		RegionEntity root = persister.rootRegion();
 		for(RegionEntity province : root.getChildren()){
-			//if(province.getId()!=110000) continue; //TODO: test only. 仅测试北京的地址
 			for(RegionEntity city : province.getChildren()){
 				if(city.getChildren()==null){
-					long start = System.currentTimeMillis();
+					tasks.add(new Task(province, city, null));
+					continue;
+				}
+				for(RegionEntity county : city.getChildren())
+					tasks.add(new Task(province, city, county));
+			}
+		}
+		int skipped = 0;
+		for(int i=tasks.size()-1; i>=0; i--){
+			if(!done.contains(tasks.get(i).key)) continue;
+			tasks.remove(i);
+			skipped++;
+		}
+		System.out.println("> " + tasks.size() + " partitions to build, " + skipped + " skipped, "
+			+ threads + " threads.");
+
+		//2. 每个缓存分区边读取边生成缓存文件
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch latch = new CountDownLatch(tasks.size());
+		for(final Task task : tasks){
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
 					Date startDate = new Date();
 					try{
-						List<AddressEntity> addresses = persister.loadAddresses(province.getId(), city.getId(), 0);
-						if(addresses==null || addresses.isEmpty()) continue;
-						
-						computer.buildDocumentFileCache(computer.buildCacheKey(addresses.get(0)), addresses);
-						System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] "
-							+ province.getName() + "-" + city.getName() + ", " + addresses.size() + " addresses, " 
-							+ "elapsed: " + (System.currentTimeMillis()-start)/1000.0 + "s.");
+						build(task, startDate);
 					}catch(Exception ex){
-						System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] "
-							+ province.getName() + "-" + city.getName() + " error: " + ex.getMessage());
-						ex.printStackTrace(System.out);
-					}
-				}else{
-					for(RegionEntity county : city.getChildren()){
-						long start = System.currentTimeMillis();
-						Date startDate = new Date();
-						try{
-							List<AddressEntity> addresses = persister.loadAddresses(province.getId(), city.getId(), county.getId());
-							if(addresses==null || addresses.isEmpty()) continue;
-							computer.buildDocumentFileCache(computer.buildCacheKey(addresses.get(0)), addresses);
-							System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] "
-								+ province.getName() + "-" + city.getName() + "-" + county.getName() + ", " + addresses.size() + " addresses, " 
-								+ "elapsed: " + (System.currentTimeMillis()-start)/1000.0 + "s.");
-						}catch(Exception ex){
-							System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] "
-								+ province.getName() + "-" + city.getName() + " error: " + ex.getMessage());
-							ex.printStackTrace(System.out);
-						}
+						fail(task, startDate, ex);
+					}finally{
+						latch.countDown();
 					}
 				}
+			});
+		}
+		try {
+			latch.await();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		executor.shutdown();
+		try {
+			doneWriter.close();
+		} catch (IOException ex) {
+		}
+
+		//3. 汇总
+		double elapsed = (System.currentTimeMillis() - start) / 1000.0;
+		System.out.println("> " + built.get() + " partitions built, " + empty.get() + " empty, " + skipped + " skipped, "
+			+ failed.size() + " failed; " + addressCount.get() + " addresses, elapsed: " + elapsed + "s, "
+			+ (elapsed>0 ? Math.round(addressCount.get() / elapsed) : 0) + " addresses/s.");
+		if(!failed.isEmpty())
+			System.out.println("> [错误] failed partitions: " + failed + "，修复后使用-r参数续跑");
+		context.close();
+	}
+
+	private static void build(Task task, Date startDate) throws IOException {
+		SimilarityComputer.FileCacheBuilder builder = computer.new FileCacheBuilder(task.key);
+		int count = 0;
+		try{
+			count = persister.scanAddresses(task.provinceId, task.cityId, task.countyId, builder);
+			//没有文档时删除以前生成的缓存文件
+			builder.close();
+		}finally{
+			builder.abort();
+		}
+		if(builder.getDocCount()<=0){
+			empty.incrementAndGet();
+			markDone(task);
+			return;
+		}
+		markDone(task);
+		built.incrementAndGet();
+		addressCount.addAndGet(count);
+		System.out.println("> [" + format(startDate) + " -> " + format(new Date()) + "] "
+			+ task.name + " (" + task.key + "), " + count + " addresses, "
+			+ "elapsed: " + (System.currentTimeMillis()-startDate.getTime())/1000.0 + "s.");
+	}
+
+	private static void fail(Task task, Date startDate, Exception ex){
+		synchronized (failed) {
+			failed.add(task.key);
+			System.out.println("> [" + format(startDate) + " -> " + format(new Date()) + "] "
+				+ task.name + " (" + task.key + ") error: " + ex.getMessage());
+			ex.printStackTrace(System.out);
+		}
+	}
+
+	private static synchronized void markDone(Task task) throws IOException {
+		doneWriter.write(task.key);
+		doneWriter.write('\n');
+		doneWriter.flush();
+	}
+
+	private static Set<String> readDoneFile(File file) throws IOException {
+		Set<String> done = new HashSet<String>();
+		if(!file.exists()) return done;
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "utf8"));
+		try{
+			String line = null;
+			while((line = br.readLine()) != null){
+				if(!line.trim().isEmpty()) done.add(line.trim());
 			}
+		}finally{
+			br.close();
+		}
+		return done;
+	}
+
+	private static String format(Date date){
+		synchronized (format) {
+			return format.format(date);
+		}
+	}
+
+	/**
+	 * 一个缓存分区的生成任务。
+	 */
+	private static class Task {
+		long provinceId, cityId, countyId;
+		String key, name;
+
+		Task(RegionEntity province, RegionEntity city, RegionEntity county){
+			this.provinceId = province.getId();
+			this.cityId = city.getId();
+			this.countyId = county==null ? 0 : county.getId();
+			this.key = computer.buildCacheKey(this.provinceId, this.cityId, this.countyId);
+			this.name = province.getName() + "-" + city.getName() + (county==null ? "" : "-" + county.getName());
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.rrs.rd.address.misc;
+
+import java.io.File;
+
+import com.rrs.rd.address.similarity.SimilarityComputer;
+
+/**
+ * 将缓存目录中文本格式的向量缓存文件（.vt）全部转换为二进制格式（.vs）。
+ * <p>
+ * 用法：ConvertFileCache [缓存目录]，不指定缓存目录时使用{@link SimilarityComputer}的默认缓存目录。<br />
+ * 已存在.vs文件的缓存分区会被重新转换覆盖；转换完成后.vt文件不再使用，可以手工删除。
+ * </p>
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class ConvertFileCache {
+	public static void main(String[] args) {
+		SimilarityComputer computer = new SimilarityComputer();
+		if(args.length>0) computer.setCacheFolder(args[0]);
+		File folder = new File(computer.getCacheFolder());
+		File[] files = folder.listFiles();
+		if(files==null) {
+			System.out.println("> [错误] 无法读取缓存目录：" + folder.getAbsolutePath());
+			return;
+		}
+		int converted = 0, failed = 0;
+		for(File file : files){
+			if(!file.isFile() || !file.getName().endsWith(".vt")) continue;
+			String key = file.getName().substring(0, file.getName().length() - 3);
+			long start = System.currentTimeMillis();
+			if(computer.convertTextFileCache(key)){
+				converted++;
+				System.out.println("> " + key + ".vt converted, elapsed: " + (System.currentTimeMillis()-start)/1000.0 + "s.");
+			}else{
+				failed++;
+				System.out.println("> [错误] " + key + ".vt convert failed.");
+			}
+		}
+		System.out.println("> " + converted + " converted, " + failed + " failed.");
+	}
+}
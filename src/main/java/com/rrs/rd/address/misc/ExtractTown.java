@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,7 +13,6 @@ import java.util.Map;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import com.rrs.rd.address.interpret.AddressInterpreter;
-import com.rrs.rd.address.interpret.RegionInterpreterVisitor;
 import com.rrs.rd.address.persist.AddressPersister;
 
 /**
@@ -87,18 +87,19 @@ public class ExtractTown {
 		String line = null;
 		System.out.println("> 开始提取乡镇村庄");
 		
-		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor(persister);
 		Map<Long, List<String>> towns = new HashMap<Long, List<String>>();
+		List<String> addrTextList = new ArrayList<String>();
 		
 		try{
             while((line = br.readLine()) != null){
-        		try{
-        			interpreter.extractTownVillage(line, visitor, towns);
-            	}catch(RuntimeException ex){
-            		System.out.println("> [错误] " + ex.getMessage());
-            		ex.printStackTrace(System.out);
+            	addrTextList.add(line);
+            	if(addrTextList.size() >= 40000){
+            		extractTownVillage(interpreter, addrTextList, towns);
+            		addrTextList.clear();
             	}
             }
+            if(!addrTextList.isEmpty())
+            	extractTownVillage(interpreter, addrTextList, towns);
             persister.importRegionTowns(towns);
 		} catch (Exception ex) {
 			System.out.println("> [错误] 导入失败：" + ex.getMessage());
@@ -112,4 +113,13 @@ public class ExtractTown {
 			} catch (IOException e) { }
 		}
 	}
+	
+	private static void extractTownVillage(AddressInterpreter interpreter, List<String> addrTextList, Map<Long, List<String>> towns){
+		try{
+			interpreter.extractTownVillage(addrTextList, towns);
+		}catch(RuntimeException ex){
+			System.out.println("> [错误] " + ex.getMessage());
+			ex.printStackTrace(System.out);
+		}
+	}
 }
\ No newline at end of file
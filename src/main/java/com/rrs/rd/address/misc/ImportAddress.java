@@ -5,15 +5,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
+import com.rrs.rd.address.interpret.AddressImportPipeline;
+import com.rrs.rd.address.interpret.AddressImportPipeline.StageStats;
 import com.rrs.rd.address.interpret.AddressInterpreter;
-import com.rrs.rd.address.interpret.RegionInterpreterVisitor;
-import com.rrs.rd.address.persist.AddressEntity;
 import com.rrs.rd.address.persist.AddressPersister;
+import com.rrs.rd.address.similarity.SimilarityComputer;
 
 /**
  * 地址导入。
@@ -30,6 +29,7 @@ public class ImportAddress {
 	 * 北京市;北京市;丰台区;黄陈路期颐百年小区22号楼102室
 	 * 陕西;咸阳;渭城区;文林路紫韵东城小区二期17#1单元101
 	 * </pre>
+	 * 第二个参数为--no-cache时不追加增量缓存文件，用于离线批量导入，导入后使用BuildFileCache重新生成缓存文件。
 	 * @param args
 	 */
 	public static void main(String[] args){
@@ -37,14 +37,18 @@ public class ImportAddress {
 		int imported = 0;
 		AddressPersister persister = null;
 		AddressInterpreter interpreter = null;
+		SimilarityComputer computer = null;
+		boolean appendCache = args==null || args.length<2 || !"--no-cache".equals(args[1].trim());
 		//启动spring容器
 		try{
 			context = new ClassPathXmlApplicationContext(new String[] { "spring-config.xml" });
 			context.start(); 
 			persister = context.getBean(AddressPersister.class);
 			interpreter = context.getBean(AddressInterpreter.class);
-			if(context==null || persister==null || interpreter==null)
-				throw new Exception("无法启动spring容器，或者启动之后未实例化AddressPersister、AddressInterpreter");
+			computer = context.getBean(SimilarityComputer.class);
+			if(context==null || persister==null || interpreter==null || computer==null)
+				throw new Exception("无法启动spring容器，或者启动之后未实例化AddressPersister、AddressInterpreter、SimilarityComputer");
+			computer.setAppendOnImport(appendCache);
 		}catch(Exception ex){
 			System.out.println("> [错误] spring-config.xml文件配置错误：" + ex.getMessage());
 			ex.printStackTrace(System.out);
@@ -62,6 +66,12 @@ public class ImportAddress {
 				return;
 			}
 			imported = importAddressFile(file, persister, interpreter);
+			if(appendCache){
+				//增量缓存文件在后台线程中追加，退出前等待完成
+				computer.flushAppends();
+			}else{
+				System.out.println("> 未追加增量缓存文件，请使用BuildFileCache重新生成缓存文件");
+			}
 		}catch(Exception ex){
 			System.out.println("> [错误] 导入地址库失败：" + ex.getMessage());
 			ex.printStackTrace(System.out);
@@ -86,38 +96,15 @@ public class ImportAddress {
 			return imported;
 		}
 		
-		String line = null;
-		List<String> addrTextList = new ArrayList<String>();
 		System.out.println("> 开始导入地址库");
 		
-		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor(persister);
-		
 		try{
-			int count=0;
-            while((line = br.readLine()) != null){
-            	addrTextList.add(line);
-            	count++;
-            	if(count % 40000 == 0){
-            		try{
-                    	List<AddressEntity> addresses = interpreter.interpret(addrTextList, visitor); 
-                    	imported += persister.importAddresses(addresses);
-                	}catch(RuntimeException ex){
-                		System.out.println("> [错误] " + ex.getMessage());
-                		ex.printStackTrace(System.out);
-                	}finally{
-                		addrTextList.clear();
-            		}
-            	}
-            }
-            if(count % 40000 != 0){
-        		try{
-                	List<AddressEntity> addresses = interpreter.interpret(addrTextList, visitor); 
-                	imported += persister.importAddresses(addresses);
-            	}catch(RuntimeException ex){
-            		System.out.println("> [错误] " + ex.getMessage());
-            		ex.printStackTrace(System.out);
-            	}
-        	}
+			AddressImportPipeline pipeline = new AddressImportPipeline();
+			pipeline.setInterpreter(interpreter);
+			pipeline.setPersister(persister);
+			imported = pipeline.importAddresses(br);
+			for(StageStats stats : pipeline.getStageStats())
+				System.out.println("> " + stats);
 		} catch (Exception ex) {
 			System.out.println("> [错误] 导入失败：" + ex.getMessage());
 			ex.printStackTrace(System.out);
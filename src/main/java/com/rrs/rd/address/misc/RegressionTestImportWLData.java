@@ -84,51 +84,29 @@ public class RegressionTestImportWLData {
 		}
 		
 		String line = null;
-		SimpleDateFormat format = new SimpleDateFormat("MM/dd/yyy HH:mm:ss");
-		@SuppressWarnings("deprecation")
-		Date defaultDate = new Date(1900,1,1);
-		
 		System.out.println("> 开始导入地址库");
 		
 		try{
 			int lineNum = 0;
 			List<AddressEntity> addrList = new ArrayList<AddressEntity>();
+			List<String> lines = new ArrayList<String>();
+			List<String[]> tokensList = new ArrayList<String[]>();
             while((line = br.readLine()) != null){
-            	try{
-            		lineNum++;
-            		String[] tokens = StringUtil.substring(line, 1, line.length()-2).split("\",\"");
-            		if(tokens.length!=7){
-            			//System.out.println("> [format-error] " + lineNum +" - " + line);
-            			continue;
-            		}
-            		
-            		AddressEntity addr = interpreter.interpret(tokens[1]+tokens[2]+tokens[3]+tokens[4]);
-            		if(addr==null){
-            			System.out.println("> [inter-error] " + lineNum + " - " + line);
-            			continue;
-            		}
-            		if(!addr.hasProvince() || !addr.hasCity() || !addr.hasDistrict()){
-            			System.out.println("> [region-error] " + lineNum + " - " + line);
-            			continue;
-            		}
-            		
-            		String orderNo = tokens[0], gridId = tokens[6];
-            		addr.setProp1(orderNo);
-            		addr.setProp2(gridId);
-            		
-            		addr.setCreateTime(defaultDate);
-            		try{
-	            		if(tokens[5]!=null && tokens[5].length()==19){
-	            			addr.setCreateTime(format.parse(tokens[5]));
-	            		}
-            		}catch(Exception e) {}
-            		
-            		addrList.add(addr);
-            	}catch(RuntimeException ex){
-            		System.out.println("> [错误] " + ex.getMessage());
-            		ex.printStackTrace(System.out);
-            	}
+        		lineNum++;
+        		String[] tokens = StringUtil.substring(line, 1, line.length()-2).split("\",\"");
+        		if(tokens.length!=7){
+        			//System.out.println("> [format-error] " + lineNum +" - " + line);
+        			continue;
+        		}
+        		lines.add(lineNum + " - " + line);
+        		tokensList.add(tokens);
+        		if(lines.size() >= 40000){
+        			interpretBatch(interpreter, lines, tokensList, addrList);
+        			lines.clear();
+        			tokensList.clear();
+        		}
             }
+            if(!lines.isEmpty()) interpretBatch(interpreter, lines, tokensList, addrList);
             System.out.println("> 开始插入数据库，共" + addrList.size() + "条数据");
             persister.importAddresses(addrList);
 		} catch (Exception ex) {
@@ -145,4 +123,54 @@ public class RegressionTestImportWLData {
 		
 		return imported;
 	}
+	
+	/**
+	 * 并行解析一批地址，按输入顺序设置附加属性后加入addrList。
+	 * @param lines 行号及原始数据，用于输出错误信息。
+	 * @param tokensList 每行数据拆分后的字段。
+	 * @param addrList
+	 */
+	private static void interpretBatch(AddressInterpreter interpreter, List<String> lines, List<String[]> tokensList, List<AddressEntity> addrList){
+		SimpleDateFormat format = new SimpleDateFormat("MM/dd/yyy HH:mm:ss");
+		@SuppressWarnings("deprecation")
+		Date defaultDate = new Date(1900,1,1);
+		
+		List<String> texts = new ArrayList<String>(tokensList.size());
+		for(String[] tokens : tokensList)
+			texts.add(tokens[1]+tokens[2]+tokens[3]+tokens[4]);
+		List<AddressEntity> addresses = null;
+		try{
+			addresses = interpreter.interpretAll(texts);
+		}catch(RuntimeException ex){
+    		System.out.println("> [错误] " + ex.getMessage());
+    		ex.printStackTrace(System.out);
+    		return;
+		}
+		
+		for(int i=0; i<addresses.size(); i++){
+			AddressEntity addr = addresses.get(i);
+			String[] tokens = tokensList.get(i);
+    		if(addr==null){
+    			System.out.println("> [inter-error] " + lines.get(i));
+    			continue;
+    		}
+    		if(!addr.hasProvince() || !addr.hasCity() || !addr.hasDistrict()){
+    			System.out.println("> [region-error] " + lines.get(i));
+    			continue;
+    		}
+    		
+    		String orderNo = tokens[0], gridId = tokens[6];
+    		addr.setProp1(orderNo);
+    		addr.setProp2(gridId);
+    		
+    		addr.setCreateTime(defaultDate);
+    		try{
+        		if(tokens[5]!=null && tokens[5].length()==19){
+        			addr.setCreateTime(format.parse(tokens[5]));
+        		}
+    		}catch(Exception e) {}
+    		
+    		addrList.add(addr);
+		}
+	}
 }
\ No newline at end of file
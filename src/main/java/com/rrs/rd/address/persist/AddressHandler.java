@@ -0,0 +1,14 @@
+package com.rrs.rd.address.persist;
+
+/**
+ * 逐个处理从数据库流式读取的地址，参考{@link AddressPersister#scanAddresses(long, long, long, AddressHandler)}。
+ * 
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public interface AddressHandler {
+	/**
+	 * 处理一个地址。
+	 * @param address
+	 */
+	void handle(AddressEntity address);
+}
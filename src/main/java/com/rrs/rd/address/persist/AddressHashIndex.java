@@ -0,0 +1,192 @@
+package com.rrs.rd.address.persist;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import com.rrs.rd.address.utils.LongHashSet;
+import com.rrs.rd.address.utils.StringUtil;
+
+/**
+ * 地址库去重索引，保存全部已导入地址的64位hash。
+ *
+ * <p>
+ * 64位hash由两部分组成：高32位为地址原文的{@link String#hashCode()}，即数据库中保存的hash字段；
+ * 低32位为截断到{@value #RAW_TEXT_MAX_LENGTH}个字符的地址原文（数据库中保存的raw_text字段）的FNV-1a hash。
+ * 因此数据库中已有的地址只需读取hash和raw_text两个字段即可计算，不需要修改表结构。
+ * </p>
+ *
+ * <p>
+ * 索引可以保存为本地快照文件，记录快照包含的最大地址ID和地址数量，
+ * 启动时加载快照后只需要从数据库读取最大ID之后新增的地址，参考{@link AddressPersister}。<br />
+ * 快照文件格式：MAGIC(int)、VERSION(int)、最大地址ID(int)、地址数量(int)，之后是{@link LongHashSet#write(DataOutputStream)}的内容。
+ * </p>
+ *
+ * <p>非线程安全。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class AddressHashIndex {
+	public static final int MAGIC = 0x41444849; //ADHI
+	public static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	/**
+	 * 数据库中raw_text字段的最大长度，导入时超长部分被截断。
+	 */
+	public static final int RAW_TEXT_MAX_LENGTH = 150;
+
+	private LongHashSet keys;
+	private int maxId = 0;
+	private int rows = 0;
+
+	/**
+	 * @param expectedSize 预计地址数量。
+	 */
+	public AddressHashIndex(int expectedSize){
+		this.keys = new LongHashSet(expectedSize);
+	}
+
+	private AddressHashIndex(LongHashSet keys){
+		this.keys = keys;
+	}
+
+	/**
+	 * 计算地址原文的64位hash。
+	 * @param rawText 未截断的地址原文。
+	 * @return
+	 */
+	public static long key(String rawText){
+		return key(rawText.hashCode(), StringUtil.head(rawText, RAW_TEXT_MAX_LENGTH));
+	}
+
+	/**
+	 * 使用数据库中保存的字段计算64位hash。
+	 * @param hash 地址原文的{@link String#hashCode()}。
+	 * @param storedText 截断到{@value #RAW_TEXT_MAX_LENGTH}个字符的地址原文。
+	 * @return
+	 */
+	public static long key(int hash, String storedText){
+		int h = 0x811C9DC5;
+		if(storedText!=null){
+			for(int i=0; i<storedText.length(); i++){
+				h ^= storedText.charAt(i);
+				h *= 0x01000193;
+			}
+		}
+		return ((long)hash << 32) | (h & 0xFFFFFFFFL);
+	}
+
+	public boolean contains(long key){
+		return this.keys.contains(key);
+	}
+
+	/**
+	 * 添加新导入的地址。
+	 * @param key
+	 */
+	public void add(long key){
+		this.keys.add(key);
+	}
+
+	/**
+	 * 添加数据库中已有的地址，同时记录最大地址ID和地址数量。
+	 * @param address 只需要设置id、hash、rawText。
+	 */
+	public void addRow(AddressEntity address){
+		this.keys.add(key(address.getHash(), address.getRawText()));
+		this.rows++;
+		if(address.getId()>this.maxId) this.maxId = address.getId();
+	}
+
+	/**
+	 * 通过{@link #addRow(AddressEntity)}添加的最大地址ID。
+	 * @return
+	 */
+	public int getMaxId(){
+		return this.maxId;
+	}
+
+	/**
+	 * 通过{@link #addRow(AddressEntity)}添加的地址数量。
+	 * @return
+	 */
+	public int getRows(){
+		return this.rows;
+	}
+
+	/**
+	 * 不重复的hash数量。
+	 * @return
+	 */
+	public int size(){
+		return this.keys.size();
+	}
+
+	/**
+	 * 估算占用的堆内存字节数。
+	 * @return
+	 */
+	public long estimateSize(){
+		return this.keys.estimateSize();
+	}
+
+	/**
+	 * 保存快照文件，先写入临时文件再替换，避免写入过程中中断产生不完整的快照。
+	 * 临时文件名唯一，多个进程（例如查询服务和导入程序）同时保存同一个快照时互不影响；写入失败时删除临时文件。
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		File folder = file.getAbsoluteFile().getParentFile();
+		if(!folder.exists()) folder.mkdirs();
+		File temp = File.createTempFile(file.getName() + ".", ".tmp", folder);
+		DataOutputStream out = null;
+		try{
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(this.maxId);
+			out.writeInt(this.rows);
+			this.keys.write(out);
+			out.close();
+			out = null;
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}finally{
+			if(out!=null) try { out.close(); } catch (IOException e) {}
+			temp.delete(); //替换成功后临时文件已不存在
+		}
+	}
+
+	/**
+	 * 加载快照文件。
+	 * @param file
+	 * @return
+	 * @throws IOException 文件读取失败，或者不是有效的快照文件。
+	 */
+	public static AddressHashIndex load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer = null;
+		try{
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}finally{
+			raf.close();
+		}
+		if(buffer.capacity()<HEADER_SIZE || buffer.getInt(0)!=MAGIC)
+			throw new IOException("Invalid address hash index file: " + file.getAbsolutePath());
+		if(buffer.getInt(4)!=VERSION)
+			throw new IOException("Unsupported address hash index version " + buffer.getInt(4) + ": " + file.getAbsolutePath());
+
+		buffer.position(HEADER_SIZE);
+		AddressHashIndex index = new AddressHashIndex(LongHashSet.read(buffer.slice().asLongBuffer()));
+		index.maxId = buffer.getInt(8);
+		index.rows = buffer.getInt(12);
+		return index;
+	}
+}
@@ -0,0 +1,16 @@
+package com.rrs.rd.address.persist;
+
+import java.util.List;
+
+/**
+ * 地址导入监听器，{@link AddressPersister#importAddresses(List)}每写入一批地址后调用。
+ * 
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public interface AddressImportListener {
+	/**
+	 * 一批地址已写入数据库。
+	 * @param addresses 已写入的地址，已设置地址ID。
+	 */
+	void addressesImported(List<AddressEntity> addresses);
+}
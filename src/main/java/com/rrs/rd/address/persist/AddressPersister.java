@@ -1,13 +1,17 @@
 package com.rrs.rd.address.persist;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
@@ -17,6 +21,7 @@ import org.springframework.context.ApplicationContextAware;
 import com.rrs.rd.address.persist.dao.AddressDao;
 import com.rrs.rd.address.persist.dao.RegionDao;
 import com.rrs.rd.address.utils.LogUtil;
+import com.rrs.rd.address.utils.LongObjectHashMap;
 import com.rrs.rd.address.utils.StringUtil;
 
 /**
@@ -29,6 +34,7 @@ public class AddressPersister implements ApplicationContextAware {
 	private static ApplicationContext context = null;
 	private AddressDao addressDao;
 	private RegionDao regionDao;
+	private AddressImportListener importListener = null;
 	
 	private static Set<String> PROVINCE_LEVEL_CITIES = new HashSet<String>(8);
 	
@@ -37,14 +43,30 @@ public class AddressPersister implements ApplicationContextAware {
 	 * ，通过{@link RegionEntity#getChildren()}获取下一级列表
 	 */
 	private static RegionEntity REGION_TREE = null;
+	private static final long ROOT_REGION_ID = 1;
 	/**
 	 * 按区域ID缓存的全部区域对象。
 	 */
-	private static HashMap<Long, RegionEntity> REGION_CACHE = null;
+	private static LongObjectHashMap<RegionEntity> REGION_CACHE = null;
 	private static boolean REGION_LOADED = false;
+	/**
+	 * 加载区域树时bas_region表的数据版本，未启用区域快照时为null。
+	 */
+	private static RegionVersion REGION_VERSION = null;
 	
-	private static Set<Integer> ADDRESS_INDEX_BY_HASH = null;
+	/**
+	 * 地址去重索引。
+	 */
+	private static AddressHashIndex ADDRESS_INDEX_BY_HASH = null;
 	private static boolean ADDRESS_INDEX_BY_HASH_CREATED = false;
+	/**
+	 * 启用精确校验时，已加入去重索引、尚未写入数据库的地址，key为64位hash。
+	 */
+	private static Map<Long, String> PENDING_ADDRESSES = new ConcurrentHashMap<Long, String>();
+	
+	private String hashIndexFile = null;
+	private String regionSnapshotFile = null;
+	private boolean verifyDuplicatedAddress = false;
 	
 	static{
 		PROVINCE_LEVEL_CITIES.add("北京");
@@ -92,35 +114,16 @@ public class AddressPersister implements ApplicationContextAware {
 		List<AddressEntity> batch = new ArrayList<AddressEntity>(batchSize);
 		for(AddressEntity address : addresses){
 			try{
-				if(this.isDuplicatedAddress(address.getRawText())) {
+				if(!this.prepareImport(address)) {
 					duplicate++;
 					continue;
 				}
-				
-				address.setHash(address.getRawText().hashCode());
-				ADDRESS_INDEX_BY_HASH.add(address.getHash());
-				
-				if(address.getCreateTime()==null) 
-					address.setCreateTime(new Date());
-				
-				if(address.getText().length()>100)
-					address.setText(StringUtil.head(address.getText(), 100));
-				if(address.getRoad().length()>8)
-					address.setRoad(StringUtil.head(address.getRoad(), 8));
-				if(address.getRoadNum().length()>10)
-					address.setRoadNum(StringUtil.head(address.getRoadNum(), 10));
-				if(address.getBuildingNum().length()>20)
-					address.setBuildingNum(StringUtil.head(address.getBuildingNum(), 20));
-				if(address.getRawText().length()>150)
-					address.setRawText(StringUtil.head(address.getRawText(), 150));
 				batch.add(address);
 				
 				count++;
 				if(count % batchSize == 0) {
-					long dbStart = System.currentTimeMillis();
-					imported += this.addressDao.batchCreate(batch);
+					imported += this.insertAddresses(batch);
 					batch = new ArrayList<AddressEntity>(batchSize);
-					this.timeDb += System.currentTimeMillis() - dbStart;
 					
 					if(count % 40000 == 0 && LOG.isInfoEnabled())
 						LOG.info("[addr-imp] [perf] " + addresses.size() + " total: " + imported + " imported, " + duplicate + " duplicated, elapsed " + timeDb/1000.0);
@@ -131,10 +134,8 @@ public class AddressPersister implements ApplicationContextAware {
 		}
 		
 		if(!batch.isEmpty()){
-			long dbStart = System.currentTimeMillis();
-			imported += this.addressDao.batchCreate(batch);
+			imported += this.insertAddresses(batch);
 			batch = null;
-			this.timeDb += System.currentTimeMillis() - dbStart;
 		}
 		
 		if(LOG.isInfoEnabled())
@@ -143,6 +144,75 @@ public class AddressPersister implements ApplicationContextAware {
 		return imported;
 	}
 	
+	/**
+	 * 导入前检查并处理单个地址：重复地址返回false；否则设置地址hash并加入地址索引，截断超长字段。
+	 * <p>
+	 * 只能在单个线程内串行调用（地址去重索引只由本方法写入）。<br />
+	 * 可以与另一个线程中串行执行的{@link #insertAddresses(List)}同时运行，例如{@link com.rrs.rd.address.interpret.AddressImportPipeline AddressImportPipeline}
+	 * 的dedupe、insert阶段：两者之间共享的只有尚未写入数据库的地址（并发Map）和数据库，
+	 * {@link #insertAddresses(List)}在写入数据库之后才移除这些地址，精确校验时地址总能在其中之一找到。
+	 * </p>
+	 * @param address
+	 * @return 地址已存在返回false，可以导入返回true。
+	 */
+	public boolean prepareImport(AddressEntity address){
+		this.checkAddressIndexByHash();
+		int hash = address.getRawText().hashCode();
+		String storedText = StringUtil.head(address.getRawText(), AddressHashIndex.RAW_TEXT_MAX_LENGTH);
+		long key = AddressHashIndex.key(hash, storedText);
+		if(this.isDuplicatedAddress(hash, storedText, key)) return false;
+		
+		address.setHash(hash);
+		ADDRESS_INDEX_BY_HASH.add(key);
+		if(this.verifyDuplicatedAddress) PENDING_ADDRESSES.put(key, storedText);
+		
+		if(address.getCreateTime()==null) 
+			address.setCreateTime(new Date());
+		
+		if(address.getText().length()>100)
+			address.setText(StringUtil.head(address.getText(), 100));
+		if(address.getRoad().length()>8)
+			address.setRoad(StringUtil.head(address.getRoad(), 8));
+		if(address.getRoadNum().length()>10)
+			address.setRoadNum(StringUtil.head(address.getRoadNum(), 10));
+		if(address.getBuildingNum().length()>20)
+			address.setBuildingNum(StringUtil.head(address.getBuildingNum(), 20));
+		address.setRawText(storedText);
+		return true;
+	}
+	
+	/**
+	 * 将一批已经过{@link #prepareImport(AddressEntity)}处理的地址写入数据库，并通知{@link AddressImportListener}。
+	 * <p>只能在单个线程内串行调用（{@link #timeDb}的累加、listener的通知都没有同步），可以与{@link #prepareImport(AddressEntity)}同时运行。</p>
+	 * @param batch
+	 * @return 写入数据库的地址数量。
+	 */
+	public int insertAddresses(List<AddressEntity> batch){
+		long dbStart = System.currentTimeMillis();
+		int imported = 0;
+		try{
+			imported = this.addressDao.batchCreate(batch);
+		}finally{
+			//写入数据库之后才移除，并发执行的prepareImport不会漏掉重复地址
+			if(this.verifyDuplicatedAddress){
+				for(AddressEntity address : batch)
+					PENDING_ADDRESSES.remove(AddressHashIndex.key(address.getHash(), address.getRawText()));
+			}
+		}
+		this.timeDb += System.currentTimeMillis() - dbStart;
+		this.notifyImported(batch);
+		return imported;
+	}
+	
+	private void notifyImported(List<AddressEntity> batch){
+		if(this.importListener==null) return;
+		try{
+			this.importListener.addressesImported(batch);
+		}catch(Exception ex){
+			LOG.error("[addr-imp] [error] Import listener failed: " + ex.getMessage(), ex);
+		}
+	}
+	
 	public AddressEntity getAddress(int id){
 		return this.addressDao.get(id);
 	}
@@ -152,6 +222,14 @@ public class AddressPersister implements ApplicationContextAware {
 		if(REGION_TREE==null) throw new IllegalStateException("Region data not initialized");
 		return REGION_TREE;
 	}
+	/**
+	 * 加载区域树时bas_region表的数据版本，用于校验依赖区域数据的其他快照，例如词条索引。
+	 * @return 未设置{@link #setRegionSnapshotFile(String) regionSnapshotFile}时返回null。
+	 */
+	public RegionVersion regionVersion(){
+		if(!REGION_LOADED) this.loadRegions();
+		return REGION_VERSION;
+	}
 	public RegionEntity getRegion(long id){
 		if(!REGION_LOADED) this.loadRegions();
 		if(REGION_TREE==null) throw new IllegalStateException("Region data not initialized");
@@ -210,32 +288,117 @@ public class AddressPersister implements ApplicationContextAware {
 	public List<AddressEntity> loadAddresses(long provinceId, long cityId, long countyId){
 		return this.addressDao.find(provinceId, cityId, countyId);
 	}
+	/**
+	 * 流式读取地址，与{@link #loadAddresses(long, long, long)}读取相同的地址，
+	 * 逐个调用handler处理，不会将全部地址加载到内存中。
+	 * <p>读取过程中一直占用一个数据库连接，直到全部地址处理完成。</p>
+	 * @param provinceId
+	 * @param cityId
+	 * @param countyId
+	 * @param handler
+	 * @return 读取的地址数量。
+	 */
+	public int scanAddresses(long provinceId, long cityId, long countyId, final AddressHandler handler){
+		final int[] count = new int[1];
+		this.addressDao.scan(provinceId, cityId, countyId, new ResultHandler<AddressEntity>() {
+			@Override
+			public void handleResult(ResultContext<? extends AddressEntity> context) {
+				count[0]++;
+				handler.handle(context.getResultObject());
+			}
+		});
+		return count[0];
+	}
 	
+	/**
+	 * 地址是否已经导入过。
+	 * <p>
+	 * 使用64位hash判断，参考{@link AddressHashIndex}；
+	 * 启用{@link #setVerifyDuplicatedAddress(boolean) verifyDuplicatedAddress}时，hash相同的地址再精确比较地址原文。
+	 * </p>
+	 * @param address 地址原文。
+	 * @return
+	 */
 	public boolean isDuplicatedAddress(String address){
 		this.checkAddressIndexByHash();
-		//检查地址是否重复
-		if(ADDRESS_INDEX_BY_HASH.contains(address.hashCode())){
-			return true;
-		}
-		return false;
+		int hash = address.hashCode();
+		String storedText = StringUtil.head(address, AddressHashIndex.RAW_TEXT_MAX_LENGTH);
+		return this.isDuplicatedAddress(hash, storedText, AddressHashIndex.key(hash, storedText));
+	}
+	
+	private boolean isDuplicatedAddress(int hash, String storedText, long key){
+		if(!ADDRESS_INDEX_BY_HASH.contains(key)) return false;
+		if(!this.verifyDuplicatedAddress) return true;
+		//精确校验：尚未写入数据库的地址，以及数据库中hash相同的地址
+		if(storedText.equals(PENDING_ADDRESSES.get(key))) return true;
+		List<String> texts = this.addressDao.findRawTexts(hash);
+		return texts!=null && texts.contains(storedText);
 	}
 	
 	//***************************************************************************************
 	// Local cache
 	//***************************************************************************************
+	/**
+	 * 构建地址去重索引。
+	 * <p>
+	 * 设置了{@link #setHashIndexFile(String) hashIndexFile}时先加载快照文件，快照之后新增的地址从数据库补充读取，
+	 * 之后更新快照文件；快照中的地址在数据库中被删除过时快照失效，从数据库重新构建。<br />
+	 * 从数据库流式读取hash和raw_text两个字段，不加载完整的地址对象。
+	 * </p>
+	 */
 	private synchronized void buildAddressIndexByHash(){
 		if(ADDRESS_INDEX_BY_HASH_CREATED) return;
-		List<AddressEntity> all = this.addressDao.findAll();
-		if(all==null){
-			ADDRESS_INDEX_BY_HASH = new HashSet<Integer>(0);
-			ADDRESS_INDEX_BY_HASH_CREATED = true;
-			return;
-		}
-		ADDRESS_INDEX_BY_HASH = new HashSet<Integer>(all.size());
-		for(AddressEntity addr : all) {
-			ADDRESS_INDEX_BY_HASH.add(addr.getHash());
+		long start = System.currentTimeMillis();
+		
+		File file = this.hashIndexFile==null || this.hashIndexFile.trim().isEmpty() ? null : new File(this.hashIndexFile.trim());
+		AddressHashIndex index = this.loadAddressIndexSnapshot(file);
+		int snapshotRows = -1;
+		if(index!=null) 
+			snapshotRows = index.getRows();
+		else
+			index = new AddressHashIndex(this.addressDao.countUpTo(Integer.MAX_VALUE));
+		
+		final AddressHashIndex target = index;
+		this.addressDao.scanHashes(index.getMaxId(), new ResultHandler<AddressEntity>() {
+			@Override
+			public void handleResult(ResultContext<? extends AddressEntity> context) {
+				target.addRow(context.getResultObject());
+			}
+		});
+		
+		if(file!=null && index.getRows()!=snapshotRows){
+			try{
+				index.save(file);
+			}catch(IOException ex){
+				LOG.warn("[addr] [hash-index] Failed to save snapshot " + file.getAbsolutePath() + ": " + ex.getMessage(), ex);
+			}
 		}
+		ADDRESS_INDEX_BY_HASH = index;
 		ADDRESS_INDEX_BY_HASH_CREATED = true;
+		
+		if(LOG.isInfoEnabled())
+			LOG.info("[addr] [perf] Address hash index loaded, " + index.getRows() + " rows (" 
+				+ (snapshotRows<0 ? "no snapshot" : snapshotRows + " from snapshot") + "), " + index.size() + " keys, "
+				+ index.estimateSize()/1024/1024 + "MB, elapsed " + (System.currentTimeMillis() - start)/1000.0 + "s");
+	}
+	
+	private AddressHashIndex loadAddressIndexSnapshot(File file){
+		if(file==null || !file.exists()) return null;
+		AddressHashIndex index = null;
+		try{
+			index = AddressHashIndex.load(file);
+		}catch(IOException ex){
+			LOG.warn("[addr] [hash-index] Invalid snapshot " + file.getAbsolutePath() + ": " + ex.getMessage());
+			return null;
+		}
+		int rows = this.addressDao.countUpTo(index.getMaxId());
+		if(rows!=index.getRows()){
+			if(LOG.isInfoEnabled())
+				LOG.info("[addr] [hash-index] Snapshot is stale, " + index.getRows() + " rows in snapshot, " 
+					+ rows + " rows in database up to id " + index.getMaxId());
+			return null;
+		}
+		return index;
 	}
 	
 	private void checkAddressIndexByHash(){
@@ -244,37 +407,82 @@ public class AddressPersister implements ApplicationContextAware {
 	
 	/**
 	 * 加载全部区域列表，按照行政区域划分构建树状结构关系。
+	 * <p>
+	 * 设置了{@link #setRegionSnapshotFile(String) regionSnapshotFile}时，快照与bas_region表的{@link RegionVersion 数据版本}一致则直接使用快照，
+	 * 否则从数据库加载，之后重新保存快照。
+	 * </p>
 	 */
 	private synchronized void loadRegions(){
 		if(REGION_LOADED) return;
 		Date start = new Date();
 		
-		REGION_TREE = this.regionDao.findRoot();
-		REGION_CACHE = new HashMap<Long, RegionEntity>();
-		REGION_CACHE.put(REGION_TREE.getId(), REGION_TREE);
-		this.loadRegionChildren(REGION_TREE);
+		File file = this.regionSnapshotFile==null || this.regionSnapshotFile.trim().isEmpty() ? null : new File(this.regionSnapshotFile.trim());
+		RegionVersion version = file==null ? null : this.regionDao.version();
+		RegionSnapshot snapshot = this.loadRegionSnapshot(file, version);
+		if(snapshot!=null) {
+			REGION_TREE = snapshot.getRoot();
+		} else {
+			REGION_TREE = this.loadRegionTree();
+			if(file!=null) {
+				try{
+					new RegionSnapshot(version, REGION_TREE).save(file);
+				}catch(IOException ex){
+					LOG.warn("[addr] [region] Failed to save snapshot " + file.getAbsolutePath() + ": " + ex.getMessage(), ex);
+				}
+			}
+		}
+		REGION_CACHE = new LongObjectHashMap<RegionEntity>(snapshot!=null ? snapshot.size() : 1024);
+		this.cacheRegion(REGION_TREE);
+		if(REGION_TREE!=null) REGION_TREE.linkHierarchy();
+		REGION_VERSION = version;
 		REGION_LOADED = true;
 		
 		Date end = new Date();
 		if(LOG.isInfoEnabled())
-			LOG.info("[addr] [perf] Region tree loaded, [" + LogUtil.format(start) + " -> " 
+			LOG.info("[addr] [perf] Region tree loaded " + (snapshot!=null ? "from snapshot" : "from database") 
+				+ ", " + REGION_CACHE.size() + " regions, [" + LogUtil.format(start) + " -> " 
 				+ LogUtil.format(end) + "], elapsed " + (end.getTime() - start.getTime())/1000.0 + "s");
 	}
 	
-	private void loadRegionChildren(RegionEntity parent){
-		//已经到最底层，结束
-		if(parent==null || parent.getType()==RegionType.Street || parent.getType()==RegionType.Village 
-				|| parent.getType()==RegionType.PlatformL4 || parent.getType()==RegionType.Town) 
-			return;
-		//递归加载下一级
-		List<RegionEntity> children = this.regionDao.findByParent(parent.getId());
-		if(children!=null && children.size()>0){
-			parent.setChildren(children);
-			for(RegionEntity child : children) {
-				REGION_CACHE.put(child.getId(), child);
-				this.loadRegionChildren(child);
-			}
+	private RegionSnapshot loadRegionSnapshot(File file, RegionVersion version){
+		if(file==null || !file.exists()) return null;
+		RegionSnapshot snapshot = null;
+		try{
+			snapshot = RegionSnapshot.load(file);
+		}catch(IOException ex){
+			LOG.warn("[addr] [region] Invalid snapshot " + file.getAbsolutePath() + ": " + ex.getMessage());
+			return null;
 		}
+		if(!snapshot.getVersion().equals(version)){
+			if(LOG.isInfoEnabled())
+				LOG.info("[addr] [region] Snapshot is stale, version " + snapshot.getVersion() + " in snapshot, " 
+					+ version + " in database");
+			return null;
+		}
+		return snapshot;
+	}
+	
+	private void cacheRegion(RegionEntity region){
+		if(region==null) return;
+		REGION_CACHE.put(region.getId(), region);
+		if(region.getChildren()==null) return;
+		for(RegionEntity child : region.getChildren()) this.cacheRegion(child);
+	}
+	
+	/**
+	 * 一次流式查询读取bas_region全部区域，使用{@link RegionTreeBuilder}在内存中组装区域树。
+	 * <p>查询结果按parent_id、id排序，只有从根节点可以到达的区域才会加入区域树。</p>
+	 * @return 根节点，数据库中没有根节点时返回null。
+	 */
+	private RegionEntity loadRegionTree(){
+		final RegionTreeBuilder builder = new RegionTreeBuilder();
+		this.regionDao.scanAll(new ResultHandler<RegionEntity>() {
+			@Override
+			public void handleResult(ResultContext<? extends RegionEntity> context) {
+				builder.add(context.getResultObject());
+			}
+		});
+		return builder.build(ROOT_REGION_ID);
 	}
 	
 	//***************************************************************************************
@@ -286,6 +494,31 @@ public class AddressPersister implements ApplicationContextAware {
 	public void setRegionDao(RegionDao dao){
 		this.regionDao = dao;
 	}
+	public void setImportListener(AddressImportListener listener){
+		this.importListener = listener;
+	}
+	/**
+	 * 地址去重索引的快照文件路径，未设置时每次启动都从数据库构建。
+	 * @param value
+	 */
+	public void setHashIndexFile(String value){
+		this.hashIndexFile = value;
+	}
+	/**
+	 * 区域树快照文件路径，未设置时每次启动都从数据库逐级加载区域树。
+	 * @param value
+	 */
+	public void setRegionSnapshotFile(String value){
+		this.regionSnapshotFile = value;
+	}
+	/**
+	 * 64位hash相同时是否精确比较地址原文，默认false。
+	 * <p>启用后每次hash命中需要查询一次数据库。</p>
+	 * @param value
+	 */
+	public void setVerifyDuplicatedAddress(boolean value){
+		this.verifyDuplicatedAddress = value;
+	}
 
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
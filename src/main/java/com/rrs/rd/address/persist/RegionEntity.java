@@ -2,6 +2,7 @@ package com.rrs.rd.address.persist;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -45,6 +46,14 @@ public class RegionEntity implements Serializable {
     private String zip = "";
     private List<RegionEntity> children;
     private List<String> orderedNames;
+    /**
+     * 上级区域，{@link #linkHierarchy()}时设置，不参与序列化。
+     */
+    private transient RegionEntity parent;
+    /**
+     * 从根节点到当前区域的ID路径，ancestorIds[i]为深度为i的祖先区域ID，最后一个元素为当前区域ID。
+     */
+    private transient long[] ancestorIds;
     
     public boolean isTown(){
     	switch(this.type){
@@ -110,6 +119,63 @@ public class RegionEntity implements Serializable {
         this.zip = value;
     }
     
+    /**
+     * 获取上级区域，不需要通过区域ID查找。
+     * @return 根节点，或者未执行{@link #linkHierarchy()}时返回null。
+     */
+    public RegionEntity getParent(){
+    	return this.parent;
+    }
+    
+    /**
+     * 在区域树中的深度，根节点为0。
+     * @return 未执行{@link #linkHierarchy()}时返回-1。
+     */
+    public int getDepth(){
+    	return this.ancestorIds==null ? -1 : this.ancestorIds.length - 1;
+    }
+    
+    /**
+     * 获取向上第generations级祖先区域的ID，1为上级区域，2为上级区域的上级，以此类推。
+     * @param generations
+     * @return 祖先区域不存在时返回0。
+     */
+    public long ancestorId(int generations){
+    	if(this.ancestorIds==null || generations<0 || generations>=this.ancestorIds.length) return 0;
+    	return this.ancestorIds[this.ancestorIds.length - 1 - generations];
+    }
+    
+    /**
+     * 当前区域是否隶属于ancestor（不包括ancestor本身），直接比较祖先ID路径，不需要逐级向上查找。
+     * @param ancestor
+     * @return
+     */
+    public boolean isDescendantOf(RegionEntity ancestor){
+    	if(ancestor==null || this.ancestorIds==null || ancestor.ancestorIds==null) return false;
+    	int depth = ancestor.ancestorIds.length - 1;
+    	return depth < this.ancestorIds.length - 1 && this.ancestorIds[depth]==ancestor.id;
+    }
+    
+    /**
+     * 以当前区域为根节点，为整棵区域树预先计算上级区域和祖先ID路径。
+     * <p>区域树加载完成后调用一次，之后{@link #getParent()}、{@link #ancestorId(int)}、
+     * {@link #isDescendantOf(RegionEntity)}都是常数时间操作。</p>
+     */
+    public void linkHierarchy(){
+    	this.parent = null;
+    	this.ancestorIds = new long[] { this.id };
+    	this.linkChildren();
+    }
+    private void linkChildren(){
+    	if(this.children==null) return;
+    	for(RegionEntity child : this.children){
+    		child.parent = this;
+    		child.ancestorIds = Arrays.copyOf(this.ancestorIds, this.ancestorIds.length + 1);
+    		child.ancestorIds[this.ancestorIds.length] = child.id;
+    		child.linkChildren();
+    	}
+    }
+    
     public List<RegionEntity> getChildren(){
     	return this.children;
     }
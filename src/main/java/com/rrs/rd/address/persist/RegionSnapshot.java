@@ -0,0 +1,225 @@
+package com.rrs.rd.address.persist;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 区域树快照，将从数据库加载的区域树保存为本地二进制文件，启动时直接映射文件重建区域树，不需要逐级查询数据库。
+ *
+ * <p>
+ * 快照记录保存时bas_region表的{@link RegionVersion 数据版本}，与数据库当前版本不一致时快照失效，参考{@link AddressPersister}。<br />
+ * 快照文件格式：MAGIC(int)、VERSION(int)、区域数量(int)、校验和(long)、快照中的区域数量(int)，
+ * 之后按先序遍历依次写入每个区域：id(long)、parentId(long)、类型(int，{@link RegionType}序号)、name、alias、zip、下级区域数量(int)。
+ * 字符串写入长度(int，null为-1)和全部字符(char)。文件末尾是之前全部内容的CRC32(int)，加载时校验，
+ * 头部的校验和只描述bas_region表的数据，无法发现快照文件本身的损坏。
+ * </p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class RegionSnapshot {
+	public static final int MAGIC = 0x52474E53; //RGNS
+	public static final int VERSION = 2;
+
+	private RegionVersion version;
+	private RegionEntity root;
+	private int size = 0;
+
+	public RegionSnapshot(RegionVersion version, RegionEntity root){
+		this.version = version;
+		this.root = root;
+	}
+
+	/**
+	 * 保存快照时bas_region表的数据版本。
+	 * @return
+	 */
+	public RegionVersion getVersion(){
+		return this.version;
+	}
+
+	/**
+	 * 区域树的根节点（中国）。
+	 * @return
+	 */
+	public RegionEntity getRoot(){
+		return this.root;
+	}
+
+	/**
+	 * 区域树中的区域数量，{@link #save(File)}或者{@link #load(File)}之后有效。
+	 * @return
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * 保存快照文件，先写入同目录下唯一的临时文件再替换，避免写入过程中中断产生不完整的快照，
+	 * 多个进程同时保存时也不会互相覆盖临时文件。
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		File folder = file.getAbsoluteFile().getParentFile();
+		if(!folder.exists()) folder.mkdirs();
+		List<RegionEntity> regions = new ArrayList<RegionEntity>();
+		collect(this.root, regions);
+
+		File temp = File.createTempFile(file.getName() + ".", ".tmp", folder);
+		CheckedOutputStream checked = null;
+		DataOutputStream out = null;
+		try{
+			checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024), new CRC32());
+			out = new DataOutputStream(checked);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(this.version.getRows());
+			out.writeLong(this.version.getChecksum());
+			out.writeInt(regions.size());
+			for(RegionEntity region : regions){
+				out.writeLong(region.getId());
+				out.writeLong(region.getParentId());
+				out.writeInt(region.getType().ordinal());
+				writeString(out, region.getName());
+				writeString(out, region.getAlias());
+				writeString(out, region.getZip());
+				out.writeInt(region.getChildren()==null ? 0 : region.getChildren().size());
+			}
+			out.writeInt((int)checked.getChecksum().getValue());
+			out.close();
+			out = null;
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}finally{
+			if(out!=null) try { out.close(); } catch (IOException e) {}
+			temp.delete(); //替换成功后临时文件已不存在
+		}
+		this.size = regions.size();
+	}
+
+	/**
+	 * 加载快照文件。
+	 * @param file
+	 * @return
+	 * @throws IOException 文件读取失败，或者不是有效的快照文件（包括内容与CRC32不一致）。
+	 */
+	public static RegionSnapshot load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer = null;
+		try{
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}finally{
+			raf.close();
+		}
+		if(buffer.capacity()<28 || buffer.getInt()!=MAGIC)
+			throw new IOException("Invalid region snapshot file: " + file.getAbsolutePath());
+		int ver = buffer.getInt();
+		if(ver!=VERSION)
+			throw new IOException("Unsupported region snapshot version " + ver + ": " + file.getAbsolutePath());
+		if(!checksumMatches(buffer))
+			throw new IOException("Corrupted region snapshot file, checksum mismatch: " + file.getAbsolutePath());
+		buffer.limit(buffer.capacity() - 4);
+
+		RegionVersion version = new RegionVersion(buffer.getInt(), buffer.getLong());
+		int count = buffer.getInt();
+		if(count<=0) throw new IOException("Empty region snapshot file: " + file.getAbsolutePath());
+		try{
+			RegionEntity[] regions = new RegionEntity[count];
+			int[] children = new int[count];
+			RegionType[] types = RegionType.values();
+			for(int i=0; i<count; i++){
+				RegionEntity region = new RegionEntity();
+				region.setId(buffer.getLong());
+				region.setParentId(buffer.getLong());
+				int type = buffer.getInt();
+				if(type<0 || type>=types.length)
+					throw new IOException("Invalid region type " + type + ": " + file.getAbsolutePath());
+				region.setType(types[type]);
+				region.setName(readString(buffer));
+				region.setAlias(readString(buffer));
+				region.setZip(readString(buffer));
+				regions[i] = region;
+				children[i] = buffer.getInt();
+			}
+
+			RegionSnapshot snapshot = new RegionSnapshot(version, regions[0]);
+			if(buffer.hasRemaining() || link(regions, children, 0)!=count)
+				throw new IOException("Broken region snapshot file: " + file.getAbsolutePath());
+			snapshot.size = count;
+			return snapshot;
+		}catch(BufferUnderflowException ex){
+			throw new IOException("Truncated region snapshot file: " + file.getAbsolutePath());
+		}catch(IndexOutOfBoundsException ex){
+			throw new IOException("Broken region snapshot file: " + file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * 校验文件内容：末尾4字节是之前全部内容的CRC32。
+	 */
+	private static boolean checksumMatches(ByteBuffer buffer){
+		ByteBuffer body = buffer.duplicate();
+		body.position(0);
+		body.limit(buffer.capacity() - 4);
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		return (int)crc.getValue()==buffer.getInt(buffer.capacity() - 4);
+	}
+
+	/**
+	 * 先序遍历区域树。
+	 */
+	private static void collect(RegionEntity region, List<RegionEntity> regions){
+		regions.add(region);
+		if(region.getChildren()==null) return;
+		for(RegionEntity child : region.getChildren()) collect(child, regions);
+	}
+
+	/**
+	 * 按先序遍历的顺序和下级区域数量重建区域树。
+	 * @return 下一个未处理的区域位置。
+	 */
+	private static int link(RegionEntity[] regions, int[] children, int pos){
+		RegionEntity parent = regions[pos];
+		int count = children[pos++];
+		if(count<=0) return pos;
+		List<RegionEntity> list = new ArrayList<RegionEntity>(count);
+		for(int i=0; i<count; i++){
+			list.add(regions[pos]);
+			pos = link(regions, children, pos);
+		}
+		parent.setChildren(list);
+		return pos;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if(value==null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(value.length());
+		out.writeChars(value);
+	}
+
+	private static String readString(ByteBuffer buffer){
+		int length = buffer.getInt();
+		if(length<0) return null;
+		if(length > buffer.remaining() / 2) throw new BufferUnderflowException();
+		char[] chars = new char[length];
+		for(int i=0; i<length; i++) chars[i] = buffer.getChar();
+		return new String(chars);
+	}
+}
@@ -0,0 +1,63 @@
+package com.rrs.rd.address.persist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.rrs.rd.address.utils.LongObjectHashMap;
+
+/**
+ * 将按parent_id、id排序的区域逐个组装为区域树，参考{@link AddressPersister}从数据库流式读取bas_region全部区域。
+ *
+ * <p>
+ * 同一上级的区域连续出现，直接作为上级的下级区域列表，顺序与逐级查询相同。<br />
+ * 最底层区域（街道、乡镇、村庄等）不设置下级区域；上级不存在的区域不会加入区域树，从根节点无法到达；
+ * 上级为自身的区域（例如根节点）不作为任何区域的下级。
+ * </p>
+ *
+ * <p>非线程安全。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class RegionTreeBuilder {
+	private LongObjectHashMap<RegionEntity> regions = new LongObjectHashMap<RegionEntity>(1024);
+	private List<List<RegionEntity>> groups = new ArrayList<List<RegionEntity>>();
+	private List<RegionEntity> group = null;
+
+	/**
+	 * 添加一个区域，必须按parent_id、id的顺序添加。
+	 * @param region
+	 */
+	public void add(RegionEntity region){
+		this.regions.put(region.getId(), region);
+		if(region.getParentId()==region.getId()) return;
+		if(this.group==null || this.group.get(0).getParentId()!=region.getParentId()){
+			this.group = new ArrayList<RegionEntity>();
+			this.groups.add(this.group);
+		}
+		this.group.add(region);
+	}
+
+	/**
+	 * 为已添加的区域设置下级区域列表。
+	 * @param rootId 根节点ID。
+	 * @return 根节点，根节点没有添加时返回null。
+	 */
+	public RegionEntity build(long rootId){
+		for(List<RegionEntity> group : this.groups){
+			RegionEntity parent = this.regions.get(group.get(0).getParentId());
+			if(parent==null || isLeafRegion(parent)) continue;
+			parent.setChildren(group);
+		}
+		return this.regions.get(rootId);
+	}
+
+	/**
+	 * 已经到最底层的区域，不再加载下级。
+	 * @param region
+	 * @return
+	 */
+	public static boolean isLeafRegion(RegionEntity region){
+		return region.getType()==RegionType.Street || region.getType()==RegionType.Village
+				|| region.getType()==RegionType.PlatformL4 || region.getType()==RegionType.Town;
+	}
+}
@@ -0,0 +1,49 @@
+package com.rrs.rd.address.persist;
+
+/**
+ * bas_region表的数据版本：区域数量和全部区域数据的校验和。
+ * <p>用于判断{@link RegionSnapshot 区域快照}是否与数据库一致，任何区域的新增、删除、修改都会改变版本。</p>
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class RegionVersion {
+	private int rows = 0;
+	private long checksum = 0;
+	
+	public RegionVersion(){ }
+	
+	public RegionVersion(int rows, long checksum){
+		this.rows = rows;
+		this.checksum = checksum;
+	}
+	
+	public int getRows() {
+		return rows;
+	}
+	public void setRows(int rows) {
+		this.rows = rows;
+	}
+	
+	public long getChecksum() {
+		return checksum;
+	}
+	public void setChecksum(long checksum) {
+		this.checksum = checksum;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(obj==null || !obj.getClass().equals(RegionVersion.class)) return false;
+		RegionVersion version = (RegionVersion)obj;
+		return this.rows==version.rows && this.checksum==version.checksum;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (int)(this.checksum ^ (this.checksum >>> 32)) * 31 + this.rows;
+	}
+	
+	@Override
+	public String toString() {
+		return this.rows + "/" + Long.toHexString(this.checksum);
+	}
+}
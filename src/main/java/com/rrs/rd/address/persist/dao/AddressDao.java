@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.apache.ibatis.annotations.Flush;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import com.rrs.rd.address.persist.AddressEntity;
 
@@ -15,8 +16,41 @@ import com.rrs.rd.address.persist.AddressEntity;
 public interface AddressDao {
 	List<AddressEntity> findAll();
 	int create(AddressEntity address);
-	int batchCreate(@Param("addresses") List<AddressEntity> addresses);
+	/**
+	 * 批量创建地址，创建后为每个地址设置自增ID。
+	 * <p>参数不使用@Param命名，MyBatis只为名称为list/collection的参数回填自增ID。</p>
+	 * @param addresses
+	 * @return
+	 */
+	int batchCreate(List<AddressEntity> addresses);
+	/**
+	 * 流式读取ID大于minId的全部地址，只设置id、hash、rawText属性，用于构建去重索引。
+	 * <p>逐行读取，不会将全部数据加载到内存中。</p>
+	 * @param minId
+	 * @param handler
+	 */
+	void scanHashes(@Param("minId") int minId, ResultHandler<AddressEntity> handler);
+	/**
+	 * ID小于等于maxId的地址数量。
+	 * @param maxId
+	 * @return
+	 */
+	int countUpTo(@Param("maxId") int maxId);
+	/**
+	 * hash相同的全部地址原文。
+	 * @param hash
+	 * @return
+	 */
+	List<String> findRawTexts(@Param("hash") int hash);
 	List<AddressEntity> find(@Param("provinceId")long provinceId, @Param("cityId")long cityId,  @Param("countyId")long countyId);
+	/**
+	 * {@link #find(long, long, long)}的流式读取版本，逐行回调handler，不会将全部数据加载到内存中。
+	 * @param provinceId
+	 * @param cityId
+	 * @param countyId
+	 * @param handler
+	 */
+	void scan(@Param("provinceId")long provinceId, @Param("cityId")long cityId,  @Param("countyId")long countyId, ResultHandler<AddressEntity> handler);
 	AddressEntity get(int id);
 	int delete(int id);
 	
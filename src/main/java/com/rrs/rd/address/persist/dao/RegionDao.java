@@ -3,8 +3,10 @@ package com.rrs.rd.address.persist.dao;
 import java.util.List;
 
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionVersion;
 
 /**
  * 
@@ -13,6 +15,11 @@ import com.rrs.rd.address.persist.RegionEntity;
  */
 public interface RegionDao {
 	List<RegionEntity> findByParent(long pid);
+	/**
+	 * 流式读取全部区域，按parent_id、id排序，同一上级的区域连续出现。
+	 * @param handler
+	 */
+	void scanAll(ResultHandler<RegionEntity> handler);
 	RegionEntity findByParentAndName(@Param("pid") long pid, @Param("name") String name);
 	RegionEntity findRoot();
 	int create(RegionEntity entity);
@@ -21,4 +28,10 @@ public interface RegionDao {
 	
 	RegionEntity get(long id);
 	int delete(long id);
+	
+	/**
+	 * bas_region表的数据版本：区域数量、全部区域各字段CRC32的和。
+	 * @return
+	 */
+	RegionVersion version();
 }
\ No newline at end of file
@@ -1,17 +1,27 @@
 package com.rrs.rd.address.similarity;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.rrs.rd.address.TermType;
+
 /**
  * 文档对象。
  * @author Richie 刘志斌 yudi@sina.com
  */
 public class Document {
+	/**
+	 * 包含全局字典中不存在的Text类型词条时的位置表。
+	 */
+	private static final long[] UNREGISTERED = new long[0];
+
 	private int id;
 	private List<Term> terms = null;
 	private Map<String, Term> termsMap = null;
+	private long[] textTermPositions = null;
+	private DocumentVectors owner = null;
 	private Term town = null;
 	private Term village = null;
 	private Term road = null;
@@ -93,6 +103,78 @@ public class Document {
 	
 	public void setTerms(List<Term> value){
 		this.terms = value;
+		this.textTermPositions = null;
+		this.owner = null;
+	}
+	
+	/**
+	 * Text类型词条的位置表：每个不同的词条一个元素，高32位为{@link TermDictionary 全局词条ID}，低32位为词条在{@link #getTerms()}中第一次出现的位置，
+	 * 按词条ID升序排列。
+	 * <p>
+	 * 用于计算Text类型词条的匹配率、稠密度：查询文档的词条ID排序后与该表归并一次即可，不需要逐一比较词条文本（参考{@link TextTermMatch}）。<br />
+	 * 词条ID通过{@link TermDictionary#lookup(String)}获取，不注册新词条；地址库文档的词条在加载缓存分区时已注册到全局字典。
+	 * </p>
+	 * <p style="color:red;">不允许对返回的数组进行更改操作</p>
+	 * @return 包含全局字典中不存在的Text类型词条时返回null，只能逐一比较词条文本。
+	 */
+	public long[] getTextTermPositions(){
+		if(this.textTermPositions==null) this.buildTextTermPositions();
+		return this.textTermPositions==UNREGISTERED ? null : this.textTermPositions;
+	}
+	
+	/**
+	 * 设置Text类型词条的位置表，由{@link DocumentVectors}创建文档对象时直接使用字典中的词条ID设置。
+	 * @param positions 未排序、未去重的(词条ID, 位置)，参考{@link #position(int, int)}。
+	 * @param count positions中有效元素的数量。
+	 * @param owner 创建文档的缓存分区，文档存在期间不会被回收，位置表中的词条ID不会从全局字典中释放。
+	 */
+	void setTextTermPositions(long[] positions, int count, DocumentVectors owner){
+		this.textTermPositions = sortPositions(positions, count);
+		this.owner = owner;
+	}
+	
+	private synchronized void buildTextTermPositions(){
+		if(this.textTermPositions!=null) return;
+		if(this.terms==null) {
+			this.textTermPositions = new long[0];
+			return;
+		}
+		long[] positions = new long[this.terms.size()];
+		int count = 0;
+		for(int i=0; i<this.terms.size(); i++){
+			Term term = this.terms.get(i);
+			if(TermType.Text!=term.getType() || term.getText()==null) continue;
+			int id = TermDictionary.getInstance().lookup(term.getText());
+			if(id<0){
+				this.textTermPositions = UNREGISTERED;
+				return;
+			}
+			positions[count++] = position(id, i);
+		}
+		this.textTermPositions = sortPositions(positions, count);
+	}
+	
+	/**
+	 * 位置表元素。
+	 * @param termId 全局词条ID。
+	 * @param pos 词条在{@link #getTerms()}中的位置。
+	 * @return
+	 */
+	static long position(int termId, int pos){
+		return ((long)termId << 32) | pos;
+	}
+	
+	/**
+	 * 按词条ID、位置排序，相同的词条ID只保留第一个位置。
+	 */
+	private static long[] sortPositions(long[] positions, int count){
+		Arrays.sort(positions, 0, count);
+		int n = 0;
+		for(int i=0; i<count; i++){
+			if(n>0 && (positions[n-1] >>> 32)==(positions[i] >>> 32)) continue;
+			positions[n++] = positions[i];
+		}
+		return n==positions.length ? positions : Arrays.copyOf(positions, n);
 	}
 	
 	/**
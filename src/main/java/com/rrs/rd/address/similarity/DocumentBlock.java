@@ -0,0 +1,233 @@
+package com.rrs.rd.address.similarity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.utils.LongIntHashMap;
+
+/**
+ * 一个缓存分区全部文档的堆内存表示，内存缓存模式使用。
+ *
+ * <p>
+ * 与{@link Document}、{@link Term}对象列表相比，全部文档只占用几个基本类型数组：
+ * 文档ID、词条起始位置、门牌号数值和门牌号key序号为int[docCount]，词条字典序号为int[termCount]，词条类型为byte[termCount]；
+ * 词条文本保存在{@link TermDictionary 全局字典}中，IDF值为按字典序号、门牌号key序号存取的double[]。
+ * 计算相似度时按数组下标访问，不需要创建对象，也没有哈希查找。
+ * </p>
+ *
+ * <p>由{@link VectorSegment#toBlock()}创建，创建后只读，可以在多个线程间共享。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class DocumentBlock implements DocumentVectors {
+	private static final TermType[] TYPES = new TermType[128];
+	static {
+		for(TermType type : TermType.values())
+			TYPES[type.getValue()] = type;
+	}
+
+	private int docCount;
+	private int[] ids;
+	private int[] termStarts;
+	private int[] roadNumValues;
+	private int[] roadNumKeys;
+	private int[] termOrdinals;
+	private byte[] termTypes;
+	private int[] termIds;
+	private LongIntHashMap ordinals;
+	private int[] refers;
+	private VectorSegment.RoadNumKeys roadNumKeyTable;
+	private double[] idfs = null;
+
+	/**
+	 * @param termIds 字典词条的全局词条ID，调用方已通过{@link TermDictionary#retain(int[])}为新实例获得引用，实例被回收后释放。
+	 */
+	DocumentBlock(int docCount, int[] ids, int[] termStarts, int[] roadNumValues, int[] roadNumKeys,
+			int[] termOrdinals, byte[] termTypes, int[] termIds, LongIntHashMap ordinals, int[] refers, 
+			VectorSegment.RoadNumKeys roadNumKeyTable){
+		this.docCount = docCount;
+		this.ids = ids;
+		this.termStarts = termStarts;
+		this.roadNumValues = roadNumValues;
+		this.roadNumKeys = roadNumKeys;
+		this.termOrdinals = termOrdinals;
+		this.termTypes = termTypes;
+		this.termIds = termIds;
+		this.ordinals = ordinals;
+		this.refers = refers;
+		this.roadNumKeyTable = roadNumKeyTable;
+		TermDictionary.getInstance().track(this, termIds);
+	}
+
+	/**
+	 * 创建不包含任何文档的实例。
+	 * @return
+	 */
+	public static DocumentBlock empty(){
+		return new DocumentBlock(0, new int[0], new int[]{ 0 }, new int[0], new int[0], new int[0], new byte[0],
+				new int[0], new LongIntHashMap(0), new int[0], new VectorSegment.RoadNumKeys(new int[0], new int[0], new int[0]));
+	}
+
+	@Override
+	public int getDocCount(){
+		return this.docCount;
+	}
+
+	@Override
+	public int getId(int doc){
+		return this.ids[doc];
+	}
+
+	@Override
+	public int getTermStart(int doc){
+		return this.termStarts[doc];
+	}
+
+	@Override
+	public int getTermEnd(int doc){
+		return this.termStarts[doc + 1];
+	}
+
+	@Override
+	public int getRoadNumValue(int doc){
+		return this.roadNumValues[doc];
+	}
+
+	@Override
+	public int getRoadNumKey(int doc){
+		return this.roadNumKeys[doc];
+	}
+
+	@Override
+	public int getTermOrdinal(int pos){
+		return this.termOrdinals[pos];
+	}
+
+	@Override
+	public TermType getTermType(int pos){
+		return TYPES[this.termTypes[pos]];
+	}
+
+	@Override
+	public int getDictionarySize(){
+		return this.termIds.length;
+	}
+
+	@Override
+	public int getTermId(int ordinal){
+		return this.termIds[ordinal];
+	}
+
+	@Override
+	public String getText(int ordinal){
+		return TermDictionary.getInstance().getText(this.termIds[ordinal]);
+	}
+
+	@Override
+	public int lookup(String text){
+		return this.lookupTerm(TermDictionary.getInstance().lookup(text));
+	}
+
+	@Override
+	public int lookupTerm(int termId){
+		return termId<0 ? -1 : this.ordinals.get(termId, -1);
+	}
+
+	@Override
+	public int lookupRoadNum(int road, int value){
+		return this.roadNumKeyTable.lookup(road, value);
+	}
+
+	@Override
+	public int getRefers(int ordinal){
+		return this.refers[ordinal];
+	}
+
+	@Override
+	public int getRoadNumRefers(int key){
+		return this.roadNumKeyTable.refers[key];
+	}
+
+	@Override
+	public int getRoadNumKeyCount(){
+		return this.roadNumKeyTable.refers.length;
+	}
+
+	@Override
+	public double getIdf(int ordinal){
+		return this.idfs[ordinal];
+	}
+
+	@Override
+	public double getRoadNumIdf(int key){
+		return this.roadNumKeyTable.idfs[key];
+	}
+
+	@Override
+	public void setIdfs(double[] value, double[] roadNumValue){
+		this.idfs = value;
+		this.roadNumKeyTable.idfs = roadNumValue;
+	}
+
+	/**
+	 * 估算占用的堆内存字节数，不包括全局字典中的词条文本。
+	 * @return
+	 */
+	@Override
+	public long estimateSize(){
+		long size = 128;
+		size += 16L * this.docCount + 4; //ids, termStarts, roadNumValues, roadNumKeys
+		size += 5L * this.termOrdinals.length; //termOrdinals, termTypes
+		size += 16L * this.termIds.length; //termIds, refers, idfs
+		size += this.ordinals.estimateSize();
+		size += this.roadNumKeyTable.estimateSize();
+		return size;
+	}
+
+	@Override
+	public Document getDocument(int doc){
+		return createDocument(this, doc, this.idfs!=null);
+	}
+
+	/**
+	 * 创建文档对象，与{@link SimilarityComputer#deserialize(String)}的结果相同。
+	 * @param vectors
+	 * @param doc 文档序号。
+	 * @param setIdf 是否为文档词条设置IDF值。
+	 * @return
+	 */
+	static Document createDocument(DocumentVectors vectors, int doc, boolean setIdf){
+		Document document = new Document(vectors.getId(doc));
+		int start = vectors.getTermStart(doc), end = vectors.getTermEnd(doc);
+		List<Term> terms = new ArrayList<Term>(end - start);
+		long[] positions = new long[end - start];
+		int textTerms = 0;
+		for(int i=start; i<end; i++){
+			int ordinal = vectors.getTermOrdinal(i);
+			Term term = new Term(vectors.getTermType(i), vectors.getText(ordinal));
+			terms.add(term);
+			switch(term.getType()){
+				case Text:
+					positions[textTerms++] = Document.position(vectors.getTermId(ordinal), i - start); break;
+				case Town:
+					document.setTown(term); break;
+				case Village:
+					document.setVillage(term); break;
+				case Road:
+					document.setRoad(term); break;
+				case RoadNum:
+					document.setRoadNum(term);
+					term.setRef(document.getRoad());
+					if(setIdf && vectors.getRoadNumKey(doc)>=0) term.setIdf(vectors.getRoadNumIdf(vectors.getRoadNumKey(doc)));
+					continue;
+				default:
+			}
+			if(setIdf) term.setIdf(vectors.getIdf(ordinal));
+		}
+		document.setRoadNumValue(vectors.getRoadNumValue(doc));
+		document.setTerms(terms);
+		document.setTextTermPositions(positions, textTerms, vectors);
+		return document;
+	}
+}
@@ -0,0 +1,174 @@
+package com.rrs.rd.address.similarity;
+
+import com.rrs.rd.address.TermType;
+
+/**
+ * 一个缓存分区全部文档的向量数据，以基本类型数组的形式按列访问。
+ *
+ * <p>
+ * 文档通过序号（0 ~ docCount-1）访问，全部文档的词条依次存放在同一个词条数组中，
+ * 文档的词条为词条数组中[{@link #getTermStart(int)}, {@link #getTermEnd(int)})范围内的元素。<br />
+ * 词条文本通过分区字典序号表示，分区字典序号与{@link TermDictionary 全局词条ID}一一对应，词条IDF值按字典序号存取；<br />
+ * 门牌号词条的IDF以（所属道路, 门牌号数值）为key，门牌号key通过序号表示，IDF值按门牌号key序号存取。
+ * </p>
+ *
+ * <p>
+ * 实现类：<br />
+ * {@link VectorSegment}：直接读取映射到内存的缓存文件，文件缓存模式使用；<br />
+ * {@link DocumentBlock}：数据加载到堆内存数组中，内存缓存模式使用。
+ * </p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public interface DocumentVectors {
+	/**
+	 * 文档数量。
+	 * @return
+	 */
+	int getDocCount();
+
+	/**
+	 * 文档ID。
+	 * @param doc 文档序号。
+	 * @return
+	 */
+	int getId(int doc);
+
+	/**
+	 * 文档第一个词条在词条数组中的位置。
+	 * @param doc 文档序号。
+	 * @return
+	 */
+	int getTermStart(int doc);
+
+	/**
+	 * 文档最后一个词条在词条数组中的位置 + 1。
+	 * @param doc 文档序号。
+	 * @return
+	 */
+	int getTermEnd(int doc);
+
+	/**
+	 * 文档的门牌号数值，参考{@link Document#getRoadNumValue()}。
+	 * @param doc 文档序号。
+	 * @return
+	 */
+	int getRoadNumValue(int doc);
+
+	/**
+	 * 文档门牌号key序号。
+	 * @param doc 文档序号。
+	 * @return 文档没有门牌号时返回-1。
+	 */
+	int getRoadNumKey(int doc);
+
+	/**
+	 * 词条文本在字典中的序号。
+	 * @param pos 词条在词条数组中的位置。
+	 * @return
+	 */
+	int getTermOrdinal(int pos);
+
+	/**
+	 * 词条类型。
+	 * @param pos 词条在词条数组中的位置。
+	 * @return
+	 */
+	TermType getTermType(int pos);
+
+	/**
+	 * 字典词条数量。
+	 * @return
+	 */
+	int getDictionarySize();
+
+	/**
+	 * 字典词条的全局词条ID，参考{@link TermDictionary}。
+	 * @param ordinal 字典序号。
+	 * @return
+	 */
+	int getTermId(int ordinal);
+
+	/**
+	 * 字典词条文本。
+	 * @param ordinal 字典序号。
+	 * @return
+	 */
+	String getText(int ordinal);
+
+	/**
+	 * 查找字典序号。
+	 * @param text 词条文本。
+	 * @return 字典中不存在时返回-1。
+	 */
+	int lookup(String text);
+
+	/**
+	 * 根据全局词条ID查找字典序号。
+	 * @param termId 全局词条ID，参考{@link TermDictionary#lookup(String)}。
+	 * @return 字典中不存在时返回-1。
+	 */
+	int lookupTerm(int termId);
+
+	/**
+	 * 查找门牌号key序号。
+	 * @param road 门牌号所属道路的字典序号，门牌号没有所属道路时为-1。
+	 * @param value 门牌号数值，参考{@link Document#getRoadNumValue()}。
+	 * @return 不存在时返回-1。
+	 */
+	int lookupRoadNum(int road, int value);
+
+	/**
+	 * 字典词条的IDF值。
+	 * @param ordinal 字典序号。
+	 * @return 字典词条只出现在门牌号词条中时（门牌号的IDF以门牌号key计算）返回-1。
+	 */
+	double getIdf(int ordinal);
+
+	/**
+	 * 门牌号key的IDF值。
+	 * @param key 门牌号key序号。
+	 * @return
+	 */
+	double getRoadNumIdf(int key);
+
+	/**
+	 * 文本为该字典词条的非门牌号文档词条数量。
+	 * @param ordinal 字典序号。
+	 * @return
+	 */
+	int getRefers(int ordinal);
+
+	/**
+	 * 门牌号key数量。
+	 * @return
+	 */
+	int getRoadNumKeyCount();
+
+	/**
+	 * 门牌号key相同的门牌号词条数量。
+	 * @param key 门牌号key序号。
+	 * @return
+	 */
+	int getRoadNumRefers(int key);
+
+	/**
+	 * 设置字典全部词条和全部门牌号key的IDF值，由{@link SimilarityComputer}加载缓存分区时根据引用次数计算。
+	 * @param value 按字典序号排列的IDF值。
+	 * @param roadNumValue 按门牌号key序号排列的IDF值。
+	 */
+	void setIdfs(double[] value, double[] roadNumValue);
+
+	/**
+	 * 估算占用的堆内存字节数，不包括映射到内存的缓存文件和全局字典中的词条文本，供{@link PartitionCache}控制内存预算。
+	 * @return
+	 */
+	long estimateSize();
+
+	/**
+	 * 创建文档对象。
+	 * @param doc 文档序号。
+	 * @return
+	 */
+	Document getDocument(int doc);
+}
@@ -0,0 +1,217 @@
+package com.rrs.rd.address.similarity;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.utils.LongIntHashMap;
+
+/**
+ * 缓存分区的精确匹配索引，查询地址与地址库中已有地址完全相同时不必计算相似度。
+ *
+ * <p>
+ * 以文档全部词条（乡镇、村庄、道路、门牌号、Text）按顺序的类型和文本计算64位hash作为key，value为文档序号，
+ * key相同的多个文档只保留序号最小的一个。<br />
+ * hash只由词条类型和文本计算，与字典序号、{@link TermDictionary 全局词条ID}无关，因此可以保存为文件，由其他进程加载。<br />
+ * 查找命中后逐一比较查询文档与地址库文档的词条类型和字典序号，hash冲突不会返回错误的文档。<br />
+ * 包含全部查询词条的其他文档相似度也可能为1，查找结果不一定是序号最小的相似度为1的文档，
+ * 由{@link SimilarityComputer}检查序号更小的文档，与逐一计算的结果保持一致。
+ * </p>
+ *
+ * <p>
+ * 索引文件与缓存文件保存在同一个目录（key{@value #FILE_EXTENSION}），记录构建时缓存文件的状态，
+ * 缓存文件被更新后（追加增量缓存文件、合并增量缓存文件）索引文件失效，需要重新构建。<br />
+ * 文件格式：MAGIC(int)、VERSION(int)、缓存文件状态(long)、文档数量(int)、key数量(int)，之后是key数量个(key(long), 文档序号(int))。
+ * </p>
+ *
+ * <p>构建完成后只读，可以在多个线程间共享。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class ExactMatchIndex {
+	public static final String FILE_EXTENSION = ".vsx";
+	public static final int MAGIC = 0x56535849; //VSXI
+	public static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	private LongIntHashMap docs;
+	private int docCount;
+	private long fileStamp;
+
+	private ExactMatchIndex(LongIntHashMap docs, int docCount, long fileStamp){
+		this.docs = docs;
+		this.docCount = docCount;
+		this.fileStamp = fileStamp;
+	}
+
+	/**
+	 * 为缓存分区的全部文档构建索引。
+	 * @param docs
+	 * @param fileStamp 缓存文件状态，参考{@link Partition#getFileStamp()}。
+	 * @return
+	 */
+	public static ExactMatchIndex build(DocumentVectors docs, long fileStamp){
+		long[] textHashes = textHashes(docs);
+		LongIntHashMap map = new LongIntHashMap(docs.getDocCount());
+		for(int i=0; i<docs.getDocCount(); i++){
+			long key = docKey(docs, textHashes, i);
+			if(!map.containsKey(key)) map.put(key, i);
+		}
+		return new ExactMatchIndex(map, docs.getDocCount(), fileStamp);
+	}
+
+	/**
+	 * 查找与查询文档词条完全相同的文档。
+	 * @param vq
+	 * @return 文档序号，不存在时返回-1。
+	 */
+	public int find(VectorQuery vq){
+		List<Term> qterms = vq.getQuery().getQueryDoc().getTerms();
+		int[] ordinals = vq.getOrdinals();
+		long key = FNV_OFFSET;
+		for(int i=0; i<qterms.size(); i++){
+			if(ordinals[i]<0) return -1; //地址库中不存在的词条，不可能完全相同
+			key = mix(key, qterms.get(i).getType(), hash(qterms.get(i).getText()));
+		}
+		int doc = this.docs.get(key, -1);
+		DocumentVectors docs = vq.getDocs();
+		if(doc<0 || doc>=docs.getDocCount()) return -1;
+		int start = docs.getTermStart(doc);
+		if(docs.getTermEnd(doc) - start != qterms.size()) return -1;
+		for(int i=0; i<qterms.size(); i++){
+			if(docs.getTermOrdinal(start + i)!=ordinals[i] || docs.getTermType(start + i)!=qterms.get(i).getType()) return -1;
+		}
+		return doc;
+	}
+
+	/**
+	 * 构建索引时的文档数量。
+	 * @return
+	 */
+	public int getDocCount(){
+		return this.docCount;
+	}
+
+	/**
+	 * 构建索引时的缓存文件状态。
+	 * @return
+	 */
+	public long getFileStamp(){
+		return this.fileStamp;
+	}
+
+	/**
+	 * 估算占用的堆内存字节数。
+	 * @return
+	 */
+	public long estimateSize(){
+		return this.docs.estimateSize();
+	}
+
+	/**
+	 * 保存索引文件，先写入临时文件再替换，避免写入过程中中断产生不完整的索引文件。
+	 * 临时文件名唯一，多个进程（例如查询服务和生成缓存文件的程序）同时保存同一个索引文件时互不影响。
+	 * @param file
+	 * @param docs 构建索引的文档，用于按文档序号列出key。
+	 * @throws IOException
+	 */
+	public void save(File file, DocumentVectors docs) throws IOException {
+		File temp = File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+		DataOutputStream out = null;
+		try{
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(this.fileStamp);
+			out.writeInt(this.docCount);
+			out.writeInt(this.docs.size());
+			//按文档序号重新计算key，只写入索引中保留的文档
+			long[] textHashes = textHashes(docs);
+			for(int i=0; i<docs.getDocCount(); i++){
+				long key = docKey(docs, textHashes, i);
+				if(this.docs.get(key, -1)!=i) continue;
+				out.writeLong(key);
+				out.writeInt(i);
+			}
+			out.close();
+			out = null;
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}finally{
+			if(out!=null) try { out.close(); } catch (IOException e) {}
+			temp.delete(); //替换成功后临时文件已不存在
+		}
+	}
+
+	/**
+	 * 加载索引文件。
+	 * @param file
+	 * @return
+	 * @throws IOException 文件读取失败，或者不是有效的索引文件。
+	 */
+	public static ExactMatchIndex load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer = null;
+		try{
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}finally{
+			raf.close();
+		}
+		if(buffer.capacity()<HEADER_SIZE || buffer.getInt(0)!=MAGIC)
+			throw new IOException("Invalid exact match index file: " + file.getAbsolutePath());
+		if(buffer.getInt(4)!=VERSION)
+			throw new IOException("Unsupported exact match index version " + buffer.getInt(4) + ": " + file.getAbsolutePath());
+		int count = buffer.getInt(20);
+		if(count<0 || buffer.capacity() != HEADER_SIZE + count * 12L)
+			throw new IOException("Incomplete exact match index file: " + file.getAbsolutePath());
+
+		LongIntHashMap map = new LongIntHashMap(count);
+		buffer.position(HEADER_SIZE);
+		for(int i=0; i<count; i++) map.put(buffer.getLong(), buffer.getInt());
+		return new ExactMatchIndex(map, buffer.getInt(16), buffer.getLong(8));
+	}
+
+	/**
+	 * 字典词条文本的hash，每个词条只计算一次。
+	 */
+	private static long[] textHashes(DocumentVectors docs){
+		long[] hashes = new long[docs.getDictionarySize()];
+		for(int i=0; i<hashes.length; i++) hashes[i] = hash(docs.getText(i));
+		return hashes;
+	}
+
+	private static long docKey(DocumentVectors docs, long[] textHashes, int doc){
+		long key = FNV_OFFSET;
+		for(int pos=docs.getTermStart(doc), end=docs.getTermEnd(doc); pos<end; pos++)
+			key = mix(key, docs.getTermType(pos), textHashes[docs.getTermOrdinal(pos)]);
+		return key;
+	}
+
+	private static long mix(long key, TermType type, long textHash){
+		key = (key ^ type.getValue()) * FNV_PRIME;
+		return (key ^ textHash) * FNV_PRIME;
+	}
+
+	/**
+	 * 词条文本的FNV-1a 64位hash。
+	 */
+	private static long hash(String text){
+		long h = FNV_OFFSET;
+		if(text==null) return h;
+		for(int i=0; i<text.length(); i++){
+			h ^= text.charAt(i);
+			h *= FNV_PRIME;
+		}
+		return h;
+	}
+}
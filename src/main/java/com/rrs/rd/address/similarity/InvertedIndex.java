@@ -0,0 +1,88 @@
+package com.rrs.rd.address.similarity;
+
+/**
+ * 文档词条倒排索引。
+ *
+ * <p>
+ * 按缓存分区（省-市-区县，参考{@link SimilarityComputer#buildCacheKey(com.rrs.rd.address.persist.AddressEntity)}）构建，
+ * 为{@link DocumentVectors}字典中的每个词条记录包含该词条的文档序号列表（posting list）。<br />
+ * 文档序号即文档在分区文档列表中的下标，posting list按文档序号升序排列。
+ * </p>
+ *
+ * <p>
+ * 计算相似度时，只有与查询文档存在相同文本词条的文档才可能得到大于0的相似度，
+ * 因此只需要遍历查询文档各词条的posting list（参考{@link WandSearcher}），不必扫描分区中的全部文档。
+ * </p>
+ *
+ * <p>索引构建完成后只读，可以在多个线程间共享。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class InvertedIndex {
+	private static final int[] EMPTY_POSTINGS = new int[0];
+
+	private DocumentVectors docs = null;
+	private int[][] postings = null;
+
+	public InvertedIndex(DocumentVectors docs){
+		this.docs = docs;
+		this.postings = new int[docs.getDictionarySize()][];
+
+		//1. 统计每个词条的文档数量，确定posting list长度
+		//counts[i]: 文档数量；lastDocs[i]: 最后一个计数的文档序号，防止同一文档中重复出现的词条重复计数
+		int[] counts = new int[docs.getDictionarySize()], lastDocs = new int[docs.getDictionarySize()];
+		for(int i=0; i<lastDocs.length; i++) lastDocs[i] = -1;
+		for(int i=0; i<docs.getDocCount(); i++){
+			for(int pos=docs.getTermStart(i), end=docs.getTermEnd(i); pos<end; pos++){
+				int ordinal = docs.getTermOrdinal(pos);
+				if(lastDocs[ordinal]==i) continue;
+				counts[ordinal]++;
+				lastDocs[ordinal] = i;
+			}
+		}
+
+		//2. 填充posting list，文档按序号顺序处理，posting list自然升序
+		for(int i=0; i<counts.length; i++){
+			this.postings[i] = counts[i]==0 ? EMPTY_POSTINGS : new int[counts[i]];
+			counts[i] = 0; //复用为填充位置
+		}
+		for(int i=0; i<docs.getDocCount(); i++){
+			for(int pos=docs.getTermStart(i), end=docs.getTermEnd(i); pos<end; pos++){
+				int ordinal = docs.getTermOrdinal(pos);
+				int[] list = this.postings[ordinal];
+				if(counts[ordinal]>0 && list[counts[ordinal]-1]==i) continue;
+				list[counts[ordinal]++] = i;
+			}
+		}
+	}
+
+	/**
+	 * 分区文档总数。
+	 * @return
+	 */
+	public int getDocCount(){
+		return this.docs.getDocCount();
+	}
+
+	/**
+	 * 估算占用的堆内存字节数，不包括{@link DocumentVectors}。
+	 * @return
+	 */
+	public long estimateSize(){
+		long size = 32 + 8L * this.postings.length;
+		for(int[] list : this.postings)
+			if(list.length>0) size += 16 + 4L * list.length;
+		return size;
+	}
+
+	/**
+	 * 获取词条的posting list。
+	 * @param term 词条文本。
+	 * @return 包含该词条的文档序号列表，升序排列；不存在时返回长度为0的数组。<br />
+	 * <span style="color:red;">不允许对返回的数组进行更改操作</span>
+	 */
+	public int[] getPostings(String term){
+		int ordinal = this.docs.lookup(term);
+		return ordinal<0 ? EMPTY_POSTINGS : this.postings[ordinal];
+	}
+}
@@ -0,0 +1,168 @@
+package com.rrs.rd.address.similarity;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rrs.rd.address.utils.SingleFlight;
+
+/**
+ * 按估算内存大小限制容量的LRU缓存，{@link PartitionCache}的默认实现。
+ *
+ * <p>
+ * 放入新分区后如果全部分区的估算大小超过容量，按最近最少访问的顺序淘汰分区，直到不超过容量为止；
+ * 固定（pin）的分区不会被淘汰，但占用容量。单个分区超过容量时仍然缓存，此时其他未固定的分区全部被淘汰。<br />
+ * 容量小于等于0时不限制容量。
+ * </p>
+ *
+ * <p>线程安全。不同分区并行加载，同一个分区的并发请求共享一次加载，参考{@link SingleFlight}。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class LruPartitionCache implements PartitionCache {
+	private final static Logger LOG = LoggerFactory.getLogger(LruPartitionCache.class);
+
+	private long capacity = 0;
+	private Set<String> pinnedKeys = new HashSet<String>();
+	private LinkedHashMap<String, Partition> partitions = new LinkedHashMap<String, Partition>(64, 0.75f, true);
+	private long size = 0;
+	private SingleFlight<Partition> flights = new SingleFlight<Partition>();
+	private PartitionCacheStats stats = new PartitionCacheStats();
+
+	public LruPartitionCache() {}
+
+	/**
+	 * @param capacity 容量，估算的字节数，小于等于0时不限制容量。
+	 */
+	public LruPartitionCache(long capacity){
+		this.capacity = capacity;
+	}
+
+	@Override
+	public Partition get(final String key, final Loader loader){
+		Partition partition = this.getIfPresent(key);
+		if(partition!=null) {
+			this.stats.recordHit();
+			return partition;
+		}
+		this.stats.recordMiss();
+		//同一个分区只加载一次，并发查询共享加载结果；不同分区并行加载
+		return this.flights.load(key, new Callable<Partition>() {
+			@Override
+			public Partition call() {
+				Partition partition = getIfPresent(key);
+				if(partition!=null) return partition;
+				long start = System.currentTimeMillis();
+				partition = loader.load(key);
+				stats.recordLoad(System.currentTimeMillis() - start);
+				put(key, partition);
+				return partition;
+			}
+		});
+	}
+
+	private synchronized Partition getIfPresent(String key){
+		return this.partitions.get(key);
+	}
+
+	private synchronized void put(String key, Partition partition){
+		Partition old = this.partitions.put(key, partition);
+		if(old!=null) this.size -= old.getEstimatedSize();
+		this.size += partition.getEstimatedSize();
+		this.evict(key);
+		this.stats.update(this.partitions.size(), this.size);
+	}
+
+	/**
+	 * 淘汰分区直到不超过容量。
+	 * @param current 刚放入的分区，不淘汰。
+	 */
+	private void evict(String current){
+		if(this.capacity<=0 || this.size<=this.capacity) return;
+		Iterator<Map.Entry<String, Partition>> it = this.partitions.entrySet().iterator();
+		while(this.size>this.capacity && it.hasNext()){
+			Map.Entry<String, Partition> entry = it.next();
+			if(entry.getKey().equals(current) || this.pinnedKeys.contains(entry.getKey())) continue;
+			it.remove();
+			this.size -= entry.getValue().getEstimatedSize();
+			this.stats.recordEviction(entry.getValue().getEstimatedSize());
+			if(LOG.isInfoEnabled())
+				LOG.info("[doc-vec] [cache] Partition " + entry.getKey() + " evicted, " 
+					+ entry.getValue().getEstimatedSize() / 1024 + "KB, " + this.stats);
+		}
+		if(this.size>this.capacity)
+			LOG.warn("[doc-vec] [cache] Cache size " + this.size / 1024 / 1024 + "MB still exceeds capacity " 
+				+ this.capacity / 1024 / 1024 + "MB after eviction, check pinned partitions and the capacity setting");
+	}
+
+	@Override
+	public synchronized void invalidate(String key){
+		Partition partition = this.partitions.remove(key);
+		if(partition==null) return;
+		this.size -= partition.getEstimatedSize();
+		this.stats.update(this.partitions.size(), this.size);
+	}
+
+	@Override
+	public PartitionCacheStats getStats(){
+		return this.stats;
+	}
+
+	/**
+	 * 容量，估算的字节数，小于等于0时不限制容量。
+	 * @return
+	 */
+	public long getCapacity(){
+		return this.capacity;
+	}
+
+	/**
+	 * 设置容量，估算的字节数，小于等于0时不限制容量。
+	 * @param value
+	 */
+	public synchronized void setCapacity(long value){
+		this.capacity = value;
+		this.evict(null);
+		this.stats.update(this.partitions.size(), this.size);
+	}
+
+	/**
+	 * 设置容量，MB。
+	 * @param value 小于等于0时不限制容量。
+	 */
+	public void setCapacityMB(long value){
+		this.setCapacity(value * 1024 * 1024);
+	}
+
+	/**
+	 * 固定分区，固定的分区不会被淘汰。
+	 * @param key
+	 */
+	public synchronized void pin(String key){
+		this.pinnedKeys.add(key);
+	}
+
+	/**
+	 * 取消固定分区。
+	 * @param key
+	 */
+	public synchronized void unpin(String key){
+		this.pinnedKeys.remove(key);
+	}
+
+	/**
+	 * 设置固定的分区，替换原有设置。
+	 * @param keys
+	 */
+	public synchronized void setPinnedKeys(Collection<String> keys){
+		this.pinnedKeys = new HashSet<String>();
+		if(keys!=null) this.pinnedKeys.addAll(keys);
+	}
+}
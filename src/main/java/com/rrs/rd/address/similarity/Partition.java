@@ -0,0 +1,100 @@
+package com.rrs.rd.address.similarity;
+
+/**
+ * 一个缓存分区（省-市-区县）已加载的数据：全部文档的{@link DocumentVectors}及其{@link InvertedIndex 倒排索引}、{@link ExactMatchIndex 精确匹配索引}。
+ *
+ * <p>
+ * 内存缓存模式下文档为{@link DocumentBlock}；文件缓存模式下文档通常为映射到内存的{@link VectorSegment}，没有倒排索引。
+ * 创建时估算占用的堆内存大小（参考{@link DocumentVectors#estimateSize()}），供{@link PartitionCache}控制内存预算。<br />
+ * 加载时记录缓存文件的状态（{@link #getFileStamp()}），用于发现缓存文件被其他进程更新（例如导入地址时追加增量缓存文件）。
+ * </p>
+ *
+ * <p>创建后只读，可以在多个线程间共享。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class Partition {
+	private String key;
+	private DocumentVectors docs;
+	private InvertedIndex index;
+	private ExactMatchIndex exactIndex;
+	private long estimatedSize;
+	private long fileStamp;
+	private volatile long checkTime;
+
+	/**
+	 * @param key 缓存分区，参考{@link SimilarityComputer#buildCacheKey(com.rrs.rd.address.persist.AddressEntity)}。
+	 * @param docs
+	 * @param index 倒排索引，可以为null。
+	 * @param fileStamp 加载时缓存文件的状态。
+	 */
+	public Partition(String key, DocumentVectors docs, InvertedIndex index, long fileStamp){
+		this(key, docs, index, null, fileStamp);
+	}
+	
+	/**
+	 * @param key 缓存分区，参考{@link SimilarityComputer#buildCacheKey(com.rrs.rd.address.persist.AddressEntity)}。
+	 * @param docs
+	 * @param index 倒排索引，可以为null。
+	 * @param exactIndex 精确匹配索引，可以为null。
+	 * @param fileStamp 加载时缓存文件的状态。
+	 */
+	public Partition(String key, DocumentVectors docs, InvertedIndex index, ExactMatchIndex exactIndex, long fileStamp){
+		this.key = key;
+		this.docs = docs;
+		this.index = index;
+		this.exactIndex = exactIndex;
+		this.fileStamp = fileStamp;
+		this.checkTime = System.currentTimeMillis();
+		this.estimatedSize = docs.estimateSize()
+			+ (index==null ? 0 : index.estimateSize()) + (exactIndex==null ? 0 : exactIndex.estimateSize());
+	}
+
+	public String getKey(){
+		return this.key;
+	}
+
+	public DocumentVectors getDocs(){
+		return this.docs;
+	}
+
+	public InvertedIndex getIndex(){
+		return this.index;
+	}
+
+	/**
+	 * 精确匹配索引，可能为null。
+	 * @return
+	 */
+	public ExactMatchIndex getExactIndex(){
+		return this.exactIndex;
+	}
+
+	/**
+	 * 估算占用的堆内存字节数。
+	 * @return
+	 */
+	public long getEstimatedSize(){
+		return this.estimatedSize;
+	}
+
+	/**
+	 * 加载时缓存文件的状态，由{@link SimilarityComputer}根据缓存文件的修改时间、大小计算。
+	 * @return
+	 */
+	public long getFileStamp(){
+		return this.fileStamp;
+	}
+
+	/**
+	 * 最近一次检查缓存文件状态的时间。
+	 * @return
+	 */
+	public long getCheckTime(){
+		return this.checkTime;
+	}
+
+	public void setCheckTime(long value){
+		this.checkTime = value;
+	}
+}
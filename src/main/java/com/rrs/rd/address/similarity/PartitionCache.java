@@ -0,0 +1,44 @@
+package com.rrs.rd.address.similarity;
+
+/**
+ * 缓存分区容器，由{@link SimilarityComputer}使用（内存缓存模式、文件缓存模式都使用），可以通过{@link SimilarityComputer#setPartitionCache(PartitionCache)}替换实现。
+ *
+ * <p>实现类必须是线程安全的。默认实现为{@link LruPartitionCache}。</p>
+ * <p>缓存分区只以key区分，不包含缓存目录，一个实例只能由一个{@link SimilarityComputer}使用。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public interface PartitionCache {
+	/**
+	 * 获取缓存分区，不在缓存中时通过loader加载并放入缓存。
+	 * <p>加载一个分区时不允许阻塞其他分区的访问和加载，同一个分区的并发请求应当只加载一次。</p>
+	 * @param key 缓存分区，参考{@link SimilarityComputer#buildCacheKey(com.rrs.rd.address.persist.AddressEntity)}。
+	 * @param loader
+	 * @return
+	 */
+	Partition get(String key, Loader loader);
+
+	/**
+	 * 移除缓存分区，下次访问时重新加载。
+	 * @param key
+	 */
+	void invalidate(String key);
+
+	/**
+	 * 命中、加载、淘汰等统计数据。
+	 * @return
+	 */
+	PartitionCacheStats getStats();
+
+	/**
+	 * 缓存分区加载器。
+	 */
+	interface Loader {
+		/**
+		 * 加载缓存分区。
+		 * @param key
+		 * @return 不允许返回null。
+		 */
+		Partition load(String key);
+	}
+}
@@ -0,0 +1,118 @@
+package com.rrs.rd.address.similarity;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PartitionCache}的统计数据，计数器线程安全。
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class PartitionCacheStats {
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong loads = new AtomicLong();
+	private AtomicLong loadTime = new AtomicLong();
+	private AtomicLong evictions = new AtomicLong();
+	private AtomicLong evictedSize = new AtomicLong();
+	private volatile int partitionCount = 0;
+	private volatile long size = 0;
+
+	public void recordHit(){
+		this.hits.incrementAndGet();
+	}
+
+	public void recordMiss(){
+		this.misses.incrementAndGet();
+	}
+
+	/**
+	 * @param millis 加载耗时，毫秒。
+	 */
+	public void recordLoad(long millis){
+		this.loads.incrementAndGet();
+		this.loadTime.addAndGet(millis);
+	}
+
+	/**
+	 * @param size 被淘汰分区的估算大小，字节。
+	 */
+	public void recordEviction(long size){
+		this.evictions.incrementAndGet();
+		this.evictedSize.addAndGet(size);
+	}
+
+	/**
+	 * 更新当前缓存的分区数量、估算大小。
+	 * @param partitionCount
+	 * @param size
+	 */
+	public void update(int partitionCount, long size){
+		this.partitionCount = partitionCount;
+		this.size = size;
+	}
+
+	public long getHits(){
+		return this.hits.get();
+	}
+
+	public long getMisses(){
+		return this.misses.get();
+	}
+
+	/**
+	 * 命中率。
+	 * @return 没有任何访问时返回0。
+	 */
+	public double getHitRate(){
+		long hits = this.hits.get(), total = hits + this.misses.get();
+		return total==0 ? 0 : hits * 1.0 / total;
+	}
+
+	public long getLoads(){
+		return this.loads.get();
+	}
+
+	/**
+	 * 累计加载耗时，毫秒。
+	 * @return
+	 */
+	public long getLoadTime(){
+		return this.loadTime.get();
+	}
+
+	public long getEvictions(){
+		return this.evictions.get();
+	}
+
+	/**
+	 * 累计淘汰分区的估算大小，字节。
+	 * @return
+	 */
+	public long getEvictedSize(){
+		return this.evictedSize.get();
+	}
+
+	/**
+	 * 当前缓存的分区数量。
+	 * @return
+	 */
+	public int getPartitionCount(){
+		return this.partitionCount;
+	}
+
+	/**
+	 * 当前缓存分区的估算大小，字节。
+	 * @return
+	 */
+	public long getSize(){
+		return this.size;
+	}
+
+	@Override
+	public String toString(){
+		return "partitions: " + this.partitionCount + ", size: " + this.size / 1024 / 1024 + "MB"
+			+ ", hits: " + this.hits.get() + ", misses: " + this.misses.get()
+			+ ", loads: " + this.loads.get() + ", load time: " + this.loadTime.get() / 1000.0 + "s"
+			+ ", evictions: " + this.evictions.get() + ", evicted: " + this.evictedSize.get() / 1024 / 1024 + "MB";
+	}
+}
@@ -1,20 +1,29 @@
 package com.rrs.rd.address.similarity;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import com.rrs.rd.address.TermType;
 import com.rrs.rd.address.persist.AddressEntity;
 
 public class Query {
 	private int topN;
 	private AddressEntity queryAddr;
 	private Document queryDoc;
+	private int[] textTermIds = null;
 	
+	private final TopNCollector collector;
 	private List<SimilarDoccument> simiDocs;
 	
 	public Query(int N){
 		this.topN = N;
 		if(this.topN<=0) this.topN = 1;
+		this.collector = new TopNCollector(this.topN);
+	}
+	
+	public int getTopN(){
+		return this.topN;
 	}
 	
 	public AddressEntity getQueryAddr(){
@@ -29,74 +38,56 @@ public class Query {
 	}
 	public void setQueryDoc(Document value){
 		this.queryDoc = value;
+		this.textTermIds = null;
 	}
 	
 	/**
-	 * 将相似文档按相似度从高到低排序。
+	 * 查询文档Text类型词条的{@link TermDictionary 全局词条ID}，升序排列，全局字典中不存在的词条为-1（排在最前面）。
+	 * <p>与{@link Document#getTextTermPositions()}归并计算Text类型词条的匹配率、稠密度，第一次调用时创建。<br />
+	 * 词条ID在第一次调用时确定，之后才注册到全局字典的词条仍为-1，包含-1时只能逐一比较词条文本（参考{@link TextTermMatch}）。</p>
+	 * <p style="color:red;">不允许对返回的数组进行更改操作</p>
+	 * @return
 	 */
-	public void sortSimilarDocs(){
-		if(this.simiDocs==null) return;
-		boolean exchanged = true;
-		int endIndex = this.simiDocs.size() - 1;
-		while(exchanged){
-			exchanged = false;
-			for(int i=1; i<=endIndex; i++){
-				if(this.simiDocs.get(i-1).getSimilarity() < this.simiDocs.get(i).getSimilarity()){
-					SimilarDoccument temp = this.simiDocs.get(i-1);
-					this.simiDocs.set(i-1, this.simiDocs.get(i));
-					this.simiDocs.set(i, temp);
-					exchanged = true;
-				}
-			}
-			endIndex--;
-		}
+	public int[] getTextTermIds(){
+		if(this.textTermIds!=null) return this.textTermIds;
+		int count = 0;
+		for(Term term : this.queryDoc.getTerms())
+			if(TermType.Text==term.getType()) count++;
+		int[] ids = new int[count];
+		count = 0;
+		for(Term term : this.queryDoc.getTerms())
+			if(TermType.Text==term.getType()) ids[count++] = TermDictionary.getInstance().lookup(term.getText());
+		Arrays.sort(ids);
+		this.textTermIds = ids;
+		return ids;
 	}
 	
 	/**
-	 * 添加一个相似文档。
-	 * <p>只保留相似度最高的top N条相似文档，相似度最低的从simiDocs中删除。</p>
-	 * @param simiDoc
+	 * 计算相似度过程中收集相似度最高的top N文档，计算完成后由{@link #setSimilarDocs(List)}设置最终结果。
 	 * @return
 	 */
-	public boolean addSimiDoc(SimilarDoccument simiDoc){
-		if(simiDoc==null || simiDoc.getSimilarity()<=0) return false;
-		if(this.simiDocs==null) this.simiDocs = new ArrayList<SimilarDoccument>(this.topN);
-		if(this.simiDocs.size()<this.topN){
-			this.simiDocs.add(simiDoc);
-			return true;
-		}
-		int minSimilarityIndex = 0;
-		for(int i=1; i<this.topN; i++){
-			if(this.simiDocs.get(i).getSimilarity() < this.simiDocs.get(minSimilarityIndex).getSimilarity())
-				minSimilarityIndex = i;
-		}
-		if(this.simiDocs.get(minSimilarityIndex).getSimilarity() < simiDoc.getSimilarity()){
-			this.simiDocs.set(minSimilarityIndex, simiDoc);
-			return true;
-		}
-		return false;
+	public TopNCollector getCollector(){
+		return this.collector;
 	}
 	
-	public boolean addSimiDoc(Document doc, double similarity){
-		if(similarity<=0) return false;
-		if(this.simiDocs==null) {
-			this.simiDocs = new ArrayList<SimilarDoccument>(this.topN);
-			SimilarDoccument simiDoc = new SimilarDoccument(doc);
-			simiDoc.setSimilarity(similarity);
-			this.simiDocs.add(simiDoc);
-			return true;
-		}
-		if(this.simiDocs.get(0).getSimilarity()<similarity){
-			SimilarDoccument simiDoc = new SimilarDoccument(doc);
-			simiDoc.setSimilarity(similarity);
-			this.simiDocs.set(0, simiDoc);
-			return true;
-		}
-		return false;
+	/**
+	 * 文档进入top N的相似度阈值，参考{@link TopNCollector#getThreshold()}。
+	 * @return
+	 */
+	public double getThreshold(){
+		return this.collector.getThreshold();
 	}
 	
+	/**
+	 * 相似文档，按相似度从高到低排列。
+	 * @return
+	 */
 	public List<SimilarDoccument> getSimilarDocs(){
 		if(this.simiDocs==null) this.simiDocs = new ArrayList<SimilarDoccument>(0);
 		return this.simiDocs;
 	}
+	
+	public void setSimilarDocs(List<SimilarDoccument> value){
+		this.simiDocs = value;
+	}
 }
\ No newline at end of file
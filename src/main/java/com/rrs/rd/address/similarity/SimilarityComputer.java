@@ -1,17 +1,25 @@
 package com.rrs.rd.address.similarity;
 
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +27,8 @@ import org.slf4j.LoggerFactory;
 import com.rrs.rd.address.TermType;
 import com.rrs.rd.address.interpret.AddressInterpreter;
 import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.AddressHandler;
+import com.rrs.rd.address.persist.AddressImportListener;
 import com.rrs.rd.address.persist.RegionEntity;
 import com.rrs.rd.address.persist.RegionType;
 import com.rrs.rd.address.similarity.segment.SimpleSegmenter;
@@ -50,7 +60,7 @@ import com.rrs.rd.address.utils.StringUtil;
  * &nbsp;&nbsp;&nbsp;&nbsp;采用权重中值部分：门牌号<br />
  * &nbsp;&nbsp;&nbsp;&nbsp;采用权重低值部分：街道<br />
  * 步骤1、2由方法{@link #analyse(AddressEntity)}完成。<br />
- * 3. 在全部文档中为所有词条统计逆文档引用情况，由方法{@link #statInverseDocRefers(List)}完成；<br />
+ * 3. 生成缓存文件时为所有词条统计逆文档引用情况，由{@link VectorSegmentWriter}完成；<br />
  * 4. 为文档中的每个词条计算特征值，由方法{@link #computeTermEigenvalue(Document, int, Map)}完成；<br />
  * 5. 为两个文档计算余弦相似度，由方法{@link #computeDocSimilarity1(Document, Document)}完成；<br />
  * &nbsp;&nbsp;&nbsp;&nbsp;文档特征向量的维度，取两个文档汇总后的独立词条个数。
@@ -64,7 +74,7 @@ import com.rrs.rd.address.utils.StringUtil;
  * @author Richie 刘志斌 yudi@sina.com
  * 2016年9月21日
  */
-public class SimilarityComputer {
+public class SimilarityComputer implements AddressImportListener {
 	private final static Logger LOG = LoggerFactory.getLogger(SimilarityComputer.class);
 	
 	private static String DEFAULT_CACHE_FOLDER = "~/.vector_cache";
@@ -75,14 +85,69 @@ public class SimilarityComputer {
 	private static double BOOST_XS = 0.25; //降权
 	
 	private static double MISSING_IDF = 4;
+	/**
+	 * 并行计算相似度时，每个线程平均分配的文档区间数量，区间较多时各线程的负载更均衡。
+	 */
+	private static final int PARALLEL_CHUNKS_PER_THREAD = 4;
+	/**
+	 * 查找相似度为1的文档时使用的WAND阈值，相似度上限不超过该值的文档不可能相似度为1。
+	 */
+	private static final double EXACT_MATCH_THRESHOLD = 1 - 1e-6;
 	
 	private AddressInterpreter interpreter = null;
 	private Segmenter segmenter = new SimpleSegmenter();
 	private List<String> defaultTokens = new ArrayList<String>(0);
 	private String cacheFolder;
 	private boolean cacheVectorsInMemory = false;
-	private static Map<String, List<Document>> VECTORS_CACHE = new HashMap<String, List<Document>>();
-	private static Map<String, Map<String, Double>> IDF_CACHE = new HashMap<String, Map<String, Double>>();
+	private PartitionCache partitionCache = new LruPartitionCache();
+	private static ConcurrentHashMap<String, Object> FILE_LOCKS = new ConcurrentHashMap<String, Object>();
+	private static Set<String> COMPACTING = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private static ThreadPoolExecutor COMPACTOR = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+	/**
+	 * 导入地址后追加增量缓存文件的后台线程，按提交顺序逐批追加；队列已满时提交方等待，避免导入速度超过追加速度时积压过多地址。
+	 */
+	private static ThreadPoolExecutor APPENDER = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(16),
+		new RejectedExecutionHandler() {
+			@Override
+			public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+				try {
+					executor.getQueue().put(task);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException("Interrupted while waiting for delta cache appender", ex);
+				}
+			}
+		});
+	static {
+		//空闲时结束后台合并、追加线程，不阻止进程退出；合并、追加进行中时进程等待完成
+		COMPACTOR.allowCoreThreadTimeOut(true);
+		APPENDER.allowCoreThreadTimeOut(true);
+	}
+	/**
+	 * 检查缓存文件是否更新的时间间隔，毫秒，小于0时不检查。
+	 */
+	private long refreshInterval = 10000;
+	/**
+	 * 增量缓存文件的文档数量达到该值时合并到缓存文件，小于等于0时不自动合并。
+	 */
+	private int compactThreshold = 20000;
+	/**
+	 * 导入地址后是否追加增量缓存文件。
+	 */
+	private boolean appendOnImport = true;
+	/**
+	 * 校验模式：不使用倒排索引，对分区中的全部文档逐一计算相似度。
+	 */
+	private boolean bruteForceSearch = false;
+	/**
+	 * 缓存分区的文档数量达到该值时并行计算相似度，小于等于0时不并行计算。
+	 */
+	private int parallelThreshold = 0;
+	/**
+	 * 并行计算相似度的线程数量，小于等于0时为CPU核数。
+	 */
+	private int parallelism = 0;
+	private volatile ForkJoinPool scorePool = null;
 	
 	public long timeBoost=0;
 	
@@ -143,47 +208,31 @@ public class SimilarityComputer {
 		for(String token : tokens)
 			addTerm(token, TermType.Text, terms, null);
 		
-		Map<String, Double> idfs = IDF_CACHE.get(this.buildCacheKey(addr));
-		if(idfs!=null){
-			Double idf = null;
-			for(Term t : terms){
-				idf = idfs.get(generateIDFCacheEntryKey(t));
-				if(idf==null) t.setIdf(MISSING_IDF);
-				else t.setIdf(idf.doubleValue());
-			}
-		}
-		
 		doc.setTerms(terms);
 		
 		return doc;
 	}
 	
 	/**
-	 * 为所有文档的全部词条统计逆向引用情况。
-	 * @param docs 所有文档。
-	 * @return 全部词条的逆向引用情况，key为词条，value为该词条在多少个文档中出现过。
+	 * 从缓存分区获取查询词条的IDF值。
+	 * <p>门牌号词条以（所属道路, 门牌号数值）为key，其他词条以词条文本为key。</p>
+	 * @param docs
+	 * @param term
+	 * @return 缓存分区中不存在时返回{@link #MISSING_IDF}。
 	 */
-	private Map<String, Integer> statInverseDocRefers(List<Document> docs){
-		Map<String, Integer> idrc = new HashMap<String, Integer>(); 
-		if(docs==null) return idrc;
-		String key = null;
-		for(Document doc : docs) {
-			if(doc.getTerms()==null) continue;
-			for(Term term : doc.getTerms()){
-				key = generateIDFCacheEntryKey(term);
-				if(idrc.containsKey(key)) idrc.put(key, idrc.get(key) + 1);
-				else idrc.put(key, 1);
-			}
-		}
-		return idrc;
-	}
-	private String generateIDFCacheEntryKey(Term term){
-		String key = term.getText();
+	private double lookupIdf(DocumentVectors docs, Term term){
+		double idf = -1;
 		if(TermType.RoadNum==term.getType()){
-			int num = translateRoadNum(key);
-			key = ( term.getRef() == null ? "" : term.getRef().getText() ) + "-" + num;
+			int road = term.getRef()==null ? -1 : docs.lookup(term.getRef().getText());
+			if(term.getRef()==null || road>=0){
+				int key = docs.lookupRoadNum(road, translateRoadNum(term.getText()));
+				if(key>=0) idf = docs.getRoadNumIdf(key);
+			}
+		}else{
+			int ordinal = docs.lookup(term.getText());
+			if(ordinal>=0) idf = docs.getIdf(ordinal);
 		}
-		return key;
+		return idf<0 ? MISSING_IDF : idf;
 	}
 	
 	/**
@@ -389,8 +438,6 @@ public class SimilarityComputer {
 	 * @return
 	 */
 	public Query findSimilarAddress(String addressText, int topN, boolean explain){
-		Query query = new Query(topN); 
-		
 		//解析地址
 		if(addressText==null || addressText.trim().isEmpty())
 			throw new IllegalArgumentException("Null or empty address text! Please provider a valid address.");
@@ -408,33 +455,214 @@ public class SimilarityComputer {
 			throw new RuntimeException("Can't interpret address, invalid province, city or county name!");
 		}
 		
-		//从文件缓存或内存缓存获取所有文档。
-		List<Document> allDocs = loadDocunentsFromCache(queryAddr);
-		if(allDocs.isEmpty()) {
-			String message = queryAddr.getProvince().getName() + queryAddr.getCity().getName();
-			if(!(RegionType.CityLevelDistrict==queryAddr.getDistrict().getType()))
-				message = message + queryAddr.getDistrict().getName();
-			throw new NoHistoryDataException(message);
+		return findSimilarAddress(queryAddr, topN, explain);
+	}
+	
+	/**
+	 * 搜索相似地址。
+	 * @param queryAddr 已解析的查询地址，必须包含省、市、区。
+	 * @param topN 返回多少条最相似地址。
+	 * @param explain 是否输出词条匹配明细（topN&gt;1时有效），只为最终结果计算。
+	 * @return
+	 */
+	public Query findSimilarAddress(AddressEntity queryAddr, int topN, boolean explain){
+		Query query = new Query(topN); 
+		
+		//从内存缓存或文件缓存获取所有文档。
+		//文件缓存模式直接从映射到内存的缓存文件计算相似度；内存缓存模式从堆内存数组计算相似度，并使用倒排索引。
+		String cacheKey = buildCacheKey(queryAddr);
+		DocumentVectors docs = null;
+		InvertedIndex index = null;
+		Partition partition = cacheVectorsInMemory ? loadPartition(cacheKey) : loadFilePartition(cacheKey);
+		if(partition!=null) {
+			docs = partition.getDocs();
+			if(!bruteForceSearch) index = partition.getIndex();
 		}
+		if(docs==null || docs.getDocCount()==0) throw new NoHistoryDataException(buildNoHistoryMessage(queryAddr));
 		
 		//为词条计算特征值
 		Document queryDoc = analyse(queryAddr);
+		for(Term t : queryDoc.getTerms())
+			t.setIdf(lookupIdf(docs, t));
 		query.setQueryAddr(queryAddr);
 		query.setQueryDoc(queryDoc);
 		
 		//对应地址库中每条地址计算相似度，并保留相似度最高的topN条地址
+		//只有与查询文档存在相同词条的文档相似度才会大于0，因此仅对倒排索引中的候选文档计算相似度，
+		//并使用WAND跳过相似度不可能进入topN的候选文档。
+		//候选文档按文档序号升序处理，计算顺序与逐一计算全部文档时一致，结果完全相同。
+		VectorQuery vq = new VectorQuery(query, docs);
 		double similarity=0;
-		for(Document doc : allDocs){
-			similarity = computeDocSimilarity(query, doc, topN, explain);
-			if(topN==1 && similarity==1) break;
+		boolean useIndex = index!=null && index.getDocCount()==docs.getDocCount();
+		//查询地址与地址库中已有地址完全相同时相似度为1，只需要返回1条地址时直接通过精确匹配索引查找。
+		//文件缓存模式逐一计算时找到相似度为1的文档即结束，不使用精确匹配索引。
+		if(topN==1 && useIndex && partition.getExactIndex()!=null){
+			int exact = partition.getExactIndex().find(vq);
+			if(exact>=0 && computeSimilarity(vq, exact)==1){
+				query.getCollector().collect(firstExactMatch(vq, index, exact), 1);
+				return finishQuery(query, docs, explain);
+			}
+		}
+		if(parallelThreshold>0 && docs.getDocCount()>=parallelThreshold){
+			//文档数量很大的缓存分区拆分为多个文档区间并行计算，各区间分别收集topN后合并
+			ForkJoinPool pool = getScorePool();
+			int chunkSize = docs.getDocCount() / (pool.getParallelism() * PARALLEL_CHUNKS_PER_THREAD) + 1;
+			WandSearcher searcher = useIndex ? buildWandSearcher(index, queryDoc) : null;
+			query.getCollector().merge(pool.invoke(new ScoreTask(query, docs, searcher, topN==1, 0, docs.getDocCount(), chunkSize)));
+			if(LOG.isDebugEnabled())
+				LOG.debug("[simi-addr] [parallel] " + docs.getDocCount() + " docs, chunk size " + chunkSize);
+		}else if(useIndex){
+			WandSearcher searcher = buildWandSearcher(index, queryDoc);
+			for(int ordinal=searcher.next(query.getThreshold()); ordinal>=0; ordinal=searcher.next(query.getThreshold())){
+				similarity = computeDocSimilarity(vq, ordinal);
+				if(topN==1 && similarity==1) break;
+			}
+			if(LOG.isDebugEnabled())
+				LOG.debug("[simi-addr] [wand] " + searcher.getScoredDocs() + " of " + docs.getDocCount() + " docs scored");
+		}else{
+			for(int i=0; i<docs.getDocCount(); i++){
+				similarity = computeDocSimilarity(vq, i);
+				if(topN==1 && similarity==1) break;
+			}
+		}
+		
+		return finishQuery(query, docs, explain);
+	}
+	
+	/**
+	 * 查找序号最小的相似度为1的文档。
+	 * <p>
+	 * 包含全部查询词条的文档（不只是词条完全相同的文档）相似度都可能为1，逐一计算时返回的是序号最小的相似度为1的文档，
+	 * 为保持结果一致，通过WAND检查序号小于exact的文档：相似度上限小于1的文档全部跳过，通常只需要计算极少数文档。
+	 * </p>
+	 * @param exact 词条与查询文档完全相同、相似度为1的文档序号。
+	 * @return
+	 */
+	private int firstExactMatch(VectorQuery vq, InvertedIndex index, int exact){
+		if(exact==0) return exact;
+		WandSearcher searcher = buildWandSearcher(index, vq.getQuery().getQueryDoc()).range(0, exact);
+		for(int doc=searcher.next(EXACT_MATCH_THRESHOLD); doc>=0; doc=searcher.next(EXACT_MATCH_THRESHOLD)){
+			if(computeSimilarity(vq, doc)==1) return doc;
+		}
+		return exact;
+	}
+	
+	/**
+	 * 并行计算相似度的线程池，第一次并行计算时创建。
+	 */
+	private ForkJoinPool getScorePool(){
+		ForkJoinPool pool = scorePool;
+		if(pool!=null) return pool;
+		synchronized (this) {
+			if(scorePool==null)
+				scorePool = new ForkJoinPool(parallelism>0 ? parallelism : Runtime.getRuntime().availableProcessors());
+			return scorePool;
+		}
+	}
+	
+	/**
+	 * 并行计算一个文档区间的相似度，区间文档数量超过chunkSize时一分为二，分别计算后合并。
+	 * <p>
+	 * 每个区间使用各自的{@link VectorQuery}、{@link WandSearcher}和{@link TopNCollector}，只读取{@link Query}对象，不做修改。<br />
+	 * 区间内文档按序号升序计算，每个区间的结果就是该区间内的topN，
+	 * 由{@link TopNCollector}的排名规则，合并结果与串行计算全部文档的结果完全相同。<br />
+	 * topN==1时串行计算在第一个相似度为1的文档处结束，之后的文档不参与排名（浮点误差可能使之后的文档相似度略大于1），
+	 * 因此左侧区间找到相似度为1的文档时，丢弃右侧区间的结果。
+	 * </p>
+	 */
+	private class ScoreTask extends RecursiveTask<TopNCollector> {
+		private static final long serialVersionUID = 1L;
+		private final Query query;
+		private final DocumentVectors docs;
+		private final WandSearcher searcher;
+		private final boolean stopAtExact;
+		private final int fromDoc, toDoc, chunkSize;
+		/**
+		 * 区间内是否找到相似度为1的文档并结束计算（stopAtExact==true时）。
+		 */
+		private boolean stopped = false;
+		
+		/**
+		 * @param searcher 全部文档的WAND搜索器，不使用倒排索引时为null，每个区间通过{@link WandSearcher#range(int, int)}创建各自的搜索器。
+		 * @param stopAtExact 是否在找到相似度为1的文档后结束该区间的计算（topN==1）。
+		 */
+		ScoreTask(Query query, DocumentVectors docs, WandSearcher searcher, boolean stopAtExact, int fromDoc, int toDoc, int chunkSize){
+			this.query = query;
+			this.docs = docs;
+			this.searcher = searcher;
+			this.stopAtExact = stopAtExact;
+			this.fromDoc = fromDoc;
+			this.toDoc = toDoc;
+			this.chunkSize = chunkSize;
 		}
 		
-		//按相似度从高到低排序
-		if(topN>1) query.sortSimilarDocs();
+		@Override
+		protected TopNCollector compute() {
+			if(toDoc - fromDoc > chunkSize){
+				int mid = (fromDoc + toDoc) >>> 1;
+				ScoreTask left = new ScoreTask(query, docs, searcher, stopAtExact, fromDoc, mid, chunkSize);
+				left.fork();
+				ScoreTask right = new ScoreTask(query, docs, searcher, stopAtExact, mid, toDoc, chunkSize);
+				TopNCollector rightCollector = right.compute();
+				TopNCollector collector = left.join();
+				if(left.stopped){
+					stopped = true;
+					return collector;
+				}
+				collector.merge(rightCollector);
+				stopped = right.stopped;
+				return collector;
+			}
+			
+			VectorQuery vq = new VectorQuery(query, docs);
+			TopNCollector collector = new TopNCollector(query.getTopN());
+			double similarity = 0;
+			if(searcher!=null){
+				WandSearcher range = searcher.range(fromDoc, toDoc);
+				for(int ordinal=range.next(collector.getThreshold()); ordinal>=0; ordinal=range.next(collector.getThreshold())){
+					similarity = computeSimilarity(vq, ordinal);
+					collector.collect(ordinal, similarity);
+					if(stopAtExact && similarity==1){
+						stopped = true;
+						break;
+					}
+				}
+			}else{
+				for(int i=fromDoc; i<toDoc; i++){
+					similarity = computeSimilarity(vq, i);
+					collector.collect(i, similarity);
+					if(stopAtExact && similarity==1){
+						stopped = true;
+						break;
+					}
+				}
+			}
+			return collector;
+		}
+	}
+	
+	/**
+	 * 按相似度从高到低排列收集到的文档，只为最终结果创建文档对象。
+	 * <p>
+	 * 计算相似度时不输出词条匹配明细，需要输出明细时（explain==true且topN&gt;1），
+	 * 只为最终结果的文档重新计算一次相似度并创建{@link MatchedTerm}。
+	 * </p>
+	 */
+	private Query finishQuery(Query query, DocumentVectors docs, boolean explain){
+		TopNCollector collector = query.getCollector();
+		collector.finish();
+		List<SimilarDoccument> simiDocs = new ArrayList<SimilarDoccument>(collector.size());
+		for(int i=0; i<collector.size(); i++){
+			SimilarDoccument simiDoc = new SimilarDoccument(docs.getDocument(collector.getDoc(i)));
+			if(explain && query.getTopN()>1) computeDocSimilarity(query, simiDoc.getDocument(), simiDoc);
+			simiDoc.setSimilarity(collector.getSimilarity(i));
+			simiDocs.add(simiDoc);
+		}
+		query.setSimilarDocs(simiDocs);
 		
 		if(LOG.isInfoEnabled()){
-			LOG.info("[simi-addr] " + addressText);
-			if(query.getSimilarDocs()==null)
+			LOG.info("[simi-addr] " + query.getQueryAddr().getRawText());
+			if(simiDocs.isEmpty())
 				LOG.info("[simi-addr]    NONE");
 			else{
 				for(SimilarDoccument simiDoc : query.getSimilarDocs()){
@@ -446,38 +674,144 @@ public class SimilarityComputer {
 		return query;
 	}
 	
+	private String buildNoHistoryMessage(AddressEntity queryAddr){
+		String message = queryAddr.getProvince().getName() + queryAddr.getCity().getName();
+		if(!(RegionType.CityLevelDistrict==queryAddr.getDistrict().getType()))
+			message = message + queryAddr.getDistrict().getName();
+		return message;
+	}
+	
+	/**
+	 * 为查询文档创建WAND搜索器。
+	 * <p>
+	 * 查询文档的门牌号词条，除了文本相同的文档之外，还可以匹配道路相同的文档的门牌号
+	 * （参考{@link #computeDocSimilarity(Query, Document, int)}），
+	 * 因此门牌号词条的posting list为门牌号、道路两个posting list的并集。
+	 * </p>
+	 */
+	private WandSearcher buildWandSearcher(InvertedIndex index, Document queryDoc){
+		List<Term> terms = queryDoc.getTerms();
+		int[][] postings = new int[terms.size()][];
+		double[] maxValues = new double[terms.size()], minValues = new double[terms.size()];
+		double[] range = new double[2];
+		for(int i=0; i<terms.size(); i++){
+			Term qterm = terms.get(i);
+			postings[i] = index.getPostings(qterm.getText());
+			if(TermType.RoadNum==qterm.getType() && qterm.getRef()!=null)
+				postings[i] = union(postings[i], index.getPostings(qterm.getRef().getText()));
+			getQueryBoostRange(queryDoc, qterm, range);
+			minValues[i] = qterm.getIdf() * range[0];
+			maxValues[i] = qterm.getIdf() * range[1];
+		}
+		return new WandSearcher(postings, maxValues, minValues);
+	}
+	
+	private static int[] union(int[] a, int[] b){
+		if(a.length==0) return b;
+		if(b.length==0) return a;
+		int[] result = new int[a.length + b.length];
+		int i=0, j=0, k=0;
+		while(i<a.length && j<b.length){
+			if(a[i]<b[j]) result[k++] = a[i++];
+			else if(a[i]>b[j]) result[k++] = b[j++];
+			else {
+				result[k++] = a[i++];
+				j++;
+			}
+		}
+		while(i<a.length) result[k++] = a[i++];
+		while(j<b.length) result[k++] = b[j++];
+		if(k==result.length) return result;
+		int[] trimmed = new int[k];
+		System.arraycopy(result, 0, trimmed, 0, k);
+		return trimmed;
+	}
+	
+	/**
+	 * 计算查询文档词条boost值的取值范围，用于WAND计算相似度上限。
+	 * <p>
+	 * 查询词条的boost值与地址库文档相关，这里列举地址库文档所有可能情况下的取值，
+	 * 必须与{@link #getBoostValue(boolean, Document, Term, Document, Term)}中forDoc==false时的逻辑保持一致。
+	 * </p>
+	 * @param range 返回值，[0]: 下限；[1]: 上限。
+	 */
+	private void getQueryBoostRange(Document qdoc, Term qterm, double[] range){
+		double min = BOOST_M, max = BOOST_M;
+		switch(qterm.getType()){
+			case Province:
+			case City:
+			case District:
+				min = max = BOOST_XL;
+				break;
+			case Street:
+				min = max = BOOST_XS;
+				break;
+			case Town: //BOOST_XS，或者地址库文档有乡镇时BOOST_L
+				min = Math.min(BOOST_XS, BOOST_L);
+				max = Math.max(BOOST_XS, BOOST_L);
+				break;
+			case Village: //BOOST_XS，或者查询文档有乡镇时，根据地址库文档乡镇、村庄情况为BOOST_XL、BOOST_L
+				min = max = BOOST_XS;
+				if(qdoc.getTown()!=null){
+					min = Math.min(min, Math.min(BOOST_L, BOOST_XL));
+					max = Math.max(max, Math.max(BOOST_L, BOOST_XL));
+				}
+				break;
+			case Road: //BOOST_M，或者查询文档没有乡镇、村庄且地址库文档有道路时BOOST_L
+				if((qdoc.getTown()==null || qdoc.getVillage()==null) && qdoc.getRoad()!=null){
+					min = Math.min(BOOST_M, BOOST_L);
+					max = Math.max(BOOST_M, BOOST_L);
+				}
+				break;
+			case RoadNum: //BOOST_M，或者查询文档没有乡镇、村庄且地址库文档道路相同、有门牌号时为3
+				if((qdoc.getTown()==null || qdoc.getVillage()==null) && qdoc.getRoadNumValue()>0 && qdoc.getRoad()!=null){
+					min = Math.min(BOOST_M, 3);
+					max = Math.max(BOOST_M, 3);
+				}
+				break;
+			default:
+		}
+		range[0] = min;
+		range[1] = max;
+	}
+	
 	/**
 	 * 计算2个文档的相似度。
 	 * <p>采用余弦相似度，0 &lt;= 返回值 &lt;= 1，值越大表示相似度越高，返回值为1则表示完全相同。</p>
-	 * @param qryDoc
+	 * <p>
+	 * Text类型词条通过{@link TermDictionary 全局词条ID}匹配（{@link Query#getTextTermIds()}、{@link Document#getTextTermPositions()}），
+	 * 查询文档或地址库文档包含全局字典中不存在的词条时逐一比较词条文本，结果相同（参考{@link TextTermMatch}）。
+	 * </p>
+	 * @param query
+	 * @param doc
+	 * @param ordinal 文档在缓存分区中的序号，用于收集相似度最高的文档，参考{@link TopNCollector}。
+	 * @return
+	 */
+	public double computeDocSimilarity(Query query, Document doc, int ordinal){
+		double similarity = computeDocSimilarity(query, doc, null);
+		query.getCollector().collect(ordinal, similarity);
+		return similarity;
+	}
+	
+	/**
+	 * 计算2个文档的相似度，不收集文档。
+	 * @param query
 	 * @param doc
+	 * @param simiDoc 不为null时输出词条匹配明细。
 	 * @return
 	 */
-	public double computeDocSimilarity(Query query, Document doc, int topN, boolean explain){
+	private double computeDocSimilarity(Query query, Document doc, SimilarDoccument simiDoc){
 		Term dterm = null;
 		//=====================================================================
 		//计算text类型词条的稠密度、匹配率
-		//1. Text类型词条匹配情况
-		int qTextTermCount = 0; //查询文档Text类型词条数量
-		int dTextTermMatchCount = 0, matchStart = -1, matchEnd = -1; //地址库文档匹配上的Text词条数量
-		for(Term qterm : query.getQueryDoc().getTerms()){
-			if(!(TermType.Text==qterm.getType())) continue; //仅针对Text类型词条计算 词条稠密度、词条匹配率
-			qTextTermCount++;
-			for(int i=0; i< doc.getTerms().size(); i++){
-				Term term = doc.getTerms().get(i);
-				if(!(TermType.Text==term.getType())) continue; //仅针对Text类型词条计算 词条稠密度、词条匹配率
-				if(term.getText().equals(qterm.getText())){
-					dTextTermMatchCount++;
-					if(matchStart==-1) {
-						matchStart = matchEnd = i;
-						break;
-					}
-					if(i>matchEnd) matchEnd = i;
-					else if(i<matchStart) matchStart = i;
-					break;
-				}
-			}
-		}
+		//1. Text类型词条匹配情况：查询文档词条ID与地址库文档词条位置表都按词条ID升序排列，归并一次即可；
+		//   存在全局字典中不存在的词条时（ID为-1或位置表为null），逐一比较词条文本
+		int[] qTextTermIds = query.getTextTermIds();
+		long[] dTextTermPositions = doc.getTextTermPositions();
+		TextTermMatch textMatch = dTextTermPositions!=null && (qTextTermIds.length==0 || qTextTermIds[0]>=0)
+				? TextTermMatch.merge(qTextTermIds, dTextTermPositions) : TextTermMatch.scan(query.getQueryDoc().getTerms(), doc.getTerms());
+		int qTextTermCount = qTextTermIds.length; //查询文档Text类型词条数量
+		int dTextTermMatchCount = textMatch.getCount(), matchStart = textMatch.getStart(), matchEnd = textMatch.getEnd(); //地址库文档匹配上的Text词条数量
 		//2. 计算稠密度、匹配率
 		double textTermDensity = 1, textTermCoord = 1;
 		if(qTextTermCount>0) textTermCoord = Math.sqrt(dTextTermMatchCount * 1.0 / qTextTermCount) * 0.5 + 0.5;
@@ -497,11 +831,6 @@ public class SimilarityComputer {
 		if(qTextTermCount>=2 && dTextTermMatchCount>=2) 
 			textTermDensity = Math.sqrt( dTextTermMatchCount * 1.0 / (matchEnd - matchStart + 1) ) * 0.5 + 0.5;
 		
-		SimilarDoccument simiDoc = null;
-		if(explain && topN>1){
-			simiDoc = new SimilarDoccument(doc);
-		}
-		
 		//=====================================================================
 		//计算TF-IDF和相似度所需的中间值
 		double sumQD=0, sumQQ=0, sumDD=0, qtfidf=0, dtfidf=0;
@@ -520,7 +849,7 @@ public class SimilarityComputer {
 			double density = (dterm!=null && TermType.Text==dterm.getType()) ? textTermDensity : 1;
 			dtfidf = (dterm!=null ? dterm.getIdf() : qterm.getIdf()) * dboost * coord * density;
 			
-			if(explain && topN>1 && dterm!=null){
+			if(simiDoc!=null && dterm!=null){
 				MatchedTerm mt = null;
 				mt = new MatchedTerm(dterm);
 				mt.setBoost(dboost);
@@ -542,151 +871,621 @@ public class SimilarityComputer {
 		if(sumDD==0 || sumQQ==0) return 0;
 		
 		double similarity = sumQD / ( Math.sqrt(sumQQ * sumDD) );
-		if(explain && topN>1){
-			simiDoc.setSimilarity(similarity);
-			query.addSimiDoc(simiDoc);
-		}else query.addSimiDoc(doc, similarity);
+		if(simiDoc!=null) simiDoc.setSimilarity(similarity);
 		return similarity;
 	}
 	
 	
 	/**
-	 * 从文件或内存缓存读取加载文档。
-	 * @param address 
+	 * 计算查询文档与{@link DocumentVectors}中一个文档的相似度。
+	 * <p>
+	 * 计算逻辑与{@link #computeDocSimilarity(Query, Document, int)}完全相同，区别在于直接从{@link DocumentVectors}读取文档词条，
+	 * 词条文本通过字典序号比较，不需要创建对象，也没有哈希查找；文档对象只为最终结果创建（参考{@link TopNCollector}）。
+	 * </p>
+	 * @param vq 查询文档与DocumentVectors的对应关系。
+	 * @param doc 文档序号。
 	 * @return
 	 */
-	public List<Document> loadDocunentsFromCache(AddressEntity address){
-		String cacheKey = buildCacheKey(address);
-		if(cacheKey==null) return null;
+	public double computeDocSimilarity(VectorQuery vq, int doc){
+		double similarity = computeSimilarity(vq, doc);
+		vq.getQuery().getCollector().collect(doc, similarity);
+		return similarity;
+	}
+	
+	/**
+	 * 计算相似度，不收集结果，参考{@link #computeDocSimilarity(VectorQuery, int)}。
+	 * <p>只修改vq的状态，不修改{@link Query}对象，不同线程使用各自的{@link VectorQuery}时可以并行调用。</p>
+	 */
+	private double computeSimilarity(VectorQuery vq, int doc){
+		Query query = vq.getQuery();
+		DocumentVectors docs = vq.getDocs();
 		
-		List<Document> docs = null;
-		if(!cacheVectorsInMemory){
-			//从文件读取
-			docs = loadDocumentsFromFileCache(cacheKey);
-			return docs;
-		} else {
-			//从内存读取，如果未缓存到内存，则从文件加载到内存中
-			docs = VECTORS_CACHE.get(cacheKey);
-			if(docs==null){
-				synchronized (VECTORS_CACHE) {
-					docs = VECTORS_CACHE.get(cacheKey);
-					if(docs==null){
-						docs = loadDocumentsFromFileCache(cacheKey);
-						if(docs==null) docs = new ArrayList<Document>(0);
-						VECTORS_CACHE.put(cacheKey, docs);
-					}
-					
-					//为所有词条计算IDF并缓存
-					Map<String, Double> idfs = IDF_CACHE.get(cacheKey);
-					if(idfs==null){
-						synchronized (IDF_CACHE) {
-							idfs = IDF_CACHE.get(cacheKey);
-							if(idfs==null){
-								Map<String, Integer> termReferences = statInverseDocRefers(docs);
-								idfs = new HashMap<String, Double>(termReferences.size());
-								for(Map.Entry<String, Integer> entry : termReferences.entrySet()){
-									double idf = 0; 
-									//纯数字或字母组成
-									if(StringUtil.isNumericChars(entry.getKey())) idf = 2;
-									else if(StringUtil.isAnsiChars(entry.getKey())) idf = 2;
-									else idf = Math.log( docs.size() * 1.0 / (entry.getValue() + 1) );
-									if(idf<0) idf = 0;
-									idfs.put(entry.getKey(), idf);
-								}
-								IDF_CACHE.put(cacheKey, idfs);
-							}
-						}
-					}
-					
-					for(Document doc : docs){
-						if(doc.getTown()!=null)
-							doc.getTown().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getTown())));
-						if(doc.getVillage()!=null)
-							doc.getVillage().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getVillage())));
-						if(doc.getRoad()!=null)
-							doc.getRoad().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getRoad())));
-						if(doc.getRoadNum()!=null)
-							doc.getRoadNum().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getRoadNum())));
-						for(Term term : doc.getTerms()) term.setIdf(idfs.get(generateIDFCacheEntryKey(term)));
-					}
+		Document qdoc = query.getQueryDoc();
+		List<Term> qterms = qdoc.getTerms();
+		int[] qrefs = vq.getRefs();
+		int start = docs.getTermStart(doc), end = docs.getTermEnd(doc);
+		//地址库文档的乡镇、村庄、道路、门牌号为同类型的最后一个词条，与反序列化的文档对象一致
+		int town = -1, village = -1, road = -1, roadNum = -1;
+		for(int j=start; j<end; j++){
+			switch(docs.getTermType(j)){
+				case Town: town = j; break;
+				case Village: village = j; break;
+				case Road: road = j; break;
+				case RoadNum: roadNum = j; break;
+				default:
+			}
+		}
+		Document probe = vq.probe(doc, town, village, road);
+		
+		//Text类型词条的稠密度、匹配率
+		vq.match(doc);
+		int[] lastPositions = vq.getLastPositions(), firstTextPositions = vq.getFirstTextPositions();
+		int qTextTermCount = vq.getTextTermCount();
+		int dTextTermMatchCount = 0, matchStart = -1, matchEnd = -1;
+		for(int i=0; i<qterms.size(); i++){
+			if(!(TermType.Text==qterms.get(i).getType()) || firstTextPositions[i]<0) continue;
+			int j = firstTextPositions[i];
+			dTextTermMatchCount++;
+			if(matchStart==-1) matchStart = matchEnd = j;
+			else if(j>matchEnd) matchEnd = j;
+			else if(j<matchStart) matchStart = j;
+		}
+		double textTermDensity = 1, textTermCoord = 1;
+		if(qTextTermCount>0) textTermCoord = Math.sqrt(dTextTermMatchCount * 1.0 / qTextTermCount) * 0.5 + 0.5;
+		if(qTextTermCount>=2 && dTextTermMatchCount>=2) 
+			textTermDensity = Math.sqrt( dTextTermMatchCount * 1.0 / (matchEnd - matchStart + 1) ) * 0.5 + 0.5;
+		
+		double sumQD=0, sumQQ=0, sumDD=0, qtfidf=0, dtfidf=0;
+		for(int i=0; i<qterms.size(); i++){
+			Term qterm = qterms.get(i);
+			qtfidf = qterm.getIdf() * getBoostValue(false, qdoc, qterm, probe, null);
+			//与Document.getTerm()一致，取文本相同的最后一个词条
+			int dterm = lastPositions[i];
+			if(dterm<0 && TermType.RoadNum==qterm.getType()){
+				//从地址库文档中找门牌号词条
+				if(roadNum>=0 && road>=0 && qrefs[i]>=0 && docs.getTermOrdinal(road)==qrefs[i]) dterm = roadNum;
+			}
+			dtfidf = 0;
+			if(dterm>=0){
+				TermType dtype = docs.getTermType(dterm);
+				double dboost = getBoostValue(true, qdoc, qterm, probe, vq.getTypeTerm(dtype));
+				double didf = 0;
+				switch(dtype){ //与Term.getIdf()一致
+					case Province:
+					case City:
+					case District:
+						didf = 0; break;
+					case Street:
+						didf = 1; break;
+					case RoadNum:
+						didf = docs.getRoadNumIdf(docs.getRoadNumKey(doc)); break;
+					default:
+						didf = docs.getIdf(docs.getTermOrdinal(dterm));
 				}
+				dtfidf = TermType.Text==dtype ? didf * dboost * textTermCoord * textTermDensity : didf * dboost;
 			}
+			sumQQ += qtfidf * qtfidf;
+			sumQD += qtfidf * dtfidf;
+			sumDD += dtfidf * dtfidf;
 		}
+		if(sumDD==0 || sumQQ==0) return 0;
 		
-		return docs;
+		return sumQD / ( Math.sqrt(sumQQ * sumDD) );
+	}
+	
+	/**
+	 * 获取缓存分区的文档数量。
+	 * @param address 
+	 * @return
+	 */
+	public int countDocuments(AddressEntity address){
+		String cacheKey = buildCacheKey(address);
+		if(cacheKey==null) return 0;
+		Partition partition = cacheVectorsInMemory ? loadPartition(cacheKey) : loadFilePartition(cacheKey);
+		return partition==null ? 0 : partition.getDocs().getDocCount();
+	}
+	
+	/**
+	 * 从内存缓存获取缓存分区，如果未缓存到内存，则从缓存文件加载到内存中，并计算IDF、构建倒排索引。
+	 * @param cacheKey 
+	 * @return
+	 */
+	private Partition loadPartition(String cacheKey){
+		if(cacheKey==null) return null;
+		PartitionCache.Loader loader = new PartitionCache.Loader() {
+			@Override
+			public Partition load(String key) {
+				long stamp = fileStamp(key);
+				DocumentVectors docs = openDocuments(key);
+				DocumentBlock block = docs==null ? DocumentBlock.empty() 
+					: (docs instanceof VectorSegment ? ((VectorSegment)docs).toBlock() : (DocumentBlock)docs);
+				computeIdfs(block);
+				return new Partition(key, block, new InvertedIndex(block), loadExactIndex(key, block, stamp), stamp);
+			}
+		};
+		return getPartition(cacheKey, loader);
+	}
+	
+	/**
+	 * 获取文件缓存模式的缓存分区，已打开的缓存分区与内存缓存模式一样保存在{@link #setPartitionCache(PartitionCache) partitionCache}中，
+	 * 映射到内存的缓存文件不占用堆内存，按{@link VectorSegment#estimateSize()}计入内存预算。
+	 * @param cacheKey
+	 * @return 缓存文件不存在时返回没有文档的缓存分区。
+	 */
+	private Partition loadFilePartition(String cacheKey){
+		if(cacheKey==null) return null;
+		PartitionCache.Loader loader = new PartitionCache.Loader() {
+			@Override
+			public Partition load(String key) {
+				long stamp = fileStamp(key);
+				DocumentVectors docs = openDocuments(key);
+				if(docs==null) docs = DocumentBlock.empty();
+				computeIdfs(docs);
+				//逐一计算时找到相似度为1的文档即结束，不需要精确匹配索引，参考findSimilarAddress()
+				return new Partition(key, docs, null, null, stamp);
+			}
+		};
+		return getPartition(cacheKey, loader);
+	}
+	
+	/**
+	 * 从partitionCache获取缓存分区，缓存文件已被更新时重新加载。
+	 */
+	private Partition getPartition(String cacheKey, PartitionCache.Loader loader){
+		Partition partition = partitionCache.get(cacheKey, loader);
+		if(isStale(partition)){
+			partitionCache.invalidate(cacheKey);
+			partition = partitionCache.get(cacheKey, loader);
+		}
+		return partition;
+	}
+	
+	/**
+	 * 加载缓存分区的精确匹配索引文件，索引文件不存在或者缓存文件已被更新时重新构建，并保存索引文件。
+	 * @param key
+	 * @param docs
+	 * @param stamp 缓存文件状态，参考{@link #fileStamp(String)}。
+	 * @return
+	 */
+	private ExactMatchIndex loadExactIndex(String key, DocumentVectors docs, long stamp){
+		File file = new File(getCacheFolder() + "/" + key + ExactMatchIndex.FILE_EXTENSION);
+		if(file.exists()){
+			try {
+				ExactMatchIndex index = ExactMatchIndex.load(file);
+				if(index.getFileStamp()==stamp && index.getDocCount()==docs.getDocCount()) return index;
+			} catch (IOException ex) {
+				LOG.warn("[doc-vec] [cache] [exact] Error in reading file, rebuild it: " + file.getAbsolutePath(), ex);
+			}
+		}
+		ExactMatchIndex index = ExactMatchIndex.build(docs, stamp);
+		if(docs.getDocCount()==0) return index;
+		try {
+			index.save(file, docs);
+		} catch (IOException ex) {
+			LOG.warn("[doc-vec] [cache] [exact] Error in writing file: " + file.getAbsolutePath(), ex);
+		}
+		return index;
+	}
+	
+	/**
+	 * 缓存文件是否在缓存分区加载后被更新，距离上次检查不足{@link #setRefreshInterval(long) refreshInterval}时不检查。
+	 * @param partition
+	 * @return
+	 */
+	private boolean isStale(Partition partition){
+		long now = System.currentTimeMillis();
+		if(refreshInterval<0 || now - partition.getCheckTime() < refreshInterval) return false;
+		partition.setCheckTime(now);
+		return fileStamp(partition.getKey()) != partition.getFileStamp();
+	}
+	
+	/**
+	 * 根据缓存文件、增量缓存文件的修改时间和大小计算缓存分区的文件状态。
+	 * @param key
+	 * @return
+	 */
+	private long fileStamp(String key){
+		File file = new File(getCacheFolder() + "/" + key + VectorSegment.FILE_EXTENSION);
+		File delta = new File(getCacheFolder() + "/" + key + VectorSegment.DELTA_FILE_EXTENSION);
+		return (file.lastModified() * 31 + file.length()) * 31 + delta.lastModified() * 31 + delta.length();
+	}
+	
+	/**
+	 * 根据引用次数为缓存分区的字典词条和门牌号key计算IDF值。
+	 * @param docs
+	 */
+	private void computeIdfs(DocumentVectors docs){
+		double[] idfs = new double[docs.getDictionarySize()];
+		for(int i=0; i<idfs.length; i++)
+			idfs[i] = docs.getRefers(i)<=0 ? -1 : computeIdf(docs.getText(i), docs.getRefers(i), docs.getDocCount());
+		double[] roadNumIdfs = new double[docs.getRoadNumKeyCount()];
+		for(int i=0; i<roadNumIdfs.length; i++)
+			roadNumIdfs[i] = computeIdf(null, docs.getRoadNumRefers(i), docs.getDocCount());
+		docs.setIdfs(idfs, roadNumIdfs);
 	}
 	
 	public String buildCacheKey(AddressEntity address){
 		if(address==null || !address.hasProvince() || !address.hasCity()) return null;
+		return buildCacheKey(address.getProvince().getId(), address.getCity().getId(), 
+				address.getCity().getChildren()!=null ? address.getDistrict().getId() : 0);
+	}
+	
+	/**
+	 * 生成缓存分区key。
+	 * @param provinceId
+	 * @param cityId
+	 * @param districtId 地级市没有下级区县时为0。
+	 * @return
+	 */
+	public String buildCacheKey(long provinceId, long cityId, long districtId){
 		StringBuilder sb = new StringBuilder();
-		sb.append(address.getProvince().getId()).append('-').append(address.getCity().getId());
-		if(address.getCity().getChildren()!=null)
-			sb.append('-').append(address.getDistrict().getId());
+		sb.append(provinceId).append('-').append(cityId);
+		if(districtId>0) sb.append('-').append(districtId);
 		return sb.toString();
 	}
 	
-	private List<Document> loadDocumentsFromFileCache(String key){
-		List<Document> docs = new ArrayList<Document>();
-		
-		String filePath = getCacheFolder() + "/" + key + ".vt";
-		File file = new File(filePath);
-		if(!file.exists()) return docs;
+	/**
+	 * 计算IDF值。
+	 * @param key 词条文本，门牌号key为null（门牌号key不会是纯数字或字母）。
+	 * @param refers 引用次数。
+	 * @param docCount 文档总数。
+	 * @return
+	 */
+	private static double computeIdf(String key, int refers, int docCount){
+		double idf = 0; 
+		//纯数字或字母组成
+		if(StringUtil.isNumericChars(key)) idf = 2;
+		else if(StringUtil.isAnsiChars(key)) idf = 2;
+		else idf = Math.log( docCount * 1.0 / (refers + 1) );
+		if(idf<0) idf = 0;
+		return idf;
+	}
+	
+	/**
+	 * 打开缓存分区的缓存文件和增量缓存文件。
+	 * @param key
+	 * @return 只有缓存文件（或者只有一个增量分块）时返回{@link VectorSegment}；存在增量缓存文件时返回合并后的{@link DocumentBlock}；都不存在时返回null。
+	 */
+	private DocumentVectors openDocuments(String key){
+		VectorSegment segment = openVectorSegment(key);
+		List<VectorSegment> deltas = null;
+		File deltaFile = new File(getCacheFolder() + "/" + key + VectorSegment.DELTA_FILE_EXTENSION);
+		if(deltaFile.exists()){
+			try {
+				deltas = VectorSegment.openDelta(deltaFile);
+			} catch (IOException ex) {
+				LOG.error("[doc-vec] [cache] [error] Error in reading file: " + deltaFile.getAbsolutePath(), ex);
+			}
+		}
+		if(deltas==null || deltas.isEmpty()) return segment;
+		if(segment!=null) return segment.merge(deltas);
+		return deltas.size()==1 ? deltas.get(0) : VectorSegment.concat(deltas);
+	}
+	
+	/**
+	 * 打开缓存文件，只存在文本格式的缓存文件时，先转换为二进制格式。
+	 * <p>
+	 * 缓存文件无法读取时（例如旧版本的文件格式），先尝试将旧版本的文件转换为当前版本（{@link VectorSegment#upgrade(File)}），
+	 * 无法转换时从文本格式的缓存文件重新转换；都失败时需要重新生成缓存文件（BuildFileCache）。
+	 * </p>
+	 * @param key
+	 * @return 缓存文件不存在或读取失败时返回null。
+	 */
+	private VectorSegment openVectorSegment(String key){
+		File file = new File(getCacheFolder() + "/" + key + VectorSegment.FILE_EXTENSION);
+		if(!file.exists() && !convertTextFileCache(key)) return null;
 		try {
-			FileInputStream fsr = new FileInputStream(file);
-            InputStreamReader sr = new InputStreamReader(fsr, "utf8");
-            BufferedReader br = new BufferedReader(sr);
-            String line = null;
-            while((line = br.readLine()) != null){
-                Document doc = deserialize(line);
-                if(doc==null) continue;
-                docs.add(doc);
-            }
-            br.close();
-            sr.close();
-            fsr.close();
-	    } catch (Exception ex) {
-	        LOG.error("[doc-vec] [cache] [error] Error in reading file: " + filePath, ex);
-	    }
-		
-		return docs;
+			return VectorSegment.open(file);
+		} catch (IOException ex) {
+			LOG.warn("[doc-vec] [cache] Error in reading file, try to upgrade or convert it: " + file.getAbsolutePath() + ", " + ex.getMessage());
+		}
+		boolean repaired = false;
+		try {
+			repaired = VectorSegment.upgrade(file);
+			if(repaired) LOG.info("[doc-vec] [cache] " + key + VectorSegment.FILE_EXTENSION + " upgraded to version " + VectorSegment.VERSION);
+		} catch (IOException ex) {
+			LOG.warn("[doc-vec] [cache] Can not upgrade file: " + file.getAbsolutePath() + ", " + ex.getMessage());
+		}
+		if(!repaired) repaired = convertTextFileCache(key);
+		if(!repaired){
+			LOG.error("[doc-vec] [cache] [error] Can not read file, rebuild it with BuildFileCache: " + file.getAbsolutePath());
+			return null;
+		}
+		try {
+			return VectorSegment.open(file);
+		} catch (IOException ex) {
+			LOG.error("[doc-vec] [cache] [error] Error in reading file, rebuild it with BuildFileCache: " + file.getAbsolutePath(), ex);
+			return null;
+		}
 	}
 	
-	public void buildDocumentFileCache(String key, List<AddressEntity> addresses){
+	/**
+	 * 将文本格式的缓存文件（key.vt）转换为二进制格式（key.vs），参考{@link VectorSegment}。
+	 * <p>文本格式参考{@link #serialize(Document)}。</p>
+	 * @param key 缓存分区，参考{@link #buildCacheKey(AddressEntity)}。
+	 * @return 转换成功返回true；文本格式的缓存文件不存在或转换失败返回false。
+	 */
+	public boolean convertTextFileCache(String key){
 		long start = System.currentTimeMillis();
-		
+		File textFile = new File(getCacheFolder() + "/" + key + ".vt");
+		if(!textFile.exists()) return false;
+		VectorSegmentWriter writer = new VectorSegmentWriter(new File(getCacheFolder() + "/" + key + VectorSegment.FILE_EXTENSION));
+		BufferedReader br = null;
+		try {
+			br = new BufferedReader(new InputStreamReader(new FileInputStream(textFile), "utf8"));
+			String line = null;
+			while((line = br.readLine()) != null){
+				Document doc = deserialize(line);
+				if(doc==null) continue;
+				writer.add(doc);
+			}
+			writer.close();
+		} catch (Exception ex) {
+			LOG.error("[doc-vec] [cache] [error] Error in converting file: " + textFile.getAbsolutePath(), ex);
+			return false;
+		} finally {
+			if(br!=null) try { br.close(); } catch (IOException e) {}
+		}
+		LOG.info("[doc-vec] [cache] " + key + ".vt converted to " + key + VectorSegment.FILE_EXTENSION + ", " 
+				+ writer.getDocCount() + " docs, elapsed " + (System.currentTimeMillis() - start)/1000.0 + "s.");
+		return true;
+	}
+	
+	/**
+	 * 为地址生成文档向量，写入缓存文件key.vs，参考{@link VectorSegment}。
+	 * @param key 缓存分区，参考{@link #buildCacheKey(AddressEntity)}。
+	 * @param addresses 缓存分区的全部地址。
+	 */
+	public void buildDocumentFileCache(String key, List<AddressEntity> addresses){
 		if(addresses==null || addresses.isEmpty()) return;
-		List<Document> docs = analyse(addresses);
-		if(docs==null || docs.isEmpty()) return;
+		FileCacheBuilder builder = new FileCacheBuilder(key);
+		for(AddressEntity addr : addresses)
+			builder.handle(addr);
+		builder.close();
+	}
+	
+	/**
+	 * 逐个添加地址生成缓存文件key.vs，与{@link #buildDocumentFileCache(String, List)}结果相同。
+	 * <p>
+	 * 地址添加后立即生成文档向量，交给{@link VectorSegmentWriter}写入，不保留地址和文档对象，
+	 * 内存占用与地址数量无关；可以配合{@link com.rrs.rd.address.persist.AddressPersister#scanAddresses(long, long, long, AddressHandler)}流式读取地址。
+	 * </p>
+	 * <p>非线程安全。</p>
+	 */
+	public class FileCacheBuilder implements AddressHandler {
+		private String key;
+		private String filePath;
+		private VectorSegmentWriter writer;
+		private long start = System.currentTimeMillis();
+		
+		/**
+		 * @param key 缓存分区，参考{@link SimilarityComputer#buildCacheKey(AddressEntity)}。
+		 */
+		public FileCacheBuilder(String key){
+			this.key = key;
+			this.filePath = getCacheFolder() + "/" + key + VectorSegment.FILE_EXTENSION;
+			this.writer = new VectorSegmentWriter(new File(this.filePath));
+		}
+		
+		@Override
+		public void handle(AddressEntity address) {
+			try {
+				this.writer.add(analyse(address));
+			} catch (IOException ex) {
+				LOG.error("[doc-vec] [cache] [error] Error in writing file: " + this.filePath, ex);
+				throw new RuntimeException("Error in writing file: " + this.filePath, ex);
+			}
+		}
 		
-		String filePath = getCacheFolder() + "/" + key + ".vt";
-		File file = new File(filePath);
+		/**
+		 * 已写入的文档数量，分词后没有词条的地址不计入。
+		 * @return
+		 */
+		public int getDocCount(){
+			return this.writer.getDocCount();
+		}
+		
+		/**
+		 * 写入缓存文件。
+		 * <p>
+		 * 没有添加任何地址（或者分词后都没有词条）时不生成缓存文件，并删除缓存分区原有的缓存文件、增量缓存文件、精确匹配索引文件
+		 * 以及文本格式的缓存文件（否则加载时会重新转换为缓存文件），避免分区中的地址已全部删除时仍然使用以前的缓存文件。
+		 * </p>
+		 */
+		public void close(){
+			if(this.writer.getDocCount()<=0) {
+				this.writer.abort();
+				synchronized (fileLock(this.key)) {
+					for(String ext : new String[]{ VectorSegment.FILE_EXTENSION, VectorSegment.DELTA_FILE_EXTENSION, ExactMatchIndex.FILE_EXTENSION, ".vt" }){
+						File file = new File(getCacheFolder() + "/" + this.key + ext);
+						if(file.exists() && !file.delete())
+							LOG.warn("[doc-vec] [cache] Can not delete stale file: " + file.getAbsolutePath());
+					}
+				}
+				partitionCache.invalidate(this.key);
+				return;
+			}
+			try {
+				this.writer.close();
+			} catch (IOException ex) {
+				LOG.error("[doc-vec] [cache] [error] Error in writing file: " + this.filePath, ex);
+				throw new RuntimeException("Error in writing file: " + this.filePath, ex);
+			}
+			partitionCache.invalidate(this.key);
+			LOG.info("[doc-vec] [cache] " + this.key + VectorSegment.FILE_EXTENSION + ", " 
+					+ this.writer.getDocCount() + " docs, elapsed " + (System.currentTimeMillis() - this.start)/1000.0 + "s.");
+		}
+		
+		/**
+		 * 放弃生成缓存文件，删除已写入的溢出文件，原有的缓存文件保持不变。
+		 * <p>{@link #close()}之后调用没有影响，读取地址失败时应在finally中调用。</p>
+		 */
+		public void abort(){
+			this.writer.abort();
+		}
+	}
+	
+	/**
+	 * 地址导入后，在后台线程中将新地址追加到增量缓存文件，参考{@link #appendDocumentFileCache(String, List)}。
+	 * <p>
+	 * 导入线程只按缓存分区分组，分词、写入文件在后台线程中按导入顺序执行；后台队列已满时等待。
+	 * {@link #setAppendOnImport(boolean) appendOnImport}为false时不追加。
+	 * </p>
+	 */
+	@Override
+	public void addressesImported(List<AddressEntity> addresses){
+		if(!appendOnImport || addresses==null || addresses.isEmpty()) return;
+		final Map<String, List<AddressEntity>> partitions = new LinkedHashMap<String, List<AddressEntity>>();
+		for(AddressEntity addr : addresses){
+			String key = buildCacheKey(addr);
+			if(key==null || addr.getId()<=0) continue;
+			List<AddressEntity> list = partitions.get(key);
+			if(list==null) {
+				list = new ArrayList<AddressEntity>();
+				partitions.put(key, list);
+			}
+			list.add(addr);
+		}
+		if(partitions.isEmpty()) return;
+		APPENDER.execute(new Runnable() {
+			@Override
+			public void run() {
+				for(Map.Entry<String, List<AddressEntity>> entry : partitions.entrySet()){
+					try{
+						appendDocumentFileCache(entry.getKey(), entry.getValue());
+					}catch(Exception ex){
+						LOG.error("[doc-vec] [cache] [error] Error in appending " + entry.getKey() + ": " + ex.getMessage(), ex);
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * 等待已导入地址的增量缓存文件追加完成，例如导入程序退出之前，参考{@link #addressesImported(List)}。
+	 */
+	public void flushAppends(){
 		try {
-			if(file.exists()) file.delete();
-			file.createNewFile();
-		} catch (IOException ex) {
-			LOG.error("[doc-vec] [cache] [error] Error in creating file: " + filePath, ex);
-			throw new RuntimeException("Error in creating file: " + filePath, ex);
+			APPENDER.submit(new Runnable() {
+				@Override
+				public void run() { }
+			}).get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
 		}
+	}
+	
+	/**
+	 * 为新地址生成文档向量，追加到增量缓存文件key.dvs。
+	 * <p>
+	 * 新地址先生成一个临时的缓存文件，再作为一个分块追加到增量缓存文件末尾（{@link VectorSegment#appendDelta(File, File)}），
+	 * 每次追加只写入新地址，已有的分块不会重写。
+	 * 加载缓存分区时合并缓存文件和增量缓存文件的全部分块，词条引用次数、IDF按合并后的文档计算；
+	 * 其他进程已加载的缓存分区在{@link #setRefreshInterval(long) refreshInterval}之后重新加载。<br />
+	 * 增量缓存文件的文档数量达到{@link #setCompactThreshold(int) compactThreshold}时，在后台线程中合并到缓存文件，
+	 * 参考{@link #compactDocumentFileCache(String)}。
+	 * </p>
+	 * @param key 缓存分区，参考{@link #buildCacheKey(AddressEntity)}。
+	 * @param addresses 新地址，必须已设置地址ID。
+	 */
+	public void appendDocumentFileCache(String key, List<AddressEntity> addresses){
+		long start = System.currentTimeMillis();
+		if(addresses==null || addresses.isEmpty()) return;
 		
-		OutputStream outStream = null;
-		BufferedOutputStream bufferedStream = null; 
+		File deltaFile = new File(getCacheFolder() + "/" + key + VectorSegment.DELTA_FILE_EXTENSION);
+		File chunk = null;
+		VectorSegmentWriter writer = null;
+		int total = 0;
 		try {
-			outStream = new FileOutputStream(file);
-			bufferedStream = new BufferedOutputStream(outStream);
-			for(Document doc : docs){
-				bufferedStream.write((serialize(doc)).getBytes("utf8"));
-				bufferedStream.write('\n');
+			//分词、生成分块不需要互斥，只有追加到增量缓存文件时互斥
+			chunk = File.createTempFile(deltaFile.getName() + ".", ".chunk", deltaFile.getAbsoluteFile().getParentFile());
+			writer = new VectorSegmentWriter(chunk);
+			for(AddressEntity addr : addresses)
+				writer.add(analyse(addr));
+			if(writer.getDocCount()<=0) return;
+			writer.close();
+			synchronized (fileLock(key)) {
+				total = VectorSegment.appendDelta(deltaFile, chunk);
 			}
-			bufferedStream.flush();
-		} catch (Exception ex) {
-			LOG.error("[doc-vec] [cache] [error] Error in writing file: " + filePath, ex);
-			throw new RuntimeException("Error in writing file: " + filePath, ex);
-		}finally{
-			if(bufferedStream!=null) try { bufferedStream.close(); } catch (IOException e) {}
-			if(outStream!=null) try { outStream.close(); } catch (IOException e) {}
+		} catch (IOException ex) {
+			LOG.error("[doc-vec] [cache] [error] Error in writing file: " + deltaFile.getAbsolutePath(), ex);
+			throw new RuntimeException("Error in writing file: " + deltaFile.getAbsolutePath(), ex);
+		} finally {
+			if(writer!=null) writer.abort();
+			if(chunk!=null) chunk.delete();
+		}
+		partitionCache.invalidate(key);
+		if(LOG.isInfoEnabled())
+			LOG.info("[doc-vec] [cache] " + key + VectorSegment.DELTA_FILE_EXTENSION + ", " + writer.getDocCount() + " docs appended, " 
+				+ total + " total, elapsed " + (System.currentTimeMillis() - start)/1000.0 + "s.");
+		if(compactThreshold>0 && total>=compactThreshold) scheduleCompaction(key);
+	}
+	
+	/**
+	 * 将增量缓存文件合并到缓存文件，合并后删除增量缓存文件。
+	 * <p>
+	 * 只能在追加增量缓存文件的进程中执行（同一进程中追加与合并互斥，不同进程之间没有互斥）。<br />
+	 * 合并后未能删除增量缓存文件时，已合并的增量文档在下次加载、合并时会被忽略，参考{@link VectorSegment#merge(VectorSegment)}。
+	 * </p>
+	 * @param key 缓存分区，参考{@link #buildCacheKey(AddressEntity)}。
+	 * @return 增量缓存文件不存在时返回false。
+	 */
+	public boolean compactDocumentFileCache(String key){
+		long start = System.currentTimeMillis();
+		File file = new File(getCacheFolder() + "/" + key + VectorSegment.FILE_EXTENSION);
+		File deltaFile = new File(getCacheFolder() + "/" + key + VectorSegment.DELTA_FILE_EXTENSION);
+		VectorSegmentWriter writer = new VectorSegmentWriter(file);
+		synchronized (fileLock(key)) {
+			if(!deltaFile.exists()) return false;
+			try {
+				VectorSegment segment = openVectorSegment(key);
+				int maxId = Integer.MIN_VALUE;
+				for(int i=0; segment!=null && i<segment.getDocCount(); i++){
+					writer.add(segment.getDocument(i));
+					maxId = Math.max(maxId, segment.getId(i));
+				}
+				for(VectorSegment delta : VectorSegment.openDelta(deltaFile)){
+					for(int i=0; i<delta.getDocCount(); i++){
+						if(delta.getId(i)>maxId) writer.add(delta.getDocument(i));
+					}
+				}
+				writer.close();
+			} catch (IOException ex) {
+				LOG.error("[doc-vec] [cache] [error] Error in compacting file: " + deltaFile.getAbsolutePath(), ex);
+				return false;
+			} finally {
+				writer.abort();
+			}
+			deltaFile.delete();
 		}
-		LOG.info("[doc-vec] [cache] " + key + ".vt, " 
-				+ docs.size() + " docs, elapsed " + (System.currentTimeMillis() - start)/1000.0 + "s.");
+		partitionCache.invalidate(key);
+		LOG.info("[doc-vec] [cache] " + key + VectorSegment.DELTA_FILE_EXTENSION + " compacted into " + key + VectorSegment.FILE_EXTENSION + ", " 
+				+ writer.getDocCount() + " docs, elapsed " + (System.currentTimeMillis() - start)/1000.0 + "s.");
+		return true;
+	}
+	
+	private void scheduleCompaction(final String key){
+		if(!COMPACTING.add(key)) return;
+		COMPACTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					compactDocumentFileCache(key);
+				}catch(Exception ex){
+					LOG.error("[doc-vec] [cache] [error] Error in compacting " + key + ": " + ex.getMessage(), ex);
+				}finally{
+					COMPACTING.remove(key);
+				}
+			}
+		});
+	}
+	
+	private static Object fileLock(String key){
+		Object lock = FILE_LOCKS.get(key);
+		if(lock!=null) return lock;
+		FILE_LOCKS.putIfAbsent(key, new Object());
+		return FILE_LOCKS.get(key);
 	}
 	
 	private Term addTerm(String text, TermType type, List<Term> terms, RegionEntity region){
@@ -703,6 +1502,63 @@ public class SimilarityComputer {
 	public void setCacheVectorsInMemory(boolean value){
 		cacheVectorsInMemory = value;
 	}
+	/**
+	 * 设置为true时不使用倒排索引，对分区中的全部文档逐一计算相似度，用于校验倒排索引检索结果的正确性。
+	 * <p>仅在{@link #setCacheVectorsInMemory(boolean) cacheVectorsInMemory}为true时才会构建倒排索引，否则总是逐一计算。</p>
+	 * @param value
+	 */
+	public void setBruteForceSearch(boolean value){
+		bruteForceSearch = value;
+	}
+	/**
+	 * 设置缓存分区容器，默认为不限制容量的{@link LruPartitionCache}。
+	 * <p>内存缓存模式、文件缓存模式都使用该容器，一个容器只能由一个SimilarityComputer使用，参考{@link PartitionCache}。</p>
+	 * @param value
+	 */
+	public void setPartitionCache(PartitionCache value){
+		partitionCache = value;
+	}
+	public PartitionCache getPartitionCache(){
+		return partitionCache;
+	}
+	/**
+	 * 设置检查缓存文件是否更新的时间间隔，默认10秒。
+	 * <p>其他进程更新缓存文件后（例如导入地址时追加增量缓存文件），已加载的缓存分区在该时间间隔之后重新加载。</p>
+	 * @param value 毫秒，小于0时不检查。
+	 */
+	public void setRefreshInterval(long value){
+		refreshInterval = value;
+	}
+	/**
+	 * 设置增量缓存文件自动合并的文档数量，默认20000。
+	 * @param value 小于等于0时不自动合并。
+	 */
+	public void setCompactThreshold(int value){
+		compactThreshold = value;
+	}
+	/**
+	 * 设置导入地址后是否追加增量缓存文件，默认true，参考{@link #addressesImported(List)}。
+	 * <p>离线批量导入后使用BuildFileCache重新生成全部缓存文件时设置为false，导入过程中不分词、不写入缓存文件。</p>
+	 * @param value
+	 */
+	public void setAppendOnImport(boolean value){
+		appendOnImport = value;
+	}
+	/**
+	 * 设置并行计算相似度的文档数量阈值，默认0。
+	 * <p>缓存分区的文档数量达到该值时，将文档拆分为多个区间，在线程池中并行计算相似度，结果与串行计算完全相同。</p>
+	 * @param value 小于等于0时不并行计算。
+	 */
+	public void setParallelThreshold(int value){
+		parallelThreshold = value;
+	}
+	/**
+	 * 设置并行计算相似度的线程数量，默认为CPU核数，必须在第一次并行计算之前设置。
+	 * @param value 小于等于0时为CPU核数。
+	 */
+	public void setParallelism(int value){
+		parallelism = value;
+	}
 	public void setInterpreter(AddressInterpreter value){
 		interpreter = value;
 	}
@@ -0,0 +1,146 @@
+package com.rrs.rd.address.similarity;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程范围的全局词条字典，为词条文本分配稳定的整数ID。
+ *
+ * <p>
+ * 各缓存分区（{@link VectorSegment}、{@link DocumentBlock}）加载时将分区字典中的词条文本注册到全局字典，
+ * 分区内只保存词条ID，相同的词条文本在进程中只保存一份；ID一经分配不会改变，也不会重复使用。<br />
+ * 查询时只需要查找全局字典（{@link #lookup(String)}），不存在的词条不会注册到全局字典中。
+ * </p>
+ *
+ * <p>
+ * 词条按引用计数释放：缓存分区通过{@link #track(Object, int[])}登记为词条ID的所有者，缓存分区被垃圾回收后
+ * （例如从{@link PartitionCache}中淘汰，并且没有正在进行的查询），所有者持有的引用计数减1，
+ * 不再被任何缓存分区使用的词条从字典中移除，字典大小只与已加载的缓存分区有关。<br />
+ * 已回收的所有者在下一次注册、登记时释放，不使用后台线程。
+ * </p>
+ *
+ * <p>线程安全。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class TermDictionary {
+	private static final TermDictionary INSTANCE = new TermDictionary();
+
+	private ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>(1024);
+	private volatile String[] texts = new String[1024];
+	private int[] refs = new int[1024];
+	private int size = 0;
+	private ReferenceQueue<Object> released = new ReferenceQueue<Object>();
+	private Set<Owner> owners = new HashSet<Owner>();
+
+	private TermDictionary() {}
+
+	public static TermDictionary getInstance(){
+		return INSTANCE;
+	}
+
+	/**
+	 * 查找词条ID。
+	 * @param text
+	 * @return 词条不存在时返回-1。
+	 */
+	public int lookup(String text){
+		if(text==null) return -1;
+		Integer id = this.ids.get(text);
+		return id==null ? -1 : id.intValue();
+	}
+
+	/**
+	 * 注册词条，返回词条ID，引用计数加1。
+	 * <p>引用通过{@link #track(Object, int[])}登记所有者后，在所有者被回收时释放；没有登记所有者的引用不会释放。</p>
+	 * @param text
+	 * @return
+	 */
+	public synchronized int add(String text){
+		Integer id = this.ids.get(text);
+		if(id!=null){
+			this.refs[id]++;
+			return id.intValue();
+		}
+		if(this.size==this.texts.length){
+			String[] array = new String[this.size * 2];
+			System.arraycopy(this.texts, 0, array, 0, this.size);
+			this.texts = array;
+			int[] refs = new int[this.size * 2];
+			System.arraycopy(this.refs, 0, refs, 0, this.size);
+			this.refs = refs;
+		}
+		//先写入文本再发布ID，其他线程通过ID读取文本时一定能读到
+		this.texts[this.size] = text;
+		this.refs[this.size] = 1;
+		this.ids.put(text, this.size);
+		return this.size++;
+	}
+
+	/**
+	 * 已注册的词条ID引用计数加1，用于由已有缓存分区创建新的缓存分区（例如{@link VectorSegment#toBlock()}），
+	 * 之后通过{@link #track(Object, int[])}为新的缓存分区登记所有者。
+	 * @param termIds 调用期间仍被其他所有者引用的词条ID。
+	 */
+	public synchronized void retain(int[] termIds){
+		for(int id : termIds) this.refs[id]++;
+	}
+
+	/**
+	 * 登记词条ID的所有者：termIds中每个ID的一次引用（通过{@link #add(String)}或{@link #retain(int[])}获得）在owner被垃圾回收后释放。
+	 * @param owner 使用这些词条ID的缓存分区。
+	 * @param termIds 只读，不允许重复。
+	 */
+	public synchronized void track(Object owner, int[] termIds){
+		if(termIds.length>0) this.owners.add(new Owner(owner, termIds, this.released));
+		this.expunge();
+	}
+
+	/**
+	 * 释放已被回收的所有者持有的引用，引用计数为0的词条从字典中移除，ID不再使用。
+	 */
+	private void expunge(){
+		Owner owner = null;
+		while((owner = (Owner)this.released.poll())!=null){
+			this.owners.remove(owner);
+			for(int id : owner.termIds){
+				if(--this.refs[id]>0) continue;
+				this.ids.remove(this.texts[id]);
+				this.texts[id] = null;
+			}
+		}
+	}
+
+	/**
+	 * 词条文本。
+	 * @param id 词条ID。
+	 * @return
+	 */
+	public String getText(int id){
+		return this.texts[id];
+	}
+
+	/**
+	 * 已注册的词条数量，先释放已被回收的所有者持有的引用。
+	 * @return
+	 */
+	public synchronized int size(){
+		this.expunge();
+		return this.ids.size();
+	}
+
+	/**
+	 * 词条ID的所有者，所有者被回收后由垃圾回收器放入引用队列。
+	 */
+	private static class Owner extends PhantomReference<Object> {
+		private final int[] termIds;
+
+		Owner(Object owner, int[] termIds, ReferenceQueue<Object> queue){
+			super(owner, queue);
+			this.termIds = termIds;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.rrs.rd.address.similarity;
+
+import java.util.List;
+
+import com.rrs.rd.address.TermType;
+
+/**
+ * 查询文档的Text类型词条在地址库文档中的匹配情况：匹配上的词条数量，以及匹配上的词条在地址库文档中的起止位置，用于计算Text类型词条的匹配率、稠密度。
+ *
+ * <p>
+ * 查询文档每个Text类型词条（包括重复的词条）在地址库文档中查找第一个文本相同的Text类型词条，找到即为匹配上，位置为该词条在地址库文档词条列表中的位置。<br />
+ * 两种实现结果完全相同：{@link #merge(int[], long[])}通过全局词条ID归并，{@link #scan(List, List)}逐一比较词条文本。
+ * </p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class TextTermMatch {
+	private int count = 0;
+	private int start = -1;
+	private int end = -1;
+
+	private TextTermMatch() {}
+
+	/**
+	 * 查询文档词条ID与地址库文档词条位置表都按词条ID升序排列，归并一次即可。
+	 * @param qTextTermIds 查询文档的Text类型词条ID，参考{@link Query#getTextTermIds()}，不允许包含全局字典中不存在的词条。
+	 * @param dTextTermPositions 地址库文档的Text类型词条位置表，参考{@link Document#getTextTermPositions()}，不允许为null。
+	 * @return
+	 */
+	public static TextTermMatch merge(int[] qTextTermIds, long[] dTextTermPositions){
+		TextTermMatch match = new TextTermMatch();
+		for(int i=0, j=0; i<qTextTermIds.length && j<dTextTermPositions.length; i++){
+			while(j<dTextTermPositions.length && (dTextTermPositions[j] >>> 32) < qTextTermIds[i]) j++;
+			if(j==dTextTermPositions.length || (dTextTermPositions[j] >>> 32) != qTextTermIds[i]) continue;
+			match.add((int)dTextTermPositions[j]);
+		}
+		return match;
+	}
+
+	/**
+	 * 逐一比较词条文本，用于全局字典中不存在的词条。
+	 * @param qterms 查询文档的词条。
+	 * @param dterms 地址库文档的词条。
+	 * @return
+	 */
+	public static TextTermMatch scan(List<Term> qterms, List<Term> dterms){
+		TextTermMatch match = new TextTermMatch();
+		for(Term qterm : qterms){
+			if(TermType.Text!=qterm.getType()) continue;
+			for(int i=0; i<dterms.size(); i++){
+				Term term = dterms.get(i);
+				if(TermType.Text!=term.getType()) continue;
+				if(term.getText().equals(qterm.getText())){
+					match.add(i);
+					break;
+				}
+			}
+		}
+		return match;
+	}
+
+	private void add(int pos){
+		this.count++;
+		if(this.start==-1) this.start = this.end = pos;
+		else if(pos>this.end) this.end = pos;
+		else if(pos<this.start) this.start = pos;
+	}
+
+	/**
+	 * 匹配上的词条数量。
+	 * @return
+	 */
+	public int getCount(){
+		return this.count;
+	}
+
+	/**
+	 * 匹配上的词条在地址库文档中的最小位置，没有匹配上的词条时为-1。
+	 * @return
+	 */
+	public int getStart(){
+		return this.start;
+	}
+
+	/**
+	 * 匹配上的词条在地址库文档中的最大位置，没有匹配上的词条时为-1。
+	 * @return
+	 */
+	public int getEnd(){
+		return this.end;
+	}
+}
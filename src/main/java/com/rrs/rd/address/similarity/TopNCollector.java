@@ -0,0 +1,173 @@
+package com.rrs.rd.address.similarity;
+
+/**
+ * 收集相似度最高的N个文档。
+ *
+ * <p>
+ * 文档以序号和相似度保存在基本类型数组构成的最小堆中，堆顶为当前排名最低的文档，添加文档的时间复杂度为O(logN)，不创建对象。<br />
+ * 排名规则：相似度高的在前；相似度相同时文档序号小的在前。排名只由文档序号和相似度决定，与添加顺序无关，
+ * 因此多个收集器分别收集后再合并（{@link #merge(TopNCollector)}），结果与一个收集器收集全部文档相同。
+ * </p>
+ *
+ * <p>收集过程中不创建{@link SimilarDoccument}，由调用方在{@link #finish()}之后只为最终结果创建。</p>
+ *
+ * <p>非线程安全。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class TopNCollector {
+	private int topN;
+	private int[] docs;
+	private double[] similarities;
+	private int size = 0;
+	private boolean finished = false;
+
+	/**
+	 * @param topN 收集多少个文档，小于1时为1。
+	 */
+	public TopNCollector(int topN){
+		this.topN = topN<=0 ? 1 : topN;
+		//topN可能很大，但实际收集的文档数量可能很少，数组按需扩容
+		int capacity = Math.min(this.topN, 16);
+		this.docs = new int[capacity];
+		this.similarities = new double[capacity];
+	}
+
+	/**
+	 * 添加一个文档。
+	 * @param doc 文档序号。
+	 * @param similarity 相似度，不大于0的文档忽略。
+	 * @return 文档进入top N返回true。
+	 */
+	public boolean collect(int doc, double similarity){
+		if(this.finished) throw new IllegalStateException("Collector has been finished");
+		if(similarity<=0) return false;
+		if(this.size<this.topN){
+			if(this.size==this.docs.length) this.grow();
+			this.set(this.size, doc, similarity);
+			this.siftUp(this.size++);
+			return true;
+		}
+		if(!better(doc, similarity, this.docs[0], this.similarities[0])) return false;
+		this.set(0, doc, similarity);
+		this.siftDown(0, this.size);
+		return true;
+	}
+
+	/**
+	 * 文档进入top N的相似度阈值：已有N个文档时为排名最低的相似度，相似度必须大于该值才能进入top N（文档按序号升序添加时）；否则为0。
+	 * @return
+	 */
+	public double getThreshold(){
+		return this.size<this.topN ? 0 : this.similarities[0];
+	}
+
+	/**
+	 * 合并另一个收集器收集的文档。
+	 * @param other 未调用{@link #finish()}的收集器。
+	 */
+	public void merge(TopNCollector other){
+		for(int i=0; i<other.size; i++)
+			this.collect(other.docs[i], other.similarities[i]);
+	}
+
+	/**
+	 * 结束收集，将文档按排名从高到低排列，之后通过{@link #getDoc(int)}、{@link #getSimilarity(int)}按排名读取。
+	 */
+	public void finish(){
+		if(this.finished) return;
+		//堆排序：依次将排名最低的堆顶移到末尾
+		for(int n=this.size-1; n>0; n--){
+			this.swap(0, n);
+			this.siftDown(0, n);
+		}
+		this.finished = true;
+	}
+
+	/**
+	 * 已收集的文档数量。
+	 * @return
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	public int getTopN(){
+		return this.topN;
+	}
+
+	/**
+	 * 排名为rank的文档序号，只能在{@link #finish()}之后调用。
+	 * @param rank 0 ~ size-1。
+	 * @return
+	 */
+	public int getDoc(int rank){
+		this.checkFinished();
+		return this.docs[rank];
+	}
+
+	/**
+	 * 排名为rank的文档相似度，只能在{@link #finish()}之后调用。
+	 * @param rank 0 ~ size-1。
+	 * @return
+	 */
+	public double getSimilarity(int rank){
+		this.checkFinished();
+		return this.similarities[rank];
+	}
+
+	/**
+	 * 文档a的排名是否高于文档b。
+	 */
+	private static boolean better(int docA, double similarityA, int docB, double similarityB){
+		return similarityA > similarityB || (similarityA==similarityB && docA < docB);
+	}
+
+	private void checkFinished(){
+		if(!this.finished) throw new IllegalStateException("Collector has not been finished");
+	}
+
+	private void set(int i, int doc, double similarity){
+		this.docs[i] = doc;
+		this.similarities[i] = similarity;
+	}
+
+	private void swap(int i, int j){
+		int doc = this.docs[i];
+		this.docs[i] = this.docs[j];
+		this.docs[j] = doc;
+		double similarity = this.similarities[i];
+		this.similarities[i] = this.similarities[j];
+		this.similarities[j] = similarity;
+	}
+
+	private void siftUp(int i){
+		while(i>0){
+			int parent = (i - 1) >>> 1;
+			if(!better(this.docs[parent], this.similarities[parent], this.docs[i], this.similarities[i])) break;
+			this.swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i, int n){
+		while(true){
+			int child = 2 * i + 1;
+			if(child>=n) break;
+			if(child + 1 < n && better(this.docs[child], this.similarities[child], this.docs[child + 1], this.similarities[child + 1])) child++;
+			if(!better(this.docs[i], this.similarities[i], this.docs[child], this.similarities[child])) break;
+			this.swap(i, child);
+			i = child;
+		}
+	}
+
+	private void grow(){
+		int capacity = (int)Math.min((long)this.topN, this.docs.length * 2L);
+		int[] docs = new int[capacity];
+		double[] similarities = new double[capacity];
+		System.arraycopy(this.docs, 0, docs, 0, this.size);
+		System.arraycopy(this.similarities, 0, similarities, 0, this.size);
+		this.docs = docs;
+		this.similarities = similarities;
+	}
+}
@@ -0,0 +1,158 @@
+package com.rrs.rd.address.similarity;
+
+import java.util.List;
+
+import com.rrs.rd.address.TermType;
+
+/**
+ * 查询文档词条与{@link DocumentVectors}字典的对应关系，
+ * 由{@link SimilarityComputer#computeDocSimilarity(VectorQuery, int)}使用，直接对DocumentVectors中的文档计算相似度。
+ *
+ * <p>
+ * 查询词条文本在查询开始时转换为字典序号，计算每个文档时只比较序号。<br />
+ * 计算boost值需要地址库文档的乡镇、村庄、道路，使用一个可重用的文档对象probe代替地址库文档：
+ * 与查询文档相同的设置为查询文档的词条，不同的设置为文本为null的词条（与任何词条都不相等）。
+ * </p>
+ *
+ * <p>每次查询创建一个实例，非线程安全。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class VectorQuery {
+	private Query query;
+	private DocumentVectors docs;
+	private int[] ordinals;
+	private int[] refs;
+	private long[] ordinalBits;
+	private int[] lastPositions;
+	private int[] firstTextPositions;
+	private int textTermCount = 0;
+	private int town = -1, village = -1, road = -1;
+	private Document probe = new Document(0);
+	private Term otherTown = new Term(TermType.Town, null);
+	private Term otherVillage = new Term(TermType.Village, null);
+	private Term otherRoad = new Term(TermType.Road, null);
+	private Term[] typeTerms = new Term[TermType.values().length];
+
+	public VectorQuery(Query query, DocumentVectors docs){
+		this.query = query;
+		this.docs = docs;
+		Document qdoc = query.getQueryDoc();
+		List<Term> qterms = qdoc.getTerms();
+		this.ordinals = new int[qterms.size()];
+		this.refs = new int[qterms.size()];
+		this.lastPositions = new int[qterms.size()];
+		this.firstTextPositions = new int[qterms.size()];
+		this.ordinalBits = new long[(docs.getDictionarySize() + 63) >>> 6];
+		for(int i=0; i<qterms.size(); i++){
+			Term qterm = qterms.get(i);
+			this.ordinals[i] = docs.lookup(qterm.getText());
+			this.refs[i] = TermType.RoadNum==qterm.getType() && qterm.getRef()!=null ? docs.lookup(qterm.getRef().getText()) : -1;
+			if(TermType.Text==qterm.getType()) this.textTermCount++;
+			if(this.ordinals[i]>=0) this.ordinalBits[this.ordinals[i] >>> 6] |= 1L << this.ordinals[i];
+		}
+		if(qdoc.getTown()!=null) this.town = docs.lookup(qdoc.getTown().getText());
+		if(qdoc.getVillage()!=null) this.village = docs.lookup(qdoc.getVillage().getText());
+		if(qdoc.getRoad()!=null) this.road = docs.lookup(qdoc.getRoad().getText());
+		for(TermType type : TermType.values())
+			this.typeTerms[type.ordinal()] = new Term(type, null);
+	}
+
+	public Query getQuery(){
+		return this.query;
+	}
+
+	public DocumentVectors getDocs(){
+		return this.docs;
+	}
+
+	/**
+	 * 查询词条文本在字典中的序号，不存在时为-1。
+	 * @return 按查询词条顺序排列。<span style="color:red;">不允许对返回的数组进行更改操作</span>
+	 */
+	public int[] getOrdinals(){
+		return this.ordinals;
+	}
+
+	/**
+	 * 门牌号词条所属道路在字典中的序号，非门牌号词条或者不存在时为-1。
+	 * @return 按查询词条顺序排列。<span style="color:red;">不允许对返回的数组进行更改操作</span>
+	 */
+	public int[] getRefs(){
+		return this.refs;
+	}
+
+	/**
+	 * 查询文档Text类型词条数量。
+	 * @return
+	 */
+	public int getTextTermCount(){
+		return this.textTermCount;
+	}
+
+	/**
+	 * 在文档词条中查找查询词条，结果通过{@link #getLastPositions()}、{@link #getFirstTextPositions()}获取。
+	 * <p>只遍历一次文档词条，字典序号不属于查询文档的词条通过位图直接跳过。</p>
+	 * @param doc 文档序号。
+	 */
+	public void match(int doc){
+		int q = this.ordinals.length;
+		for(int i=0; i<q; i++) {
+			this.lastPositions[i] = -1;
+			this.firstTextPositions[i] = -1;
+		}
+		for(int pos=this.docs.getTermStart(doc), end=this.docs.getTermEnd(doc); pos<end; pos++){
+			int ordinal = this.docs.getTermOrdinal(pos);
+			if((this.ordinalBits[ordinal >>> 6] & (1L << ordinal))==0) continue;
+			boolean text = TermType.Text==this.docs.getTermType(pos);
+			for(int i=0; i<q; i++){
+				if(this.ordinals[i]!=ordinal) continue;
+				this.lastPositions[i] = pos;
+				if(text && this.firstTextPositions[i]<0) this.firstTextPositions[i] = pos;
+			}
+		}
+	}
+
+	/**
+	 * 每个查询词条在文档中文本相同的最后一个词条的位置（与{@link Document#getTerm(String)}一致），不存在时为-1。
+	 * @return 按查询词条顺序排列。<span style="color:red;">不允许对返回的数组进行更改操作</span>
+	 */
+	public int[] getLastPositions(){
+		return this.lastPositions;
+	}
+
+	/**
+	 * 每个查询词条在文档中文本相同的第一个Text类型词条的位置，不存在时为-1。
+	 * @return 按查询词条顺序排列。<span style="color:red;">不允许对返回的数组进行更改操作</span>
+	 */
+	public int[] getFirstTextPositions(){
+		return this.firstTextPositions;
+	}
+
+	/**
+	 * 用于计算地址库文档词条boost值的词条对象，只有类型有效。
+	 * @param type
+	 * @return
+	 */
+	public Term getTypeTerm(TermType type){
+		return this.typeTerms[type.ordinal()];
+	}
+
+	/**
+	 * 设置并返回代替地址库文档计算boost值的文档对象。
+	 * @param doc 文档序号。
+	 * @param town 文档乡镇词条在词条数组中的位置，没有时为-1，village、road相同。
+	 * @return
+	 */
+	public Document probe(int doc, int town, int village, int road){
+		Document qdoc = this.query.getQueryDoc();
+		this.probe.setTown(town<0 ? null :
+			(this.town>=0 && this.docs.getTermOrdinal(town)==this.town ? qdoc.getTown() : this.otherTown));
+		this.probe.setVillage(village<0 ? null :
+			(this.village>=0 && this.docs.getTermOrdinal(village)==this.village ? qdoc.getVillage() : this.otherVillage));
+		this.probe.setRoad(road<0 ? null :
+			(this.road>=0 && this.docs.getTermOrdinal(road)==this.road ? qdoc.getRoad() : this.otherRoad));
+		this.probe.setRoadNumValue(this.docs.getRoadNumValue(doc));
+		return this.probe;
+	}
+}
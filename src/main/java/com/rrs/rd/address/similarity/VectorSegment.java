@@ -0,0 +1,682 @@
+package com.rrs.rd.address.similarity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.utils.LongIntHashMap;
+
+/**
+ * 文档向量缓存文件（二进制格式，扩展名.vs）。
+ *
+ * <p>
+ * 一个缓存分区（省-市-区县）的全部文档写入一个文件，由{@link VectorSegmentWriter}生成，
+ * 读取时通过{@link FileChannel#map(java.nio.channels.FileChannel.MapMode, long, long) FileChannel.map}映射到内存，
+ * 文档数据直接从映射的缓冲区中读取，不需要创建{@link Document}、{@link Term}对象。
+ * </p>
+ *
+ * <p>
+ * <strong>文件格式</strong>（整数均为big-endian）：<br />
+ * 1. 文件头：int magic，int version，int 文档数量docCount，int 词条总数termCount，int 字典词条数量dictSize，int 门牌号key数量keyCount；<br />
+ * 2. int[docCount] 文档ID；<br />
+ * 3. int[docCount+1] 文档第一个词条在词条数组中的位置，最后一个元素为termCount；<br />
+ * 4. int[docCount] 门牌号数值，参考{@link Document#getRoadNumValue()}；<br />
+ * 5. int[docCount] 门牌号key序号，没有门牌号时为-1；<br />
+ * 6. int[termCount] 词条文本在字典中的序号；<br />
+ * 7. int[dictSize] 字典词条的引用次数，即文本为该字典词条的非门牌号文档词条数量；<br />
+ * 8. int[keyCount] 门牌号key的道路文本在字典中的序号，门牌号没有所属道路时为-1；<br />
+ * 9. int[keyCount] 门牌号key的门牌号数值；<br />
+ * 10. int[keyCount] 门牌号key的引用次数，即门牌号key相同的门牌号词条数量；<br />
+ * 11. byte[termCount] 词条类型，即{@link TermType#getValue()}；<br />
+ * 12. 字典：dictSize个字符串，每个字符串为int UTF-8字节数 + UTF-8字节。
+ * </p>
+ *
+ * <p>
+ * 门牌号词条的IDF以（所属道路, 门牌号数值）为key，参考{@link SimilarityComputer}中IDF的计算。<br />
+ * 打开时字典词条注册到{@link TermDictionary}，词条文本只保存一份，分区内字典序号与全局词条ID通过数组和{@link LongIntHashMap}互相转换。<br />
+ * 打开后只读，可以在多个线程间共享。
+ * </p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class VectorSegment implements DocumentVectors {
+	public static final int MAGIC = 0x41445653; //ADVS
+	public static final int VERSION = 2;
+	public static final String FILE_EXTENSION = ".vs";
+	/**
+	 * 增量缓存文件扩展名。增量缓存文件为int magic（{@link #DELTA_MAGIC}）+ 多个分块，每个分块为int 分块字节数 + 一个完整的缓存文件（格式同上），
+	 * 每次追加只写入新文档组成的分块，参考{@link #appendDelta(File, File)}、{@link SimilarityComputer#appendDocumentFileCache(String, java.util.List)}。
+	 */
+	public static final String DELTA_FILE_EXTENSION = ".dvs";
+	public static final int DELTA_MAGIC = 0x41445644; //ADVD
+	static final int HEADER_SIZE = 24;
+	/**
+	 * version 1的文件头：没有门牌号key数量。
+	 */
+	static final int HEADER_SIZE_V1 = 20;
+	static final Charset UTF8 = Charset.forName("utf8");
+
+	private static final TermType[] TYPES = new TermType[128];
+	static {
+		for(TermType type : TermType.values())
+			TYPES[type.getValue()] = type;
+	}
+
+	private int docCount;
+	private int termCount;
+	private IntBuffer ids;
+	private IntBuffer termStarts;
+	private IntBuffer roadNumValues;
+	private IntBuffer roadNumKeys;
+	private IntBuffer termOrdinals;
+	private IntBuffer refers;
+	private ByteBuffer termTypes;
+	private int[] termIds;
+	private LongIntHashMap ordinals;
+	private RoadNumKeys roadNumKeyTable;
+	private double[] idfs = null;
+
+	private VectorSegment() {}
+
+	/**
+	 * 打开缓存文件。
+	 * @param file
+	 * @return
+	 * @throws IOException 文件读取失败，或者不是有效的缓存文件（包括文件不完整、区段长度与文件大小不一致）。
+	 */
+	public static VectorSegment open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer = null;
+		try{
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}finally{
+			raf.close(); //关闭文件后映射的缓冲区仍然有效
+		}
+		return open(buffer, file);
+	}
+
+	/**
+	 * 打开增量缓存文件的全部分块。
+	 * <p>末尾不完整的分块（例如追加过程中进程退出）被忽略，下次追加时截断。</p>
+	 * @param file
+	 * @return 按追加顺序排列的分块。
+	 * @throws IOException 文件读取失败，或者某个完整的分块不是有效的缓存文件。
+	 */
+	public static List<VectorSegment> openDelta(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer = null;
+		try{
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}finally{
+			raf.close();
+		}
+		List<VectorSegment> chunks = new ArrayList<VectorSegment>();
+		if(buffer.capacity()<4) return chunks;
+		if(buffer.getInt(0)!=DELTA_MAGIC)
+			throw new IOException("Invalid delta vector segment file: " + file.getAbsolutePath());
+		int offset = 4;
+		while(offset + 4 <= buffer.capacity()){
+			int length = buffer.getInt(offset);
+			if(length<HEADER_SIZE || length > buffer.capacity() - offset - 4) break;
+			ByteBuffer dup = buffer.duplicate();
+			dup.position(offset + 4);
+			dup.limit(offset + 4 + length);
+			chunks.add(open(dup.slice(), file));
+			offset += 4 + length;
+		}
+		return chunks;
+	}
+
+	/**
+	 * 将一个缓存文件作为新的分块追加到增量缓存文件末尾，只写入该缓存文件，已有的分块保持不变。
+	 * <p>
+	 * 增量缓存文件不存在（或者只写入了不完整的文件头）时创建；末尾有不完整的分块时先截断。<br />
+	 * 调用方负责同一增量缓存文件的追加、合并互斥。
+	 * </p>
+	 * @param deltaFile 增量缓存文件。
+	 * @param segmentFile 新文档的缓存文件，由{@link VectorSegmentWriter}生成。
+	 * @return 追加后增量缓存文件的文档数量。
+	 * @throws IOException 文件读写失败，或者增量缓存文件不是有效的格式（不修改该文件）。
+	 */
+	public static int appendDelta(File deltaFile, File segmentFile) throws IOException {
+		RandomAccessFile segment = new RandomAccessFile(segmentFile, "r");
+		RandomAccessFile delta = null;
+		try{
+			if(segment.length()<HEADER_SIZE || segment.readInt()!=MAGIC)
+				throw new IOException("Invalid vector segment file: " + segmentFile.getAbsolutePath());
+			delta = new RandomAccessFile(deltaFile, "rw");
+			long offset = 4, length = delta.length();
+			if(length<4){
+				delta.setLength(0);
+				delta.writeInt(DELTA_MAGIC);
+				length = 4;
+			}else if(delta.readInt()!=DELTA_MAGIC){
+				throw new IOException("Invalid delta vector segment file: " + deltaFile.getAbsolutePath());
+			}
+			//跳过已有的分块，只读取每个分块的字节数和文档数量
+			int docCount = 0;
+			while(offset + 4 <= length){
+				delta.seek(offset);
+				int size = delta.readInt();
+				if(size<HEADER_SIZE || size > length - offset - 4) break;
+				delta.seek(offset + 4 + 8);
+				docCount += delta.readInt();
+				offset += 4 + size;
+			}
+			if(offset<length) delta.setLength(offset);
+			delta.seek(offset);
+			delta.writeInt((int)segment.length());
+			segment.seek(0);
+			byte[] bytes = new byte[64 * 1024];
+			int read = 0;
+			while((read = segment.read(bytes)) > 0) delta.write(bytes, 0, read);
+			segment.seek(8);
+			return docCount + segment.readInt();
+		}finally{
+			segment.close();
+			if(delta!=null) delta.close();
+		}
+	}
+
+	/**
+	 * 按缓存文件格式解析文件内容。
+	 * @param buffer 一个完整的缓存文件，position为0。
+	 * @param file 用于错误信息。
+	 */
+	private static VectorSegment open(ByteBuffer buffer, File file) throws IOException {
+		if(buffer.capacity()<HEADER_SIZE || buffer.getInt(0)!=MAGIC)
+			throw new IOException("Invalid vector segment file: " + file.getAbsolutePath());
+		if(buffer.getInt(4)!=VERSION)
+			throw new IOException("Unsupported vector segment version " + buffer.getInt(4) + ": " + file.getAbsolutePath());
+
+		VectorSegment segment = new VectorSegment();
+		segment.docCount = buffer.getInt(8);
+		segment.termCount = buffer.getInt(12);
+		int dictSize = buffer.getInt(16);
+		int keyCount = buffer.getInt(20);
+		//字典之前的区段长度固定，字典每个字符串至少4字节，文件大小不足时为不完整的文件
+		long fixedSize = HEADER_SIZE + segment.docCount * 16L + 4 + segment.termCount * 5L + dictSize * 8L + keyCount * 12L;
+		if(segment.docCount<0 || segment.termCount<0 || dictSize<0 || keyCount<0 || fixedSize>buffer.capacity())
+			throw new IOException("Incomplete vector segment file: " + file.getAbsolutePath());
+		int offset = HEADER_SIZE;
+		segment.ids = intSection(buffer, offset, segment.docCount);
+		offset += segment.docCount * 4;
+		segment.termStarts = intSection(buffer, offset, segment.docCount + 1);
+		offset += (segment.docCount + 1) * 4;
+		if(segment.termStarts.get(segment.docCount)!=segment.termCount)
+			throw new IOException("Corrupt vector segment file: " + file.getAbsolutePath());
+		segment.roadNumValues = intSection(buffer, offset, segment.docCount);
+		offset += segment.docCount * 4;
+		segment.roadNumKeys = intSection(buffer, offset, segment.docCount);
+		offset += segment.docCount * 4;
+		segment.termOrdinals = intSection(buffer, offset, segment.termCount);
+		offset += segment.termCount * 4;
+		segment.refers = intSection(buffer, offset, dictSize);
+		offset += dictSize * 4;
+		int[] keyRoads = new int[keyCount], keyValues = new int[keyCount], keyRefers = new int[keyCount];
+		intSection(buffer, offset, keyCount).get(keyRoads);
+		offset += keyCount * 4;
+		intSection(buffer, offset, keyCount).get(keyValues);
+		offset += keyCount * 4;
+		intSection(buffer, offset, keyCount).get(keyRefers);
+		offset += keyCount * 4;
+		segment.roadNumKeyTable = new RoadNumKeys(keyRoads, keyValues, keyRefers);
+		ByteBuffer dup = buffer.duplicate();
+		dup.position(offset);
+		dup.limit(offset + segment.termCount);
+		segment.termTypes = dup.slice();
+		offset += segment.termCount;
+
+		//字典只包含不重复的词条，数量远小于文档词条总数，解码后注册到全局字典，实例被回收后释放
+		String[] texts = readDictionary(buffer, offset, dictSize, file);
+		TermDictionary dictionary = TermDictionary.getInstance();
+		segment.termIds = new int[dictSize];
+		segment.ordinals = new LongIntHashMap(dictSize);
+		for(int i=0; i<dictSize; i++){
+			segment.termIds[i] = dictionary.add(texts[i]);
+			segment.ordinals.put(segment.termIds[i], i);
+		}
+		dictionary.track(segment, segment.termIds);
+		return segment;
+	}
+
+	/**
+	 * 将旧版本（version 1）的缓存文件转换为当前版本，替换原文件。
+	 * <p>
+	 * version 1的门牌号IDF key为字典中的"道路-门牌号数值"字符串，文件头没有门牌号key数量。
+	 * 转换时读出全部文档，门牌号key、引用次数由{@link VectorSegmentWriter}按文档重新生成，与重新生成缓存文件的结果相同。
+	 * </p>
+	 * @param file
+	 * @return 文件已经是当前版本时返回false，不做修改。
+	 * @throws IOException 文件读写失败，或者不是有效的缓存文件（包括不支持的版本、文件不完整）。
+	 */
+	public static boolean upgrade(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer = null;
+		try{
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}finally{
+			raf.close();
+		}
+		if(buffer.capacity()<HEADER_SIZE_V1 || buffer.getInt(0)!=MAGIC)
+			throw new IOException("Invalid vector segment file: " + file.getAbsolutePath());
+		if(buffer.getInt(4)==VERSION) return false;
+		if(buffer.getInt(4)!=1)
+			throw new IOException("Unsupported vector segment version " + buffer.getInt(4) + ": " + file.getAbsolutePath());
+
+		int docCount = buffer.getInt(8), termCount = buffer.getInt(12), dictSize = buffer.getInt(16);
+		long fixedSize = HEADER_SIZE_V1 + docCount * 16L + 4 + termCount * 5L + dictSize * 8L;
+		if(docCount<0 || termCount<0 || dictSize<0 || fixedSize>buffer.capacity())
+			throw new IOException("Incomplete vector segment file: " + file.getAbsolutePath());
+		int offset = HEADER_SIZE_V1;
+		IntBuffer ids = intSection(buffer, offset, docCount);
+		offset += docCount * 4;
+		IntBuffer termStarts = intSection(buffer, offset, docCount + 1);
+		offset += (docCount + 1) * 4;
+		IntBuffer roadNumValues = intSection(buffer, offset, docCount);
+		offset += docCount * 8; //门牌号数值，以及转换时重新生成的门牌号IDF key
+		IntBuffer termOrdinals = intSection(buffer, offset, termCount);
+		offset += termCount * 4 + dictSize * 4; //词条字典序号，以及转换时重新统计的引用次数
+		int typesOffset = offset;
+		String[] texts = readDictionary(buffer, offset + termCount, dictSize, file);
+
+		VectorSegmentWriter writer = new VectorSegmentWriter(file);
+		for(int doc=0; doc<docCount; doc++){
+			int start = termStarts.get(doc), end = termStarts.get(doc + 1);
+			if(start<0 || start>end || end>termCount)
+				throw new IOException("Corrupt vector segment file: " + file.getAbsolutePath());
+			Document document = new Document(ids.get(doc));
+			List<Term> terms = new ArrayList<Term>(end - start);
+			for(int i=start; i<end; i++){
+				int ordinal = termOrdinals.get(i), type = buffer.get(typesOffset + i);
+				if(ordinal<0 || ordinal>=dictSize || type<0 || TYPES[type]==null)
+					throw new IOException("Corrupt vector segment file: " + file.getAbsolutePath());
+				Term term = new Term(TYPES[type], texts[ordinal]);
+				terms.add(term);
+				switch(term.getType()){
+					case Town: document.setTown(term); break;
+					case Village: document.setVillage(term); break;
+					case Road: document.setRoad(term); break;
+					case RoadNum:
+						document.setRoadNum(term);
+						term.setRef(document.getRoad());
+						break;
+					default:
+				}
+			}
+			document.setRoadNumValue(roadNumValues.get(doc));
+			document.setTerms(terms);
+			writer.add(document);
+		}
+		writer.close();
+		return true;
+	}
+
+	/**
+	 * 读取字典：dictSize个字符串，每个字符串为int UTF-8字节数 + UTF-8字节。
+	 */
+	private static String[] readDictionary(ByteBuffer buffer, int offset, int dictSize, File file) throws IOException {
+		String[] texts = new String[dictSize];
+		byte[] bytes = new byte[64];
+		for(int i=0; i<dictSize; i++){
+			int length = offset + 4 <= buffer.capacity() ? buffer.getInt(offset) : -1;
+			offset += 4;
+			if(length<0 || length>buffer.capacity() - offset)
+				throw new IOException("Incomplete vector segment file: " + file.getAbsolutePath());
+			if(bytes.length<length) bytes = new byte[length];
+			ByteBuffer dup = buffer.duplicate();
+			dup.position(offset);
+			dup.get(bytes, 0, length);
+			offset += length;
+			texts[i] = new String(bytes, 0, length, UTF8);
+		}
+		return texts;
+	}
+
+	private static IntBuffer intSection(ByteBuffer buffer, int offset, int count){
+		ByteBuffer dup = buffer.duplicate();
+		dup.position(offset);
+		dup.limit(offset + count * 4);
+		return dup.slice().asIntBuffer();
+	}
+
+	@Override
+	public int getDocCount(){
+		return this.docCount;
+	}
+
+	@Override
+	public int getId(int doc){
+		return this.ids.get(doc);
+	}
+
+	@Override
+	public int getTermStart(int doc){
+		return this.termStarts.get(doc);
+	}
+
+	@Override
+	public int getTermEnd(int doc){
+		return this.termStarts.get(doc + 1);
+	}
+
+	@Override
+	public int getRoadNumValue(int doc){
+		return this.roadNumValues.get(doc);
+	}
+
+	@Override
+	public int getRoadNumKey(int doc){
+		return this.roadNumKeys.get(doc);
+	}
+
+	@Override
+	public int getTermOrdinal(int pos){
+		return this.termOrdinals.get(pos);
+	}
+
+	@Override
+	public TermType getTermType(int pos){
+		return TYPES[this.termTypes.get(pos)];
+	}
+
+	@Override
+	public int getDictionarySize(){
+		return this.termIds.length;
+	}
+
+	@Override
+	public int getTermId(int ordinal){
+		return this.termIds[ordinal];
+	}
+
+	@Override
+	public String getText(int ordinal){
+		return TermDictionary.getInstance().getText(this.termIds[ordinal]);
+	}
+
+	@Override
+	public int getRefers(int ordinal){
+		return this.refers.get(ordinal);
+	}
+
+	@Override
+	public int getRoadNumRefers(int key){
+		return this.roadNumKeyTable.refers[key];
+	}
+
+	@Override
+	public int getRoadNumKeyCount(){
+		return this.roadNumKeyTable.refers.length;
+	}
+
+	@Override
+	public int lookup(String text){
+		return this.lookupTerm(TermDictionary.getInstance().lookup(text));
+	}
+
+	@Override
+	public int lookupTerm(int termId){
+		return termId<0 ? -1 : this.ordinals.get(termId, -1);
+	}
+
+	@Override
+	public int lookupRoadNum(int road, int value){
+		return this.roadNumKeyTable.lookup(road, value);
+	}
+
+	/**
+	 * 估算占用的堆内存字节数：字典序号与全局词条ID的对应关系、IDF值、门牌号key，文档数据在映射的缓存文件中，不计入。
+	 * @return
+	 */
+	@Override
+	public long estimateSize(){
+		return 128 + 12L * this.termIds.length + this.ordinals.estimateSize() + this.roadNumKeyTable.estimateSize();
+	}
+
+	@Override
+	public double getIdf(int ordinal){
+		return this.idfs[ordinal];
+	}
+
+	@Override
+	public double getRoadNumIdf(int key){
+		return this.roadNumKeyTable.idfs[key];
+	}
+
+	@Override
+	public void setIdfs(double[] value, double[] roadNumValue){
+		this.idfs = value;
+		this.roadNumKeyTable.idfs = roadNumValue;
+	}
+
+	@Override
+	public Document getDocument(int doc){
+		return DocumentBlock.createDocument(this, doc, this.idfs!=null);
+	}
+
+	/**
+	 * 将全部文档数据复制到堆内存数组中，字典与当前实例共享。
+	 * @return
+	 */
+	public DocumentBlock toBlock(){
+		//复制完成之前当前实例一直被使用，不会被回收，词条ID在此期间不会释放
+		TermDictionary.getInstance().retain(this.termIds);
+		int[] ids = new int[this.docCount], termStarts = new int[this.docCount + 1];
+		int[] roadNumValues = new int[this.docCount], roadNumKeys = new int[this.docCount];
+		int[] termOrdinals = new int[this.termCount], refers = new int[this.termIds.length];
+		byte[] termTypes = new byte[this.termCount];
+		this.ids.duplicate().get(ids);
+		this.termStarts.duplicate().get(termStarts);
+		this.roadNumValues.duplicate().get(roadNumValues);
+		this.roadNumKeys.duplicate().get(roadNumKeys);
+		this.termOrdinals.duplicate().get(termOrdinals);
+		this.refers.duplicate().get(refers);
+		this.termTypes.duplicate().get(termTypes);
+		return new DocumentBlock(this.docCount, ids, termStarts, roadNumValues, roadNumKeys, 
+				termOrdinals, termTypes, this.termIds, this.ordinals, refers, this.roadNumKeyTable.copy());
+	}
+
+	/**
+	 * 将当前实例与增量缓存文件合并，复制到堆内存数组中。
+	 * @param delta 增量缓存文件。
+	 * @return
+	 * @see #merge(List)
+	 */
+	public DocumentBlock merge(VectorSegment delta){
+		return this.merge(Collections.singletonList(delta));
+	}
+
+	/**
+	 * 将当前实例与增量缓存文件的全部分块合并，复制到堆内存数组中。
+	 * <p>
+	 * 增量文档按分块顺序追加在当前实例的文档之后，字典、门牌号key表合并，引用次数按合并后的文档重新累计。<br />
+	 * 地址ID自增，增量文档的ID总是大于当前实例中的文档ID；ID不大于当前实例最大文档ID的增量文档已经合并到当前实例中
+	 * （例如合并完成后未能删除增量文件），忽略这部分文档。
+	 * </p>
+	 * @param deltas 增量缓存文件的分块，参考{@link #openDelta(File)}。
+	 * @return
+	 */
+	public DocumentBlock merge(List<VectorSegment> deltas){
+		int maxId = Integer.MIN_VALUE;
+		for(int i=0; i<this.docCount; i++) maxId = Math.max(maxId, this.ids.get(i));
+		return this.merge(deltas, maxId);
+	}
+
+	/**
+	 * 依次连接多个缓存文件（例如只有增量缓存文件时的各个分块），复制到堆内存数组中，不忽略任何文档。
+	 * @param segments 至少一个。
+	 * @return
+	 */
+	public static DocumentBlock concat(List<VectorSegment> segments){
+		return segments.get(0).merge(segments.subList(1, segments.size()), Integer.MIN_VALUE);
+	}
+
+	private DocumentBlock merge(List<VectorSegment> deltas, int maxId){
+		int[][] deltaDocs = new int[deltas.size()][];
+		int deltaDocCount = 0, deltaTermCount = 0, deltaDictSize = 0, deltaKeyCount = 0;
+		for(int k=0; k<deltas.size(); k++){
+			VectorSegment delta = deltas.get(k);
+			int[] docs = new int[delta.docCount];
+			int count = 0;
+			for(int i=0; i<delta.docCount; i++){
+				if(delta.getId(i)<=maxId) continue;
+				docs[count++] = i;
+				deltaTermCount += delta.getTermEnd(i) - delta.getTermStart(i);
+			}
+			deltaDocs[k] = Arrays.copyOf(docs, count);
+			deltaDocCount += count;
+			deltaDictSize += delta.termIds.length;
+			deltaKeyCount += delta.roadNumKeyTable.roads.length;
+		}
+
+		//1. 合并字典：增量字典序号通过全局词条ID转换为合并后的字典序号
+		int dictSize = this.termIds.length;
+		int[] termIds = Arrays.copyOf(this.termIds, dictSize + deltaDictSize);
+		LongIntHashMap ordinals = new LongIntHashMap(termIds.length);
+		for(int i=0; i<dictSize; i++) ordinals.put(termIds[i], i);
+		int[][] ordinalMaps = new int[deltas.size()][];
+		for(int k=0; k<deltas.size(); k++){
+			VectorSegment delta = deltas.get(k);
+			int[] ordinalMap = ordinalMaps[k] = new int[delta.termIds.length];
+			for(int i=0; i<delta.termIds.length; i++){
+				int ordinal = ordinals.get(delta.termIds[i], -1);
+				if(ordinal<0){
+					ordinal = dictSize++;
+					termIds[ordinal] = delta.termIds[i];
+					ordinals.put(termIds[ordinal], ordinal);
+				}
+				ordinalMap[i] = ordinal;
+			}
+		}
+		termIds = Arrays.copyOf(termIds, dictSize);
+		//之后仍要读取当前实例和增量文件的文档，两者不会被回收，词条ID在此期间不会释放
+		TermDictionary.getInstance().retain(termIds);
+		int[] refers = new int[dictSize];
+		this.refers.duplicate().get(refers, 0, this.termIds.length);
+
+		//2. 合并门牌号key表：先在当前实例的key表中查找，再查找之前的分块新增的key
+		RoadNumKeys baseKeys = this.roadNumKeyTable;
+		int keyCount = baseKeys.roads.length;
+		int[] keyRoads = Arrays.copyOf(baseKeys.roads, keyCount + deltaKeyCount);
+		int[] keyValues = Arrays.copyOf(baseKeys.values, keyRoads.length);
+		int[] keyRefers = Arrays.copyOf(baseKeys.refers, keyRoads.length);
+		LongIntHashMap addedKeys = new LongIntHashMap(Math.max(16, deltaKeyCount));
+		int[][] keyMaps = new int[deltas.size()][];
+		for(int k=0; k<deltas.size(); k++){
+			RoadNumKeys deltaKeys = deltas.get(k).roadNumKeyTable;
+			int[] keyMap = keyMaps[k] = new int[deltaKeys.roads.length];
+			for(int i=0; i<keyMap.length; i++){
+				int road = deltaKeys.roads[i]<0 ? -1 : ordinalMaps[k][deltaKeys.roads[i]];
+				int key = baseKeys.lookup(road, deltaKeys.values[i]);
+				if(key<0) key = addedKeys.get(RoadNumKeys.key(road, deltaKeys.values[i]), -1);
+				if(key<0){
+					key = keyCount++;
+					keyRoads[key] = road;
+					keyValues[key] = deltaKeys.values[i];
+					addedKeys.put(RoadNumKeys.key(road, deltaKeys.values[i]), key);
+				}
+				keyMap[i] = key;
+			}
+		}
+
+		//3. 合并文档
+		int docCount = this.docCount + deltaDocCount, termCount = this.termCount + deltaTermCount;
+		int[] ids = new int[docCount], termStarts = new int[docCount + 1];
+		int[] roadNumValues = new int[docCount], roadNumKeys = new int[docCount];
+		int[] termOrdinals = new int[termCount];
+		byte[] termTypes = new byte[termCount];
+		this.ids.duplicate().get(ids, 0, this.docCount);
+		this.termStarts.duplicate().get(termStarts, 0, this.docCount + 1);
+		this.roadNumValues.duplicate().get(roadNumValues, 0, this.docCount);
+		this.roadNumKeys.duplicate().get(roadNumKeys, 0, this.docCount);
+		this.termOrdinals.duplicate().get(termOrdinals, 0, this.termCount);
+		this.termTypes.duplicate().get(termTypes, 0, this.termCount);
+		int doc = this.docCount, pos = this.termCount;
+		for(int k=0; k<deltas.size(); k++){
+			VectorSegment delta = deltas.get(k);
+			int[] ordinalMap = ordinalMaps[k], keyMap = keyMaps[k];
+			for(int d : deltaDocs[k]){
+				ids[doc] = delta.getId(d);
+				roadNumValues[doc] = delta.getRoadNumValue(d);
+				roadNumKeys[doc] = delta.getRoadNumKey(d)<0 ? -1 : keyMap[delta.getRoadNumKey(d)];
+				if(roadNumKeys[doc]>=0) keyRefers[roadNumKeys[doc]]++;
+				for(int j=delta.getTermStart(d), end=delta.getTermEnd(d); j<end; j++, pos++){
+					termOrdinals[pos] = ordinalMap[delta.getTermOrdinal(j)];
+					termTypes[pos] = delta.termTypes.get(j);
+					//与VectorSegmentWriter一致，门牌号词条按门牌号key计数
+					if(TermType.RoadNum.getValue()!=termTypes[pos]) refers[termOrdinals[pos]]++;
+				}
+				termStarts[doc + 1] = pos;
+				doc++;
+			}
+		}
+		RoadNumKeys keys = new RoadNumKeys(Arrays.copyOf(keyRoads, keyCount), Arrays.copyOf(keyValues, keyCount), 
+				Arrays.copyOf(keyRefers, keyCount));
+		return new DocumentBlock(docCount, ids, termStarts, roadNumValues, roadNumKeys, 
+				termOrdinals, termTypes, termIds, ordinals, refers, keys);
+	}
+
+	/**
+	 * 门牌号key表，门牌号key为（所属道路的字典序号, 门牌号数值），按序号存取。
+	 */
+	static class RoadNumKeys {
+		int[] roads;
+		int[] values;
+		int[] refers;
+		double[] idfs = null;
+		private LongIntHashMap keys;
+
+		private RoadNumKeys() {}
+
+		RoadNumKeys(int[] roads, int[] values, int[] refers){
+			this.roads = roads;
+			this.values = values;
+			this.refers = refers;
+			this.keys = new LongIntHashMap(roads.length);
+			for(int i=0; i<roads.length; i++)
+				this.keys.put(key(roads[i], values[i]), i);
+		}
+
+		/**
+		 * 组合门牌号key：高32位为道路字典序号，低32位为门牌号数值。
+		 * @param road
+		 * @param value
+		 * @return
+		 */
+		static long key(int road, int value){
+			return ((long)road << 32) | (value & 0xffffffffL);
+		}
+
+		int lookup(int road, int value){
+			return this.keys.get(key(road, value), -1);
+		}
+
+		long estimateSize(){
+			return 64 + 20L * this.roads.length + this.keys.estimateSize();
+		}
+
+		/**
+		 * 复制一个共享key数据、IDF值独立设置的实例。
+		 * @return
+		 */
+		RoadNumKeys copy(){
+			RoadNumKeys copy = new RoadNumKeys();
+			copy.roads = this.roads;
+			copy.values = this.values;
+			copy.refers = this.refers;
+			copy.keys = this.keys;
+			return copy;
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package com.rrs.rd.address.similarity;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.utils.LongIntHashMap;
+
+/**
+ * 生成文档向量缓存文件，文件格式参考{@link VectorSegment}。
+ *
+ * <p>
+ * 文档逐个添加，只保存文档ID、词条序号等基本类型数组，不保留{@link Document}对象；没有词条的文档忽略
+ * （与文本格式的缓存文件一致，参考{@link SimilarityComputer#deserialize(String)}），文档数量不受生成方式影响；
+ * {@link #close()}时先写入临时文件，再替换目标文件，读取方不会读到写了一半的文件；
+ * 中途放弃时调用{@link #abort()}删除溢出文件，目标文件保持不变。
+ * </p>
+ *
+ * <p>
+ * 按文档、按词条的数据（文档ID、词条序号等）在内存中缓存的词条数量达到spillTerms时，分块写入目标目录下的溢出文件，
+ * {@link #close()}时按文件格式将各块的数据依次拷贝到目标文件，再写入词条字典和引用次数。<br />
+ * 内存占用与文档数量无关，只与不同词条（包括门牌号key）的数量有关。
+ * </p>
+ *
+ * <p>非线程安全。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class VectorSegmentWriter {
+	/**
+	 * 默认在内存中缓存的最大词条数量，约1.3MB。
+	 */
+	public static final int DEFAULT_SPILL_TERMS = 256 * 1024;
+	
+	private File file;
+	private int spillTerms;
+	private int docCount = 0;
+	private int termCount = 0;
+	//内存中缓存、尚未写入溢出文件的文档和词条
+	private int bufferedDocs = 0;
+	private int bufferedTerms = 0;
+	private int[] ids = new int[1024];
+	private int[] termStarts = new int[1025];
+	private int[] roadNumValues = new int[1024];
+	private int[] roadNumKeys = new int[1024];
+	private int[] termOrdinals = new int[8192];
+	private byte[] termTypes = new byte[8192];
+	private List<String> dictionary = new ArrayList<String>();
+	private Map<String, Integer> ordinals = new HashMap<String, Integer>();
+	private int[] refers = new int[1024];
+	private LongIntHashMap roadNumKeyIndex = new LongIntHashMap();
+	private int roadNumKeyCount = 0;
+	private int[] roadNumRoads = new int[256];
+	private int[] roadNumNums = new int[256];
+	private int[] roadNumRefers = new int[256];
+	private File spillFile = null;
+	private long spillLength = 0;
+	//溢出文件中每个分块的起始位置、文档数量、词条数量
+	private List<long[]> chunks = new ArrayList<long[]>();
+
+	/**
+	 * @param file 目标文件。
+	 */
+	public VectorSegmentWriter(File file){
+		this(file, DEFAULT_SPILL_TERMS);
+	}
+	
+	/**
+	 * @param file 目标文件。
+	 * @param spillTerms 内存中缓存的词条数量达到该值时写入溢出文件。
+	 */
+	public VectorSegmentWriter(File file, int spillTerms){
+		this.file = file;
+		this.spillTerms = Math.max(1, spillTerms);
+	}
+
+	/**
+	 * 添加一个文档。
+	 * @param doc
+	 * @return 没有词条的文档不写入缓存文件，返回false。
+	 * @throws IllegalArgumentException 文档包含多个门牌号词条。
+	 * @throws IOException 写入溢出文件失败。
+	 */
+	public boolean add(Document doc) throws IOException {
+		List<Term> terms = doc.getTerms();
+		int size = terms==null ? 0 : terms.size();
+		if(size==0) return false;
+		//先检查，出错时不修改任何状态
+		int roadNums = 0;
+		for(int i=0; i<size; i++){
+			if(TermType.RoadNum==terms.get(i).getType()) roadNums++;
+		}
+		if(roadNums>1)
+			throw new IllegalArgumentException("Document " + doc.getId() + " contains more than one road number term");
+		
+		int docIndex = this.bufferedDocs;
+		if(docIndex==this.ids.length){
+			int capacity = this.ids.length * 2;
+			this.ids = copyOf(this.ids, capacity);
+			this.termStarts = copyOf(this.termStarts, capacity);
+			this.roadNumValues = copyOf(this.roadNumValues, capacity);
+			this.roadNumKeys = copyOf(this.roadNumKeys, capacity);
+		}
+		this.ids[docIndex] = doc.getId();
+		this.termStarts[docIndex] = this.termCount;
+		this.roadNumValues[docIndex] = doc.getRoadNumValue();
+		this.roadNumKeys[docIndex] = -1;
+
+		if(this.bufferedTerms + size > this.termOrdinals.length){
+			int capacity = Math.max(this.termOrdinals.length * 2, this.bufferedTerms + size);
+			this.termOrdinals = copyOf(this.termOrdinals, capacity);
+			byte[] types = new byte[capacity];
+			System.arraycopy(this.termTypes, 0, types, 0, this.bufferedTerms);
+			this.termTypes = types;
+		}
+		for(int i=0; i<size; i++){
+			Term term = terms.get(i);
+			int ordinal = this.ordinal(term.getText());
+			this.termOrdinals[this.bufferedTerms] = ordinal;
+			this.termTypes[this.bufferedTerms] = (byte)term.getType().getValue();
+			this.bufferedTerms++;
+			if(TermType.RoadNum==term.getType()){
+				//门牌号词条使用（所属道路, 门牌号数值）作为IDF key
+				int road = term.getRef()==null ? -1 : this.ordinal(term.getRef().getText());
+				int key = this.roadNumKey(road, doc.getRoadNumValue());
+				this.roadNumKeys[docIndex] = key;
+				this.roadNumRefers[key]++;
+				continue;
+			}
+			this.refers[ordinal]++;
+		}
+		this.bufferedDocs++;
+		this.docCount++;
+		this.termCount += size;
+		if(this.bufferedTerms>=this.spillTerms) this.spill();
+		return true;
+	}
+
+	/**
+	 * 已添加的文档数量。
+	 * @return
+	 */
+	public int getDocCount(){
+		return this.docCount;
+	}
+
+	/**
+	 * 写入文件，删除溢出文件。
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		File temp = null;
+		try{
+			temp = File.createTempFile(this.file.getName(), ".tmp", this.file.getAbsoluteFile().getParentFile());
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+			RandomAccessFile spill = this.spillFile==null ? null : new RandomAccessFile(this.spillFile, "r");
+			try{
+				out.writeInt(VectorSegment.MAGIC);
+				out.writeInt(VectorSegment.VERSION);
+				out.writeInt(this.docCount);
+				out.writeInt(this.termCount);
+				out.writeInt(this.dictionary.size());
+				out.writeInt(this.roadNumKeyCount);
+				//按文档、按词条的数据：先拷贝溢出文件中各分块的数据，再写入内存中缓存的部分
+				this.writeColumn(out, spill, 0, this.ids);
+				this.writeColumn(out, spill, 1, this.termStarts);
+				out.writeInt(this.termCount);
+				this.writeColumn(out, spill, 2, this.roadNumValues);
+				this.writeColumn(out, spill, 3, this.roadNumKeys);
+				this.writeColumn(out, spill, 4, this.termOrdinals);
+				writeInts(out, this.refers, this.dictionary.size());
+				writeInts(out, this.roadNumRoads, this.roadNumKeyCount);
+				writeInts(out, this.roadNumNums, this.roadNumKeyCount);
+				writeInts(out, this.roadNumRefers, this.roadNumKeyCount);
+				for(long[] chunk : this.chunks)
+					copy(spill, chunk[0] + chunk[1] * 16 + chunk[2] * 4, chunk[2], out);
+				out.write(this.termTypes, 0, this.bufferedTerms);
+				for(String text : this.dictionary){
+					byte[] bytes = text.getBytes(VectorSegment.UTF8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+				out.flush();
+			}finally{
+				out.close();
+				if(spill!=null) spill.close();
+			}
+			Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			temp = null;
+		}finally{
+			if(temp!=null) temp.delete();
+			if(this.spillFile!=null) this.spillFile.delete();
+		}
+	}
+
+	/**
+	 * 放弃写入，删除溢出文件，目标文件保持不变。
+	 * <p>{@link #close()}总会删除溢出文件和临时文件，之后调用没有影响；可以在finally中调用，确保添加文档失败时不残留溢出文件。</p>
+	 */
+	public void abort(){
+		if(this.spillFile!=null) this.spillFile.delete();
+		this.spillFile = null;
+		this.chunks.clear();
+		this.spillLength = 0;
+	}
+
+	/**
+	 * 内存中缓存的文档和词条作为一个分块追加到溢出文件，分块内按列存放：
+	 * 文档ID、词条起始位置、门牌号数值、门牌号key（每个文档4个int），词条序号（每个词条1个int），词条类型（每个词条1个byte）。
+	 * @throws IOException
+	 */
+	private void spill() throws IOException {
+		if(this.spillFile==null){
+			this.spillFile = File.createTempFile(this.file.getName(), ".spill", this.file.getAbsoluteFile().getParentFile());
+			this.spillFile.deleteOnExit();
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.spillFile, true), 64 * 1024));
+		try{
+			writeInts(out, this.ids, this.bufferedDocs);
+			writeInts(out, this.termStarts, this.bufferedDocs);
+			writeInts(out, this.roadNumValues, this.bufferedDocs);
+			writeInts(out, this.roadNumKeys, this.bufferedDocs);
+			writeInts(out, this.termOrdinals, this.bufferedTerms);
+			out.write(this.termTypes, 0, this.bufferedTerms);
+			out.flush();
+		}finally{
+			out.close();
+		}
+		this.chunks.add(new long[]{ this.spillLength, this.bufferedDocs, this.bufferedTerms });
+		this.spillLength += this.bufferedDocs * 16L + this.bufferedTerms * 5L;
+		this.bufferedDocs = 0;
+		this.bufferedTerms = 0;
+	}
+
+	/**
+	 * 写入一列int数据：溢出文件各分块中的第column列，以及内存中缓存的部分。
+	 * @param column 0~3为按文档的列，4为词条序号。
+	 */
+	private void writeColumn(DataOutputStream out, RandomAccessFile spill, int column, int[] buffered) throws IOException {
+		for(long[] chunk : this.chunks){
+			if(column<4) copy(spill, chunk[0] + chunk[1] * 4 * column, chunk[1] * 4, out);
+			else copy(spill, chunk[0] + chunk[1] * 16, chunk[2] * 4, out);
+		}
+		writeInts(out, buffered, column<4 ? this.bufferedDocs : this.bufferedTerms);
+	}
+
+	private static void copy(RandomAccessFile from, long offset, long length, DataOutputStream out) throws IOException {
+		byte[] buffer = new byte[(int)Math.min(64 * 1024, Math.max(1, length))];
+		from.seek(offset);
+		while(length>0){
+			int size = (int)Math.min(buffer.length, length);
+			from.readFully(buffer, 0, size);
+			out.write(buffer, 0, size);
+			length -= size;
+		}
+	}
+
+	private int ordinal(String text){
+		Integer ordinal = this.ordinals.get(text);
+		if(ordinal!=null) return ordinal.intValue();
+		int value = this.dictionary.size();
+		this.dictionary.add(text);
+		this.ordinals.put(text, value);
+		if(value==this.refers.length) this.refers = copyOf(this.refers, value * 2);
+		return value;
+	}
+
+	private int roadNumKey(int road, int value){
+		long composite = VectorSegment.RoadNumKeys.key(road, value);
+		int key = this.roadNumKeyIndex.get(composite, -1);
+		if(key>=0) return key;
+		key = this.roadNumKeyCount++;
+		if(key==this.roadNumRoads.length){
+			this.roadNumRoads = copyOf(this.roadNumRoads, key * 2);
+			this.roadNumNums = copyOf(this.roadNumNums, key * 2);
+			this.roadNumRefers = copyOf(this.roadNumRefers, key * 2);
+		}
+		this.roadNumRoads[key] = road;
+		this.roadNumNums[key] = value;
+		this.roadNumKeyIndex.put(composite, key);
+		return key;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+		for(int i=0; i<count; i++)
+			out.writeInt(values[i]);
+	}
+
+	private static int[] copyOf(int[] array, int size){
+		int[] result = new int[size];
+		System.arraycopy(array, 0, result, 0, Math.min(array.length, size));
+		return result;
+	}
+}
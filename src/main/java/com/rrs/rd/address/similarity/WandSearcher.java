@@ -0,0 +1,192 @@
+package com.rrs.rd.address.similarity;
+
+/**
+ * 基于WAND（Weak AND）动态剪枝的候选文档迭代器。
+ *
+ * <p>
+ * 每个查询词条对应一个posting list游标，游标按当前文档序号升序排列。
+ * 调用{@link #next(double)}时，按游标顺序累加词条的相似度贡献上限，找到第一个相似度上限可能超过阈值的文档（pivot），
+ * 序号小于pivot的文档最多只能匹配pivot之前的词条，相似度不可能超过阈值，直接跳过。
+ * </p>
+ *
+ * <p>
+ * <strong>相似度上限</strong>：<br />
+ * 余弦相似度中，地址库文档在未匹配词条上的分量为0，由柯西-施瓦茨不等式可得：<br />
+ * &nbsp;&nbsp;&nbsp;&nbsp;similarity &lt;= sqrt( A / (A + B) )<br />
+ * A: 可能匹配的查询词条特征值上限的平方和；B: 不可能匹配的查询词条特征值下限的平方和。<br />
+ * 查询词条的特征值 = IDF * boost，boost与地址库文档相关，在一定范围内取值，上下限由调用方计算后传入。
+ * </p>
+ *
+ * <p>
+ * 文档按序号升序返回，被跳过的文档相似度一定不超过当时的阈值，因此与逐一计算全部候选文档的结果完全相同。<br />
+ * 非线程安全，每次查询创建一个实例；并行计算时通过{@link #range(int, int)}为每个文档区间创建一个实例。
+ * </p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class WandSearcher {
+	/**
+	 * 浮点运算误差容忍度，相似度上限超过阈值减去该值的文档都不会被跳过。
+	 */
+	private static final double EPSILON = 1e-9;
+	private static final int EXHAUSTED = Integer.MAX_VALUE;
+
+	private int[][] postings;
+	private double[] maxWeights; //查询词条特征值上限的平方
+	private double[] minWeights; //查询词条特征值下限的平方
+	private double totalMinWeight = 0;
+	private int[] positions; //各游标在posting list中的当前位置
+	private int[] cursors; //游标序号，按游标当前文档序号升序排列
+	private int lastDoc = -1;
+	private int scoredDocs = 0;
+	private int toDoc = EXHAUSTED;
+
+	/**
+	 * @param postings 各查询词条的posting list，升序排列。
+	 * @param maxValues 各查询词条特征值（IDF * boost）上限。
+	 * @param minValues 各查询词条特征值（IDF * boost）下限。
+	 */
+	public WandSearcher(int[][] postings, double[] maxValues, double[] minValues){
+		this.postings = postings;
+		this.maxWeights = new double[postings.length];
+		this.minWeights = new double[postings.length];
+		this.positions = new int[postings.length];
+		this.cursors = new int[postings.length];
+		for(int i=0; i<postings.length; i++){
+			this.maxWeights[i] = maxValues[i] * maxValues[i];
+			this.minWeights[i] = minValues[i] * minValues[i];
+			this.totalMinWeight += this.minWeights[i];
+			this.cursors[i] = i;
+		}
+		sortCursors();
+	}
+
+	private WandSearcher(WandSearcher source, int fromDoc, int toDoc){
+		this.postings = source.postings;
+		this.maxWeights = source.maxWeights;
+		this.minWeights = source.minWeights;
+		this.totalMinWeight = source.totalMinWeight;
+		this.positions = new int[this.postings.length];
+		this.cursors = new int[this.postings.length];
+		for(int i=0; i<this.postings.length; i++){
+			this.positions[i] = seek(this.postings[i], 0, fromDoc);
+			this.cursors[i] = i;
+		}
+		this.toDoc = toDoc;
+		sortCursors();
+	}
+
+	/**
+	 * 创建一个只返回[fromDoc, toDoc)区间内文档的搜索器，与当前搜索器共享posting list，各自维护游标。
+	 * @param fromDoc 起始文档序号（包含）。
+	 * @param toDoc 结束文档序号（不包含）。
+	 * @return
+	 */
+	public WandSearcher range(int fromDoc, int toDoc){
+		return new WandSearcher(this, fromDoc, toDoc);
+	}
+
+	/**
+	 * 获取下一个相似度可能超过阈值的文档。
+	 * @param threshold 当前阈值，相似度不超过该值的文档可以跳过，参考{@link Query#getThreshold()}。
+	 * @return 文档序号，没有更多文档时返回-1。
+	 */
+	public int next(double threshold){
+		//移动停留在上一次返回的文档上的游标
+		if(this.lastDoc>=0){
+			for(int i=0; i<this.cursors.length && doc(this.cursors[i])==this.lastDoc; i++)
+				this.positions[this.cursors[i]]++;
+			sortCursors();
+		}
+
+		while(true){
+			//查找pivot：按游标顺序累加，第一个使相似度上限超过阈值的游标
+			double a = 0, b = this.totalMinWeight;
+			int pivot = -1;
+			for(int i=0; i<this.cursors.length; i++){
+				int cursor = this.cursors[i];
+				if(doc(cursor)==EXHAUSTED) break;
+				a += this.maxWeights[cursor];
+				b -= this.minWeights[cursor];
+				if(upperBound(a, b) + EPSILON > threshold){
+					pivot = i;
+					break;
+				}
+			}
+			if(pivot<0) {
+				this.lastDoc = EXHAUSTED;
+				return -1;
+			}
+
+			int pivotDoc = doc(this.cursors[pivot]);
+			if(pivotDoc>=this.toDoc){
+				this.lastDoc = EXHAUSTED;
+				return -1;
+			}
+			if(doc(this.cursors[0])==pivotDoc){
+				this.lastDoc = pivotDoc;
+				this.scoredDocs++;
+				return pivotDoc;
+			}
+			//pivot之前的游标全部移动到pivot文档，中间的文档不可能超过阈值
+			for(int i=0; i<pivot; i++){
+				int cursor = this.cursors[i];
+				this.positions[cursor] = seek(this.postings[cursor], this.positions[cursor], pivotDoc);
+			}
+			sortCursors();
+		}
+	}
+
+	/**
+	 * 已返回的文档数量（即需要计算相似度的文档数量）。
+	 * @return
+	 */
+	public int getScoredDocs(){
+		return this.scoredDocs;
+	}
+
+	private static double upperBound(double a, double b){
+		if(b<0) b = 0;
+		if(a + b <= 0) return 0;
+		return Math.sqrt(a / (a + b));
+	}
+
+	private int doc(int cursor){
+		int[] list = this.postings[cursor];
+		int pos = this.positions[cursor];
+		return pos<list.length ? list[pos] : EXHAUSTED;
+	}
+
+	/**
+	 * 在posting list中从from位置开始查找第一个不小于target的位置，先倍增步长再二分查找。
+	 */
+	private static int seek(int[] list, int from, int target){
+		if(from>=list.length || list[from]>=target) return from;
+		int step = 1, low = from, high = from + 1;
+		while(high<list.length && list[high]<target){
+			low = high;
+			step <<= 1;
+			high = from + step;
+		}
+		if(high>list.length) high = list.length;
+		//list[low] < target，list[high] >= target 或 high==list.length
+		while(low + 1 < high){
+			int mid = (low + high) >>> 1;
+			if(list[mid]<target) low = mid;
+			else high = mid;
+		}
+		return high;
+	}
+
+	private void sortCursors(){
+		//查询词条数量很少，插入排序即可
+		for(int i=1; i<this.cursors.length; i++){
+			int cursor = this.cursors[i], d = doc(cursor), j = i - 1;
+			while(j>=0 && doc(this.cursors[j])>d){
+				this.cursors[j+1] = this.cursors[j];
+				j--;
+			}
+			this.cursors[j+1] = cursor;
+		}
+	}
+}
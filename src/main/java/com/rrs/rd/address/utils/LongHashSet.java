@@ -0,0 +1,147 @@
+package com.rrs.rd.address.utils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.LongBuffer;
+
+/**
+ * long类型的哈希集合，开放寻址（线性探测），元素直接存放在long数组中，没有装箱和Entry对象。
+ *
+ * <p>
+ * 数组中0表示空槽位，元素0单独记录。不支持删除。<br />
+ * 非线程安全，构建完成后只读访问时可以在多个线程间共享。
+ * </p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class LongHashSet {
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private long[] table;
+	private boolean hasZero = false;
+	private int size = 0;
+	private int threshold;
+	private int mask;
+
+	public LongHashSet(){
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize 预计元素数量。
+	 */
+	public LongHashSet(int expectedSize){
+		int capacity = 16;
+		while(capacity * LOAD_FACTOR < expectedSize) capacity <<= 1;
+		this.allocate(capacity);
+	}
+
+	/**
+	 * 是否包含元素。
+	 * @param key
+	 * @return
+	 */
+	public boolean contains(long key){
+		if(key==0) return this.hasZero;
+		int i = index(key);
+		while(this.table[i]!=0){
+			if(this.table[i]==key) return true;
+			i = (i + 1) & this.mask;
+		}
+		return false;
+	}
+
+	/**
+	 * 添加元素。
+	 * @param key
+	 * @return 元素已存在返回false。
+	 */
+	public boolean add(long key){
+		if(key==0){
+			if(this.hasZero) return false;
+			this.hasZero = true;
+			this.size++;
+			return true;
+		}
+		int i = index(key);
+		while(this.table[i]!=0){
+			if(this.table[i]==key) return false;
+			i = (i + 1) & this.mask;
+		}
+		this.table[i] = key;
+		if(++this.size > this.threshold) this.rehash();
+		return true;
+	}
+
+	/**
+	 * 元素数量。
+	 * @return
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * 估算占用的堆内存字节数。
+	 * @return
+	 */
+	public long estimateSize(){
+		return 48 + this.table.length * 8L;
+	}
+
+	/**
+	 * 按内部存储结构写入输出流：槽位数量、元素数量、是否包含0、全部槽位。
+	 * 使用{@link #read(LongBuffer)}读取时不需要重新计算哈希。
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(this.table.length);
+		out.writeInt(this.size);
+		out.writeLong(this.hasZero ? 1 : 0);
+		for(long value : this.table) out.writeLong(value);
+	}
+
+	/**
+	 * 读取{@link #write(DataOutputStream)}写入的集合。
+	 * @param buffer 从{@link #write(DataOutputStream)}写入的起始位置开始。
+	 * @return
+	 * @throws IOException 数据不完整或者格式错误。
+	 */
+	public static LongHashSet read(LongBuffer buffer) throws IOException {
+		if(buffer.remaining()<2) throw new IOException("Invalid long hash set data");
+		long header = buffer.get();
+		int capacity = (int)(header >>> 32), size = (int)header;
+		if(capacity<16 || Integer.bitCount(capacity)!=1 || size<0 || buffer.remaining()<capacity + 1)
+			throw new IOException("Invalid long hash set data, capacity: " + capacity + ", size: " + size);
+		LongHashSet set = new LongHashSet(0);
+		set.allocate(capacity);
+		set.hasZero = buffer.get()!=0;
+		buffer.get(set.table);
+		set.size = size;
+		return set;
+	}
+
+	private int index(long key){
+		//混合高低位，避免连续的key集中在相邻的槽位
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & this.mask;
+	}
+
+	private void allocate(int capacity){
+		this.table = new long[capacity];
+		this.mask = capacity - 1;
+		this.threshold = (int)(capacity * LOAD_FACTOR);
+	}
+
+	private void rehash(){
+		long[] old = this.table;
+		this.allocate(old.length * 2);
+		for(long key : old){
+			if(key==0) continue;
+			int j = index(key);
+			while(this.table[j]!=0) j = (j + 1) & this.mask;
+			this.table[j] = key;
+		}
+	}
+}
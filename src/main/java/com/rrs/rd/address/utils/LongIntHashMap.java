@@ -0,0 +1,129 @@
+package com.rrs.rd.address.utils;
+
+/**
+ * key为long、value为int的哈希表，开放寻址（线性探测），key和value直接存放在基本类型数组中，没有装箱和Entry对象。
+ *
+ * <p>
+ * 不支持删除；int类型的key可以直接转换为long使用。<br />
+ * 非线程安全，构建完成后只读访问时可以在多个线程间共享。
+ * </p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class LongIntHashMap {
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size = 0;
+	private int threshold;
+	private int mask;
+
+	public LongIntHashMap(){
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize 预计元素数量。
+	 */
+	public LongIntHashMap(int expectedSize){
+		int capacity = 16;
+		while(capacity * LOAD_FACTOR < expectedSize) capacity <<= 1;
+		this.allocate(capacity);
+	}
+
+	/**
+	 * 获取key对应的值。
+	 * @param key
+	 * @param defaultValue key不存在时的返回值。
+	 * @return
+	 */
+	public int get(long key, int defaultValue){
+		int i = index(key);
+		while(this.used[i]){
+			if(this.keys[i]==key) return this.values[i];
+			i = (i + 1) & this.mask;
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * 是否包含key。
+	 * @param key
+	 * @return
+	 */
+	public boolean containsKey(long key){
+		int i = index(key);
+		while(this.used[i]){
+			if(this.keys[i]==key) return true;
+			i = (i + 1) & this.mask;
+		}
+		return false;
+	}
+
+	/**
+	 * 设置key对应的值，key已存在时覆盖原值。
+	 * @param key
+	 * @param value
+	 */
+	public void put(long key, int value){
+		int i = index(key);
+		while(this.used[i]){
+			if(this.keys[i]==key) {
+				this.values[i] = value;
+				return;
+			}
+			i = (i + 1) & this.mask;
+		}
+		this.used[i] = true;
+		this.keys[i] = key;
+		this.values[i] = value;
+		if(++this.size > this.threshold) this.rehash();
+	}
+
+	/**
+	 * 元素数量。
+	 * @return
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * 估算占用的堆内存字节数。
+	 * @return
+	 */
+	public long estimateSize(){
+		return 64 + this.keys.length * 13L;
+	}
+
+	private int index(long key){
+		//混合高低位，避免连续的key集中在相邻的槽位
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & this.mask;
+	}
+
+	private void allocate(int capacity){
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.used = new boolean[capacity];
+		this.mask = capacity - 1;
+		this.threshold = (int)(capacity * LOAD_FACTOR);
+	}
+
+	private void rehash(){
+		long[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		boolean[] oldUsed = this.used;
+		this.allocate(oldKeys.length * 2);
+		for(int i=0; i<oldKeys.length; i++){
+			if(!oldUsed[i]) continue;
+			int j = index(oldKeys[i]);
+			while(this.used[j]) j = (j + 1) & this.mask;
+			this.used[j] = true;
+			this.keys[j] = oldKeys[i];
+			this.values[j] = oldValues[i];
+		}
+	}
+}
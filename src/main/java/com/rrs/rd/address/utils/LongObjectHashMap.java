@@ -0,0 +1,120 @@
+package com.rrs.rd.address.utils;
+
+/**
+ * key为long的哈希表，开放寻址（线性探测），key直接存放在long数组中，查找时没有{@link Long}装箱和Entry对象。
+ *
+ * <p>
+ * 不支持删除，value不能为null（null表示空槽位）。<br />
+ * 非线程安全，构建完成后只读访问时可以在多个线程间共享。
+ * </p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class LongObjectHashMap<V> {
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys;
+	private Object[] values;
+	private int size = 0;
+	private int threshold;
+	private int mask;
+
+	public LongObjectHashMap(){
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize 预计元素数量。
+	 */
+	public LongObjectHashMap(int expectedSize){
+		int capacity = 16;
+		while(capacity * LOAD_FACTOR < expectedSize) capacity <<= 1;
+		this.allocate(capacity);
+	}
+
+	/**
+	 * 获取key对应的值。
+	 * @param key
+	 * @return key不存在时返回null。
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key){
+		int i = index(key);
+		while(this.values[i]!=null){
+			if(this.keys[i]==key) return (V)this.values[i];
+			i = (i + 1) & this.mask;
+		}
+		return null;
+	}
+
+	/**
+	 * 是否包含key。
+	 * @param key
+	 * @return
+	 */
+	public boolean containsKey(long key){
+		return this.get(key)!=null;
+	}
+
+	/**
+	 * 设置key对应的值，key已存在时覆盖原值。
+	 * @param key
+	 * @param value 不能为null。
+	 */
+	public void put(long key, V value){
+		if(value==null) throw new IllegalArgumentException("Null value is not supported");
+		int i = index(key);
+		while(this.values[i]!=null){
+			if(this.keys[i]==key) {
+				this.values[i] = value;
+				return;
+			}
+			i = (i + 1) & this.mask;
+		}
+		this.keys[i] = key;
+		this.values[i] = value;
+		if(++this.size > this.threshold) this.rehash();
+	}
+
+	/**
+	 * 元素数量。
+	 * @return
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * 估算哈希表本身占用的堆内存字节数，不包括value对象。
+	 * @return
+	 */
+	public long estimateSize(){
+		return 64 + this.keys.length * 12L;
+	}
+
+	private int index(long key){
+		//混合高低位，避免连续的key集中在相邻的槽位
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & this.mask;
+	}
+
+	private void allocate(int capacity){
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+		this.threshold = (int)(capacity * LOAD_FACTOR);
+	}
+
+	private void rehash(){
+		long[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.allocate(oldKeys.length * 2);
+		for(int i=0; i<oldKeys.length; i++){
+			if(oldValues[i]==null) continue;
+			int j = index(oldKeys[i]);
+			while(this.values[j]!=null) j = (j + 1) & this.mask;
+			this.keys[j] = oldKeys[i];
+			this.values[j] = oldValues[i];
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.rrs.rd.address.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 按key合并并发执行的加载操作：同一个key同一时刻只执行一次加载，期间其他线程等待并共享加载结果；不同key的加载互不阻塞。
+ *
+ * <p>
+ * 加载完成后结果不在本对象中保留，调用方应在加载操作内部将结果放入自己的缓存，
+ * 并在加载前再次检查缓存，避免加载刚刚完成时又发起一次加载。<br />
+ * 加载抛出的异常传递给全部等待的线程，下次调用重新加载。
+ * </p>
+ *
+ * <p>线程安全。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class SingleFlight<V> {
+	private ConcurrentHashMap<String, FutureTask<V>> flights = new ConcurrentHashMap<String, FutureTask<V>>();
+
+	/**
+	 * 执行加载，或者等待正在执行的同一个key的加载。
+	 * @param key
+	 * @param loader
+	 * @return 加载结果。
+	 */
+	public V load(String key, Callable<V> loader){
+		FutureTask<V> task = new FutureTask<V>(loader);
+		FutureTask<V> flight = this.flights.putIfAbsent(key, task);
+		if(flight==null){
+			flight = task;
+			try{
+				task.run();
+			}finally{
+				this.flights.remove(key, task);
+			}
+		}
+		return await(flight);
+	}
+
+	/**
+	 * 正在加载的key数量。
+	 * @return
+	 */
+	public int getInflightCount(){
+		return this.flights.size();
+	}
+
+	private static <V> V await(FutureTask<V> flight){
+		boolean interrupted = false;
+		try{
+			while(true){
+				try{
+					return flight.get();
+				}catch(InterruptedException ex){
+					//加载结果被其他线程共享，不因为某个等待线程被中断而放弃，等待结束后恢复中断状态
+					interrupted = true;
+				}catch(ExecutionException ex){
+					Throwable cause = ex.getCause();
+					if(cause instanceof RuntimeException) throw (RuntimeException)cause;
+					if(cause instanceof Error) throw (Error)cause;
+					throw new RuntimeException(cause);
+				}
+			}
+		}finally{
+			if(interrupted) Thread.currentThread().interrupt();
+		}
+	}
+}
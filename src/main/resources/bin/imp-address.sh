@@ -13,4 +13,4 @@ LIB_DIR=$DEPLOY_DIR/lib
 LIB_JARS=`ls $LIB_DIR | grep .jar | awk '{print "'$LIB_DIR'/"$0}' | tr "\n" ":"`
 
 echo -e "Start importing addresses ...\c"
-java -classpath $CONF_DIR:$CONF_DIR/dic:$LIB_JARS com.rrs.rd.address.misc.ImportAddress $1
+java -classpath $CONF_DIR:$CONF_DIR/dic:$LIB_JARS com.rrs.rd.address.misc.ImportAddress "$@"
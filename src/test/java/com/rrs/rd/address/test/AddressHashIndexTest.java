@@ -0,0 +1,80 @@
+package com.rrs.rd.address.test;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.AddressHashIndex;
+import com.rrs.rd.address.utils.LongHashSet;
+import com.rrs.rd.address.utils.StringUtil;
+
+import junit.framework.TestCase;
+
+public class AddressHashIndexTest extends TestCase {
+	@Test
+	public void testLongHashSet() {
+		LongHashSet set = new LongHashSet();
+		for(long i=-1000; i<=1000; i++) assertTrue(set.add(i * 0x100000001L));
+		assertFalse(set.add(0));
+		assertFalse(set.add(-0x100000001L));
+		assertEquals(2001, set.size());
+		for(long i=-1000; i<=1000; i++) assertTrue(set.contains(i * 0x100000001L));
+		assertFalse(set.contains(1));
+		assertFalse(set.contains(Long.MIN_VALUE));
+	}
+
+	@Test
+	public void testKey() {
+		String text = "北京北京海淀区中关村南大街九龙商务中心";
+		assertEquals(AddressHashIndex.key(text.hashCode(), text), AddressHashIndex.key(text));
+		//32位hashCode相同的两个文本："Aa"、"BB"
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		assertTrue(AddressHashIndex.key("Aa")!=AddressHashIndex.key("BB"));
+
+		//数据库中保存截断后的原文、未截断原文的hashCode
+		StringBuilder sb = new StringBuilder();
+		while(sb.length()<=AddressHashIndex.RAW_TEXT_MAX_LENGTH) sb.append(text);
+		String longText = sb.toString();
+		String stored = StringUtil.head(longText, AddressHashIndex.RAW_TEXT_MAX_LENGTH);
+		assertEquals(AddressHashIndex.key(longText.hashCode(), stored), AddressHashIndex.key(longText));
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		File folder = TestData.tempFolder("address-hash");
+		try{
+			this.saveAndLoad(new File(new File(folder, "sub"), "address-hash.idx"));
+			//目录自动创建，替换后不留临时文件
+			assertEquals(1, new File(folder, "sub").listFiles().length);
+		}finally{
+			TestData.deleteFolder(new File(folder, "sub"));
+			TestData.deleteFolder(folder);
+		}
+	}
+
+	private void saveAndLoad(File file) throws Exception {
+
+		AddressHashIndex index = new AddressHashIndex(0);
+		for(int i=1; i<=500; i++) index.addRow(row(i * 2, "地址" + i));
+		index.addRow(row(1001, "地址1")); //重复地址
+		index.add(0);
+		index.save(file);
+
+		AddressHashIndex loaded = AddressHashIndex.load(file);
+		assertEquals(1001, loaded.getMaxId());
+		assertEquals(501, loaded.getRows());
+		assertEquals(501, loaded.size());
+		for(int i=1; i<=500; i++) assertTrue(loaded.contains(AddressHashIndex.key("地址" + i)));
+		assertTrue(loaded.contains(0));
+		assertFalse(loaded.contains(AddressHashIndex.key("地址501")));
+	}
+
+	private static AddressEntity row(int id, String rawText){
+		AddressEntity address = new AddressEntity();
+		address.setId(id);
+		address.setHash(rawText.hashCode());
+		address.setRawText(rawText);
+		return address;
+	}
+}
@@ -0,0 +1,241 @@
+package com.rrs.rd.address.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.interpret.AddressImportPipeline;
+import com.rrs.rd.address.interpret.AddressImportPipeline.StageStats;
+import com.rrs.rd.address.interpret.AddressInterpreter;
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.AddressPersister;
+
+import junit.framework.TestCase;
+
+/**
+ * 使用不依赖数据库的解析器、持久化对象测试{@link AddressImportPipeline}的阶段衔接、backpressure和异常终止。
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class AddressImportPipelineTest extends TestCase {
+	/**
+	 * 导入结果与逐行串行导入相同：重复地址被排除，写入顺序与文件中的顺序相同。
+	 */
+	@Test
+	public void testImportOrder() throws Exception {
+		List<String> lines = new ArrayList<String>();
+		Set<String> distinct = new HashSet<String>();
+		List<String> expected = new ArrayList<String>();
+		for(int i=0; i<1000; i++){
+			String line = i % 10==9 ? "地址" + (i - 5) : "地址" + i;
+			lines.add(line);
+			if(distinct.add(line)) expected.add(line);
+		}
+		lines.add(300, "");
+
+		StubInterpreter interpreter = new StubInterpreter();
+		StubPersister persister = new StubPersister();
+		AddressImportPipeline pipeline = pipeline(interpreter, persister, 7, 5, 2);
+		int imported = pipeline.importAddresses(reader(lines, -1));
+
+		assertEquals(expected.size(), imported);
+		assertEquals(expected, persister.inserted);
+		List<StageStats> stats = pipeline.getStageStats();
+		assertEquals(1001, stats.get(0).getItems());
+		assertEquals(1001, stats.get(1).getItems());
+		assertEquals(1000, stats.get(2).getItems());
+		assertEquals(expected.size(), stats.get(3).getItems());
+	}
+
+	/**
+	 * 写入数据库较慢时，各队列容量为1，读取进度最多领先写入进度固定数量的批次，与文件大小无关。
+	 */
+	@Test
+	public void testBackpressure() throws Exception {
+		List<String> lines = new ArrayList<String>();
+		for(int i=0; i<200; i++) lines.add("地址" + i);
+
+		final AtomicInteger read = new AtomicInteger();
+		final int[] maxAhead = new int[1];
+		StubPersister persister = new StubPersister(){
+			@Override
+			public int insertAddresses(List<AddressEntity> batch) {
+				maxAhead[0] = Math.max(maxAhead[0], read.get() - this.inserted.size());
+				sleep(5);
+				return super.insertAddresses(batch);
+			}
+		};
+		AddressImportPipeline pipeline = pipeline(new StubInterpreter(), persister, 1, 1, 1);
+		assertEquals(200, pipeline.importAddresses(reader(lines, -1, read)));
+
+		assertEquals(200, persister.inserted.size());
+		//4个阶段各自持有的批次，加上3个队列中的批次
+		assertTrue("read ahead " + maxAhead[0], maxAhead[0] <= 9);
+		assertTrue(pipeline.getStageStats().get(0).getBlockedTime() > 0);
+	}
+
+	/**
+	 * 解析、写入阶段异常终止时，整个流水线终止并抛出异常，不会一直等待。
+	 */
+	@Test
+	public void testStageFailure() throws Exception {
+		List<String> lines = new ArrayList<String>();
+		for(int i=0; i<10000; i++) lines.add("地址" + i);
+
+		StubInterpreter interpreter = new StubInterpreter(){
+			@Override
+			public List<AddressEntity> interpret(List<String> addrTextList) {
+				if(addrTextList.get(0).equals("地址50")) throw new Error("interpret failure");
+				return super.interpret(addrTextList);
+			}
+		};
+		assertAborted(pipeline(interpreter, new StubPersister(), 10, 10, 1), lines, "interpret failure");
+
+		StubPersister persister = new StubPersister(){
+			@Override
+			public int insertAddresses(List<AddressEntity> batch) {
+				if(this.inserted.size()>=100) throw new Error("insert failure");
+				return super.insertAddresses(batch);
+			}
+		};
+		assertAborted(pipeline(new StubInterpreter(), persister, 10, 10, 1), lines, "insert failure");
+		assertEquals(100, persister.inserted.size());
+
+		//单个批次解析、写入失败只记录日志，不终止导入
+		interpreter = new StubInterpreter(){
+			@Override
+			public List<AddressEntity> interpret(List<String> addrTextList) {
+				if(addrTextList.get(0).equals("地址50")) throw new IllegalArgumentException("bad batch");
+				return super.interpret(addrTextList);
+			}
+		};
+		persister = new StubPersister();
+		assertEquals(9990, pipeline(interpreter, persister, 10, 10, 1).importAddresses(reader(lines, -1)));
+		assertFalse(persister.inserted.contains("地址55"));
+	}
+
+	/**
+	 * 读取文件失败时，已读取的地址仍然导入，然后抛出读取异常。
+	 */
+	@Test
+	public void testReadError() throws Exception {
+		List<String> lines = new ArrayList<String>();
+		for(int i=0; i<100; i++) lines.add("地址" + i);
+		StubPersister persister = new StubPersister();
+		try{
+			pipeline(new StubInterpreter(), persister, 7, 5, 1).importAddresses(reader(lines, 50));
+			fail("read error should be thrown");
+		}catch(IOException ex){
+			assertEquals("read error", ex.getMessage());
+		}
+		assertEquals(lines.subList(0, 50), persister.inserted);
+	}
+
+	private static void assertAborted(final AddressImportPipeline pipeline, final List<String> lines, String cause) throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try{
+			Future<Integer> future = executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					return pipeline.importAddresses(reader(lines, -1));
+				}
+			});
+			try{
+				future.get(10, TimeUnit.SECONDS);
+				fail("pipeline should be aborted");
+			}catch(ExecutionException ex){
+				assertTrue(ex.getCause() instanceof IllegalStateException);
+				assertEquals(cause, ex.getCause().getCause().getMessage());
+			}
+		}finally{
+			executor.shutdownNow();
+		}
+	}
+
+	private static AddressImportPipeline pipeline(AddressInterpreter interpreter, AddressPersister persister,
+			int readBatchSize, int batchSize, int queueCapacity){
+		AddressImportPipeline pipeline = new AddressImportPipeline();
+		pipeline.setInterpreter(interpreter);
+		pipeline.setPersister(persister);
+		pipeline.setReadBatchSize(readBatchSize);
+		pipeline.setBatchSize(batchSize);
+		pipeline.setQueueCapacity(queueCapacity);
+		return pipeline;
+	}
+
+	private static BufferedReader reader(List<String> lines, int failAt){
+		return reader(lines, failAt, new AtomicInteger());
+	}
+
+	/**
+	 * @param failAt 读取第failAt行时抛出IOException，-1表示不抛出。
+	 * @param read 已读取的行数。
+	 */
+	private static BufferedReader reader(final List<String> lines, final int failAt, final AtomicInteger read){
+		return new BufferedReader(new StringReader("")){
+			@Override
+			public String readLine() throws IOException {
+				int line = read.get();
+				if(line==failAt) throw new IOException("read error");
+				if(line>=lines.size()) return null;
+				read.incrementAndGet();
+				return lines.get(line);
+			}
+		};
+	}
+
+	private static void sleep(long millis){
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 每行作为一个地址，忽略空行。
+	 */
+	private static class StubInterpreter extends AddressInterpreter {
+		@Override
+		public List<AddressEntity> interpret(List<String> addrTextList) {
+			List<AddressEntity> addresses = new ArrayList<AddressEntity>(addrTextList.size());
+			for(String text : addrTextList){
+				if(!text.isEmpty()) addresses.add(new AddressEntity(text));
+			}
+			return addresses;
+		}
+	}
+
+	/**
+	 * 按原始文本排除重复地址，记录写入的地址。
+	 */
+	private static class StubPersister extends AddressPersister {
+		private Set<String> prepared = new HashSet<String>();
+		protected List<String> inserted = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public boolean prepareImport(AddressEntity address) {
+			return this.prepared.add(address.getRawText());
+		}
+
+		@Override
+		public int insertAddresses(List<AddressEntity> batch) {
+			for(AddressEntity address : batch) this.inserted.add(address.getRawText());
+			return batch.size();
+		}
+	}
+}
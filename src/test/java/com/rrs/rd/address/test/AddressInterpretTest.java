@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,9 +23,8 @@ import com.rrs.rd.address.utils.StringUtil;
 public class AddressInterpretTest extends TestBase {
 	@Test
 	public void testExtractTown(){
-		AddressPersister pt = context.getBean(AddressPersister.class);
 		AddressInterpreter inter = context.getBean(AddressInterpreter.class);
-		RegionInterpreterVisitor v = new RegionInterpreterVisitor(pt);
+		RegionInterpreterVisitor v = new RegionInterpreterVisitor();
 		
 		Map<Long, List<String>> towns = new HashMap<Long, List<String>>();
 		
@@ -289,11 +289,46 @@ public class AddressInterpretTest extends TestBase {
 //		assertEquals("村庄错误", "马铁庄村", addr.getVillage());
 	}
 	
+	@Test
+	public void testInterpretBatch(){
+		AddressInterpreter interpreter = context.getBean(AddressInterpreter.class);
+		String[] texts = { "山东青岛平度市中庄镇西中庄村青岛平度中庄镇西中庄村", "河南洛阳偃师市李村镇上庄村3组"
+			, "北京北京海淀区中关村南大街九龙商务中心", "", "不存在的地址", "江苏南通海门市万年镇镇兴村18组8号" };
+		List<String> list = new ArrayList<String>();
+		for(int i=0; i<1000; i++) list.add(texts[i % texts.length]);
+		
+		interpreter.setThreads(4);
+		try{
+			//与逐个解析的结果一一对应
+			List<AddressEntity> all = interpreter.interpretAll(list);
+			assertEquals(list.size(), all.size());
+			for(int i=0; i<list.size(); i++){
+				AddressEntity expected = interpreter.interpret(list.get(i)), actual = all.get(i);
+				if(expected==null) {
+					assertNull(actual);
+					continue;
+				}
+				assertEquals(list.get(i), actual.getRawText());
+				assertEquals(expected.toString(), actual.toString());
+			}
+			
+			//忽略空地址以及未匹配到区县的地址，保持输入顺序
+			List<AddressEntity> addresses = interpreter.interpret(list);
+			int index = 0;
+			for(String text : list){
+				if(text.isEmpty() || text.equals("不存在的地址")) continue;
+				assertEquals(text, addresses.get(index++).getRawText());
+			}
+			assertEquals(index, addresses.size());
+		}finally{
+			interpreter.setThreads(Runtime.getRuntime().availableProcessors());
+		}
+	}
+	
 	@Test
 	public void testExtractRegionPerf(){
-		AddressPersister persister = context.getBean(AddressPersister.class);
 		TermIndexBuilder builder = context.getBean(TermIndexBuilder.class);
-		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor(persister);
+		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor();
 		
 		//预热
 		indexSearchRegionPerf("山东青岛市市南区宁德路金梦花园", builder, visitor);
@@ -321,10 +356,9 @@ public class AddressInterpretTest extends TestBase {
 	
 	@Test
 	public void testExtractRegion(){
-		AddressPersister persister = context.getBean(AddressPersister.class);
 		TermIndexBuilder builder = context.getBean(TermIndexBuilder.class);
 
-		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor(persister);
+		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor();
 		
 //		doExtractRegionTest(builder, visitor, 610000, 610800, 610826, 610826106
 //				, "陕西榆林绥德县吉镇镇柳湾村136号", "柳湾村", "容错：多余关键字");
@@ -492,7 +526,7 @@ public class AddressInterpretTest extends TestBase {
 	
 	private void removeRedundancy(AddressInterpreter interpreter, AddressPersister persister
 			, String text, String expected, int pid, int cid, int did, String title){
-		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor(persister);
+		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor();
 		AddressEntity addr = new AddressEntity(text);
 		addr.setProvince(persister.getRegion(pid));
 		addr.setCity(persister.getRegion(cid));
@@ -509,7 +543,7 @@ public class AddressInterpretTest extends TestBase {
 	@Test
 	public void testRemoveRedundancyFromAddressFile(){
 		AddressInterpreter interpreter = context.getBean(AddressInterpreter.class);
-		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor(context.getBean(AddressPersister.class));
+		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor();
 		
 		File file = new File(AddressInterpretTest.class.getClassLoader().getResource("test-addresses.txt").getPath());
 		InputStreamReader sr = null;
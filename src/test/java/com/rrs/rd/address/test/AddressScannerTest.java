@@ -0,0 +1,144 @@
+package com.rrs.rd.address.test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.interpret.AddressScanner;
+
+import junit.framework.TestCase;
+
+/**
+ * {@link AddressScanner}与原正则表达式实现的差异测试：测试地址文件，以及由地址关键字符随机组合的大量文本，
+ * 匹配结果必须完全相同。
+ */
+public class AddressScannerTest extends TestCase {
+	private static final Pattern P_BUILDING_NUM1 = Pattern.compile("((路|街|巷)[0-9]+号)?([0-9A-Z一二三四五六七八九十]+(栋|橦|幢|座|号楼|号|\\#楼?)){0,1}([一二三四五六七八九十东西南北甲乙丙0-9]+(单元|门|梯|层|座))?([0-9]+(室|房)?)?");
+	private static final Pattern P_BUILDING_NUM_V = Pattern.compile("(栋|幢|橦|号楼|号|\\#|\\#楼|单元|室|房|门)+");
+	private static final Pattern P_BUILDING_NUM2 = Pattern.compile("[A-Za-z0-9]+([\\#\\-一－/\\\\]+[A-Za-z0-9]+)+");
+	private static final Pattern P_BUILDING_NUM3 = Pattern.compile("[0-9]+组[0-9\\-一]+号?");
+	private static final Pattern P_TOWN1 = Pattern.compile("^((?<z>[一-龥]{2,2}(镇|乡))(?<c>[一-龥]{1,3}村)?)");
+	private static final Pattern P_TOWN2 = Pattern.compile("^((?<z>[一-龥]{1,3}镇)?(?<x>[一-龥]{1,3}乡)?(?<c>[一-龥]{1,3}村(?!(村|委|公路|(东|西|南|北)?(大街|大道|路|街))))?)");
+	private static final Pattern P_TOWN3 = Pattern.compile("^(?<c>[一-龥]{1,3}村(?!(村|委|公路|(东|西|南|北)?(大街|大道|路|街))))?");
+	private static final Pattern P_ROAD = Pattern.compile("^(?<road>([一-龥]{2,4}(路|街坊|街|道|大街|大道)))(?<ex>[甲乙丙丁])?(?<roadnum>[0-9０１２３４５６７８９一二三四五六七八九十]+(号院|号楼|号大院|号|號|巷|弄|院|区|条|\\#院|\\#))?");
+
+	private static final String CHARS = "路街巷号栋橦幢座楼#单元门梯层室房东西南北甲乙丙丁一二三十0129AZab-－/\\组镇乡村委公大道坊院號弄区条米户中山０９x，";
+
+	@Test
+	public void testExamples(){
+		int[] span = new int[2];
+		assertTrue(AddressScanner.findBuildingNum("宁夏路118号4号楼6单元202", span));
+		assertEquals("4号楼6单元202", "宁夏路118号4号楼6单元202".substring(span[0], span[1]));
+		assertTrue(AddressScanner.findBuildingNum("翠微西里12-2-302", span));
+		assertEquals("12-2-302", "翠微西里12-2-302".substring(span[0], span[1]));
+		assertTrue(AddressScanner.findBuildingNum("上庄村3组21号", span));
+		assertEquals("3组21号", "上庄村3组21号".substring(span[0], span[1]));
+		assertFalse(AddressScanner.findBuildingNum("财政局宿舍楼", span));
+
+		assertTrue(AddressScanner.matchRoad("长沈路1000号力旺格林春天", span));
+		assertEquals(3, span[0]);
+		assertEquals(8, span[1]);
+		assertTrue(AddressScanner.matchRoad("见龙大道财政局宿舍楼702", span));
+		assertEquals(4, span[0]);
+		assertEquals(4, span[1]);
+		assertFalse(AddressScanner.matchRoad("力旺格林春天", span));
+
+		int[] ends = new int[3];
+		assertTrue(AddressScanner.matchTown("先锋乡张梁村史上社17号", AddressScanner.TOWN2, ends));
+		assertEquals(-1, ends[0]);
+		assertEquals(3, ends[1]);
+		assertEquals(6, ends[2]);
+		assertTrue(AddressScanner.matchTown("兴裕村委东", AddressScanner.TOWN3, ends));
+		assertEquals(-1, ends[2]);
+		assertFalse(AddressScanner.matchTown("兴裕村委东", AddressScanner.TOWN1, ends));
+
+		assertEquals("贺庄回迁楼", AddressScanner.removeUnits("贺庄回迁楼3单元602室"));
+		assertEquals("小区", AddressScanner.removeUnits("小区三单元"));
+	}
+
+	@Test
+	public void testSameAsRegex() throws Exception {
+		List<String> texts = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				AddressScannerTest.class.getClassLoader().getResourceAsStream("test-addresses.txt"), "utf8"));
+		try{
+			String line = null;
+			while((line = br.readLine()) != null) texts.add(line);
+		}finally{
+			br.close();
+		}
+		Random random = new Random(20161019);
+		for(int i=0; i<200000; i++){
+			int length = random.nextInt(14);
+			StringBuilder sb = new StringBuilder(length);
+			for(int j=0; j<length; j++) sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
+			texts.add(sb.toString());
+		}
+
+		int[] span = new int[2], ends = new int[3];
+		for(String text : texts){
+			assertEquals(text, buildingNumByRegex(text),
+					AddressScanner.findBuildingNum(text, span) ? span[0] + ":" + span[1] : null);
+			assertEquals(text, roadByRegex(text),
+					AddressScanner.matchRoad(text, span) ? span[0] + ":" + span[1] : null);
+			assertEquals(text, townByRegex(P_TOWN1, text),
+					AddressScanner.matchTown(text, AddressScanner.TOWN1, ends) ? ends[0] + "," + ends[1] + "," + ends[2] : null);
+			assertEquals(text, townByRegex(P_TOWN2, text),
+					AddressScanner.matchTown(text, AddressScanner.TOWN2, ends) ? ends[0] + "," + ends[1] + "," + ends[2] : null);
+			assertEquals(text, townByRegex(P_TOWN3, text),
+					AddressScanner.matchTown(text, AddressScanner.TOWN3, ends) ? ends[0] + "," + ends[1] + "," + ends[2] : null);
+			assertEquals(text, text.replaceAll("[0-9A-Za-z\\#]+(单元|楼|室|层|米|户|\\#)", "")
+					.replaceAll("[一二三四五六七八九十]+(单元|楼|室|层|米|户)", ""), AddressScanner.removeUnits(text));
+		}
+	}
+
+	/**
+	 * 原AddressInterpreter.extractBuildingNum()的正则表达式实现。
+	 */
+	private static String buildingNumByRegex(String text){
+		Matcher matcher = P_BUILDING_NUM1.matcher(text);
+		while(matcher.find()){
+			if(matcher.end()==matcher.start()) continue;
+			String building = text.substring(matcher.start(), matcher.end());
+			int nonEmptyGroups = 0;
+			for(int i=0; i<matcher.groupCount(); i++){
+				if(matcher.group(i)!=null) nonEmptyGroups++;
+			}
+			if(P_BUILDING_NUM_V.matcher(building).find() && nonEmptyGroups>3){
+				int pos = matcher.start();
+				if(building.startsWith("路") || building.startsWith("街") || building.startsWith("巷"))
+					pos += building.indexOf("号")+1;
+				return pos + ":" + matcher.end();
+			}
+		}
+		matcher = P_BUILDING_NUM2.matcher(text);
+		if(matcher.find()) return matcher.start() + ":" + matcher.end();
+		matcher = P_BUILDING_NUM3.matcher(text);
+		if(matcher.find()) return matcher.start() + ":" + matcher.end();
+		return null;
+	}
+
+	private static String roadByRegex(String text){
+		Matcher matcher = P_ROAD.matcher(text);
+		if(!matcher.find()) return null;
+		String ex = matcher.group("ex"), roadNum = matcher.group("roadnum");
+		return matcher.end("road") + ":" + (matcher.end("road") + (ex==null ? 0 : 1) + (roadNum==null ? 0 : roadNum.length()));
+	}
+
+	private static String townByRegex(Pattern pattern, String text){
+		Matcher matcher = pattern.matcher(text);
+		if(!matcher.find()) return null;
+		StringBuilder sb = new StringBuilder();
+		for(String group : new String[]{ "z", "x", "c" }){
+			if(sb.length()>0) sb.append(',');
+			sb.append(pattern.pattern().contains("<" + group + ">") ? matcher.end(group) : -1);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,53 @@
+package com.rrs.rd.address.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.DocumentBlock;
+import com.rrs.rd.address.similarity.ExactMatchIndex;
+import com.rrs.rd.address.similarity.Query;
+import com.rrs.rd.address.similarity.VectorQuery;
+
+import junit.framework.TestCase;
+
+public class ExactMatchIndexTest extends TestCase {
+	@Test
+	public void testFind() throws Exception {
+		List<Document> docs = new ArrayList<Document>();
+		docs.add(TestData.doc(1, "R和平路", "N17号", "X天", "X元"));
+		docs.add(TestData.doc(2, "X翠", "X微", "X西", "X里"));
+		docs.add(TestData.doc(3, "R和平路", "N17号", "X天", "X元"));
+		docs.add(TestData.doc(4, "T温泉镇", "X天"));
+		DocumentBlock block = TestData.block(docs);
+		ExactMatchIndex index = ExactMatchIndex.build(block, 99);
+
+		//词条完全相同的文档取序号最小的一个
+		assertEquals(0, index.find(query(block, "R和平路", "N17号", "X天", "X元")));
+		assertEquals(3, index.find(query(block, "T温泉镇", "X天")));
+		//词条顺序、类型不同，缺少或多出词条，都不是精确匹配
+		assertEquals(-1, index.find(query(block, "X元", "X天", "R和平路", "N17号")));
+		assertEquals(-1, index.find(query(block, "X温泉镇", "X天")));
+		assertEquals(-1, index.find(query(block, "X翠", "X微", "X西")));
+		assertEquals(-1, index.find(query(block, "X翠", "X微", "X西", "X里", "X北")));
+
+		File file = File.createTempFile("exact-test", ExactMatchIndex.FILE_EXTENSION);
+		file.deleteOnExit();
+		index.save(file, block);
+		ExactMatchIndex loaded = ExactMatchIndex.load(file);
+		assertEquals(99, loaded.getFileStamp());
+		assertEquals(4, loaded.getDocCount());
+		assertEquals(0, loaded.find(query(block, "R和平路", "N17号", "X天", "X元")));
+		assertEquals(1, loaded.find(query(block, "X翠", "X微", "X西", "X里")));
+		assertEquals(-1, loaded.find(query(block, "X翠", "X微")));
+	}
+
+	private VectorQuery query(DocumentBlock block, String... terms){
+		Query query = new Query(1);
+		query.setQueryDoc(TestData.doc(0, terms));
+		return new VectorQuery(query, block);
+	}
+}
@@ -4,15 +4,13 @@ import org.junit.Test;
 
 import com.rrs.rd.address.interpret.RegionInterpreterVisitor;
 import com.rrs.rd.address.index.TermIndexBuilder;
-import com.rrs.rd.address.persist.AddressPersister;
 import com.rrs.rd.address.utils.StringUtil;
 
 public class IndexTest extends TestBase {
 	@Test
 	public void testQueryIndex(){
-		AddressPersister persister = context.getBean(AddressPersister.class);
 		TermIndexBuilder builder = context.getBean(TermIndexBuilder.class);
-		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor(persister);
+		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor();
 		
 		String text = "青岛市南区";
 		builder.deepMostQuery(text, visitor);
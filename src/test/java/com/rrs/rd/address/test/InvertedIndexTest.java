@@ -0,0 +1,31 @@
+package com.rrs.rd.address.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.InvertedIndex;
+
+import junit.framework.TestCase;
+
+public class InvertedIndexTest extends TestCase {
+	@Test
+	public void testPostings() throws Exception {
+		List<Document> docs = new ArrayList<Document>();
+		docs.add(TestData.doc(1, "R和平路", "N17号", "X天", "X元"));
+		docs.add(TestData.doc(2, "X翠", "X微", "X西", "X里"));
+		docs.add(TestData.doc(3, "R和平路", "X翠", "X翠"));
+		docs.add(TestData.doc(4, "T温泉镇", "X天"));
+		InvertedIndex index = new InvertedIndex(TestData.block(docs));
+		
+		assertEquals(4, index.getDocCount());
+		assertEquals(2, index.getPostings("和平路").length);
+		assertEquals(0, index.getPostings("和平路")[0]);
+		assertEquals(2, index.getPostings("和平路")[1]);
+		//同一文档中重复出现的词条只记录一次
+		assertEquals(2, index.getPostings("翠").length);
+		assertEquals(0, index.getPostings("不存在").length);
+	}
+}
@@ -0,0 +1,23 @@
+package com.rrs.rd.address.test;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.utils.LongObjectHashMap;
+
+import junit.framework.TestCase;
+
+public class LongObjectHashMapTest extends TestCase {
+	@Test
+	public void testPutAndGet() {
+		LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+		for(long id=0; id<5000; id++) map.put(id * 10000 + 1, "区域" + id);
+		map.put(0, "零");
+		map.put(1, "中国");
+		assertEquals(5001, map.size());
+		for(long id=1; id<5000; id++) assertEquals("区域" + id, map.get(id * 10000 + 1));
+		assertEquals("中国", map.get(1));
+		assertEquals("零", map.get(0));
+		assertNull(map.get(2));
+		assertFalse(map.containsKey(-1));
+	}
+}
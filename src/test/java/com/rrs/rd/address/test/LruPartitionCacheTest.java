@@ -0,0 +1,92 @@
+package com.rrs.rd.address.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.similarity.DocumentBlock;
+import com.rrs.rd.address.similarity.LruPartitionCache;
+import com.rrs.rd.address.similarity.Partition;
+import com.rrs.rd.address.similarity.PartitionCache;
+
+import junit.framework.TestCase;
+
+public class LruPartitionCacheTest extends TestCase {
+	private static final PartitionCache.Loader LOADER = new PartitionCache.Loader() {
+		@Override
+		public Partition load(String key) {
+			return new Partition(key, DocumentBlock.empty(), null, 0);
+		}
+	};
+
+	@Test
+	public void testEviction() {
+		long size = LOADER.load("x").getEstimatedSize();
+		LruPartitionCache cache = new LruPartitionCache(size * 5 / 2); //容纳2个分区
+		cache.pin("1");
+
+		Partition p1 = cache.get("1", LOADER);
+		Partition p2 = cache.get("2", LOADER);
+		assertSame(p1, cache.get("1", LOADER));
+		assertSame(p2, cache.get("2", LOADER));
+		assertEquals(2, cache.getStats().getHits());
+		assertEquals(2, cache.getStats().getMisses());
+
+		//分区1固定，淘汰最近最少访问的分区2
+		cache.get("3", LOADER);
+		assertEquals(1, cache.getStats().getEvictions());
+		assertEquals(2, cache.getStats().getPartitionCount());
+		assertEquals(size * 2, cache.getStats().getSize());
+		assertSame(p1, cache.get("1", LOADER));
+		assertNotSame(p2, cache.get("2", LOADER));
+		assertEquals(4, cache.getStats().getLoads());
+
+		cache.invalidate("1");
+		assertNotSame(p1, cache.get("1", LOADER));
+	}
+
+	@Test
+	public void testConcurrentLoading() throws Exception {
+		final LruPartitionCache cache = new LruPartitionCache();
+		final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger();
+		final PartitionCache.Loader slowLoader = new PartitionCache.Loader() {
+			@Override
+			public Partition load(String key) {
+				loads.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return LOADER.load(key);
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<Partition>> futures = new ArrayList<Future<Partition>>();
+		for(int i=0; i<4; i++){
+			futures.add(executor.submit(new Callable<Partition>() {
+				@Override
+				public Partition call() {
+					return cache.get("slow", slowLoader);
+				}
+			}));
+		}
+		started.await();
+		//分区slow加载期间，其他分区的加载不被阻塞
+		assertNotNull(cache.get("fast", LOADER));
+		release.countDown();
+		Partition slow = futures.get(0).get();
+		for(Future<Partition> f : futures) assertSame(slow, f.get());
+		assertEquals(1, loads.get());
+		executor.shutdown();
+	}
+}
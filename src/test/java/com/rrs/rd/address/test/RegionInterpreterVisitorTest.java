@@ -0,0 +1,286 @@
+package com.rrs.rd.address.test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.utils.Stack;
+import com.rrs.rd.address.Division;
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.index.TermIndexBuilder;
+import com.rrs.rd.address.index.TermIndexEntry;
+import com.rrs.rd.address.index.TermIndexItem;
+import com.rrs.rd.address.index.TermIndexVisitor;
+import com.rrs.rd.address.interpret.RegionInterpreterVisitor;
+import com.rrs.rd.address.persist.AddressPersister;
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionType;
+
+import junit.framework.TestCase;
+
+/**
+ * 使用内存中的区域树测试{@link RegionInterpreterVisitor}，不依赖数据库。
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class RegionInterpreterVisitorTest extends TestCase {
+	private static final String[] FRAGMENTS = { "湖南省", "湖南", "湘潭市", "湘潭", "湘潭县", "易俗河镇", "易俗河", "新田村",
+		"花石镇", "岳塘区", "建设路街道", "益阳市", "沅江市", "万子湖乡", "万子湖村", "广东省", "广东", "广州市", "广州",
+		"从化区", "从化", "温泉镇", "白云区", "均和街道", "均和街", "中南建材市场", "大道", "村", "县", "号" };
+	private static TermIndexBuilder builder = null;
+
+	/**
+	 * 匹配过程因异常中断后，同一个visitor调用{@link RegionInterpreterVisitor#reset()}再次匹配，结果与新建的visitor相同。
+	 */
+	@Test
+	public void testResetAfterAbort(){
+		TermIndexBuilder builder = builder();
+		RegionInterpreterVisitor reused = new RegionInterpreterVisitor();
+		int aborted = 0;
+		for(String text : texts(500, 1)){
+			//在第3个可接受的匹配项处中断，stack中残留未出栈的匹配项
+			reused.reset();
+			try{
+				builder.deepMostQuery(text, new AbortingVisitor(reused, 3));
+			}catch(IllegalStateException ex){
+				aborted++;
+			}
+
+			reused.reset();
+			builder.deepMostQuery(text, reused);
+			RegionInterpreterVisitor expected = new RegionInterpreterVisitor();
+			builder.deepMostQuery(text, expected);
+			assertSameResult(text, expected, reused);
+		}
+		assertTrue(aborted > 0);
+	}
+
+	/**
+	 * 出栈时使用前缀状态更新已匹配的省市区，与重新扫描stack的结果相同。
+	 */
+	@Test
+	public void testPrefixStateSameAsRescan() throws Exception {
+		TermIndexBuilder builder = builder();
+		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor();
+		RescanCheckingVisitor checker = new RescanCheckingVisitor(visitor);
+		for(String text : texts(2000, 2)){
+			visitor.reset();
+			builder.deepMostQuery(text, checker);
+		}
+		assertTrue(checker.checked > 1000);
+	}
+
+	private static void assertSameResult(String text, RegionInterpreterVisitor expected, RegionInterpreterVisitor actual){
+		assertEquals(text, expected.hasResult(), actual.hasResult());
+		assertEquals(text, expected.resultEndPosition(), actual.resultEndPosition());
+		assertEquals(text, expected.resultMatchCount(), actual.resultMatchCount());
+		assertEquals(text, expected.resultFullMatchCount(), actual.resultFullMatchCount());
+		assertEquals(text, expected.resultDivision().getProvince(), actual.resultDivision().getProvince());
+		assertEquals(text, expected.resultDivision().getCity(), actual.resultDivision().getCity());
+		assertEquals(text, expected.resultDivision().getDistrict(), actual.resultDivision().getDistrict());
+		assertEquals(text, expected.resultDivision().getStreet(), actual.resultDivision().getStreet());
+		assertEquals(text, expected.resultDivision().getTown(), actual.resultDivision().getTown());
+		assertEquals(text, expected.resultDivision().getVillage(), actual.resultDivision().getVillage());
+	}
+
+	/**
+	 * 由区域名称、别名和其他文本片段随机拼接的地址文本，使用固定的随机数种子。
+	 */
+	private static List<String> texts(int count, long seed){
+		Random rnd = new Random(seed);
+		List<String> texts = new ArrayList<String>(count);
+		for(int i=0; i<count; i++){
+			StringBuilder sb = new StringBuilder();
+			int n = 2 + rnd.nextInt(6);
+			for(int j=0; j<n; j++) sb.append(FRAGMENTS[rnd.nextInt(FRAGMENTS.length)]);
+			texts.add(sb.toString());
+		}
+		return texts;
+	}
+
+	private static synchronized TermIndexBuilder builder(){
+		if(builder!=null) return builder;
+		RegionEntity root = region(null, 1, "中国", RegionType.Country, null);
+		RegionEntity hunan = region(root, 10, "湖南省", RegionType.Province, "湖南");
+		RegionEntity xiangtan = region(hunan, 100, "湘潭市", RegionType.City, "湘潭");
+		RegionEntity xiangtanCounty = region(xiangtan, 1000, "湘潭县", RegionType.District, null);
+		RegionEntity yisuhe = region(xiangtanCounty, 10000, "易俗河镇", RegionType.Town, null);
+		region(yisuhe, 100000, "新田村", RegionType.Village, null);
+		region(xiangtanCounty, 10001, "花石镇", RegionType.Town, null);
+		RegionEntity yuetang = region(xiangtan, 1001, "岳塘区", RegionType.District, null);
+		region(yuetang, 10002, "建设路街道", RegionType.Street, null);
+		RegionEntity yiyang = region(hunan, 101, "益阳市", RegionType.City, "益阳");
+		RegionEntity yuanjiang = region(yiyang, 1002, "沅江市", RegionType.District, null);
+		RegionEntity wanzihu = region(yuanjiang, 10003, "万子湖乡", RegionType.Town, null);
+		region(wanzihu, 100001, "万子湖村", RegionType.Village, null);
+		RegionEntity guangdong = region(root, 11, "广东省", RegionType.Province, "广东");
+		RegionEntity guangzhou = region(guangdong, 110, "广州市", RegionType.City, "广州");
+		RegionEntity conghua = region(guangzhou, 1100, "从化区", RegionType.District, "从化");
+		RegionEntity wenquan = region(conghua, 11000, "温泉镇", RegionType.Town, null);
+		region(wenquan, 110000, "新田村", RegionType.Village, null);
+		RegionEntity baiyun = region(guangzhou, 1101, "白云区", RegionType.District, null);
+		region(baiyun, 11001, "均和街道", RegionType.Street, null);
+		root.linkHierarchy();
+
+		final RegionEntity tree = root;
+		AddressPersister persister = new AddressPersister(){
+			@Override
+			public RegionEntity rootRegion(){
+				return tree;
+			}
+		};
+		List<String> ignorings = new ArrayList<String>();
+		ignorings.add("中南");
+		builder = new TermIndexBuilder(persister, ignorings);
+		return builder;
+	}
+
+	private static RegionEntity region(RegionEntity parent, long id, String name, RegionType type, String alias){
+		RegionEntity region = new RegionEntity();
+		region.setId(id);
+		region.setParentId(parent==null ? 0 : parent.getId());
+		region.setName(name);
+		region.setType(type);
+		region.setAlias(alias);
+		if(parent!=null){
+			if(parent.getChildren()==null) parent.setChildren(new ArrayList<RegionEntity>());
+			parent.getChildren().add(region);
+		}
+		return region;
+	}
+
+	/**
+	 * 每次出栈前按重新扫描stack的方式计算出栈后已匹配的省市区，出栈后与visitor的状态比较。
+	 */
+	private static class RescanCheckingVisitor implements TermIndexVisitor {
+		private RegionInterpreterVisitor visitor;
+		private Stack<TermIndexItem> stack;
+		private Division curDivision;
+		private int checked = 0;
+
+		@SuppressWarnings("unchecked")
+		public RescanCheckingVisitor(RegionInterpreterVisitor visitor) throws Exception {
+			this.visitor = visitor;
+			this.stack = (Stack<TermIndexItem>)field("stack").get(visitor);
+			this.curDivision = (Division)field("curDivision").get(visitor);
+		}
+		@Override
+		public void startRound() {
+			visitor.startRound();
+		}
+		@Override
+		public boolean visit(TermIndexEntry entry, String text, int pos) {
+			return visitor.visit(entry, text, pos);
+		}
+		@Override
+		public int positionAfterAcceptItem() {
+			return visitor.positionAfterAcceptItem();
+		}
+		@Override
+		public void endVisit(TermIndexEntry entry, String text, int pos) {
+			RegionEntity[] expected = { curDivision.getProvince(), curDivision.getCity(), curDivision.getDistrict(),
+				curDivision.getStreet(), curDivision.getTown(), curDivision.getVillage() };
+			if(stack.peek().getType()!=TermType.Ignore) rescan(expected, stack.size() - 1);
+			visitor.endVisit(entry, text, pos);
+			String message = text + " @" + pos;
+			assertEquals(message, expected[0], curDivision.getProvince());
+			assertEquals(message, expected[1], curDivision.getCity());
+			assertEquals(message, expected[2], curDivision.getDistrict());
+			assertEquals(message, expected[3], curDivision.getStreet());
+			assertEquals(message, expected[4], curDivision.getTown());
+			assertEquals(message, expected[5], curDivision.getVillage());
+			checked++;
+		}
+		@Override
+		public void endRound() {
+			visitor.endRound();
+		}
+
+		/**
+		 * 扫描出栈后剩余的stack[0..size-1]：找出街道、乡镇、村庄，以及省市区中级别最低的一个，
+		 * division依次为省、市、区县、街道、乡镇、村庄。
+		 */
+		private void rescan(RegionEntity[] division, int size){
+			RegionEntity least = null, street = null, town = null, village = null;
+			for(int i=0; i<size; i++){
+				TermIndexItem tii = stack.get(i);
+				if(tii.getType()==TermType.Ignore) continue;
+				RegionEntity r = (RegionEntity)tii.getValue();
+				switch(r.getType()){
+					case Street:
+					case PlatformL4: street = r; continue;
+					case Town: town = r; continue;
+					case Village: village = r; continue;
+					default:
+				}
+				if(least==null || r.getType().toValue() > least.getType().toValue()) least = r;
+			}
+			if(street==null) division[3] = null;
+			if(town==null) division[4] = null;
+			if(village==null) division[5] = null;
+			if(division[3]!=null || division[4]!=null || division[5]!=null) return;
+			if(least!=null){
+				switch(least.getType()){
+					case Province:
+					case ProvinceLevelCity1:
+						division[1] = null;
+						division[2] = null;
+						return;
+					case City:
+					case ProvinceLevelCity2:
+						division[2] = null;
+						return;
+					default: return;
+				}
+			}
+			division[0] = null;
+			division[1] = null;
+			division[2] = null;
+		}
+
+		private static Field field(String name) throws Exception {
+			Field field = RegionInterpreterVisitor.class.getDeclaredField(name);
+			field.setAccessible(true);
+			return field;
+		}
+	}
+
+	/**
+	 * 接受第limit个匹配项时抛出异常，模拟匹配过程中断。
+	 */
+	private static class AbortingVisitor implements TermIndexVisitor {
+		private RegionInterpreterVisitor visitor;
+		private int limit;
+		private int accepted = 0;
+
+		public AbortingVisitor(RegionInterpreterVisitor visitor, int limit){
+			this.visitor = visitor;
+			this.limit = limit;
+		}
+		@Override
+		public void startRound() {
+			visitor.startRound();
+		}
+		@Override
+		public boolean visit(TermIndexEntry entry, String text, int pos) {
+			if(!visitor.visit(entry, text, pos)) return false;
+			if(++accepted>=limit) throw new IllegalStateException("abort at " + entry.getKey());
+			return true;
+		}
+		@Override
+		public int positionAfterAcceptItem() {
+			return visitor.positionAfterAcceptItem();
+		}
+		@Override
+		public void endVisit(TermIndexEntry entry, String text, int pos) {
+			visitor.endVisit(entry, text, pos);
+		}
+		@Override
+		public void endRound() {
+			visitor.endRound();
+		}
+	}
+}
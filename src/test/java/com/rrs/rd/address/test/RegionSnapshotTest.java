@@ -0,0 +1,162 @@
+package com.rrs.rd.address.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionSnapshot;
+import com.rrs.rd.address.persist.RegionType;
+import com.rrs.rd.address.persist.RegionVersion;
+
+import junit.framework.TestCase;
+
+public class RegionSnapshotTest extends TestCase {
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		File file = File.createTempFile("region-tree", ".snap");
+		file.deleteOnExit();
+		
+		RegionEntity root = region(1, 0, "中国", RegionType.Country);
+		RegionEntity sd = child(root, region(370000, 1, "山东省", RegionType.Province));
+		RegionEntity qd = child(sd, region(370200, 370000, "青岛市", RegionType.City));
+		RegionEntity sn = child(qd, region(370202, 370200, "市南区", RegionType.District));
+		sn.setAlias("市南");
+		sn.setZip("266000");
+		child(sn, region(370202001, 370202, "香港中路街道", RegionType.Street));
+		child(qd, region(370203, 370200, "市北区", RegionType.District));
+		child(root, region(110000, 1, "北京", RegionType.ProvinceLevelCity1));
+		
+		RegionSnapshot snapshot = new RegionSnapshot(new RegionVersion(7, 0x123456789L), root);
+		snapshot.save(file);
+		assertEquals(7, snapshot.size());
+		
+		RegionSnapshot loaded = RegionSnapshot.load(file);
+		assertEquals(new RegionVersion(7, 0x123456789L), loaded.getVersion());
+		assertEquals(7, loaded.size());
+		RegionEntity r = loaded.getRoot();
+		assertEquals("中国", r.getName());
+		assertEquals(2, r.getChildren().size());
+		assertEquals("北京", r.getChildren().get(1).getName());
+		assertNull(r.getChildren().get(1).getChildren());
+		RegionEntity d = r.getChildren().get(0).getChildren().get(0).getChildren().get(0);
+		assertEquals(370202, d.getId());
+		assertEquals(370200, d.getParentId());
+		assertEquals(RegionType.District, d.getType());
+		assertEquals("市南", d.getAlias());
+		assertEquals("266000", d.getZip());
+		assertEquals(RegionType.Street, d.getChildren().get(0).getType());
+		assertEquals(2, r.getChildren().get(0).getChildren().get(0).getChildren().size());
+		
+		//截断的快照文件
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try{
+			raf.setLength(raf.length() - 10);
+		}finally{
+			raf.close();
+		}
+		try{
+			RegionSnapshot.load(file);
+			fail("truncated snapshot should be rejected");
+		}catch(java.io.IOException ex){
+		}
+	}
+	
+	/**
+	 * 文件头有效、内容仍然可以解析但已被修改的快照文件，加载时按CRC32拒绝；保存后目录中不残留临时文件。
+	 */
+	@Test
+	public void testCorruptedContent() throws Exception {
+		File folder = TestData.tempFolder("region-snapshot");
+		File file = new File(folder, "region-tree.snap");
+		try{
+			RegionEntity root = region(1, 0, "中国", RegionType.Country);
+			child(root, region(370000, 1, "山东省", RegionType.Province));
+			child(root, region(110000, 1, "北京", RegionType.ProvinceLevelCity1));
+			new RegionSnapshot(new RegionVersion(3, 42L), root).save(file);
+			new RegionSnapshot(new RegionVersion(3, 42L), root).save(file);
+			assertEquals(1, folder.listFiles().length);
+			assertEquals("北京", RegionSnapshot.load(file).getRoot().getChildren().get(1).getName());
+			
+			//把“北京”改为“南京”，文件结构不变
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try{
+				byte[] bytes = new byte[(int)raf.length()];
+				raf.readFully(bytes);
+				int pos = indexOf(bytes, "北京".getBytes("UTF-16BE"));
+				assertTrue(pos > 0);
+				raf.seek(pos);
+				raf.writeChar('南');
+			}finally{
+				raf.close();
+			}
+			try{
+				RegionSnapshot.load(file);
+				fail("corrupted snapshot should be rejected");
+			}catch(java.io.IOException ex){
+			}
+		}finally{
+			TestData.deleteFolder(folder);
+		}
+	}
+	
+	@Test
+	public void testLinkHierarchy() {
+		RegionEntity root = region(1, 0, "中国", RegionType.Country);
+		RegionEntity sd = child(root, region(370000, 1, "山东省", RegionType.Province));
+		RegionEntity qd = child(sd, region(370200, 370000, "青岛市", RegionType.City));
+		RegionEntity sn = child(qd, region(370202, 370200, "市南区", RegionType.District));
+		RegionEntity street = child(sn, region(370202001, 370202, "香港中路街道", RegionType.Street));
+		RegionEntity bj = child(root, region(110000, 1, "北京", RegionType.ProvinceLevelCity1));
+		assertNull(street.getParent());
+		assertEquals(-1, street.getDepth());
+		assertFalse(street.isDescendantOf(sd));
+		
+		root.linkHierarchy();
+		assertNull(root.getParent());
+		assertEquals(0, root.getDepth());
+		assertEquals(4, street.getDepth());
+		assertSame(sn, street.getParent());
+		assertSame(qd, sn.getParent());
+		assertEquals(370202, street.ancestorId(1));
+		assertEquals(370200, street.ancestorId(2));
+		assertEquals(1, street.ancestorId(4));
+		assertEquals(0, street.ancestorId(5));
+		assertEquals(370202001, street.ancestorId(0));
+		assertTrue(street.isDescendantOf(sd));
+		assertTrue(street.isDescendantOf(root));
+		assertTrue(sn.isDescendantOf(qd));
+		assertFalse(street.isDescendantOf(street));
+		assertFalse(street.isDescendantOf(bj));
+		assertFalse(qd.isDescendantOf(sn));
+		assertFalse(street.isDescendantOf(null));
+	}
+	
+	private static RegionEntity region(long id, long parentId, String name, RegionType type){
+		RegionEntity region = new RegionEntity();
+		region.setId(id);
+		region.setParentId(parentId);
+		region.setName(name);
+		region.setType(type);
+		return region;
+	}
+	
+	private static int indexOf(byte[] bytes, byte[] pattern){
+		for(int i=0; i+pattern.length<=bytes.length; i++){
+			int j = 0;
+			while(j<pattern.length && bytes[i+j]==pattern[j]) j++;
+			if(j==pattern.length) return i;
+		}
+		return -1;
+	}
+	
+	private static RegionEntity child(RegionEntity parent, RegionEntity child){
+		if(parent.getChildren()==null) parent.setChildren(new ArrayList<RegionEntity>());
+		List<RegionEntity> children = parent.getChildren();
+		children.add(child);
+		return child;
+	}
+}
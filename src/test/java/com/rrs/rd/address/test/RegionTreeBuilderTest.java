@@ -0,0 +1,113 @@
+package com.rrs.rd.address.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionTreeBuilder;
+import com.rrs.rd.address.persist.RegionType;
+
+import junit.framework.TestCase;
+
+public class RegionTreeBuilderTest extends TestCase {
+	@Test
+	public void testBuild() {
+		List<RegionEntity> rows = new ArrayList<RegionEntity>();
+		RegionEntity root = row(rows, 1, 1, "中国", RegionType.Country); //根节点的上级为自身
+		RegionEntity bj = row(rows, 110000, 1, "北京", RegionType.ProvinceLevelCity1);
+		RegionEntity sd = row(rows, 370000, 1, "山东省", RegionType.Province);
+		RegionEntity qd = row(rows, 370200, 370000, "青岛市", RegionType.City);
+		RegionEntity sb = row(rows, 370203, 370200, "市北区", RegionType.District);
+		RegionEntity sn = row(rows, 370202, 370200, "市南区", RegionType.District);
+		RegionEntity street = row(rows, 370202001, 370202, "香港中路街道", RegionType.Street);
+		RegionEntity town = row(rows, 370202100, 370202, "测试镇", RegionType.Town);
+		row(rows, 370202001001L, 370202001, "社区", RegionType.Village);
+		row(rows, 370202100001L, 370202100, "测试村", RegionType.Village);
+		row(rows, 370202100002L, 370202100, "测试二村", RegionType.Village);
+		//上级不存在的区域，以及它的下级
+		RegionEntity orphan = row(rows, 990100, 990000, "孤立市", RegionType.City);
+		RegionEntity orphanChild = row(rows, 990101, 990100, "孤立区", RegionType.District);
+		//与数据库查询相同的顺序：parent_id、id
+		Collections.sort(rows, new Comparator<RegionEntity>() {
+			@Override
+			public int compare(RegionEntity a, RegionEntity b) {
+				if(a.getParentId()!=b.getParentId()) return a.getParentId() < b.getParentId() ? -1 : 1;
+				return a.getId()==b.getId() ? 0 : (a.getId() < b.getId() ? -1 : 1);
+			}
+		});
+
+		RegionTreeBuilder builder = new RegionTreeBuilder();
+		for(RegionEntity region : rows) builder.add(region);
+		assertSame(root, builder.build(1));
+
+		//同一上级的区域按ID排列，根节点不是自身的下级
+		assertEquals(2, root.getChildren().size());
+		assertSame(bj, root.getChildren().get(0));
+		assertSame(sd, root.getChildren().get(1));
+		assertNull(bj.getChildren());
+		assertEquals(1, sd.getChildren().size());
+		assertSame(qd, sd.getChildren().get(0));
+		assertEquals(2, qd.getChildren().size());
+		assertSame(sn, qd.getChildren().get(0));
+		assertSame(sb, qd.getChildren().get(1));
+		assertEquals(2, sn.getChildren().size());
+		assertSame(street, sn.getChildren().get(0));
+		assertSame(town, sn.getChildren().get(1));
+
+		//街道、乡镇是最底层区域，不设置下级
+		assertNull(street.getChildren());
+		assertNull(town.getChildren());
+
+		//上级不存在的区域无法从根节点到达
+		assertEquals(1, orphan.getChildren().size());
+		assertSame(orphanChild, orphan.getChildren().get(0));
+		assertFalse(reachable(root, orphan));
+		assertFalse(reachable(root, orphanChild));
+		assertTrue(reachable(root, sn));
+	}
+
+	@Test
+	public void testMissingRoot() {
+		RegionTreeBuilder builder = new RegionTreeBuilder();
+		assertNull(builder.build(1));
+		builder.add(region(370000, 1, "山东省", RegionType.Province));
+		assertNull(builder.build(1));
+	}
+
+	@Test
+	public void testLeafRegion() {
+		assertTrue(RegionTreeBuilder.isLeafRegion(region(1, 0, "街道", RegionType.Street)));
+		assertTrue(RegionTreeBuilder.isLeafRegion(region(1, 0, "乡镇", RegionType.Town)));
+		assertTrue(RegionTreeBuilder.isLeafRegion(region(1, 0, "村庄", RegionType.Village)));
+		assertTrue(RegionTreeBuilder.isLeafRegion(region(1, 0, "四级地址", RegionType.PlatformL4)));
+		assertFalse(RegionTreeBuilder.isLeafRegion(region(1, 0, "区县", RegionType.District)));
+		assertFalse(RegionTreeBuilder.isLeafRegion(region(1, 0, "县级市", RegionType.CityLevelDistrict)));
+	}
+
+	private static boolean reachable(RegionEntity from, RegionEntity target){
+		if(from==target) return true;
+		if(from.getChildren()==null) return false;
+		for(RegionEntity child : from.getChildren())
+			if(reachable(child, target)) return true;
+		return false;
+	}
+
+	private static RegionEntity row(List<RegionEntity> rows, long id, long parentId, String name, RegionType type){
+		RegionEntity region = region(id, parentId, name, type);
+		rows.add(region);
+		return region;
+	}
+
+	private static RegionEntity region(long id, long parentId, String name, RegionType type){
+		RegionEntity region = new RegionEntity();
+		region.setId(id);
+		region.setParentId(parentId);
+		region.setName(name);
+		region.setType(type);
+		return region;
+	}
+}
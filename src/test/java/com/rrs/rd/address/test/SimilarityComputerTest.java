@@ -0,0 +1,191 @@
+package com.rrs.rd.address.test;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.similarity.DocumentVectors;
+import com.rrs.rd.address.similarity.NoHistoryDataException;
+import com.rrs.rd.address.similarity.Query;
+import com.rrs.rd.address.similarity.SimilarDoccument;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+import com.rrs.rd.address.similarity.VectorQuery;
+import com.rrs.rd.address.similarity.VectorSegment;
+
+import junit.framework.TestCase;
+
+/**
+ * 使用合成地址（{@link TestData#addresses(int, long)}）测试{@link SimilarityComputer}，不依赖数据库。
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class SimilarityComputerTest extends TestCase {
+	private static final int DOC_COUNT = 2000;
+
+	/**
+	 * 从{@link DocumentVectors}计算相似度与从{@link com.rrs.rd.address.similarity.Document Document}对象计算相似度，结果完全相同。
+	 */
+	@Test
+	public void testVectorSimilarity() throws Exception {
+		File folder = TestData.tempFolder("simi-test");
+		try{
+			SimilarityComputer computer = computer(folder, true);
+			List<AddressEntity> addresses = TestData.addresses(DOC_COUNT, 1);
+			String key = computer.buildCacheKey(addresses.get(0));
+			computer.buildDocumentFileCache(key, addresses);
+
+			List<AddressEntity> queries = TestData.addresses(40, 2);
+			queries.addAll(addresses.subList(0, 10));
+			int positive = 0;
+			for(AddressEntity addr : queries){
+				//查询一次，为查询文档的词条设置IDF
+				Query prepared = computer.findSimilarAddress(addr, 1, false);
+				DocumentVectors docs = computer.getPartitionCache().get(key, null).getDocs();
+				assertEquals(DOC_COUNT, docs.getDocCount());
+				VectorQuery vq = new VectorQuery(query(prepared), docs);
+				Query query = query(prepared);
+				for(int i=0; i<docs.getDocCount(); i++){
+					double expected = computer.computeDocSimilarity(query, docs.getDocument(i), i);
+					double actual = computer.computeDocSimilarity(vq, i);
+					assertEquals("doc " + i + " of query " + addr.getText(), expected, actual, 0);
+					if(actual>0) positive++;
+				}
+			}
+			assertTrue(positive > 0);
+		}finally{
+			TestData.deleteFolder(folder);
+		}
+	}
+
+	/**
+	 * 并行计算相似度与串行计算结果完全相同：相同的文档、相同的相似度、相同的顺序（相似度相同时按文档序号排列）。
+	 */
+	@Test
+	public void testParallelSearch() throws Exception {
+		File folder = TestData.tempFolder("simi-test");
+		try{
+			List<AddressEntity> addresses = TestData.addresses(DOC_COUNT, 3);
+			List<AddressEntity> queries = TestData.addresses(40, 4);
+			queries.addAll(addresses.subList(0, 10));
+			for(boolean memory : new boolean[]{ true, false }){
+				SimilarityComputer serial = computer(folder, memory);
+				SimilarityComputer parallel = computer(folder, memory);
+				parallel.setParallelThreshold(1);
+				parallel.setParallelism(4);
+				String key = serial.buildCacheKey(addresses.get(0));
+				if(memory) serial.buildDocumentFileCache(key, addresses);
+				for(AddressEntity addr : queries){
+					for(int topN : new int[]{ 5, 1 }){
+						String message = (memory ? "memory" : "file") + " mode, top" + topN + " of query " + addr.getText();
+						List<SimilarDoccument> expected = serial.findSimilarAddress(addr, topN, false).getSimilarDocs();
+						List<SimilarDoccument> actual = parallel.findSimilarAddress(addr, topN, false).getSimilarDocs();
+						assertFalse(message, expected.isEmpty());
+						assertEquals(message, expected.size(), actual.size());
+						for(int i=0; i<expected.size(); i++){
+							assertEquals(message, expected.get(i).getDocument().getId(), actual.get(i).getDocument().getId());
+							assertEquals(message, expected.get(i).getSimilarity(), actual.get(i).getSimilarity(), 0);
+						}
+					}
+				}
+			}
+		}finally{
+			TestData.deleteFolder(folder);
+		}
+	}
+
+	/**
+	 * 重新生成缓存文件时分区中已没有地址：删除以前的缓存文件和增量缓存文件，分区不再有历史数据。
+	 */
+	@Test
+	public void testEmptyRebuild() throws Exception {
+		File folder = TestData.tempFolder("simi-test");
+		try{
+			SimilarityComputer computer = computer(folder, true);
+			List<AddressEntity> addresses = TestData.addresses(200, 5);
+			String key = computer.buildCacheKey(addresses.get(0));
+			computer.buildDocumentFileCache(key, addresses.subList(0, 100));
+			computer.appendDocumentFileCache(key, addresses.subList(100, 200));
+			assertTrue(new File(folder, key + VectorSegment.DELTA_FILE_EXTENSION).exists());
+			assertFalse(computer.findSimilarAddress(addresses.get(0), 1, false).getSimilarDocs().isEmpty());
+			
+			SimilarityComputer.FileCacheBuilder builder = computer.new FileCacheBuilder(key);
+			builder.close();
+			builder.abort();
+			assertEquals(0, folder.listFiles().length);
+			try{
+				computer.findSimilarAddress(addresses.get(0), 1, false);
+				fail("stale cache files should be deleted");
+			}catch(NoHistoryDataException ex){
+			}
+		}finally{
+			TestData.deleteFolder(folder);
+		}
+	}
+
+	/**
+	 * 导入地址后在后台追加增量缓存文件：每个批次追加一个分块，合并后的结果与一次性生成缓存文件相同；appendOnImport为false时不追加。
+	 */
+	@Test
+	public void testImportAppend() throws Exception {
+		File folder = TestData.tempFolder("simi-test");
+		try{
+			SimilarityComputer computer = computer(folder, true);
+			computer.setCompactThreshold(0);
+			List<AddressEntity> addresses = TestData.addresses(300, 6);
+			String key = computer.buildCacheKey(addresses.get(0));
+			File deltaFile = new File(folder, key + VectorSegment.DELTA_FILE_EXTENSION);
+			computer.buildDocumentFileCache(key, addresses.subList(0, 100));
+			for(int from=100; from<300; from+=40)
+				computer.addressesImported(addresses.subList(from, from + 40));
+			computer.flushAppends();
+			assertEquals(5, VectorSegment.openDelta(deltaFile).size());
+			assertEquals(300, computer.countDocuments(addresses.get(0)));
+			List<SimilarDoccument> appended = computer.findSimilarAddress(addresses.get(250), 5, false).getSimilarDocs();
+			assertEquals(addresses.get(250).getId(), appended.get(0).getDocument().getId());
+
+			//合并到缓存文件后，与一次性生成缓存文件的查询结果相同
+			assertTrue(computer.compactDocumentFileCache(key));
+			assertFalse(deltaFile.exists());
+			assertSameDocs(appended, computer.findSimilarAddress(addresses.get(250), 5, false).getSimilarDocs());
+			computer.buildDocumentFileCache(key, addresses);
+			assertSameDocs(appended, computer.findSimilarAddress(addresses.get(250), 5, false).getSimilarDocs());
+
+			//离线批量导入时不追加，之后重新生成缓存文件
+			computer.setAppendOnImport(false);
+			computer.addressesImported(TestData.addresses(50, 7));
+			computer.flushAppends();
+			assertFalse(deltaFile.exists());
+			assertEquals(300, computer.countDocuments(addresses.get(0)));
+		}finally{
+			TestData.deleteFolder(folder);
+		}
+	}
+
+	private static void assertSameDocs(List<SimilarDoccument> expected, List<SimilarDoccument> actual){
+		assertEquals(expected.size(), actual.size());
+		for(int i=0; i<expected.size(); i++){
+			assertEquals(expected.get(i).getDocument().getId(), actual.get(i).getDocument().getId());
+			assertEquals(expected.get(i).getSimilarity(), actual.get(i).getSimilarity(), 0);
+		}
+	}
+
+	private static SimilarityComputer computer(File folder, boolean memory){
+		SimilarityComputer computer = new SimilarityComputer();
+		computer.setCacheFolder(folder.getPath());
+		computer.setCacheVectorsInMemory(memory);
+		computer.setRefreshInterval(-1);
+		return computer;
+	}
+
+	/**
+	 * 使用已设置IDF的查询文档创建新的查询。
+	 */
+	private static Query query(Query prepared){
+		Query query = new Query(prepared.getTopN());
+		query.setQueryAddr(prepared.getQueryAddr());
+		query.setQueryDoc(prepared.getQueryDoc());
+		return query;
+	}
+}
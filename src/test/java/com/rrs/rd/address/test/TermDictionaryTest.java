@@ -0,0 +1,53 @@
+package com.rrs.rd.address.test;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.DocumentBlock;
+import com.rrs.rd.address.similarity.TermDictionary;
+
+import junit.framework.TestCase;
+
+public class TermDictionaryTest extends TestCase {
+	/**
+	 * 缓存分区被回收后释放词条：仍被其他缓存分区或文档对象使用的词条不释放。
+	 */
+	@Test
+	public void testRelease() throws Exception {
+		TermDictionary dictionary = TermDictionary.getInstance();
+		//TestData.block打开的VectorSegment转换后即可回收，词条由DocumentBlock继续持有
+		DocumentBlock block1 = TestData.block(Arrays.asList(TestData.doc(1, "X释放测试-共享", "X释放测试-1")));
+		DocumentBlock block2 = TestData.block(Arrays.asList(TestData.doc(2, "X释放测试-共享", "X释放测试-2")));
+		assertFalse(released(dictionary, "释放测试-1"));
+		assertEquals("释放测试-1", block1.getText(block1.lookup("释放测试-1")));
+
+		Document doc = block1.getDocument(0);
+		block1 = null;
+		assertFalse(released(dictionary, "释放测试-1"));
+		assertEquals(1, doc.getId());
+
+		doc = null;
+		assertTrue(released(dictionary, "释放测试-1"));
+		assertTrue(dictionary.lookup("释放测试-共享") >= 0);
+		assertEquals("释放测试-共享", block2.getText(block2.lookup("释放测试-共享")));
+
+		block2 = null;
+		assertTrue(released(dictionary, "释放测试-共享"));
+		assertEquals(-1, dictionary.lookup("释放测试-2"));
+	}
+
+	/**
+	 * 多次触发垃圾回收，等待词条释放。
+	 */
+	private static boolean released(TermDictionary dictionary, String text) throws InterruptedException {
+		for(int i=0; i<20; i++){
+			System.gc();
+			Thread.sleep(10);
+			dictionary.size();
+			if(dictionary.lookup(text)<0) return true;
+		}
+		return false;
+	}
+}
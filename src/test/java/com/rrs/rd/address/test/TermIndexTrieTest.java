@@ -0,0 +1,133 @@
+package com.rrs.rd.address.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.index.TermIndexAutomaton;
+import com.rrs.rd.address.index.TermIndexEntry;
+import com.rrs.rd.address.index.TermIndexTrie;
+
+import junit.framework.TestCase;
+
+public class TermIndexTrieTest extends TestCase {
+	@Test
+	public void testBuildAndFind() {
+		List<TermIndexEntry> entries = new ArrayList<TermIndexEntry>();
+		String[] keys = { "青岛市", "青岛", "市南区", "市南", "南区", "香港", "香港岛", "a", "ab" };
+		for(String key : keys) entries.add(new TermIndexEntry(key).addItem(TermType.Undefined, key));
+		TermIndexTrie trie = TermIndexTrie.build(entries);
+		assertEquals(keys.length, trie.size());
+
+		for(String key : keys){
+			TermIndexEntry entry = trie.find(key);
+			assertNotNull(key, entry);
+			assertEquals(key, entry.getKey());
+			assertEquals(key, entry.getItems().get(0).getValue());
+		}
+		assertNull(trie.find("青"));
+		assertNull(trie.find("青岛市南"));
+		assertNull(trie.find("b"));
+		assertNull(trie.find(""));
+
+		//逐字符匹配：中间节点没有索引条目，完整词条同时可以是其他词条的前缀
+		int state = trie.next(TermIndexTrie.ROOT, '青');
+		assertTrue(state > 0);
+		assertNull(trie.getEntry(state));
+		state = trie.next(state, '岛');
+		assertEquals("青岛", trie.getEntry(state).getKey());
+		assertTrue(trie.hasChildren(state));
+		state = trie.next(state, '市');
+		assertEquals("青岛市", trie.getEntry(state).getKey());
+		assertFalse(trie.hasChildren(state));
+		assertEquals(-1, trie.next(state, '南'));
+		assertEquals(-1, trie.next(TermIndexTrie.ROOT, '岛'));
+	}
+
+	@Test
+	public void testAutomatonScan() {
+		List<TermIndexEntry> entries = new ArrayList<TermIndexEntry>();
+		for(String key : new String[]{ "青岛市", "青岛", "市南区", "市南", "南区", "岛" })
+			entries.add(new TermIndexEntry(key).addItem(TermType.Undefined, key));
+		TermIndexAutomaton automaton = new TermIndexAutomaton(TermIndexTrie.build(entries));
+
+		//全部出现位置，包括相互重叠的词条
+		final List<String> matches = new ArrayList<String>();
+		automaton.scan("山东青岛市南区香港", new TermIndexAutomaton.MatchHandler() {
+			@Override
+			public void match(TermIndexEntry entry, int start, int end) {
+				matches.add(entry.getKey() + ":" + start + "-" + end);
+			}
+		});
+		assertEquals("[青岛:2-3, 岛:3-3, 青岛市:2-4, 市南:4-5, 市南区:4-6, 南区:5-6]", matches.toString());
+
+		boolean[] starts = automaton.markStarts("山东青岛市南区香港");
+		assertEquals(9, starts.length);
+		assertFalse(starts[0]);
+		assertTrue(starts[2]);
+		assertTrue(starts[3]);
+		assertTrue(starts[4]);
+		assertTrue(starts[5]);
+		assertFalse(starts[6]);
+		assertFalse(starts[8]);
+	}
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		List<TermIndexEntry> entries = new ArrayList<TermIndexEntry>();
+		String[] keys = { "青岛市", "青岛", "市南区", "市南", "南区", "香港" };
+		for(String key : keys) entries.add(new TermIndexEntry(key).addItem(TermType.Undefined, key));
+		TermIndexTrie trie = TermIndexTrie.build(entries);
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		trie.write(out);
+		out.writeInt(12345);
+		out.close();
+		
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		TermIndexTrie loaded = TermIndexTrie.read(buffer);
+		assertEquals(12345, buffer.getInt());
+		assertEquals(trie.size(), loaded.size());
+		assertEquals(trie.getCapacity(), loaded.getCapacity());
+		for(String key : keys){
+			assertEquals(key, loaded.find(key).getKey());
+			assertFalse(loaded.find(key).hasItem());
+		}
+		assertNull(loaded.find("青岛市南"));
+		assertEquals("[青岛:2-3, 青岛市:2-4, 市南:4-5, 市南区:4-6, 南区:5-6]", scan(new TermIndexAutomaton(loaded), "山东青岛市南区"));
+	}
+	
+	private static String scan(TermIndexAutomaton automaton, String text){
+		final List<String> matches = new ArrayList<String>();
+		automaton.scan(text, new TermIndexAutomaton.MatchHandler() {
+			@Override
+			public void match(TermIndexEntry entry, int start, int end) {
+				matches.add(entry.getKey() + ":" + start + "-" + end);
+			}
+		});
+		return matches.toString();
+	}
+
+	@Test
+	public void testEmptyAndDuplicated() {
+		TermIndexTrie trie = TermIndexTrie.build(new ArrayList<TermIndexEntry>());
+		assertEquals(0, trie.size());
+		assertEquals(-1, trie.next(TermIndexTrie.ROOT, '青'));
+		assertNull(trie.find("青岛"));
+
+		List<TermIndexEntry> entries = new ArrayList<TermIndexEntry>();
+		entries.add(new TermIndexEntry("青岛"));
+		entries.add(new TermIndexEntry("青岛"));
+		try{
+			TermIndexTrie.build(entries);
+			fail("duplicated keys should be rejected");
+		}catch(IllegalArgumentException ex){
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.rrs.rd.address.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionType;
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.DocumentBlock;
+import com.rrs.rd.address.similarity.Term;
+import com.rrs.rd.address.similarity.VectorSegment;
+import com.rrs.rd.address.similarity.VectorSegmentWriter;
+
+/**
+ * 单元测试共用的测试数据，不依赖数据库。
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class TestData {
+	private static final String NAME_CHARS = "安宝北滨昌长成崇大德东丰福阜高广海和河华怀惠吉嘉建江金锦靖康兰乐";
+	private static final String[] ROAD_SUFFIXES = { "路", "街", "大道" };
+	private static final String[] BUILDINGS = { "花园小区", "大厦", "广场", "新村", "公寓" };
+
+	private static RegionEntity province = region(0, 1, "测试省", RegionType.Province);
+	private static RegionEntity city = region(1, 2, "测试市", RegionType.City);
+	private static RegionEntity district = region(2, 3, "测试区", RegionType.District);
+	private static RegionEntity[] towns = new RegionEntity[4];
+	private static RegionEntity[] villages = new RegionEntity[towns.length * 2];
+	static {
+		city.setChildren(new ArrayList<RegionEntity>());
+		city.getChildren().add(district);
+		for(int i=0; i<towns.length; i++){
+			towns[i] = region(3, 10 + i, NAME_CHARS.substring(i * 2, i * 2 + 2) + "镇", RegionType.Town);
+			for(int j=0; j<2; j++)
+				villages[i * 2 + j] = region(towns[i].getId(), 100 + i * 2 + j, NAME_CHARS.substring(10 + i * 2 + j, 12 + i * 2 + j) + "村", RegionType.Village);
+		}
+	}
+
+	/**
+	 * 创建文档。
+	 * @param id
+	 * @param terms 词条，第一个字符为词条类型（{@link TermType#getValue()}），其余为词条文本，例如"R和平路"、"N17号"、"X天"。
+	 * 乡镇、村庄、道路、门牌号词条同时设置为文档的对应属性，门牌号词条所属道路为文档的道路词条。
+	 * @return
+	 */
+	public static Document doc(int id, String... terms){
+		Document doc = new Document(id);
+		List<Term> list = new ArrayList<Term>();
+		for(String t : terms){
+			Term term = new Term(TermType.toEnum(t.charAt(0)), t.substring(1));
+			list.add(term);
+			switch(term.getType()){
+				case Town: doc.setTown(term); break;
+				case Village: doc.setVillage(term); break;
+				case Road: doc.setRoad(term); break;
+				case RoadNum:
+					doc.setRoadNum(term);
+					term.setRef(doc.getRoad());
+					break;
+				default:
+			}
+		}
+		doc.setTerms(list);
+		return doc;
+	}
+
+	/**
+	 * 将文档写入临时缓存文件，再加载为{@link DocumentBlock}。
+	 * @param docs
+	 * @return
+	 * @throws Exception
+	 */
+	public static DocumentBlock block(List<Document> docs) throws Exception {
+		File file = File.createTempFile("test-data", VectorSegment.FILE_EXTENSION);
+		file.deleteOnExit();
+		VectorSegmentWriter writer = new VectorSegmentWriter(file);
+		for(Document doc : docs) writer.add(doc);
+		writer.close();
+		return VectorSegment.open(file).toBlock();
+	}
+
+	/**
+	 * 生成同一个区县（同一个缓存分区）的已解析地址，地址ID从1开始顺序编号。
+	 * <p>使用固定的随机数种子；乡镇、村庄、道路、小区从较小的集合中选取，产生大量相同的词条和相似度相同的文档。</p>
+	 * @param count 地址数量。
+	 * @param seed 随机数种子。
+	 * @return
+	 */
+	public static List<AddressEntity> addresses(int count, long seed){
+		Random rnd = new Random(seed);
+		int roads = Math.max(5, count / 50), buildings = Math.max(5, count / 20);
+		List<AddressEntity> list = new ArrayList<AddressEntity>(count);
+		for(int i=0; i<count; i++){
+			AddressEntity addr = new AddressEntity();
+			addr.setId(i + 1);
+			addr.setProvince(province);
+			addr.setCity(city);
+			addr.setDistrict(district);
+			if(rnd.nextInt(3)==0){
+				int town = rnd.nextInt(towns.length);
+				addr.setTown(towns[town]);
+				if(rnd.nextInt(2)==0) addr.setVillage(villages[town * 2 + rnd.nextInt(2)]);
+			}
+			if(rnd.nextInt(3)!=0){
+				int road = rnd.nextInt(roads);
+				addr.setRoad(name(road, 2) + ROAD_SUFFIXES[road % ROAD_SUFFIXES.length]);
+				if(rnd.nextInt(4)!=0) addr.setRoadNum((1 + rnd.nextInt(60)) + "号");
+			}
+			int building = rnd.nextInt(buildings);
+			StringBuilder text = new StringBuilder(name(building * 7 + 3, 2)).append(BUILDINGS[building % BUILDINGS.length]);
+			if(rnd.nextInt(2)==0) text.append(1 + rnd.nextInt(30));
+			addr.setText(text.toString());
+			list.add(addr);
+		}
+		return list;
+	}
+
+	/**
+	 * 创建临时目录，结束时通过{@link #deleteFolder(File)}删除。
+	 * @param prefix 至少3个字符。
+	 * @return
+	 */
+	public static File tempFolder(String prefix) throws Exception {
+		File folder = File.createTempFile(prefix, "");
+		folder.delete();
+		folder.mkdirs();
+		folder.deleteOnExit();
+		return folder;
+	}
+
+	/**
+	 * 删除目录及其中的文件。
+	 * @param folder
+	 */
+	public static void deleteFolder(File folder){
+		if(folder==null || !folder.exists()) return;
+		File[] files = folder.listFiles();
+		if(files!=null){
+			for(File file : files) file.delete();
+		}
+		folder.delete();
+	}
+
+	private static String name(int seed, int length){
+		Random rnd = new Random(seed);
+		StringBuilder sb = new StringBuilder(length);
+		for(int i=0; i<length; i++) sb.append(NAME_CHARS.charAt(rnd.nextInt(NAME_CHARS.length())));
+		return sb.toString();
+	}
+
+	private static RegionEntity region(long parentId, long id, String name, RegionType type){
+		RegionEntity region = new RegionEntity();
+		region.setId(id);
+		region.setParentId(parentId);
+		region.setName(name);
+		region.setType(type);
+		return region;
+	}
+}
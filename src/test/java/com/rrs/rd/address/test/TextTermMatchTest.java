@@ -0,0 +1,84 @@
+package com.rrs.rd.address.test;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.Query;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+import com.rrs.rd.address.similarity.Term;
+import com.rrs.rd.address.similarity.TermDictionary;
+import com.rrs.rd.address.similarity.TextTermMatch;
+
+import junit.framework.TestCase;
+
+public class TextTermMatchTest extends TestCase {
+	private static final String CHARS = "翠微西里北号楼座园嘉";
+
+	/**
+	 * 词条ID归并与逐一比较词条文本的结果（匹配数量、起止位置）完全相同，包括重复词条。
+	 */
+	@Test
+	public void testMergeSameAsScan(){
+		Random rnd = new Random(1);
+		for(int i=0; i<CHARS.length(); i++)
+			TermDictionary.getInstance().add("match-" + CHARS.charAt(i));
+		for(int n=0; n<2000; n++){
+			Document qdoc = randomDoc(rnd, "match-");
+			Document doc = randomDoc(rnd, "match-");
+			Query query = new Query(1);
+			query.setQueryDoc(qdoc);
+			assertNotNull(doc.getTextTermPositions());
+			TextTermMatch expected = TextTermMatch.scan(qdoc.getTerms(), doc.getTerms());
+			TextTermMatch actual = TextTermMatch.merge(query.getTextTermIds(), doc.getTextTermPositions());
+			assertEquals(expected.getCount(), actual.getCount());
+			assertEquals(expected.getStart(), actual.getStart());
+			assertEquals(expected.getEnd(), actual.getEnd());
+		}
+	}
+
+	/**
+	 * 全局字典中不存在的词条：地址库文档不注册词条，查询文档的词条ID为-1时逐一比较词条文本，相似度与词条ID都存在时相同。
+	 */
+	@Test
+	public void testUnregisteredTerms(){
+		int size = TermDictionary.getInstance().size();
+		Document doc = TestData.doc(1, "R翠微路", "X未注册-翠", "X未注册-微", "X1", "X号");
+		assertNull(doc.getTextTermPositions());
+		assertEquals(size, TermDictionary.getInstance().size());
+
+		Document qdoc = TestData.doc(0, "R翠微路", "X未注册-翠", "X未注册-微");
+		for(Term term : qdoc.getTerms()) term.setIdf(1);
+		for(Term term : doc.getTerms()) term.setIdf(1);
+		SimilarityComputer computer = new SimilarityComputer();
+		Query before = new Query(1);
+		before.setQueryDoc(qdoc);
+		assertEquals(-1, before.getTextTermIds()[0]);
+
+		//注册词条后重新计算，查询文档仍使用注册之前获取的词条ID
+		for(String text : new String[]{ "未注册-翠", "未注册-微", "1", "号" })
+			TermDictionary.getInstance().add(text);
+		Document registered = TestData.doc(1, "R翠微路", "X未注册-翠", "X未注册-微", "X1", "X号");
+		for(Term term : registered.getTerms()) term.setIdf(1);
+		assertNotNull(registered.getTextTermPositions());
+		Query after = new Query(1);
+		after.setQueryDoc(qdoc);
+		assertTrue(after.getTextTermIds()[0] >= 0);
+
+		double expected = computer.computeDocSimilarity(after, registered, 1);
+		assertTrue(expected > 0);
+		assertEquals(expected, computer.computeDocSimilarity(before, registered, 1), 0);
+		assertEquals(expected, computer.computeDocSimilarity(before, doc, 1), 0);
+	}
+
+	private static Document randomDoc(Random rnd, String prefix){
+		int count = 1 + rnd.nextInt(8);
+		String[] terms = new String[count];
+		for(int i=0; i<count; i++){
+			//少量非Text类型词条，位置计算包含这些词条
+			terms[i] = (rnd.nextInt(6)==0 ? "R" : "X") + prefix + CHARS.charAt(rnd.nextInt(CHARS.length()));
+		}
+		return TestData.doc(0, terms);
+	}
+}
@@ -0,0 +1,72 @@
+package com.rrs.rd.address.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.similarity.TopNCollector;
+
+import junit.framework.TestCase;
+
+public class TopNCollectorTest extends TestCase {
+	@Test
+	public void testCollect(){
+		TopNCollector collector = new TopNCollector(3);
+		assertFalse(collector.collect(0, 0));
+		assertTrue(collector.collect(1, 0.5));
+		assertTrue(collector.collect(2, 0.9));
+		assertEquals(0.0, collector.getThreshold());
+		assertTrue(collector.collect(3, 0.5));
+		assertEquals(0.5, collector.getThreshold());
+		//相似度相同时序号小的排名高
+		assertFalse(collector.collect(4, 0.5));
+		assertTrue(collector.collect(0, 0.5));
+		assertTrue(collector.collect(5, 0.7));
+		collector.finish();
+		assertEquals(3, collector.size());
+		assertEquals(2, collector.getDoc(0));
+		assertEquals(5, collector.getDoc(1));
+		assertEquals(0, collector.getDoc(2));
+		assertEquals(0.5, collector.getSimilarity(2));
+	}
+
+	@Test
+	public void testSameAsSort(){
+		Random random = new Random(20170301);
+		for(int round=0; round<200; round++){
+			int topN = 1 + random.nextInt(round<100 ? 10 : 1000), count = random.nextInt(3000);
+			List<double[]> all = new ArrayList<double[]>(count);
+			TopNCollector collector = new TopNCollector(topN);
+			TopNCollector[] parts = { new TopNCollector(topN), new TopNCollector(topN), new TopNCollector(topN) };
+			for(int doc=0; doc<count; doc++){
+				//相似度取值较少，产生大量相同的相似度
+				double similarity = random.nextInt(20) / 19.0;
+				if(similarity>0) all.add(new double[]{ similarity, doc });
+				collector.collect(doc, similarity);
+				parts[doc * parts.length / count].collect(doc, similarity);
+			}
+			TopNCollector merged = new TopNCollector(topN);
+			for(TopNCollector part : parts) merged.merge(part);
+			Collections.sort(all, new Comparator<double[]>() {
+				@Override
+				public int compare(double[] a, double[] b) {
+					if(a[0]!=b[0]) return a[0] > b[0] ? -1 : 1;
+					return Double.compare(a[1], b[1]);
+				}
+			});
+			collector.finish();
+			merged.finish();
+			assertEquals(Math.min(topN, all.size()), collector.size());
+			assertEquals(collector.size(), merged.size());
+			for(int i=0; i<collector.size(); i++){
+				assertEquals((int)all.get(i)[1], collector.getDoc(i));
+				assertEquals(all.get(i)[0], collector.getSimilarity(i));
+				assertEquals(collector.getDoc(i), merged.getDoc(i));
+			}
+		}
+	}
+}
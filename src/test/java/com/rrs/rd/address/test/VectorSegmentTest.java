@@ -0,0 +1,359 @@
+package com.rrs.rd.address.test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.DocumentBlock;
+import com.rrs.rd.address.similarity.DocumentVectors;
+import com.rrs.rd.address.similarity.TermDictionary;
+import com.rrs.rd.address.similarity.VectorSegment;
+import com.rrs.rd.address.similarity.VectorSegmentWriter;
+
+import junit.framework.TestCase;
+
+public class VectorSegmentTest extends TestCase {
+	@Test
+	public void testWriteAndOpen() throws Exception {
+		File file = File.createTempFile("segment-test", VectorSegment.FILE_EXTENSION);
+		file.deleteOnExit();
+
+		VectorSegmentWriter writer = new VectorSegmentWriter(file);
+		Document doc1 = TestData.doc(955163, "R和平里中街", "N17号", "X天", "X元");
+		doc1.setRoadNumValue(17);
+		assertTrue(writer.add(doc1));
+		assertTrue(writer.add(TestData.doc(955164, "T温泉镇", "X天", "X和")));
+		//没有词条的文档不写入，与文本格式的缓存文件一致
+		assertFalse(writer.add(TestData.doc(955165)));
+		writer.close();
+
+		VectorSegment segment = VectorSegment.open(file);
+		assertEquals(2, segment.getDocCount());
+		assertEquals(955164, segment.getId(1));
+		assertEquals(4, segment.getTermEnd(0) - segment.getTermStart(0));
+		assertEquals(TermType.RoadNum, segment.getTermType(1));
+		assertEquals(17, segment.getRoadNumValue(0));
+		assertEquals(-1, segment.getRoadNumKey(1));
+
+		//门牌号词条按（道路, 门牌号数值）计数，门牌号文本本身不计数
+		assertEquals(segment.lookupRoadNum(segment.lookup("和平里中街"), 17), segment.getRoadNumKey(0));
+		assertEquals(-1, segment.lookupRoadNum(segment.lookup("和平里中街"), 18));
+		assertEquals(1, segment.getRoadNumKeyCount());
+		assertEquals(1, segment.getRoadNumRefers(segment.getRoadNumKey(0)));
+		assertEquals(0, segment.getRefers(segment.lookup("17号")));
+		assertEquals(2, segment.getRefers(segment.lookup("天")));
+		assertEquals(-1, segment.lookup("不存在"));
+		//字典词条注册到全局字典
+		assertEquals(TermDictionary.getInstance().lookup("天"), segment.getTermId(segment.lookup("天")));
+		assertEquals(segment.lookup("天"), segment.lookupTerm(TermDictionary.getInstance().lookup("天")));
+
+		Document loaded = segment.getDocument(0);
+		assertEquals(955163, loaded.getId());
+		assertEquals(4, loaded.getTerms().size());
+		assertEquals("和平里中街", loaded.getRoad().getText());
+		assertEquals("17号", loaded.getRoadNum().getText());
+		assertSame(loaded.getRoad(), loaded.getRoadNum().getRef());
+		assertEquals(17, loaded.getRoadNumValue());
+		//Text词条位置表：按全局词条ID排序，与直接由词条列表创建的相同
+		long[] positions = loaded.getTextTermPositions();
+		assertEquals(2, positions.length);
+		assertTrue(positions[0] < positions[1]);
+		int tian = TermDictionary.getInstance().lookup("天");
+		assertEquals(((long)tian << 32) | 2, tian==(int)(positions[0] >>> 32) ? positions[0] : positions[1]);
+		//重复的词条只保留第一个位置
+		assertTrue(Arrays.equals(positions, TestData.doc(0, "R和平里中街", "N17号", "X天", "X元", "X天").getTextTermPositions()));
+		assertEquals("温泉镇", segment.getDocument(1).getTown().getText());
+
+		//复制到堆内存数组后数据一致，字典共享
+		DocumentBlock block = segment.toBlock();
+		assertEquals(segment.getDocCount(), block.getDocCount());
+		for(int i=0; i<segment.getDocCount(); i++){
+			assertEquals(segment.getId(i), block.getId(i));
+			assertEquals(segment.getTermStart(i), block.getTermStart(i));
+			assertEquals(segment.getTermEnd(i), block.getTermEnd(i));
+			assertEquals(segment.getRoadNumKey(i), block.getRoadNumKey(i));
+			for(int j=segment.getTermStart(i); j<segment.getTermEnd(i); j++){
+				assertEquals(segment.getTermOrdinal(j), block.getTermOrdinal(j));
+				assertEquals(segment.getTermType(j), block.getTermType(j));
+			}
+		}
+		assertEquals(segment.lookup("天"), block.lookup("天"));
+		assertEquals(segment.getRoadNumKey(0), block.lookupRoadNum(block.lookup("和平里中街"), 17));
+		assertEquals(2, block.getRefers(block.lookup("天")));
+		assertEquals("温泉镇", block.getDocument(1).getTown().getText());
+	}
+
+	@Test
+	public void testCorruptFile() throws Exception {
+		File file = File.createTempFile("segment-test", VectorSegment.FILE_EXTENSION);
+		file.deleteOnExit();
+		VectorSegmentWriter writer = new VectorSegmentWriter(file);
+		writer.add(TestData.doc(1, "R和平里中街", "X天", "X元"));
+		writer.add(TestData.doc(2, "X天", "X和"));
+		writer.close();
+		byte[] bytes = Files.readAllBytes(file.toPath());
+
+		//截断在各个位置的文件、数量为负数的文件头都必须抛出IOException
+		for(int length=24; length<bytes.length; length++){ //24: 文件头长度
+			Files.write(file.toPath(), Arrays.copyOf(bytes, length));
+			assertOpenFails(file);
+		}
+		for(int field=8; field<24; field+=4){
+			byte[] corrupt = bytes.clone();
+			ByteBuffer.wrap(corrupt).putInt(field, -1);
+			Files.write(file.toPath(), corrupt);
+			assertOpenFails(file);
+		}
+		Files.write(file.toPath(), bytes);
+		assertEquals(2, VectorSegment.open(file).getDocCount());
+	}
+
+	private static void assertOpenFails(File file){
+		try{
+			VectorSegment.open(file);
+			fail("Corrupt file opened: " + file.length() + " bytes");
+		}catch(IOException ex){
+		}
+	}
+
+	/**
+	 * 旧版本（version 1）的缓存文件转换为当前版本：门牌号key按（道路, 门牌号数值）重新生成。
+	 */
+	@Test
+	public void testUpgrade() throws Exception {
+		File file = File.createTempFile("segment-test", VectorSegment.FILE_EXTENSION);
+		file.deleteOnExit();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try{
+			//文件头：magic, version, docCount, termCount, dictSize
+			for(int value : new int[]{ VectorSegment.MAGIC, 1, 2, 5, 5 }) out.writeInt(value);
+			//文档ID、词条起始位置、门牌号数值、门牌号IDF key（字典中的"道路-门牌号数值"）、词条字典序号、引用次数
+			for(int value : new int[]{ 1, 2,  0, 3, 5,  17, 0,  4, -1,  0, 1, 2, 2, 3,  1, 0, 2, 1, 1 }) out.writeInt(value);
+			for(TermType type : new TermType[]{ TermType.Road, TermType.RoadNum, TermType.Text, TermType.Text, TermType.Text })
+				out.writeByte(type.getValue());
+			for(String text : new String[]{ "和平里中街", "17号", "天", "和", "和平里中街-17" }){
+				byte[] bytes = text.getBytes("utf8");
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}finally{
+			out.close();
+		}
+		assertOpenFails(file);
+
+		assertTrue(VectorSegment.upgrade(file));
+		VectorSegment segment = VectorSegment.open(file);
+		assertEquals(2, segment.getDocCount());
+		assertEquals(2, segment.getId(1));
+		assertEquals(17, segment.getRoadNumValue(0));
+		assertEquals(1, segment.getRoadNumKeyCount());
+		assertEquals(segment.lookupRoadNum(segment.lookup("和平里中街"), 17), segment.getRoadNumKey(0));
+		assertEquals(-1, segment.getRoadNumKey(1));
+		assertEquals(-1, segment.lookup("和平里中街-17"));
+		assertEquals(2, segment.getRefers(segment.lookup("天")));
+		Document doc = segment.getDocument(0);
+		assertEquals("17号", doc.getRoadNum().getText());
+		assertSame(doc.getRoad(), doc.getRoadNum().getRef());
+		assertEquals("和", segment.getDocument(1).getTerms().get(1).getText());
+		//已经是当前版本的文件不做修改
+		assertFalse(VectorSegment.upgrade(file));
+	}
+
+	@Test
+	public void testMerge() throws Exception {
+		File file = File.createTempFile("segment-test", VectorSegment.FILE_EXTENSION);
+		File deltaFile = File.createTempFile("segment-test", VectorSegment.DELTA_FILE_EXTENSION);
+		file.deleteOnExit();
+		deltaFile.deleteOnExit();
+
+		VectorSegmentWriter writer = new VectorSegmentWriter(file);
+		Document doc1 = TestData.doc(1, "R和平里中街", "N17号", "X天");
+		doc1.setRoadNumValue(17);
+		writer.add(doc1);
+		writer.add(TestData.doc(2, "X天", "X和"));
+		writer.close();
+		writer = new VectorSegmentWriter(deltaFile);
+		writer.add(TestData.doc(2, "X天", "X和")); //已合并过的增量文档，忽略
+		Document doc3 = TestData.doc(3, "R和平里中街", "N17号", "X元");
+		doc3.setRoadNumValue(17);
+		writer.add(doc3);
+		writer.close();
+
+		DocumentBlock block = VectorSegment.open(file).merge(VectorSegment.open(deltaFile));
+		assertEquals(3, block.getDocCount());
+		assertEquals(3, block.getId(2));
+		assertEquals("元", block.getText(block.getTermOrdinal(block.getTermEnd(2) - 1)));
+		assertEquals(2, block.getRefers(block.lookup("天")));
+		assertEquals(1, block.getRefers(block.lookup("元")));
+		assertEquals(1, block.getRoadNumKeyCount());
+		assertEquals(block.getRoadNumKey(0), block.getRoadNumKey(2));
+		assertEquals(2, block.getRoadNumRefers(block.getRoadNumKey(2)));
+	}
+
+	/**
+	 * 增量缓存文件逐个追加分块：每次只写入新的分块，与一次性写入全部增量文档的合并结果相同；末尾不完整的分块被忽略，追加时截断。
+	 */
+	@Test
+	public void testAppendDelta() throws Exception {
+		File folder = TestData.tempFolder("segment-test");
+		try{
+			File file = new File(folder, "base" + VectorSegment.FILE_EXTENSION);
+			File deltaFile = new File(folder, "base" + VectorSegment.DELTA_FILE_EXTENSION);
+			File all = new File(folder, "all" + VectorSegment.FILE_EXTENSION);
+			VectorSegmentWriter writer = new VectorSegmentWriter(file);
+			writer.add(TestData.doc(1, "R和平里中街", "N17号", "X天"));
+			writer.add(TestData.doc(2, "X天", "X和"));
+			writer.close();
+
+			List<Document> docs = new ArrayList<Document>();
+			docs.add(TestData.doc(2, "X天", "X和")); //已合并过的增量文档，忽略
+			Random rnd = new Random(3);
+			for(int i=3; i<63; i++){
+				Document doc = i % 3==0
+						? TestData.doc(i, "R和平里中街", "N" + (i % 7) + "号", "X" + (char)('天' + rnd.nextInt(30)))
+						: TestData.doc(i, "T温泉镇", "X" + (char)('天' + rnd.nextInt(30)));
+				doc.setRoadNumValue(i % 7);
+				docs.add(doc);
+			}
+			VectorSegmentWriter allWriter = new VectorSegmentWriter(all);
+			for(Document doc : docs) allWriter.add(doc);
+			allWriter.close();
+
+			int appended = 0;
+			for(int from=0; from<docs.size(); from+=20){
+				List<Document> chunk = docs.subList(from, Math.min(docs.size(), from + 20));
+				byte[] before = deltaFile.exists() ? Files.readAllBytes(deltaFile.toPath()) : new byte[0];
+				appended += chunk.size();
+				assertEquals(appended, appendChunk(folder, deltaFile, chunk));
+				byte[] after = Files.readAllBytes(deltaFile.toPath());
+				//已有的分块保持不变，只写入新的分块
+				assertTrue(Arrays.equals(before, Arrays.copyOf(after, before.length)));
+				assertTrue(after.length - before.length < all.length());
+			}
+			List<VectorSegment> deltas = VectorSegment.openDelta(deltaFile);
+			assertEquals(4, deltas.size());
+			assertSameDocs(VectorSegment.open(file).merge(VectorSegment.open(all)), VectorSegment.open(file).merge(deltas));
+			assertSameDocs(VectorSegment.open(all).toBlock(), VectorSegment.concat(deltas));
+
+			//追加过程中中断，末尾残留不完整的分块
+			long length = deltaFile.length();
+			FileOutputStream out = new FileOutputStream(deltaFile, true);
+			try{
+				out.write(new byte[]{ 0, 0, 1, 0, 0x41, 0x44 });
+			}finally{
+				out.close();
+			}
+			assertEquals(4, VectorSegment.openDelta(deltaFile).size());
+			assertEquals(appended + 1, appendChunk(folder, deltaFile, docs.subList(5, 6)));
+			assertEquals(5, VectorSegment.openDelta(deltaFile).size());
+			assertTrue(deltaFile.length() > length && deltaFile.length() < length + 6 + 4 + all.length());
+
+			//不是增量缓存文件格式的文件，不修改
+			length = file.length();
+			try{
+				appendChunk(folder, file, docs.subList(5, 6));
+				fail("non-delta file should be rejected");
+			}catch(IOException ex){
+			}
+			assertEquals(length, file.length());
+		}finally{
+			TestData.deleteFolder(folder);
+		}
+	}
+
+	private static int appendChunk(File folder, File deltaFile, List<Document> docs) throws IOException {
+		File chunk = new File(folder, "chunk.tmp");
+		VectorSegmentWriter writer = new VectorSegmentWriter(chunk);
+		for(Document doc : docs) writer.add(doc);
+		writer.close();
+		try{
+			return VectorSegment.appendDelta(deltaFile, chunk);
+		}finally{
+			chunk.delete();
+		}
+	}
+
+	private static void assertSameDocs(DocumentVectors expected, DocumentVectors actual){
+		assertEquals(expected.getDocCount(), actual.getDocCount());
+		assertEquals(expected.getDictionarySize(), actual.getDictionarySize());
+		assertEquals(expected.getRoadNumKeyCount(), actual.getRoadNumKeyCount());
+		for(int doc=0; doc<expected.getDocCount(); doc++){
+			assertEquals(expected.getId(doc), actual.getId(doc));
+			assertEquals(expected.getRoadNumValue(doc), actual.getRoadNumValue(doc));
+			if(expected.getRoadNumKey(doc)<0) assertTrue(actual.getRoadNumKey(doc)<0);
+			else assertEquals(expected.getRoadNumRefers(expected.getRoadNumKey(doc)), actual.getRoadNumRefers(actual.getRoadNumKey(doc)));
+			assertEquals(expected.getTermEnd(doc) - expected.getTermStart(doc), actual.getTermEnd(doc) - actual.getTermStart(doc));
+			for(int i=expected.getTermStart(doc), j=actual.getTermStart(doc); i<expected.getTermEnd(doc); i++, j++){
+				String text = expected.getText(expected.getTermOrdinal(i));
+				assertEquals(text, actual.getText(actual.getTermOrdinal(j)));
+				assertEquals(expected.getTermType(i), actual.getTermType(j));
+				assertEquals(expected.getRefers(expected.getTermOrdinal(i)), actual.getRefers(actual.getTermOrdinal(j)));
+			}
+		}
+	}
+
+	/**
+	 * 分块写入溢出文件与全部缓存在内存中生成的缓存文件完全相同，写入后删除溢出文件。
+	 */
+	@Test
+	public void testSpill() throws Exception {
+		File folder = TestData.tempFolder("segment-test");
+		try{
+			File file = new File(folder, "memory" + VectorSegment.FILE_EXTENSION);
+			File spilled = new File(folder, "spilled" + VectorSegment.FILE_EXTENSION);
+			VectorSegmentWriter writer = new VectorSegmentWriter(file);
+			VectorSegmentWriter spillWriter = new VectorSegmentWriter(spilled, 7);
+			Random rnd = new Random(1);
+			for(int i=0; i<500; i++){
+				Document doc = i % 3==0 
+						? TestData.doc(i, "R和平里中街", "N" + (i % 20) + "号", "X" + (char)('天' + rnd.nextInt(30)))
+						: TestData.doc(i, "T温泉镇", "X" + (char)('天' + rnd.nextInt(30)), "X和");
+				doc.setRoadNumValue(i % 20);
+				assertEquals(writer.add(doc), spillWriter.add(doc));
+			}
+			writer.close();
+			spillWriter.close();
+			assertTrue(Arrays.equals(Files.readAllBytes(file.toPath()), Files.readAllBytes(spilled.toPath())));
+			assertEquals(2, folder.listFiles().length);
+			assertEquals(500, VectorSegment.open(spilled).getDocCount());
+		}finally{
+			TestData.deleteFolder(folder);
+		}
+	}
+
+	/**
+	 * 放弃写入时删除溢出文件，原有的目标文件保持不变。
+	 */
+	@Test
+	public void testAbort() throws Exception {
+		File folder = TestData.tempFolder("segment-test");
+		try{
+			File file = new File(folder, "abort" + VectorSegment.FILE_EXTENSION);
+			VectorSegmentWriter writer = new VectorSegmentWriter(file);
+			writer.add(TestData.doc(1, "R和平里中街", "X天"));
+			writer.close();
+			byte[] original = Files.readAllBytes(file.toPath());
+			
+			writer = new VectorSegmentWriter(file, 7);
+			for(int i=0; i<100; i++) writer.add(TestData.doc(i, "T温泉镇", "X" + (char)('天' + i % 30)));
+			assertEquals(2, folder.listFiles().length);
+			writer.abort();
+			assertEquals(1, folder.listFiles().length);
+			assertTrue(Arrays.equals(original, Files.readAllBytes(file.toPath())));
+			writer.abort();
+		}finally{
+			TestData.deleteFolder(folder);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.rrs.rd.address.test;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.similarity.WandSearcher;
+
+import junit.framework.TestCase;
+
+public class WandSearcherTest extends TestCase {
+	@Test
+	public void testNext(){
+		int[][] postings = new int[][]{
+			{ 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 }, //高频低权重词条
+			{ 3, 7 }, //低频高权重词条
+			{ 7, 9 }
+		};
+		double[] max = new double[]{ 0.1, 4, 2 };
+		double[] min = new double[]{ 0.1, 4, 2 };
+
+		//阈值为0时返回全部候选文档
+		WandSearcher searcher = new WandSearcher(postings, max, min);
+		int count = 0;
+		for(int doc=searcher.next(0), expected=0; doc>=0; doc=searcher.next(0), expected++){
+			assertEquals(expected, doc);
+			count++;
+		}
+		assertEquals(10, count);
+		assertEquals(10, searcher.getScoredDocs());
+
+		//只匹配第1个词条的文档相似度上限为 sqrt(0.01 / (0.01 + 16 + 4)) = 0.0223...，阈值0.1时全部跳过
+		searcher = new WandSearcher(postings, max, min);
+		assertEquals(3, searcher.next(0.1));
+		assertEquals(7, searcher.next(0.1));
+		assertEquals(9, searcher.next(0.1));
+		assertEquals(-1, searcher.next(0.1));
+		assertEquals(3, searcher.getScoredDocs());
+
+		//阈值提高后，只匹配第3个词条的文档也被跳过：sqrt((0.01 + 4) / (0.01 + 4 + 16)) = 0.4476...
+		searcher = new WandSearcher(postings, max, min);
+		assertEquals(3, searcher.next(0.1));
+		assertEquals(7, searcher.next(0.5));
+		assertEquals(-1, searcher.next(0.5));
+	}
+
+	@Test
+	public void testRange(){
+		int[][] postings = new int[][]{
+			{ 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 },
+			{ 3, 7 },
+			{ 7, 9 }
+		};
+		double[] max = new double[]{ 0.1, 4, 2 };
+		double[] min = new double[]{ 0.1, 4, 2 };
+		WandSearcher searcher = new WandSearcher(postings, max, min);
+
+		//只返回区间内的文档，多个区间的搜索器互不影响
+		WandSearcher first = searcher.range(0, 5), second = searcher.range(5, 10);
+		assertEquals(7, second.next(0.1));
+		for(int expected=0; expected<5; expected++) assertEquals(expected, first.next(0));
+		assertEquals(-1, first.next(0));
+		assertEquals(9, second.next(0.1));
+		assertEquals(-1, second.next(0.1));
+
+		WandSearcher middle = searcher.range(4, 8);
+		assertEquals(7, middle.next(0.1));
+		assertEquals(-1, middle.next(0.1));
+		assertEquals(-1, searcher.range(8, 9).next(0.1));
+	}
+}